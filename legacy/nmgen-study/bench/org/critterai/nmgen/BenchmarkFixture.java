@@ -0,0 +1,208 @@
+package org.critterai.nmgen;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The source geometry, builders and intermediate results for a single
+ * benchmark parameter set.
+ * <p>The builders are configured the same way as a {@link NavmeshGenerator}
+ * with the same settings.  Intermediate results are built on first use
+ * and shared by all benchmarks of the parameter set.  They must not be
+ * modified.</p>
+ */
+final class BenchmarkFixture
+{
+
+    // Generator settings in world units.
+    private static final float CELL_HEIGHT = 0.1f;
+    private static final float MIN_TRAVERSABLE_HEIGHT = 1.5f;
+    private static final float MAX_TRAVERSABLE_STEP = 0.3f;
+    private static final float MAX_TRAVERSABLE_SLOPE = 48;
+    private static final float TRAVERSABLE_AREA_BORDER_SIZE = 0.5f;
+    private static final int SMOOTHING_THRESHOLD = 2;
+    private static final int MIN_UNCONNECTED_REGION_SIZE = 20;
+    private static final int MERGE_REGION_SIZE = 40;
+    private static final float MAX_EDGE_LENGTH = 12;
+    private static final float EDGE_MAX_DEVIATION = 1.3f;
+    private static final int MAX_VERTS_PER_POLY = 6;
+    private static final float CONTOUR_SAMPLE_DISTANCE = 6;
+    private static final float CONTOUR_MAX_DEVIATION = 1;
+
+    private final float[] mVertices;
+    private final int[] mIndices;
+
+    private final NavmeshGenerator mGenerator;
+    private final SolidHeightfieldBuilder mSolidBuilder;
+    private final OpenHeightfieldBuilder mOpenBuilder;
+    private final ContourSetBuilder mContourBuilder;
+    private final PolyMeshFieldBuilder mPolyMeshBuilder;
+    private final DetailMeshBuilder mDetailMeshBuilder;
+
+    private SolidHeightfield mSolidField = null;
+    private CompactOpenHeightfield mRegionField = null;
+    private ContourSet mContours = null;
+    private PolyMeshField mPolyMesh = null;
+
+    /**
+     * Constructor
+     * @param vertices Source geometry vertices in the form (x, y, z).
+     * @param indices Source geometry indices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @param cellSize The cell size of the fields.
+     * @param threadPool The pool used by the builders, or null for
+     * serial builds.
+     */
+    BenchmarkFixture(float[] vertices
+            , int[] indices
+            , float cellSize
+            , ForkJoinPool threadPool)
+    {
+        mVertices = vertices;
+        mIndices = indices;
+
+        mGenerator = new NavmeshGenerator(cellSize
+                , CELL_HEIGHT
+                , MIN_TRAVERSABLE_HEIGHT
+                , MAX_TRAVERSABLE_STEP
+                , MAX_TRAVERSABLE_SLOPE
+                , true
+                , TRAVERSABLE_AREA_BORDER_SIZE
+                , SMOOTHING_THRESHOLD
+                , true
+                , MIN_UNCONNECTED_REGION_SIZE
+                , MERGE_REGION_SIZE
+                , MAX_EDGE_LENGTH
+                , EDGE_MAX_DEVIATION
+                , MAX_VERTS_PER_POLY
+                , CONTOUR_SAMPLE_DISTANCE
+                , CONTOUR_MAX_DEVIATION
+                , threadPool);
+
+        // The same conversions to voxel units as the generator.
+        final int vxMinTraversableHeight =
+            (int)Math.ceil(MIN_TRAVERSABLE_HEIGHT / CELL_HEIGHT);
+        final int vxMaxTraversableStep =
+            (int)Math.ceil(MAX_TRAVERSABLE_STEP / CELL_HEIGHT);
+        final int vxBorderSize =
+            (int)Math.ceil(TRAVERSABLE_AREA_BORDER_SIZE / cellSize);
+
+        mSolidBuilder = new SolidHeightfieldBuilder(cellSize
+                , CELL_HEIGHT
+                , vxMinTraversableHeight
+                , vxMaxTraversableStep
+                , MAX_TRAVERSABLE_SLOPE
+                , true
+                , threadPool);
+
+        final ArrayList<IOpenHeightFieldAlgorithm> regionAlgorithms =
+            new ArrayList<IOpenHeightFieldAlgorithm>();
+        regionAlgorithms.add(new CleanNullRegionBorders(true, threadPool));
+        regionAlgorithms.add(new FilterOutSmallRegions(
+                MIN_UNCONNECTED_REGION_SIZE, MERGE_REGION_SIZE));
+        mOpenBuilder = new OpenHeightfieldBuilder(vxMinTraversableHeight
+                , vxMaxTraversableStep
+                , vxBorderSize
+                , SMOOTHING_THRESHOLD
+                , SpanFlags.WALKABLE
+                , true
+                , regionAlgorithms
+                , threadPool);
+
+        final ArrayList<IContourAlgorithm> contourAlgorithms =
+            new ArrayList<IContourAlgorithm>();
+        contourAlgorithms.add(
+                new MatchNullRegionEdges(EDGE_MAX_DEVIATION / cellSize));
+        contourAlgorithms.add(new NullRegionMaxEdge(
+                (int)Math.ceil(MAX_EDGE_LENGTH / cellSize)));
+        mContourBuilder = new ContourSetBuilder(contourAlgorithms
+                , threadPool);
+
+        mPolyMeshBuilder = new PolyMeshFieldBuilder(MAX_VERTS_PER_POLY);
+        mDetailMeshBuilder = new DetailMeshBuilder(CONTOUR_SAMPLE_DISTANCE
+                , CONTOUR_MAX_DEVIATION
+                , threadPool);
+    }
+
+    ContourSetBuilder contourBuilder() { return mContourBuilder; }
+
+    /**
+     * The contours of {@link #regionField()}.
+     */
+    ContourSet contours()
+    {
+        if (mContours == null)
+            mContours = mContourBuilder.build(regionField());
+        return mContours;
+    }
+
+    /**
+     * Creates a new compact field from {@link #solidField()}.
+     * @param stageCount The number of open field stages to apply, in the
+     * order: neighbor links, distance field, blur, regions.
+     * @return A new compact field.
+     */
+    CompactOpenHeightfield createCompactField(int stageCount)
+    {
+        final CompactOpenHeightfield result =
+            mOpenBuilder.buildCompact(solidField(), false);
+        if (stageCount > 0)
+            mOpenBuilder.generateNeighborLinks(result);
+        if (stageCount > 1)
+            mOpenBuilder.generateDistanceField(result);
+        if (stageCount > 2)
+            mOpenBuilder.blurDistanceField(result);
+        if (stageCount > 3)
+            mOpenBuilder.generateRegions(result);
+        return result;
+    }
+
+    DetailMeshBuilder detailMeshBuilder() { return mDetailMeshBuilder; }
+
+    NavmeshGenerator generator() { return mGenerator; }
+
+    int[] indices() { return mIndices; }
+
+    OpenHeightfieldBuilder openBuilder() { return mOpenBuilder; }
+
+    /**
+     * The compact field with regions generated and all region algorithms
+     * applied.
+     */
+    CompactOpenHeightfield regionField()
+    {
+        if (mRegionField == null)
+        {
+            mRegionField = createCompactField(4);
+            mOpenBuilder.applyRegionAlgorithms(mRegionField);
+        }
+        return mRegionField;
+    }
+
+    /**
+     * The polygon mesh of {@link #contours()}.
+     */
+    PolyMeshField polyMesh()
+    {
+        if (mPolyMesh == null)
+            mPolyMesh = mPolyMeshBuilder.build(contours());
+        return mPolyMesh;
+    }
+
+    PolyMeshFieldBuilder polyMeshBuilder() { return mPolyMeshBuilder; }
+
+    SolidHeightfieldBuilder solidBuilder() { return mSolidBuilder; }
+
+    /**
+     * The solid field of the source geometry.
+     */
+    SolidHeightfield solidField()
+    {
+        if (mSolidField == null)
+            mSolidField = mSolidBuilder.build(mVertices, mIndices);
+        return mSolidField;
+    }
+
+    float[] vertices() { return mVertices; }
+
+}
@@ -0,0 +1,461 @@
+package org.critterai.nmgen;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures each stage of the {@link NavmeshGenerator} build process.
+ * <p>Every selected stage is run for each combination of cell size and
+ * scene scale.  The scale is the target triangle count of the
+ * {@link SyntheticScene}.  The inputs for a stage are built before it is
+ * measured.  So each stage is measured in isolation.</p>
+ * <p>Reports throughput, latency, allocation rate and garbage collector
+ * activity.  Allocations are summed across all live threads, so work done
+ * by the thread pool is included.</p>
+ * <p>Usage: <pre>
+ * java org.critterai.nmgen.BenchmarkRunner [-stages name,...]
+ *     [-cellSizes size,...] [-scales scale,...] [-warmup count]
+ *     [-iterations count] [-threads count] [-seed seed]
+ * </pre></p>
+ * <p>A thread count of zero results in serial builds.</p>
+ */
+public final class BenchmarkRunner
+{
+
+    /*
+     * Design notes:
+     *
+     * The JVM's JIT compiler needs a warmup period before measurements
+     * are meaningful.  Each stage gets its own warmup since the stages
+     * exercise different code.
+     *
+     * Results are assigned to a volatile field so the JIT compiler can't
+     * remove the work as dead code.
+     *
+     * Garbage collections triggered during preparation may be counted
+     * against the stage.  Preparation is much smaller than the stage for
+     * all but the links and blur stages.
+     *
+     * Logging is disabled for the package.  The synthetic scenes trigger
+     * builder warnings, and console output would distort the timings.
+     */
+
+    private static final double NANOS_PER_MS = 1000000.0;
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    private final com.sun.management.ThreadMXBean mThreadBean;
+    private final ArrayList<GarbageCollectorMXBean> mGCBeans;
+
+    // Held so the level setting isn't lost to garbage collection.
+    private final Logger mLogger;
+
+    private String[] mStageNames = null;
+    private float[] mCellSizes = { 0.3f, 0.5f };
+    private int[] mScales = { 10000, 100000 };
+    private int mWarmupCount = 10;
+    private int mIterationCount = 20;
+    private int mThreadCount = 0;
+    private long mSeed = 1;
+
+    private volatile Object mSink;
+
+    private BenchmarkRunner()
+    {
+        mThreadBean = (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        if (mThreadBean.isThreadAllocatedMemorySupported())
+            mThreadBean.setThreadAllocatedMemoryEnabled(true);
+        mGCBeans = new ArrayList<GarbageCollectorMXBean>(
+                ManagementFactory.getGarbageCollectorMXBeans());
+        mLogger = Logger.getLogger(
+                BenchmarkRunner.class.getPackage().getName());
+        mLogger.setLevel(Level.OFF);
+    }
+
+    /**
+     * Runs the benchmarks.
+     * @param args See the class description for the available options.
+     */
+    public static void main(String[] args)
+    {
+        final BenchmarkRunner runner = new BenchmarkRunner();
+        try
+        {
+            runner.parseArgs(args);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            System.err.println(ex.getMessage());
+            System.err.println("Options: -stages name,... -cellSizes size,..."
+                    + " -scales scale,... -warmup count -iterations count"
+                    + " -threads count -seed seed");
+            System.err.print("Stages:");
+            for (StageBenchmark stage : createStages())
+                System.err.print(" " + stage.name());
+            System.err.println();
+            System.exit(1);
+        }
+        runner.run();
+    }
+
+    /**
+     * Measures a single stage.
+     * @return The report line for the stage.
+     */
+    private String measure(StageBenchmark stage)
+    {
+        for (int i = 0; i < mWarmupCount; i++)
+        {
+            stage.prepare();
+            mSink = stage.run();
+        }
+
+        final long[] times = new long[mIterationCount];
+        long totalTime = 0;
+        long totalBytes = 0;
+        long gcCount = 0;
+        long gcTime = 0;
+        for (int i = 0; i < mIterationCount; i++)
+        {
+            stage.prepare();
+            final long startBytes = allocatedBytes();
+            final long startGCCount = gcCount();
+            final long startGCTime = gcTime();
+            final long startTime = System.nanoTime();
+            mSink = stage.run();
+            times[i] = System.nanoTime() - startTime;
+            totalBytes += allocatedBytes() - startBytes;
+            gcCount += gcCount() - startGCCount;
+            gcTime += gcTime() - startGCTime;
+            totalTime += times[i];
+        }
+        mSink = null;
+
+        Arrays.sort(times);
+        final double seconds = totalTime / (NANOS_PER_MS * 1000);
+        return String.format(Locale.US
+                , "%-16s %9.2f %9.3f %9.3f %9.3f %9.3f %9.2f %9.1f %5d %7d"
+                , stage.name()
+                , mIterationCount / seconds
+                , totalTime / (NANOS_PER_MS * mIterationCount)
+                , times[mIterationCount / 2] / NANOS_PER_MS
+                , times[(mIterationCount * 9) / 10] / NANOS_PER_MS
+                , times[mIterationCount - 1] / NANOS_PER_MS
+                , totalBytes / (BYTES_PER_MB * mIterationCount)
+                , totalBytes / (BYTES_PER_MB * seconds)
+                , gcCount
+                , gcTime);
+    }
+
+    private void parseArgs(String[] args)
+    {
+        for (int i = 0; i < args.length; i++)
+        {
+            final String option = args[i];
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException(
+                        "Missing value: " + option);
+            final String[] values = args[++i].split(",");
+            try
+            {
+                if (option.equals("-stages"))
+                    mStageNames = values;
+                else if (option.equals("-cellSizes"))
+                {
+                    mCellSizes = new float[values.length];
+                    for (int iValue = 0; iValue < values.length; iValue++)
+                        mCellSizes[iValue] = Float.parseFloat(values[iValue]);
+                }
+                else if (option.equals("-scales"))
+                {
+                    mScales = new int[values.length];
+                    for (int iValue = 0; iValue < values.length; iValue++)
+                        mScales[iValue] = Integer.parseInt(values[iValue]);
+                }
+                else if (option.equals("-warmup"))
+                    mWarmupCount = Math.max(0, Integer.parseInt(values[0]));
+                else if (option.equals("-iterations"))
+                    mIterationCount =
+                        Math.max(1, Integer.parseInt(values[0]));
+                else if (option.equals("-threads"))
+                    mThreadCount = Math.max(0, Integer.parseInt(values[0]));
+                else if (option.equals("-seed"))
+                    mSeed = Long.parseLong(values[0]);
+                else
+                    throw new IllegalArgumentException(
+                            "Unknown option: " + option);
+            }
+            catch (NumberFormatException ex)
+            {
+                throw new IllegalArgumentException(
+                        "Invalid value for " + option + ": " + args[i]);
+            }
+        }
+
+        if (mStageNames != null)
+        {
+            final ArrayList<StageBenchmark> stages = createStages();
+            for (String name : mStageNames)
+            {
+                boolean found = false;
+                for (StageBenchmark stage : stages)
+                    found |= stage.name().equals(name);
+                if (!found)
+                    throw new IllegalArgumentException(
+                            "Unknown stage: " + name);
+            }
+        }
+    }
+
+    private void run()
+    {
+        final ForkJoinPool threadPool =
+            (mThreadCount > 0 ? new ForkJoinPool(mThreadCount) : null);
+        try
+        {
+            System.out.println(String.format(Locale.US
+                    , "Threads: %d, Warmup: %d, Iterations: %d, Seed: %d"
+                    , mThreadCount, mWarmupCount, mIterationCount, mSeed));
+            for (int scale : mScales)
+            {
+                final SyntheticScene scene = new SyntheticScene(mSeed, scale);
+                for (float cellSize : mCellSizes)
+                {
+                    System.out.println();
+                    System.out.println(String.format(Locale.US
+                            , "Scale: %d (%d triangles), Cell size: %.2f"
+                            , scale, scene.triangleCount(), cellSize));
+                    System.out.println(String.format(Locale.US
+                            , "%-16s %9s %9s %9s %9s %9s %9s %9s %5s %7s"
+                            , "stage", "ops/s", "avg ms", "p50 ms"
+                            , "p90 ms", "max ms", "MB/op", "MB/s"
+                            , "gc", "gc ms"));
+                    final BenchmarkFixture fixture = new BenchmarkFixture(
+                            scene.vertices()
+                            , scene.indices()
+                            , cellSize
+                            , threadPool);
+                    for (StageBenchmark stage : createStages())
+                    {
+                        if (!isSelected(stage))
+                            continue;
+                        stage.setup(fixture);
+                        System.out.println(measure(stage));
+                    }
+                }
+            }
+        }
+        finally
+        {
+            if (threadPool != null)
+                threadPool.shutdown();
+        }
+    }
+
+    private long allocatedBytes()
+    {
+        if (!mThreadBean.isThreadAllocatedMemoryEnabled())
+            return 0;
+        long result = 0;
+        for (long bytes : mThreadBean.getThreadAllocatedBytes(
+                mThreadBean.getAllThreadIds()))
+        {
+            // Negative if the thread is no longer alive.
+            if (bytes > 0)
+                result += bytes;
+        }
+        return result;
+    }
+
+    private long gcCount()
+    {
+        long result = 0;
+        for (GarbageCollectorMXBean bean : mGCBeans)
+            result += Math.max(0, bean.getCollectionCount());
+        return result;
+    }
+
+    private long gcTime()
+    {
+        long result = 0;
+        for (GarbageCollectorMXBean bean : mGCBeans)
+            result += Math.max(0, bean.getCollectionTime());
+        return result;
+    }
+
+    private boolean isSelected(StageBenchmark stage)
+    {
+        if (mStageNames == null)
+            return true;
+        for (String name : mStageNames)
+        {
+            if (stage.name().equals(name))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Creates the stage benchmarks in build order.
+     */
+    private static ArrayList<StageBenchmark> createStages()
+    {
+        final ArrayList<StageBenchmark> result =
+            new ArrayList<StageBenchmark>();
+
+        result.add(new StageBenchmark("voxelize")
+        {
+            private BenchmarkFixture mFixture;
+            void setup(BenchmarkFixture fixture) { mFixture = fixture; }
+            Object run()
+            {
+                return mFixture.solidBuilder().build(mFixture.vertices()
+                        , mFixture.indices());
+            }
+        });
+
+        result.add(new StageBenchmark("openField")
+        {
+            private BenchmarkFixture mFixture;
+            void setup(BenchmarkFixture fixture) { mFixture = fixture; }
+            Object run()
+            {
+                return mFixture.openBuilder().buildCompact(
+                        mFixture.solidField(), false);
+            }
+        });
+
+        // Neighbor links and the distance field fully overwrite their
+        // previous results.  So they can be repeated on the same field.
+
+        result.add(new StageBenchmark("links")
+        {
+            private BenchmarkFixture mFixture;
+            private CompactOpenHeightfield mField;
+            void setup(BenchmarkFixture fixture)
+            {
+                mFixture = fixture;
+                mField = fixture.createCompactField(0);
+            }
+            Object run()
+            {
+                mFixture.openBuilder().generateNeighborLinks(mField);
+                return mField;
+            }
+        });
+
+        result.add(new StageBenchmark("distance")
+        {
+            private BenchmarkFixture mFixture;
+            private CompactOpenHeightfield mField;
+            void setup(BenchmarkFixture fixture)
+            {
+                mFixture = fixture;
+                mField = fixture.createCompactField(1);
+            }
+            Object run()
+            {
+                mFixture.openBuilder().generateDistanceField(mField);
+                return mField;
+            }
+        });
+
+        result.add(new StageBenchmark("blur")
+        {
+            private BenchmarkFixture mFixture;
+            private CompactOpenHeightfield mField;
+            void setup(BenchmarkFixture fixture)
+            {
+                mFixture = fixture;
+                mField = fixture.createCompactField(1);
+            }
+            void prepare()
+            {
+                mFixture.openBuilder().generateDistanceField(mField);
+            }
+            Object run()
+            {
+                mFixture.openBuilder().blurDistanceField(mField);
+                return mField;
+            }
+        });
+
+        result.add(new StageBenchmark("regions")
+        {
+            private BenchmarkFixture mFixture;
+            private CompactOpenHeightfield mField;
+            void setup(BenchmarkFixture fixture) { mFixture = fixture; }
+            void prepare() { mField = mFixture.createCompactField(3); }
+            Object run()
+            {
+                mFixture.openBuilder().generateRegions(mField);
+                return mField;
+            }
+        });
+
+        result.add(new StageBenchmark("regionAlgorithms")
+        {
+            private BenchmarkFixture mFixture;
+            private CompactOpenHeightfield mField;
+            void setup(BenchmarkFixture fixture) { mFixture = fixture; }
+            void prepare() { mField = mFixture.createCompactField(4); }
+            Object run()
+            {
+                mFixture.openBuilder().applyRegionAlgorithms(mField);
+                return mField;
+            }
+        });
+
+        result.add(new StageBenchmark("contours")
+        {
+            private BenchmarkFixture mFixture;
+            void setup(BenchmarkFixture fixture) { mFixture = fixture; }
+            Object run()
+            {
+                return mFixture.contourBuilder().build(mFixture.regionField());
+            }
+        });
+
+        result.add(new StageBenchmark("polyMesh")
+        {
+            private BenchmarkFixture mFixture;
+            void setup(BenchmarkFixture fixture) { mFixture = fixture; }
+            Object run()
+            {
+                return mFixture.polyMeshBuilder().build(mFixture.contours());
+            }
+        });
+
+        result.add(new StageBenchmark("detailMesh")
+        {
+            private BenchmarkFixture mFixture;
+            void setup(BenchmarkFixture fixture) { mFixture = fixture; }
+            Object run()
+            {
+                return mFixture.detailMeshBuilder().build(mFixture.polyMesh()
+                        , mFixture.regionField());
+            }
+        });
+
+        result.add(new StageBenchmark("endToEnd")
+        {
+            private BenchmarkFixture mFixture;
+            void setup(BenchmarkFixture fixture) { mFixture = fixture; }
+            Object run()
+            {
+                return mFixture.generator().build(mFixture.vertices()
+                        , mFixture.indices()
+                        , null);
+            }
+        });
+
+        return result;
+    }
+
+}
@@ -0,0 +1,43 @@
+package org.critterai.nmgen;
+
+/**
+ * A single operation measured by the {@link BenchmarkRunner}.
+ * <p>{@link #setup(BenchmarkFixture)} is called once for each parameter
+ * set.  Then {@link #prepare()} and {@link #run()} are called for each
+ * invocation.  Only {@link #run()} is measured.</p>
+ */
+abstract class StageBenchmark
+{
+
+    private final String mName;
+
+    StageBenchmark(String name)
+    {
+        mName = name;
+    }
+
+    /**
+     * The name of the benchmark, as used on the command line.
+     */
+    String name() { return mName; }
+
+    /**
+     * Prepares the input state for the next invocation.
+     * <p>Used by operations that modify their input.  Not measured.</p>
+     */
+    void prepare() { }
+
+    /**
+     * Performs the measured operation.
+     * @return The result of the operation.  It is kept by the runner so
+     * that the work cannot be optimized away.
+     */
+    abstract Object run();
+
+    /**
+     * Builds the inputs for a parameter set.  Not measured.
+     * @param fixture The fixture for the parameter set.
+     */
+    abstract void setup(BenchmarkFixture fixture);
+
+}
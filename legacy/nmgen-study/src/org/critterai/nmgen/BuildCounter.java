@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2010 Stephen A. Pratt
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.critterai.nmgen;
+
+/**
+ * Identifies a count recorded during the navigation mesh build process.
+ * <p>Counters are reported to an {@link IBuildMetricsListener} as soon as
+ * the stage that produces them completes.</p>
+ * @see NavmeshGenerator
+ */
+public enum BuildCounter
+{
+    
+    /**
+     * The number of spans in the solid field.
+     */
+    SOLID_SPANS,
+    
+    /**
+     * The number of spans in the open field.
+     */
+    OPEN_SPANS,
+    
+    /**
+     * The number of non-null regions created by region generation.
+     */
+    REGIONS_CREATED,
+    
+    /**
+     * The number of regions merged into a neighbor region by
+     * {@link FilterOutSmallRegions}.
+     */
+    REGIONS_MERGED,
+    
+    /**
+     * The number of small island regions moved to the null region by
+     * {@link FilterOutSmallRegions}.
+     */
+    REGIONS_FILTERED,
+    
+    /**
+     * The number of non-null regions after all region algorithms are
+     * applied.
+     */
+    REGIONS,
+    
+    /**
+     * The number of contours generated.
+     */
+    CONTOURS,
+    
+    /**
+     * The number of regions for which a valid contour could not be
+     * generated.
+     */
+    CONTOURS_DISCARDED,
+    
+    /**
+     * The number of polygons before polygons are merged.  (The number of
+     * triangles from the triangulation of the contours.)
+     */
+    POLYS_BEFORE_MERGE,
+    
+    /**
+     * The number of polygons in the polygon mesh.
+     */
+    POLYS,
+    
+    /**
+     * The number of vertices added to the polygons by the detail mesh
+     * sampling.
+     */
+    DETAIL_SAMPLES,
+    
+    /**
+     * The number of triangles in the detail mesh.
+     */
+    DETAIL_TRIANGLES,
+    
+    /**
+     * The number of tiles built.  Only recorded by tiled builds.
+     */
+    TILES
+}
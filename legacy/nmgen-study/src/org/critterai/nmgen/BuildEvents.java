@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2010 Stephen A. Pratt
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.critterai.nmgen;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Holds the Flight Recorder events emitted by the builders.
+ * <p>Each event covers a single stage or algorithm and carries the sizes
+ * of its input and output.  The events appear under the CritterAI/NMGen
+ * category of a recording.</p>
+ */
+final class BuildEvents
+{
+    
+    /*
+     * Design notes:
+     * 
+     * The builders use the events as follows:
+     * 
+     *     final XEvent event = new XEvent();
+     *     event.begin();
+     *     ...
+     *     if (event.shouldCommit())
+     *     {
+     *         // Set the fields.
+     *         event.commit();
+     *     }
+     * 
+     * When no recording is active, begin() and shouldCommit() are
+     * intrinsics that cost next to nothing and the event object is
+     * usually eliminated by escape analysis.  Counts that are not already
+     * at hand must only be calculated inside the shouldCommit() block.
+     * 
+     * The contour algorithm event is emitted once per region and algorithm.
+     * All other events are emitted once per build.  Each tile of a tiled
+     * build is a separate build, which is wrapped by a tile event.
+     */
+    
+    private static final String CATEGORY = "CritterAI";
+    private static final String SUB_CATEGORY = "NMGen";
+    
+    @Name("org.critterai.nmgen.Voxelization")
+    @Label("Voxelization")
+    @Category({ CATEGORY, SUB_CATEGORY })
+    @Description("Voxelization of the source geometry into a solid field.")
+    static final class VoxelizationEvent
+        extends Event
+    {
+        @Label("Triangles")
+        int triangles;
+        
+        @Label("Width")
+        int width;
+        
+        @Label("Depth")
+        int depth;
+        
+        @Label("Solid Spans")
+        int spans;
+    }
+    
+    @Name("org.critterai.nmgen.OpenField")
+    @Label("Open Field")
+    @Category({ CATEGORY, SUB_CATEGORY })
+    @Description("Creation of the open field from the solid field.")
+    static final class OpenFieldEvent
+        extends Event
+    {
+        @Label("Solid Spans")
+        int solidSpans;
+        
+        @Label("Open Spans")
+        int spans;
+        
+        @Label("Width")
+        int width;
+        
+        @Label("Depth")
+        int depth;
+    }
+    
+    @Name("org.critterai.nmgen.NeighborLinks")
+    @Label("Neighbor Links")
+    @Category({ CATEGORY, SUB_CATEGORY })
+    @Description("Generation of the axis-neighbor links of the open field.")
+    static final class NeighborLinksEvent
+        extends Event
+    {
+        @Label("Open Spans")
+        int spans;
+    }
+    
+    @Name("org.critterai.nmgen.DistanceField")
+    @Label("Distance Field")
+    @Category({ CATEGORY, SUB_CATEGORY })
+    @Description("Generation of the border distance field.")
+    static final class DistanceFieldEvent
+        extends Event
+    {
+        @Label("Open Spans")
+        int spans;
+        
+        @Label("Exact")
+        @Description("TRUE if the exact distance transform was used.")
+        boolean exact;
+        
+        @Label("Max Border Distance")
+        int maxBorderDistance;
+    }
+    
+    @Name("org.critterai.nmgen.DistanceBlur")
+    @Label("Distance Blur")
+    @Category({ CATEGORY, SUB_CATEGORY })
+    @Description("Smoothing of the border distance field.")
+    static final class DistanceBlurEvent
+        extends Event
+    {
+        @Label("Open Spans")
+        int spans;
+        
+        @Label("Threshold")
+        int threshold;
+    }
+    
+    @Name("org.critterai.nmgen.Regions")
+    @Label("Regions")
+    @Category({ CATEGORY, SUB_CATEGORY })
+    @Description("Partitioning of the open field into regions.")
+    static final class RegionsEvent
+        extends Event
+    {
+        @Label("Open Spans")
+        int spans;
+        
+        @Label("Monotone")
+        @Description("TRUE if monotone partitioning was used rather than"
+                + " watershed partitioning.")
+        boolean monotone;
+        
+        @Label("Regions")
+        int regions;
+    }
+    
+    @Name("org.critterai.nmgen.RegionAlgorithm")
+    @Label("Region Algorithm")
+    @Category({ CATEGORY, SUB_CATEGORY })
+    @Description("Application of a single region algorithm.")
+    static final class RegionAlgorithmEvent
+        extends Event
+    {
+        @Label("Algorithm")
+        String algorithm;
+        
+        @Label("Regions Before")
+        int regionsBefore;
+        
+        @Label("Regions After")
+        int regionsAfter;
+    }
+    
+    @Name("org.critterai.nmgen.Contours")
+    @Label("Contours")
+    @Category({ CATEGORY, SUB_CATEGORY })
+    @Description("Generation of the contours of the open field regions.")
+    static final class ContoursEvent
+        extends Event
+    {
+        @Label("Regions")
+        int regions;
+        
+        @Label("Contours")
+        int contours;
+        
+        @Label("Discarded Contours")
+        int discarded;
+        
+        @Label("Vertices")
+        int vertices;
+    }
+    
+    @Name("org.critterai.nmgen.ContourAlgorithm")
+    @Label("Contour Algorithm")
+    @Category({ CATEGORY, SUB_CATEGORY })
+    @Description("Application of a single contour algorithm to the contour"
+            + " of a single region.")
+    static final class ContourAlgorithmEvent
+        extends Event
+    {
+        @Label("Algorithm")
+        String algorithm;
+        
+        @Label("Region")
+        int region;
+        
+        @Label("Source Vertices")
+        int sourceVertices;
+        
+        @Label("Result Vertices")
+        int resultVertices;
+    }
+    
+    @Name("org.critterai.nmgen.PolyMesh")
+    @Label("Polygon Mesh")
+    @Category({ CATEGORY, SUB_CATEGORY })
+    @Description("Generation of the polygon mesh from the contours.")
+    static final class PolyMeshEvent
+        extends Event
+    {
+        @Label("Contours")
+        int contours;
+        
+        @Label("Polygons Before Merge")
+        int polysBeforeMerge;
+        
+        @Label("Polygons")
+        int polys;
+        
+        @Label("Vertices")
+        int vertices;
+    }
+    
+    @Name("org.critterai.nmgen.DetailMesh")
+    @Label("Detail Mesh")
+    @Category({ CATEGORY, SUB_CATEGORY })
+    @Description("Generation of the detail mesh from the polygon mesh.")
+    static final class DetailMeshEvent
+        extends Event
+    {
+        @Label("Polygons")
+        int polys;
+        
+        @Label("Samples")
+        int samples;
+        
+        @Label("Vertices")
+        int vertices;
+        
+        @Label("Triangles")
+        int triangles;
+    }
+    
+    @Name("org.critterai.nmgen.Tile")
+    @Label("Tile")
+    @Category({ CATEGORY, SUB_CATEGORY })
+    @Description("Build of a single tile of a tiled navigation mesh.")
+    static final class TileEvent
+        extends Event
+    {
+        @Label("Tile X")
+        int tileX;
+        
+        @Label("Tile Z")
+        int tileZ;
+        
+        @Label("Triangles")
+        @Description("The number of source triangles which overlap the"
+                + " tile's field.")
+        int triangles;
+        
+        @Label("Polygons")
+        int polys;
+    }
+    
+    private BuildEvents() { }
+    
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2010 Stephen A. Pratt
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.critterai.nmgen;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the stages of a single build and forwards the results to an
+ * {@link IBuildMetricsListener}.
+ * <p>Instances are not thread safe.  All operations must be called on the
+ * thread performing the build.</p>
+ */
+final class BuildMetrics
+{
+    
+    /*
+     * Design notes:
+     * 
+     * Stages are measured one at a time.  They are never nested.
+     * 
+     * Allocations are measured with the HotSpot extension of the thread
+     * MXBean.  When work is spread over a thread pool, the allocations of
+     * all threads are summed, which will include any unrelated work
+     * running at the same time.
+     */
+    
+    private final IBuildMetricsListener mListener;
+    
+    /**
+     * The bean used to measure allocations, or null if allocations can't
+     * be measured.
+     */
+    private final com.sun.management.ThreadMXBean mThreadBean;
+    
+    /**
+     * If TRUE, the allocations of all threads are measured.  Otherwise
+     * only the current thread is measured.
+     */
+    private final boolean mIncludeAllThreads;
+    
+    private long mStageStartTime;
+    private long mStageStartBytes;
+    
+    /**
+     * Constructor
+     * @param listener The listener to forward results to.
+     * @param includeAllThreads If TRUE, the allocations of all threads
+     * are measured.  Otherwise only the current thread is measured.
+     */
+    BuildMetrics(IBuildMetricsListener listener, boolean includeAllThreads)
+    {
+        mListener = listener;
+        mIncludeAllThreads = includeAllThreads;
+        final java.lang.management.ThreadMXBean bean =
+            ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean)bean)
+                    .isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean)bean)
+                    .isThreadAllocatedMemoryEnabled())
+            mThreadBean = (com.sun.management.ThreadMXBean)bean;
+        else
+            mThreadBean = null;
+    }
+    
+    /**
+     * Forwards a count to the listener.
+     * @param counter The counter.
+     * @param value The value of the counter.
+     */
+    void count(BuildCounter counter, long value)
+    {
+        mListener.counterRecorded(counter, value);
+    }
+    
+    /**
+     * Completes the measurement of the current stage and forwards the
+     * results to the listener.
+     * @param stage The stage.
+     * @param name The name of the algorithm applied during the stage, or
+     * null if not applicable.
+     */
+    void endStage(BuildStage stage, String name)
+    {
+        final long elapsedTime = System.nanoTime() - mStageStartTime;
+        long allocatedBytes = IntermediateData.UNDEFINED;
+        if (mThreadBean != null)
+            // Can be negative if a measured thread terminated during the
+            // stage.
+            allocatedBytes =
+                Math.max(0, getAllocatedBytes() - mStageStartBytes);
+        mListener.stageCompleted(stage, name, elapsedTime, allocatedBytes);
+    }
+    
+    /**
+     * Starts the measurement of a stage.
+     */
+    void startStage()
+    {
+        if (mThreadBean != null)
+            mStageStartBytes = getAllocatedBytes();
+        mStageStartTime = System.nanoTime();
+    }
+    
+    /**
+     * The total bytes allocated by the measured threads.
+     */
+    private long getAllocatedBytes()
+    {
+        if (!mIncludeAllThreads)
+            return mThreadBean.getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        long result = 0;
+        for (long bytes : mThreadBean.getThreadAllocatedBytes(
+                mThreadBean.getAllThreadIds()))
+        {
+            // Negative for threads that have terminated.
+            if (bytes > 0)
+                result += bytes;
+        }
+        return result;
+    }
+    
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2010 Stephen A. Pratt
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.critterai.nmgen;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sums the stages and counts of several builds, and reports the totals
+ * to an {@link IBuildMetricsListener}.
+ * <p>Used by tiled builds, where each tile is a separate build.  Each tile
+ * records to its own instance, which is then added to the totals of the
+ * tiled build.</p>
+ * <p>Instances are not thread safe.</p>
+ */
+final class BuildMetricsTotals
+    implements IBuildMetricsListener
+{
+    
+    /*
+     * Design notes:
+     * 
+     * The region algorithm stage is reported once per algorithm, so it is
+     * summed by algorithm name.  Algorithms are always applied in the
+     * same order, so insertion order is the order they were applied.
+     */
+    
+    private final boolean[] mStageRecorded =
+        new boolean[BuildStage.values().length];
+    private final long[] mStageTimes = new long[BuildStage.values().length];
+    private final long[] mStageBytes = new long[BuildStage.values().length];
+    
+    /**
+     * The time and bytes of each region algorithm, keyed by algorithm
+     * name.
+     */
+    private final Map<String, long[]> mAlgorithms =
+        new LinkedHashMap<String, long[]>();
+    
+    private final boolean[] mCounterRecorded =
+        new boolean[BuildCounter.values().length];
+    private final long[] mCounters = new long[BuildCounter.values().length];
+    
+    /**
+     * Adds the totals of another instance to this instance.
+     * @param other The totals to add.
+     */
+    void add(BuildMetricsTotals other)
+    {
+        for (BuildStage stage : BuildStage.values())
+        {
+            if (other.mStageRecorded[stage.ordinal()])
+                stageCompleted(stage
+                        , null
+                        , other.mStageTimes[stage.ordinal()]
+                        , other.mStageBytes[stage.ordinal()]);
+        }
+        for (Map.Entry<String, long[]> entry : other.mAlgorithms.entrySet())
+            stageCompleted(BuildStage.REGION_ALGORITHM
+                    , entry.getKey()
+                    , entry.getValue()[0]
+                    , entry.getValue()[1]);
+        for (BuildCounter counter : BuildCounter.values())
+        {
+            if (other.mCounterRecorded[counter.ordinal()])
+                counterRecorded(counter, other.mCounters[counter.ordinal()]);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>Adds the value to the total of the counter.</p>
+     */
+    @Override
+    public void counterRecorded(BuildCounter counter, long value)
+    {
+        mCounterRecorded[counter.ordinal()] = true;
+        mCounters[counter.ordinal()] += value;
+    }
+    
+    /**
+     * Reports the totals to a listener.
+     * <p>Each stage is reported once, in stage order, followed by the
+     * counters in counter order.  Stages and counters which were never
+     * recorded are not reported.</p>
+     * @param listener The listener to report to.
+     */
+    void report(IBuildMetricsListener listener)
+    {
+        for (BuildStage stage : BuildStage.values())
+        {
+            if (stage == BuildStage.REGION_ALGORITHM)
+            {
+                for (Map.Entry<String, long[]> entry
+                        : mAlgorithms.entrySet())
+                    listener.stageCompleted(stage
+                            , entry.getKey()
+                            , entry.getValue()[0]
+                            , entry.getValue()[1]);
+            }
+            else if (mStageRecorded[stage.ordinal()])
+                listener.stageCompleted(stage
+                        , null
+                        , mStageTimes[stage.ordinal()]
+                        , mStageBytes[stage.ordinal()]);
+        }
+        for (BuildCounter counter : BuildCounter.values())
+        {
+            if (mCounterRecorded[counter.ordinal()])
+                listener.counterRecorded(counter
+                        , mCounters[counter.ordinal()]);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>Adds the time and bytes to the totals of the stage.  If the bytes
+     * of any build are undefined, the total is undefined.</p>
+     */
+    @Override
+    public void stageCompleted(BuildStage stage
+            , String name
+            , long elapsedTime
+            , long allocatedBytes)
+    {
+        long[] totals;
+        if (stage == BuildStage.REGION_ALGORITHM)
+        {
+            totals = mAlgorithms.get(name);
+            if (totals == null)
+            {
+                totals = new long[2];
+                mAlgorithms.put(name, totals);
+            }
+            totals[0] += elapsedTime;
+            totals[1] = addBytes(totals[1], allocatedBytes);
+            return;
+        }
+        final int i = stage.ordinal();
+        mStageRecorded[i] = true;
+        mStageTimes[i] += elapsedTime;
+        mStageBytes[i] = addBytes(mStageBytes[i], allocatedBytes);
+    }
+    
+    /**
+     * Adds two byte counts, either of which may be undefined.
+     * @param a A byte count, or {@link IntermediateData#UNDEFINED}.
+     * @param b A byte count, or {@link IntermediateData#UNDEFINED}.
+     * @return The sum, or {@link IntermediateData#UNDEFINED} if either
+     * count is undefined.
+     */
+    private static long addBytes(long a, long b)
+    {
+        if (a == IntermediateData.UNDEFINED || b == IntermediateData.UNDEFINED)
+            return IntermediateData.UNDEFINED;
+        return a + b;
+    }
+    
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2010 Stephen A. Pratt
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.critterai.nmgen;
+
+/**
+ * Identifies a stage of the navigation mesh build process.
+ * <p>Stages are reported to an {@link IBuildMetricsListener} in the order
+ * they are performed.  Stages which are not used by the build
+ * configuration are not reported.</p>
+ * @see NavmeshGenerator
+ */
+public enum BuildStage
+{
+    
+    /**
+     * Voxelization of the source geometry into a {@link SolidHeightfield}.
+     */
+    VOXELIZATION,
+    
+    /**
+     * Creation of the open field from the solid field.
+     */
+    OPEN_FIELD,
+    
+    /**
+     * Generation of the links between neighbor spans.
+     */
+    NEIGHBOR_LINKS,
+    
+    /**
+     * Generation of the distance field.
+     */
+    DISTANCE_FIELD,
+    
+    /**
+     * Smoothing of the distance field.
+     */
+    DISTANCE_BLUR,
+    
+    /**
+     * Region generation.  (Watershed or monotone partitioning.)
+     */
+    REGIONS,
+    
+    /**
+     * A single {@link IOpenHeightFieldAlgorithm} applied to the regions.
+     * Reported once for each algorithm, along with the algorithm's
+     * class name.
+     */
+    REGION_ALGORITHM,
+    
+    /**
+     * Contour generation, including the contour algorithms.
+     */
+    CONTOURS,
+    
+    /**
+     * Generation of the convex polygon mesh from the contours.
+     */
+    POLY_MESH,
+    
+    /**
+     * Generation of the detail triangle mesh from the polygon mesh.
+     */
+    DETAIL_MESH
+}
@@ -1,8 +1,8 @@
 package org.critterai.nmgen;
 
-import java.util.ArrayDeque;
-
-import org.critterai.nmgen.OpenHeightfield.OpenHeightFieldIterator;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Implements three algorithms that clean up issues that can
@@ -57,7 +57,7 @@ import org.critterai.nmgen.OpenHeightfield.OpenHeightFieldIterator;
  * target="_parent">Region Generation</a>
  */
 public class CleanNullRegionBorders
-    implements IOpenHeightFieldAlgorithm
+    implements ICompactOpenHeightFieldAlgorithm
 {
 
     /*
@@ -84,19 +84,92 @@ public class CleanNullRegionBorders
      * 
      * I've not fixing this until it proves to be a problem or I figure out
      * a way of resolving the design issue without killing performance.
+     * 
+     * The algorithm operates on a compact field.  The span index is used
+     * for the viewed state and the flood stack.  So the span flags are
+     * left alone, and a second pass to clear them is not needed.
+     * 
+     * None of the fixes ever move a span into or out of the null region.
+     * So the null region borders, and the direction in which each border
+     * span is first detected, are known before any fixes are made.  This
+     * search is the part of the operation that is run in parallel.
+     * The contour walks remain serial.  The outer corner fixes and
+     * encompassed region floods change region ids that are checked by
+     * the walks of neighboring contours, so the walk order must be kept
+     * in order to get the same result as a serial search.
+     * 
+     * The working variables are created for each apply() call rather
+     * than held by the instance.  So a single instance can be used by
+     * multiple threads at the same time.
+     */
+    
+    /**
+     * Searches a range of spans for null region borders.
+     */
+    private static final class BorderSearchTask
+        extends RecursiveAction
+    {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final CompactOpenHeightfield mField;
+        private final boolean mUseOnlyNullSpans;
+        private final byte[] mBorderDirections;
+        private final int mSpanMin;
+        private final int mSpanMax;
+        
+        private BorderSearchTask(CompactOpenHeightfield field
+                , boolean useOnlyNullSpans
+                , byte[] borderDirections
+                , int spanMin
+                , int spanMax)
+        {
+            mField = field;
+            mUseOnlyNullSpans = useOnlyNullSpans;
+            mBorderDirections = borderDirections;
+            mSpanMin = spanMin;
+            mSpanMax = spanMax;
+        }
+        
+        @Override
+        protected void compute()
+        {
+            if (mSpanMax - mSpanMin <= MIN_TASK_SPANS)
+                findBorderDirections(mField
+                        , mUseOnlyNullSpans
+                        , mBorderDirections
+                        , mSpanMin
+                        , mSpanMax);
+            else
+            {
+                final int split = (mSpanMin + mSpanMax) >>> 1;
+                invokeAll(new BorderSearchTask(mField
+                            , mUseOnlyNullSpans
+                            , mBorderDirections
+                            , mSpanMin
+                            , split)
+                        , new BorderSearchTask(mField
+                            , mUseOnlyNullSpans
+                            , mBorderDirections
+                            , split
+                            , mSpanMax));
+            }
+        }
+    }
+    
+    /**
+     * The minimum number of spans processed by a single task during
+     * parallel operations.
      */
+    private static final int MIN_TASK_SPANS = 8192;
     
     private static final int NULL_REGION = OpenHeightSpan.NULL_REGION;
     
+    private static final int NULL_SPAN = CompactOpenHeightfield.NULL_SPAN;
+    
     private final boolean mUseOnlyNullSpans;
     
-    // Working variables.  Content is meaningless outside of
-    // method they are used.
-    private final ArrayDeque<OpenHeightSpan> mwOpenSpans
-        = new ArrayDeque<OpenHeightSpan>(1024);
-    private final ArrayDeque<Integer> mwBorderDistance
-        = new ArrayDeque<Integer>(1024);
-    private final int[] mwNeighborRegions = new int[8];
+    private final ForkJoinPool mThreadPool;
     
     /**
      * Constructor.
@@ -116,133 +189,160 @@ public class CleanNullRegionBorders
      * borders.
      */
     public CleanNullRegionBorders(boolean useOnlyNullRegionSpans)
+    {
+        this(useOnlyNullRegionSpans, null);
+    }
+    
+    /**
+     * Constructor
+     * <p>See {@link #CleanNullRegionBorders(boolean) the standard
+     * constructor} for details on the other arguments.</p>
+     * @param threadPool The pool to use for the null region border search.
+     * If null, the search will be performed on the calling thread.
+     */
+    public CleanNullRegionBorders(boolean useOnlyNullRegionSpans
+            , ForkJoinPool threadPool)
     {
         mUseOnlyNullSpans = useOnlyNullRegionSpans;
+        mThreadPool = threadPool;
     }
     
     /**
      * {@inheritDoc}
-     * <p>This operation utilizes {@link OpenHeightSpan#flags}.  It
-     * expects the value to be zero on entry, and re-zero's the value
-     * on exit.</p>
+     * <p>This operation does not use {@link OpenHeightSpan#flags}.</p>
      * <p>Expects a heightfield with fully built regions.</p>
      */
     @Override
     public void apply(OpenHeightfield field)
+    {
+        OpenHeightFieldAlgorithmAdapter.apply(this, field);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>This operation does not use the span flags.</p>
+     * <p>Expects a heightfield with fully built regions.</p>
+     */
+    @Override
+    public void apply(CompactOpenHeightfield field)
     {
         
         int nextRegionID = field.regionCount();
-        final OpenHeightFieldIterator iter = field.dataIterator();
         
-        // Iterate over the spans, trying to find null region borders.
-        while (iter.hasNext())
+        final int spanCount = field.spanCount();
+        
+        // Find the null region borders.
+        final byte[] borderDirections = new byte[spanCount];
+        if (mThreadPool != null && spanCount > MIN_TASK_SPANS)
+            mThreadPool.invoke(new BorderSearchTask(field
+                    , mUseOnlyNullSpans
+                    , borderDirections
+                    , 0
+                    , spanCount));
+        else
+            findBorderDirections(field
+                    , mUseOnlyNullSpans
+                    , borderDirections
+                    , 0
+                    , spanCount);
+        
+        // Working variables.  Content is meaningless outside of
+        // the operations they are passed to.
+        final BitSet viewedSpans = new BitSet(spanCount);
+        final IntList workingStack = new IntList(1024);
+        final int[] workingRegions = new int[8];
+        
+        // Walk the null region borders.  (Spans are indexed in the
+        // standard iteration order.)
+        for (int iSpan = 0; iSpan < spanCount; iSpan++)
         {
-            OpenHeightSpan span = iter.next();
-            
-            if (span.flags != 0)
-                // Span was processed in a previous iteration.
-                // Ignore it.
+            int edgeDirection = borderDirections[iSpan];
+            if (edgeDirection == -1 || viewedSpans.get(iSpan))
+                // Not a border span, or the span was processed
+                // in a previous iteration.  Ignore it.
                 continue;
             
-            span.flags = 1;
-            
-            OpenHeightSpan workingSpan = null;
-            int edgeDirection = -1;
+            int workingSpan = iSpan;
             
-            if (span.regionID() == NULL_REGION)
+            if (field.regionID(workingSpan) == NULL_REGION)
             {
-                // This is a null region span.  See if it
-                // connects to a span in a non-null region.
-                edgeDirection = getNonNullBorderDrection(span);
-                if (edgeDirection == -1)
-                    // This span is not a border span.  Ignore it.
-                    continue;
-                
                 // This is a border span.  Step into the non-null
                 // region and swing the direction around 180 degrees.
-                workingSpan = span.getNeighbor(edgeDirection);
+                workingSpan = field.getNeighbor(workingSpan, edgeDirection);
                 edgeDirection = (edgeDirection+2) & 0x3;
             }
-            else if (!mUseOnlyNullSpans)
-            {
-                // This is a non-null region span and I'm allowed
-                // to look at it.  See if it connects to a null region.
-                edgeDirection = getNullBorderDrection(span);
-                if (edgeDirection == -1)
-                    // This span is not a null region border span.  Ignore it.
-                    continue;
-                workingSpan = span;
-            }
-            else
-                // Not interested in this span.
-                continue;
             
             // Process the null region contour.  Detect and fix
             // local issues.  Determine if the region is
             // fully encompassed by a single non-null region.
-            boolean isEncompassedNullRegion = processNullRegion(
-                    workingSpan
-                    , edgeDirection);
+            boolean isEncompassedNullRegion = processNullRegion(workingSpan
+                    , edgeDirection
+                    , field
+                    , viewedSpans
+                    , workingRegions);
             
             if (isEncompassedNullRegion)
             {
                 // This span is part of a group of null region spans
-                // that is encompassed within a single non-null region.
-                // This is not permitted.  Need to fix it.
+                // that is encompassed within a single non-null
+                // region.  This is not permitted.  Need to fix it.
                 partialFloodRegion(workingSpan
                         , edgeDirection
-                        , nextRegionID);
+                        , nextRegionID
+                        , field
+                        , workingStack);
                 nextRegionID++;
             }
         }
         
         field.setRegionCount(nextRegionID);
-         
-        // Clear all flags.
-        iter.reset();
-        while (iter.hasNext())
-        {
-            iter.next().flags = 0;
-        }
     }
     
     /**
      * Partially flood a region away from the specified direction.
-     * <p>{@link OpenHeightSpan#distanceToRegionCore()}
-     * is set to zero for all flooded spans.</p>
-     * @param startSpan The span to start the flood from.
+     * <p>The distance to region core is set to zero for all flooded
+     * spans.</p>
+     * @param startSpan The index of the span to start the flood from.
      * @param borderDirection  The hard border for flooding.  No
      * spans in this direction from the startSpan will be flooded.
      * @param newRegionID The region id to assign the flooded
      * spans to.
+     * @param field The field containing the spans.
+     * @param workingStack A working stack.  Expected to be empty on entry,
+     * and will be empty on exit.
      */
-    private void partialFloodRegion(OpenHeightSpan startSpan
+    private static void partialFloodRegion(int startSpan
             , int borderDirection
-            , int newRegionID)
+            , int newRegionID
+            , CompactOpenHeightfield field
+            , IntList workingStack)
     {
         // Gather some information.
         final int antiBorderDirection = (borderDirection+2) & 0x3;
-        final int regionID = startSpan.regionID();
+        final int regionID = field.regionID(startSpan);
         
         // Re-assign the start span and queue it for the neighbor search.
-        startSpan.setRegionID(newRegionID);
-        startSpan.setDistanceToRegionCore(0);  // This information is lost.
-        mwOpenSpans.add(startSpan);
-        mwBorderDistance.add(0);
+        // Stack entries are in the form (span, distance).
+        field.setRegionID(startSpan, newRegionID);
+        field.setDistanceToRegionCore(startSpan, 0);  // Information is lost.
+        workingStack.add(startSpan);
+        workingStack.add(0);
         
         // Search for new spans that can be assigned the new region.
-        while(!mwOpenSpans.isEmpty())
+        while(workingStack.size() > 0)
         {
             // Get the next span off the stack.
-            final OpenHeightSpan span = mwOpenSpans.pollLast();
-            final int distance = mwBorderDistance.pollLast();
+            final int pEntry = workingStack.size() - 2;
+            final int span = workingStack.get(pEntry);
+            final int distance = workingStack.get(pEntry + 1);
+            workingStack.removeRange(pEntry, pEntry + 2);
             
             // Search in all directions for neighbors.
             for (int i = 0; i < 4; i++)
             {
-                final OpenHeightSpan nSpan = span.getNeighbor(i);
-                if (nSpan == null
-                        || nSpan.regionID() != regionID)
+                final int nSpan = field.getNeighbor(span, i);
+                if (nSpan == NULL_SPAN
+                        || field.regionID(nSpan) != regionID)
                     // No span in this direction, or the span
                     // is not in the region being processed.
                     // Note: It may have already been transferred.
@@ -263,12 +363,13 @@ public class CleanNullRegionBorders
                     nDistance++;
                 
                 // Transfer the neighbor to the new region.
-                nSpan.setRegionID(newRegionID);
-                nSpan.setDistanceToRegionCore(0);  // This information is lost.
+                field.setRegionID(nSpan, newRegionID);
+                // This information is lost.
+                field.setDistanceToRegionCore(nSpan, 0);
                 
                 // Add the span to the stack to be processed.
-                mwOpenSpans.add(nSpan);
-                mwBorderDistance.add(nDistance);
+                workingStack.add(nSpan);
+                workingStack.add(nDistance);
                
             }
             
@@ -282,11 +383,19 @@ public class CleanNullRegionBorders
      * @param startSpan A span in a non-null region that borders a null
      * region.
      * @param startDirection The direction of the null region border.
+     * @param field The field containing the spans.
+     * @param viewedSpans The spans that have been viewed by a contour
+     * walk.  All spans viewed by this walk will be added.
+     * @param workingRegions A working array of size 8.  Its content is
+     * meaningless outside of this operation.
      * @return TRUE if the start span's region completely encompasses
      * the null region.
      */
-    private boolean processNullRegion(OpenHeightSpan startSpan
-            , int startDirection)
+    private static boolean processNullRegion(int startSpan
+            , int startDirection
+            , CompactOpenHeightfield field
+            , BitSet viewedSpans
+            , int[] workingRegions)
     {
         
         /*
@@ -312,11 +421,11 @@ public class CleanNullRegionBorders
          * outside the contour, which we don't care about.
          */
         
-        int borderRegionID = startSpan.regionID();
+        int borderRegionID = field.regionID(startSpan);
         
         // Prepare for loop.
-        OpenHeightSpan span = startSpan;
-        OpenHeightSpan nSpan = null;
+        int span = startSpan;
+        int nSpan = NULL_SPAN;
         int dir = startDirection;
        
         // Initialize monitoring variables.
@@ -342,10 +451,10 @@ public class CleanNullRegionBorders
         while (++loopCount < Integer.MAX_VALUE)
         {
             // Get the span across the border.
-            nSpan = span.getNeighbor(dir);
+            nSpan = field.getNeighbor(span, dir);
             
             // Detect which type of edge this direction points across.
-            if (nSpan == null)
+            if (nSpan == NULL_SPAN)
             {
                 // It points across a null region border edge.
                 isBorder = true;
@@ -354,8 +463,8 @@ public class CleanNullRegionBorders
             {
                 // We never need to perform contour detection
                 // on this span again.  So mark it as processed.
-                nSpan.flags = 1;
-                if (nSpan.regionID() == NULL_REGION)
+                viewedSpans.set(nSpan);
+                if (field.regionID(nSpan) == NULL_REGION)
                 {
                     // It points across a null region border edge.
                     isBorder = true;
@@ -364,7 +473,7 @@ public class CleanNullRegionBorders
                 {
                     // This isn't a null region border.
                     isBorder = false;
-                    if (nSpan.regionID() != borderRegionID)
+                    if (field.regionID(nSpan) != borderRegionID)
                         // It points across a border to a non-null region.
                         // This means the current contour can't
                         // represent a fully encompassed null region.
@@ -402,7 +511,7 @@ public class CleanNullRegionBorders
                     stepsWithoutBorder = 0;
                     // Detect and fix span configuraiton issue around this
                     // corner.
-                    if (processOuterCorner(span, dir))
+                    if (processOuterCorner(span, dir, field, workingRegions))
                         // A change was made and it resulted in the
                         // corner area having multiple region connections.
                         hasSingleConnection = false;
@@ -444,24 +553,29 @@ public class CleanNullRegionBorders
      * @param referenceSpan The span in a non-null region that is
      * just past the outer corner.
      * @param borderDirection The direciton of the null region border.
+     * @param field The field containing the spans.
+     * @param workingRegions A working array of size 8.  Its content is
+     * meaningless outside of this operation.
      * @return TRUE if more than one region connects to the null region
      * in the vicinity of the corner. (This may or may not be due to
      * a change made by this operation.)
      */
-    private boolean processOuterCorner(OpenHeightSpan referenceSpan
-        , int borderDirection)
+    private static boolean processOuterCorner(int referenceSpan
+        , int borderDirection
+        , CompactOpenHeightfield field
+        , int[] workingRegions)
     {
         
         boolean hasMultiRegions = false;
         
         // Get the previous two spans along the border.
-        OpenHeightSpan backOne =
-            referenceSpan.getNeighbor((borderDirection+3) & 0x3);
-        OpenHeightSpan backTwo = backOne.getNeighbor(borderDirection);
-        OpenHeightSpan testSpan;
+        final int backOne =
+            field.getNeighbor(referenceSpan, (borderDirection+3) & 0x3);
+        final int backTwo = field.getNeighbor(backOne, borderDirection);
+        int testSpan;
         
-        if (backOne.regionID() != referenceSpan.regionID()
-                && backTwo.regionID() == referenceSpan.regionID())
+        if (field.regionID(backOne) != field.regionID(referenceSpan)
+                && field.regionID(backTwo) == field.regionID(referenceSpan))
         {
             /*
              * Dangerous corner configuration.
@@ -499,40 +613,42 @@ public class CleanNullRegionBorders
              * up a better way of resolving this issue.
              */
             hasMultiRegions = true;
+            final int backOneRegion = field.regionID(backOne);
             // Determine how many connections backTwo has to backOne's region.
-            testSpan = backOne.getNeighbor((borderDirection+3) & 0x3);
+            testSpan = field.getNeighbor(backOne, (borderDirection+3) & 0x3);
             int backTwoConnections = 0;
-            if (testSpan != null
-                    && testSpan.regionID() == backOne.regionID())
+            if (testSpan != NULL_SPAN
+                    && field.regionID(testSpan) == backOneRegion)
             {
                 backTwoConnections++;
-                testSpan = testSpan.getNeighbor(borderDirection);
-                if (testSpan != null
-                        && testSpan.regionID() == backOne.regionID())
+                testSpan = field.getNeighbor(testSpan, borderDirection);
+                if (testSpan != NULL_SPAN
+                        && field.regionID(testSpan) == backOneRegion)
                     backTwoConnections++;
             }
             // Determine how many connections the reference span has
             // to backOne's region.
             int referenceConnections = 0;
-            testSpan = backOne.getNeighbor((borderDirection+2) & 0x3);
-            if (testSpan != null
-                    && testSpan.regionID() == backOne.regionID())
+            testSpan = field.getNeighbor(backOne, (borderDirection+2) & 0x3);
+            if (testSpan != NULL_SPAN
+                    && field.regionID(testSpan) == backOneRegion)
             {
                 referenceConnections++;
-                testSpan = testSpan.getNeighbor((borderDirection+2) & 0x3);
-                if (testSpan != null
-                        && testSpan.regionID() == backOne.regionID())
+                testSpan = field.getNeighbor(testSpan
+                        , (borderDirection+2) & 0x3);
+                if (testSpan != NULL_SPAN
+                        && field.regionID(testSpan) == backOneRegion)
                     backTwoConnections++;
             }
             // Change the region of the span that has the most connections
             // to the target region.
             if (referenceConnections > backTwoConnections)
-                referenceSpan.setRegionID(backOne.regionID());
+                field.setRegionID(referenceSpan, backOneRegion);
             else
-                backTwo.setRegionID(backOne.regionID());
+                field.setRegionID(backTwo, backOneRegion);
         }
-        else if (backOne.regionID() == referenceSpan.regionID()
-                && backTwo.regionID() == referenceSpan.regionID())
+        else if (field.regionID(backOne) == field.regionID(referenceSpan)
+                && field.regionID(backTwo) == field.regionID(referenceSpan))
         {
             /*
              * Potential dangerous short wrap.
@@ -564,26 +680,30 @@ public class CleanNullRegionBorders
             // Check to see if backTwo should be in a different region.
             int selectedRegion = selectedRegionID(backTwo
                     , (borderDirection+1) & 0x3
-                    , (borderDirection+2) & 0x3);
-            if (selectedRegion == backTwo.regionID())
+                    , (borderDirection+2) & 0x3
+                    , field
+                    , workingRegions);
+            if (selectedRegion == field.regionID(backTwo))
             {
                 // backTwo should not be re-assigned.  How about
                 // the reference span?
                 selectedRegion = selectedRegionID(referenceSpan
                         , borderDirection
-                        , (borderDirection+3) & 0x3);
-                if (selectedRegion != referenceSpan.regionID())
+                        , (borderDirection+3) & 0x3
+                        , field
+                        , workingRegions);
+                if (selectedRegion != field.regionID(referenceSpan))
                 {
                     // The reference span should be reassigned
                     // to a new region.
-                    referenceSpan.setRegionID(selectedRegion);
+                    field.setRegionID(referenceSpan, selectedRegion);
                     hasMultiRegions = true;
                 }
             }
             else
             {
                 // backTwo should be re-assigned to a new region.
-                backTwo.setRegionID(selectedRegion);
+                field.setRegionID(backTwo, selectedRegion);
                 hasMultiRegions = true;
             }
         }
@@ -607,16 +727,23 @@ public class CleanNullRegionBorders
      * @param borderDirection  The direction of the null region border.
      * @param cornerDirection The direction of the outer corner from the
      * reference span.
+     * @param field The field containing the spans.
+     * @param workingRegions A working array of size 8.  Its content is
+     * meaningless outside of this operation.
      * @return The region the span should be a member of.  May be the
      * region the span is currently a member of.
      */
-    private int selectedRegionID(OpenHeightSpan referenceSpan
+    private static int selectedRegionID(int referenceSpan
             , int borderDirection
-            , int cornerDirection)
+            , int cornerDirection
+            , CompactOpenHeightfield field
+            , int[] workingRegions)
     {
         
         // Get the regions of all neighbors.
-        referenceSpan.getDetailedRegionMap(mwNeighborRegions, 0);
+        field.getDetailedRegionMap(referenceSpan, workingRegions, 0);
+        
+        final int referenceRegion = field.regionID(referenceSpan);
         
         /*
          * Initial example state:
@@ -632,8 +759,8 @@ public class CleanNullRegionBorders
         
         // The only possible alternate region id is from
         // the span that is opposite the border.  So check it first.
-        int regionID = mwNeighborRegions[(borderDirection+2) & 0x3];
-        if (regionID == referenceSpan.regionID()
+        int regionID = workingRegions[(borderDirection+2) & 0x3];
+        if (regionID == referenceRegion
                 || regionID == NULL_REGION)
             /*
              * The region away from the border is either a null region
@@ -643,7 +770,7 @@ public class CleanNullRegionBorders
              *     a a x  or  x a x  <-- Potentially bad, but stuck with it.
              *     u a a      u a a
              */
-            return referenceSpan.regionID();
+            return referenceRegion;
         
         // Candidate region for re-assignment.
         int potentialRegion = regionID;
@@ -651,8 +778,8 @@ public class CleanNullRegionBorders
         // Next we check the region opposite from the corner direction.
         // If it is the current region, then we definitely can't
         // change the region id without risk of splitting the region.
-        regionID = mwNeighborRegions[(cornerDirection+2) & 0x3];
-        if (regionID == referenceSpan.regionID() || regionID == NULL_REGION)
+        regionID = workingRegions[(cornerDirection+2) & 0x3];
+        if (regionID == referenceRegion || regionID == NULL_REGION)
             /*
              * The region opposite from the corner direction is
              * either a null region or the same region.  So we
@@ -662,7 +789,7 @@ public class CleanNullRegionBorders
              *     b a x  or  b a x
              *     u a a      u a a
              */
-            return referenceSpan.regionID();
+            return referenceRegion;
 
         /*
          * We have checked the early exit special cases.  Now a generalized
@@ -701,29 +828,31 @@ public class CleanNullRegionBorders
          
         for (int i = 0; i < 8; i++)
         {
-            if (mwNeighborRegions[i] == referenceSpan.regionID())
+            if (workingRegions[i] == referenceRegion)
                 currentCount++;
-            else if (mwNeighborRegions[i] == potentialRegion)
+            else if (workingRegions[i] == potentialRegion)
                 potentialCount++;
         }
 
         return (potentialCount < currentCount
-                ? referenceSpan.regionID() : potentialRegion);
+                ? referenceRegion : potentialRegion);
     }
     
     /**
      * Returns the direction of the first neighbor in a non-null region.
      * @param span The span to check.
+     * @param field The field containing the span.
      * @return The direction of the first neighbor in a non-null region, or
      * -1 if all neighbors are in the null region.
      */
-    private static int getNonNullBorderDrection(OpenHeightSpan span)
+    private static int getNonNullBorderDrection(int span
+            , CompactOpenHeightfield field)
     {
         // Search axis-neighbors.
         for (int dir = 0; dir < 4; ++dir)
         {
-            OpenHeightSpan nSpan = span.getNeighbor(dir);
-            if (nSpan != null && nSpan.regionID() != NULL_REGION)
+            final int nSpan = field.getNeighbor(span, dir);
+            if (nSpan != NULL_SPAN && field.regionID(nSpan) != NULL_REGION)
                 // The neighbor is a non-null region.
                 return dir;
         }
@@ -734,21 +863,57 @@ public class CleanNullRegionBorders
     /**
      * Returns the direction of the first neighbor in the null region.
      * @param span The span to check.
+     * @param field The field containing the span.
      * @return The direction of the first neighbor that is in the null
      * region, or -1 if there are no null region neighbors.
      */
-    private static int getNullBorderDrection(OpenHeightSpan span)
+    private static int getNullBorderDrection(int span
+            , CompactOpenHeightfield field)
     {
         // Search axis-neighbors.
         for (int dir = 0; dir < 4; ++dir)
         {
-            OpenHeightSpan nSpan = span.getNeighbor(dir);
-            if (nSpan == null || nSpan.regionID() == NULL_REGION)
+            final int nSpan = field.getNeighbor(span, dir);
+            if (nSpan == NULL_SPAN || field.regionID(nSpan) == NULL_REGION)
                 // The neighbor is a null region.
                 return dir;
         }
         // All neighbors are in a non-null region.
         return -1;
     }
+    
+    /**
+     * Finds the direction in which each span in a range of spans is first
+     * detected as a null region border span.
+     * @param field The field containing the spans.
+     * @param useOnlyNullSpans If TRUE, only null region spans will be
+     * checked.
+     * @param borderDirections The border direction of each span.  The
+     * values for the span range will be set to the direction of the
+     * first neighbor across a null region border, or -1 if the span is not
+     * a border span.
+     * @param spanMin The index of the first span to check.
+     * @param spanMax The index after the last span to check.
+     */
+    private static void findBorderDirections(CompactOpenHeightfield field
+            , boolean useOnlyNullSpans
+            , byte[] borderDirections
+            , int spanMin
+            , int spanMax)
+    {
+        for (int iSpan = spanMin; iSpan < spanMax; iSpan++)
+        {
+            int edgeDirection = -1;
+            if (field.regionID(iSpan) == NULL_REGION)
+                // This is a null region span.  See if it
+                // connects to a span in a non-null region.
+                edgeDirection = getNonNullBorderDrection(iSpan, field);
+            else if (!useOnlyNullSpans)
+                // This is a non-null region span and I'm allowed
+                // to look at it.  See if it connects to a null region.
+                edgeDirection = getNullBorderDrection(iSpan, field);
+            borderDirections[iSpan] = (byte)edgeDirection;
+        }
+    }
 
 }
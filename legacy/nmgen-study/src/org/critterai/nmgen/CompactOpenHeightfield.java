@@ -0,0 +1,804 @@
+/*
+ * Copyright (c) 2010 Stephen A. Pratt
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.critterai.nmgen;
+
+import java.util.Arrays;
+
+/**
+ * A compact representation of an {@link OpenHeightfield}.
+ * <p>Span data is stored in primitive arrays rather than in
+ * {@link OpenHeightSpan} objects.  Spans are identified by their index,
+ * with each grid cell holding a contiguous range of indices ordered from
+ * the lowest to the highest span in the cell's column.  Span indices are
+ * assigned in the same order as the spans are returned by
+ * {@link OpenHeightfield#dataIterator()}.  So iterating from zero to
+ * {@link #spanCount()} visits the spans in the standard order.</p>
+ * <p>Neighbor connections are packed into a single value per span.  Each
+ * direction holds the layer offset of the neighbor span within the
+ * neighbor's grid cell, or {@link #NOT_CONNECTED}.</p>
+ * <p>Each span uses eight integers, which is roughly half the memory of
+ * an {@link OpenHeightSpan}.  The main gain is that there are no span
+ * objects to allocate and collect.</p>
+ * <p>The compact field can be converted to and from the standard
+ * {@link OpenHeightfield}.</p>
+ * @see OpenHeightfieldBuilder#buildCompact(SolidHeightfield, boolean)
+ * @see <a href="http://www.critterai.org/?q=nmgen_hfintro"
+ * target="_parent">Introduction to Height Fields</a>
+ */
+public final class CompactOpenHeightfield
+    extends BoundedField
+{
+
+    /*
+     * Recast Reference: rcCompactHeightfield in Recast.h
+     * 
+     * Design notes:
+     * 
+     * Unlike Recast, each span knows its grid cell. This allows neighbor
+     * searches with only the span index, which keeps ports of the object
+     * based algorithms simple.  Connections only ever exist between spans
+     * in adjacent cells, so neighbor cells never need bounds checks.
+     */
+
+    /**
+     * Indicates the lack of a span.  (E.g. No neighbor in a direction.)
+     */
+    public static final int NULL_SPAN = -1;
+
+    /**
+     * The connection value used to indicate that there is no neighbor
+     * in a direction.
+     * <p>This also limits the layers that can be connected to.  A
+     * connection to a span at this layer or higher in its grid cell
+     * results in an {@link IllegalArgumentException}.</p>
+     */
+    public static final int NOT_CONNECTED = 0xff;
+
+    /**
+     * The number of bits used by each direction in the packed connection
+     * value.
+     */
+    private static final int CONNECTION_BITS = 8;
+
+    /**
+     * Indicates that a value is unknown and need to be derived.
+     */
+    private static final int UNKNOWN = -1;
+
+    /**
+     * The index of the first span in each grid cell.
+     * <p>Index: Grid index obtained via {@link #gridIndex(int, int)}.</p>
+     */
+    private final int[] mCellStart;
+
+    /**
+     * The number of spans in each grid cell.
+     * <p>Index: Grid index obtained via {@link #gridIndex(int, int)}.</p>
+     */
+    private final int[] mCellCount;
+
+    /*
+     * Per span data.  Each span is represented by the same index in each
+     * array.
+     */
+    private final int[] mSpanCell;
+    private final int[] mFloor;
+    private final int[] mHeight;
+    private final int[] mRegionID;
+    private int[] mDistanceToBorder;
+    private final int[] mDistanceToRegionCore;
+    private final int[] mFlags;
+    private final int[] mConnections;
+
+    /**
+     * The grid index offset of the neighbor cell in each direction.
+     */
+    private final int[] mDirCellOffset = new int[4];
+
+    private final int mSpanCount;
+
+    private int mRegionCount = 0;
+    private int mMaxBorderDistance = UNKNOWN;
+    private int mMinBorderDistance = UNKNOWN;
+
+    /**
+     * Constructor.
+     * <p>Creates a compact copy of the source field.  All span, neighbor,
+     * distance, region, and flag information is copied.</p>
+     * @param source The field to copy.
+     * @throws IllegalArgumentException If the source is null, or if a
+     * span is connected to a neighbor at or above the
+     * {@link #NOT_CONNECTED} layer of its grid cell.
+     */
+    public CompactOpenHeightfield(OpenHeightfield source)
+        throws IllegalArgumentException
+    {
+        this(source, true);
+    }
+
+    /**
+     * Constructor.
+     * <p>Creates a compact copy of the source field.  All span, distance,
+     * region, and flag information is copied.</p>
+     * @param source The field to copy.
+     * @param includeNeighbors If TRUE, the neighbor connections are
+     * copied.  Otherwise the spans are not connected.  (E.g. When the
+     * connections are about to be generated.)
+     * @throws IllegalArgumentException If the source is null, or if a
+     * span is connected to a neighbor at or above the
+     * {@link #NOT_CONNECTED} layer of its grid cell.
+     */
+    CompactOpenHeightfield(OpenHeightfield source, boolean includeNeighbors)
+        throws IllegalArgumentException
+    {
+        this(checkSource(source).boundsMin()
+                , source.boundsMax()
+                , source.cellSize()
+                , source.cellHeight()
+                , countSpans(source));
+
+        // Load the span data.
+        int span = 0;
+        for (int depthIndex = 0; depthIndex < depth(); depthIndex++)
+        {
+            for (int widthIndex = 0; widthIndex < width(); widthIndex++)
+            {
+                final int cell = gridIndex(widthIndex, depthIndex);
+                mCellStart[cell] = span;
+                for (OpenHeightSpan oSpan = source.getData(widthIndex
+                            , depthIndex)
+                        ; oSpan != null
+                        ; oSpan = oSpan.next())
+                {
+                    mSpanCell[span] = cell;
+                    mFloor[span] = oSpan.floor();
+                    mHeight[span] = oSpan.height();
+                    mRegionID[span] = oSpan.regionID();
+                    mDistanceToBorder[span] = oSpan.distanceToBorder();
+                    mDistanceToRegionCore[span] =
+                        oSpan.distanceToRegionCore();
+                    mFlags[span] = oSpan.flags;
+                    span++;
+                }
+                mCellCount[cell] = span - mCellStart[cell];
+            }
+        }
+
+        mRegionCount = source.regionCount();
+        if (!includeNeighbors)
+            return;
+
+        // Load the neighbor connections.
+        span = 0;
+        for (int depthIndex = 0; depthIndex < depth(); depthIndex++)
+        {
+            for (int widthIndex = 0; widthIndex < width(); widthIndex++)
+            {
+                for (OpenHeightSpan oSpan = source.getData(widthIndex
+                            , depthIndex)
+                        ; oSpan != null
+                        ; oSpan = oSpan.next())
+                {
+                    for (int dir = 0; dir < 4; dir++)
+                    {
+                        final OpenHeightSpan nSpan = oSpan.getNeighbor(dir);
+                        if (nSpan == null)
+                            continue;
+                        // Find the layer of the neighbor in its column.
+                        int layer = 0;
+                        for (OpenHeightSpan cSpan = source.getData(
+                                    widthIndex
+                                        + BoundedField.getDirOffsetWidth(dir)
+                                    , depthIndex
+                                        + BoundedField.getDirOffsetDepth(dir))
+                                ; cSpan != null && cSpan != nSpan
+                                ; cSpan = cSpan.next())
+                            layer++;
+                        setConnection(span, dir, layer);
+                    }
+                    span++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Constructor for an empty field.
+     * <p>All spans are initialized with no neighbor connections.  The
+     * cell data and span floor and height must be loaded by the caller.</p>
+     * @param gridBoundsMin The minimum bounds of the field in the form
+     * (minX, minY, minZ).
+     * @param gridBoundsMax The maximum bounds of the field in the form
+     * (maxX, maxY, maxZ).
+     * @param cellSize The size of the cells.  (The grid that forms the base
+     * of the field.)
+     * @param cellHeight The height increment of the field.
+     * @param spanCount The number of spans in the field.
+     * @throws IllegalArgumentException If the bounds are null or the
+     * wrong size.
+     */
+    CompactOpenHeightfield(float[] gridBoundsMin
+            , float[] gridBoundsMax
+            , float cellSize
+            , float cellHeight
+            , int spanCount)
+        throws IllegalArgumentException
+    {
+        super(gridBoundsMin, gridBoundsMax, cellSize, cellHeight);
+
+        mCellStart = new int[width() * depth()];
+        mCellCount = new int[width() * depth()];
+
+        mSpanCount = spanCount;
+        mSpanCell = new int[spanCount];
+        mFloor = new int[spanCount];
+        mHeight = new int[spanCount];
+        mRegionID = new int[spanCount];
+        mDistanceToBorder = new int[spanCount];
+        mDistanceToRegionCore = new int[spanCount];
+        mFlags = new int[spanCount];
+        mConnections = new int[spanCount];
+        Arrays.fill(mConnections, -1);
+
+        for (int dir = 0; dir < 4; dir++)
+            mDirCellOffset[dir] = BoundedField.getDirOffsetWidth(dir) * depth()
+                    + BoundedField.getDirOffsetDepth(dir);
+    }
+
+    /**
+     * The number of spans in the grid location.
+     * @param widthIndex The width index of the grid location.
+     * @param depthIndex The depth index of the grid location.
+     * @return The number of spans in the grid location.  Zero if the
+     * location is outside the field.
+     */
+    public int cellCount(int widthIndex, int depthIndex)
+    {
+        final int cell = gridIndex(widthIndex, depthIndex);
+        return (cell == -1 ? 0 : mCellCount[cell]);
+    }
+
+    /**
+     * The index of the lowest span in the grid location.
+     * <p>The spans in the grid location are indexed from this value
+     * to this value + {@link #cellCount(int, int)} - 1.</p>
+     * @param widthIndex The width index of the grid location.
+     * @param depthIndex The depth index of the grid location.
+     * @return The index of the lowest span in the grid location, or
+     * {@link #NULL_SPAN} if there are no spans in the location.
+     */
+    public int cellStart(int widthIndex, int depthIndex)
+    {
+        final int cell = gridIndex(widthIndex, depthIndex);
+        return (cell == -1 || mCellCount[cell] == 0 ?
+                NULL_SPAN : mCellStart[cell]);
+    }
+
+    /**
+     * The ceiling of the span.  (Floor + height.)
+     * @param span A valid span index.
+     * @return The ceiling of the span.
+     */
+    public int ceiling(int span) { return mFloor[span] + mHeight[span]; }
+
+    /**
+     * Resets the border distance values so they will
+     * be recacluated the next time they are needed.
+     */
+    public void clearBorderDistanceBounds()
+    {
+        mMaxBorderDistance = UNKNOWN;
+        mMinBorderDistance = UNKNOWN;
+    }
+
+    /**
+     * The distance the span is from the nearest border.
+     * @param span A valid span index.
+     * @return The distance the span is from the nearest border.
+     * @see OpenHeightSpan#distanceToBorder()
+     */
+    public int distanceToBorder(int span) { return mDistanceToBorder[span]; }
+
+    /**
+     * The distance the span is from the core of its region.
+     * @param span A valid span index.
+     * @return The distance the span is from the core of its region.
+     * @see OpenHeightSpan#distanceToRegionCore()
+     */
+    public int distanceToRegionCore(int span)
+    {
+        return mDistanceToRegionCore[span];
+    }
+
+    /**
+     * The temporary flags associated with the span.
+     * <p>The same contract applies as for {@link OpenHeightSpan#flags}.</p>
+     * @param span A valid span index.
+     * @return The flags associated with the span.
+     */
+    public int flags(int span) { return mFlags[span]; }
+
+    /**
+     * The floor of the span.
+     * @param span A valid span index.
+     * @return The floor of the span.
+     */
+    public int floor(int span) { return mFloor[span]; }
+
+    /**
+     * Gets the regions of the 8-neighbors of the span.
+     * <p>The content is the same as for
+     * {@link OpenHeightSpan#getDetailedRegionMap(int[], int)}.</p>
+     * @param span A valid span index.
+     * @param out An array of at least size insertIndex + 8.
+     * @param insertIndex The index to start inserting the values into
+     * the array.
+     */
+    public void getDetailedRegionMap(int span, int[] out, int insertIndex)
+    {
+        for (int i = 0; i < 8; i++)
+            out[insertIndex+i] = OpenHeightSpan.NULL_REGION;
+        for (int dir = 0; dir < 4; dir++)
+        {
+            final int nSpan = getNeighbor(span, dir);
+            if (nSpan == NULL_SPAN)
+                continue;
+            out[insertIndex+dir] = mRegionID[nSpan];
+            int nnSpan = getNeighbor(nSpan, (dir+1) & 0x3);
+            if (nnSpan != NULL_SPAN)
+                out[insertIndex+dir+4] = mRegionID[nnSpan];
+            nnSpan = getNeighbor(nSpan, (dir+3) & 0x3);
+            if (nnSpan != NULL_SPAN)
+                out[insertIndex+((dir+3)&0x3)+4] = mRegionID[nnSpan];
+        }
+    }
+    
+    /**
+     * Gets the neighbor of the span in the specified direction.
+     * <p>Uses the standard direction indices (0 through 3) where
+     * Zero is the neighbor offset at (-1, 0) and the search proceeds
+     * clockwise.</p>
+     * @param span A valid span index.
+     * @param direction The direction to search.
+     * @return The index of the neighbor span, or {@link #NULL_SPAN} if
+     * there is no neighbor in the direction.
+     * @see <a href="http://www.critterai.org/?q=nmgen_hfintro#nsearch"
+     * target="_parent">Neighbor Searches</a>
+     */
+    public int getNeighbor(int span, int direction)
+    {
+        final int layer = (mConnections[span] >>> (direction * CONNECTION_BITS))
+                & NOT_CONNECTED;
+        if (layer == NOT_CONNECTED)
+            return NULL_SPAN;
+        return mCellStart[mSpanCell[span] + mDirCellOffset[direction]] + layer;
+    }
+
+    /**
+     * The height of the unobstructed space above the span's floor.
+     * @param span A valid span index.
+     * @return The height of the span.
+     */
+    public int height(int span) { return mHeight[span]; }
+
+    /**
+     * The maximum distance a span in the heightfield is from its
+     * nearest border.
+     * @return The maximum distance a span in the heightfield is from
+     * its nearest border.
+     */
+    public int maxBorderDistance()
+    {
+        if (mMaxBorderDistance == UNKNOWN)
+            calcBorderDistanceBounds();
+        return mMaxBorderDistance;
+    }
+
+    /**
+     * The minimum distance a span in the height field is from its nearest
+     * border. (Usually zero.  But can depend on the generation method.)
+     * @return The minimum distance a span in the height field is from its
+     * nearest border.
+     */
+    public int minBorderDistance()
+    {
+        if (mMinBorderDistance == UNKNOWN)
+            calcBorderDistanceBounds();
+        return mMinBorderDistance;
+    }
+
+    /**
+     * The number of regions in the height field.
+     * <p>Includes the null region.</p>
+     * @see OpenHeightfield#regionCount()
+     */
+    public int regionCount() { return mRegionCount; }
+
+    /**
+     * The heightfield region the span belongs to.
+     * @param span A valid span index.
+     * @return The region the span belongs to.
+     * @see OpenHeightSpan#regionID()
+     */
+    public int regionID(int span) { return mRegionID[span]; }
+
+    /**
+     * Set the distance the span is from the nearest border.
+     * @param span A valid span index.
+     * @param value The new distance.  Auto-clamped at a minimum of zero.
+     */
+    public void setDistanceToBorder(int span, int value)
+    {
+        mDistanceToBorder[span] = Math.max(value, 0);
+    }
+
+    /**
+     * Set the distance the span is from the core of its region.
+     * @param span A valid span index.
+     * @param value The new distance.  Auto-clamped at a minimum of zero.
+     */
+    public void setDistanceToRegionCore(int span, int value)
+    {
+        mDistanceToRegionCore[span] = Math.max(value, 0);
+    }
+
+    /**
+     * Sets the temporary flags associated with the span.
+     * @param span A valid span index.
+     * @param value The new flags.
+     */
+    public void setFlags(int span, int value) { mFlags[span] = value; }
+
+    /**
+     * Sets the region count.
+     * @param value The new region count.
+     * @see OpenHeightfield#setRegionCount(int)
+     */
+    public void setRegionCount(int value) { mRegionCount = value; }
+
+    /**
+     * Sets the heightfield region the span belongs to.
+     * @param span A valid span index.
+     * @param value The new region.
+     */
+    public void setRegionID(int span, int value) { mRegionID[span] = value; }
+
+    /**
+     * The number of spans in the heightfield.
+     */
+    public int spanCount() { return mSpanCount; }
+
+    /**
+     * Creates a standard open heightfield from the compact data.
+     * <p>All span, neighbor, distance, region, and flag information is
+     * copied.</p>
+     * @return A new open heightfield equivalent to this field.
+     */
+    public OpenHeightfield toOpenHeightfield()
+    {
+        final OpenHeightfield result = new OpenHeightfield(boundsMin()
+                , boundsMax()
+                , cellSize()
+                , cellHeight());
+
+        // Create the span objects.
+        for (int depthIndex = 0; depthIndex < depth(); depthIndex++)
+        {
+            for (int widthIndex = 0; widthIndex < width(); widthIndex++)
+            {
+                final int cell = gridIndex(widthIndex, depthIndex);
+                OpenHeightSpan previousSpan = null;
+                for (int span = mCellStart[cell]
+                        ; span < mCellStart[cell] + mCellCount[cell]
+                        ; span++)
+                {
+                    final OpenHeightSpan oSpan =
+                        new OpenHeightSpan(mFloor[span], mHeight[span]);
+                    if (previousSpan == null)
+                        result.addData(widthIndex, depthIndex, oSpan);
+                    else
+                        previousSpan.setNext(oSpan);
+                    previousSpan = oSpan;
+                    result.incrementSpanCount();
+                }
+            }
+        }
+
+        copyTo(result);
+        return result;
+    }
+
+    /**
+     * Copies the neighbor, distance, region, and flag information to
+     * a field with a matching span structure.  (E.g. The field this
+     * field was created from.)
+     * <p>Behavior is undefined if the span structure of the target
+     * does not match this field.</p>
+     * @param target The field to copy to.
+     */
+    void copyTo(OpenHeightfield target)
+    {
+        copyTo(target, true);
+    }
+
+    /**
+     * Copies the distance, region, and flag information, and optionally
+     * the neighbor information, to a field with a matching span structure.
+     * <p>Behavior is undefined if the span structure of the target
+     * does not match this field.</p>
+     * @param target The field to copy to.
+     * @param includeNeighbors If TRUE, the neighbor information is copied.
+     * Otherwise the target's neighbors are not changed.
+     */
+    void copyTo(OpenHeightfield target, boolean includeNeighbors)
+    {
+        if (!includeNeighbors)
+        {
+            int span = 0;
+            for (int depthIndex = 0; depthIndex < depth(); depthIndex++)
+            {
+                for (int widthIndex = 0; widthIndex < width(); widthIndex++)
+                {
+                    for (OpenHeightSpan oSpan = target.getData(widthIndex
+                                , depthIndex)
+                            ; oSpan != null
+                            ; oSpan = oSpan.next())
+                    {
+                        oSpan.setRegionID(mRegionID[span]);
+                        oSpan.setDistanceToBorder(mDistanceToBorder[span]);
+                        oSpan.setDistanceToRegionCore(
+                                mDistanceToRegionCore[span]);
+                        oSpan.flags = mFlags[span];
+                        span++;
+                    }
+                }
+            }
+            target.setRegionCount(mRegionCount);
+            target.clearBorderDistanceBounds();
+            return;
+        }
+        
+        // Index the target's spans so that neighbors can be assigned.
+        final OpenHeightSpan[] spans = new OpenHeightSpan[mSpanCount];
+        int span = 0;
+        for (int depthIndex = 0; depthIndex < depth(); depthIndex++)
+        {
+            for (int widthIndex = 0; widthIndex < width(); widthIndex++)
+            {
+                for (OpenHeightSpan oSpan = target.getData(widthIndex
+                            , depthIndex)
+                        ; oSpan != null
+                        ; oSpan = oSpan.next())
+                {
+                    spans[span++] = oSpan;
+                }
+            }
+        }
+
+        for (span = 0; span < mSpanCount; span++)
+        {
+            final OpenHeightSpan oSpan = spans[span];
+            oSpan.setRegionID(mRegionID[span]);
+            oSpan.setDistanceToBorder(mDistanceToBorder[span]);
+            oSpan.setDistanceToRegionCore(mDistanceToRegionCore[span]);
+            oSpan.flags = mFlags[span];
+            for (int dir = 0; dir < 4; dir++)
+            {
+                final int nSpan = getNeighbor(span, dir);
+                oSpan.setNeighbor(dir
+                        , (nSpan == NULL_SPAN ? null : spans[nSpan]));
+            }
+        }
+
+        target.setRegionCount(mRegionCount);
+        target.clearBorderDistanceBounds();
+    }
+
+    /**
+     * Copies the distance, region, and flag information from a field
+     * with a matching span structure.  (E.g. The field created by
+     * {@link #toOpenHeightfield()}.)
+     * <p>Neighbor information is not copied.  Behavior is undefined if the
+     * span structure of the source does not match this field.</p>
+     * @param source The field to copy from.
+     */
+    void copyFrom(OpenHeightfield source)
+    {
+        int span = 0;
+        for (int depthIndex = 0; depthIndex < depth(); depthIndex++)
+        {
+            for (int widthIndex = 0; widthIndex < width(); widthIndex++)
+            {
+                for (OpenHeightSpan oSpan = source.getData(widthIndex
+                            , depthIndex)
+                        ; oSpan != null
+                        ; oSpan = oSpan.next())
+                {
+                    mRegionID[span] = oSpan.regionID();
+                    mDistanceToBorder[span] = oSpan.distanceToBorder();
+                    mDistanceToRegionCore[span] =
+                        oSpan.distanceToRegionCore();
+                    mFlags[span] = oSpan.flags;
+                    span++;
+                }
+            }
+        }
+        mRegionCount = source.regionCount();
+        clearBorderDistanceBounds();
+    }
+
+    /**
+     * The number of spans in a grid cell.
+     * @param cell The grid index of the cell.
+     * @return The number of spans in the cell.
+     */
+    int cellSpanCount(int cell) { return mCellCount[cell]; }
+
+    /**
+     * The index of the lowest span in a grid cell.
+     * <p>Unlike {@link #cellStart(int, int)}, the value is not validated.
+     * It is undefined if the cell contains no spans.</p>
+     * @param cell The grid index of the cell.
+     * @return The index of the lowest span in the cell.
+     */
+    int cellSpanStart(int cell) { return mCellStart[cell]; }
+
+    /**
+     * The grid index offset of the neighbor cell in the specified
+     * direction.
+     * <p>The result is only meaningful if the neighbor cell is
+     * within the field.</p>
+     * @param direction The direction of the neighbor.
+     * @return The offset to add to a grid index to get the index of
+     * the neighbor cell.
+     */
+    int dirCellOffset(int direction) { return mDirCellOffset[direction]; }
+
+    /**
+     * The grid cell containing the span.
+     * @param span A valid span index.
+     * @return The grid index of the cell containing the span.
+     */
+    int spanCell(int span) { return mSpanCell[span]; }
+
+    /**
+     * Sets the grid cell data.
+     * @param cell The grid index of the cell.
+     * @param start The index of the lowest span in the cell.
+     * @param count The number of spans in the cell.
+     */
+    void setCell(int cell, int start, int count)
+    {
+        mCellStart[cell] = start;
+        mCellCount[cell] = count;
+    }
+
+    /**
+     * Sets the neighbor connection for the span.
+     * @param span A valid span index.
+     * @param direction The direction of the neighbor.
+     * @param layer The layer of the neighbor span within its grid cell.
+     * @throws IllegalArgumentException If the layer is at or above
+     * {@link #NOT_CONNECTED}.  (The connection can't be stored.)
+     */
+    void setConnection(int span, int direction, int layer)
+        throws IllegalArgumentException
+    {
+        if (layer >= NOT_CONNECTED)
+            throw new IllegalArgumentException("Neighbor layer " + layer
+                    + " is above the maximum connectable layer: "
+                    + (NOT_CONNECTED - 1));
+        final int shift = direction * CONNECTION_BITS;
+        mConnections[span] = (mConnections[span] & ~(NOT_CONNECTED << shift))
+                | (layer << shift);
+    }
+
+    /**
+     * Sets the basic span data.
+     * @param span A valid span index.
+     * @param cell The grid index of the cell containing the span.
+     * @param floor The floor of the span.
+     * @param height The height of the span.
+     */
+    void setSpan(int span, int cell, int floor, int height)
+    {
+        mSpanCell[span] = cell;
+        mFloor[span] = floor;
+        mHeight[span] = height;
+    }
+    
+    /**
+     * Replaces the distance to border array of the field.
+     * <p>Allows an operation that generates new distance values into a
+     * separate buffer to commit them without a copy.  The min/max border
+     * distance values are cleared.</p>
+     * @param values The new distance to border values, indexed by span.
+     * Length must be at least {@link #spanCount()}.  The array becomes
+     * owned by the field.
+     * @return The previous distance to border array.  It is no longer used
+     * by the field.
+     */
+    int[] swapDistanceToBorder(int[] values)
+    {
+        final int[] result = mDistanceToBorder;
+        mDistanceToBorder = values;
+        clearBorderDistanceBounds();
+        return result;
+    }
+
+    /**
+     * Calculates the min/max distance a span in the field is from it
+     * nearest border. Allows on-demand calculation of this information.
+     */
+    private void calcBorderDistanceBounds()
+    {
+        if (mSpanCount == 0)
+            return;
+
+        mMinBorderDistance = Integer.MAX_VALUE;
+        mMaxBorderDistance = UNKNOWN;
+        for (int span = 0; span < mSpanCount; span++)
+        {
+            mMinBorderDistance = Math.min(mMinBorderDistance
+                    , mDistanceToBorder[span]);
+            mMaxBorderDistance = Math.max(mMaxBorderDistance
+                    , mDistanceToBorder[span]);
+        }
+        if (mMinBorderDistance == Integer.MAX_VALUE)
+            mMinBorderDistance = UNKNOWN;
+    }
+
+    /**
+     * Validates the source argument of the copy constructor.
+     * @param source The source field.
+     * @return The source field.
+     * @throws IllegalArgumentException If the source is null.
+     */
+    private static OpenHeightfield checkSource(OpenHeightfield source)
+        throws IllegalArgumentException
+    {
+        if (source == null)
+            throw new IllegalArgumentException("Source field is null.");
+        return source;
+    }
+
+    /**
+     * Counts the spans in the field.
+     * <p>The field's span count is manually managed, so it is not
+     * trusted.</p>
+     * @param source The field to count.
+     * @return The number of spans in the field.
+     */
+    private static int countSpans(OpenHeightfield source)
+    {
+        int result = 0;
+        final OpenHeightfield.OpenHeightFieldIterator iter =
+            source.dataIterator();
+        while (iter.hasNext())
+        {
+            iter.next();
+            result++;
+        }
+        return result;
+    }
+
+}
@@ -110,4 +110,32 @@ public final class Contour
         vertCount = verts.length / 4;
     }
     
+    /**
+     * Constructor
+     * <p>All vertex lists are expected to be clockwise wrapped in
+     * the form (x, y, z, regionID), where regionID is the external
+     * region the vertex is considered to be connected to.</p>
+     * @param regionID The region associated with the contour.
+     * @param rawList The vertices which represent the raw (or detailed)
+     * contour.
+     * @param vertList The vertices which represent the detailed contour.
+     * @throws IllegalArgumentException  If either vertex list is null.
+     * The size of the vertex lists is not checked.
+     */
+    public Contour(int regionID
+                    , IntList rawList
+                    , IntList vertList)
+        throws IllegalArgumentException
+    {
+        if (rawList == null || vertList == null)
+            throw new IllegalArgumentException(
+                            "One or both vertex lists are null.");
+        
+        this.regionID = regionID;
+        rawVerts = rawList.toArray();
+        rawVertCount = rawVerts.length / 4;
+        verts = vertList.toArray();
+        vertCount = verts.length / 4;
+    }
+    
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2010 Stephen A. Pratt
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.critterai.nmgen;
+
+import java.util.ArrayList;
+
+/**
+ * Allows an {@link IContourAlgorithm} that does not support primitive
+ * lists to be used where an {@link IPrimitiveContourAlgorithm} is required.
+ * <p>The vertex data is copied to boxed lists before the wrapped algorithm
+ * is applied and the result is copied back afterwards.</p>
+ */
+public final class ContourAlgorithmAdapter
+    implements IPrimitiveContourAlgorithm
+{
+
+    /*
+     * Design notes:
+     * 
+     * The working lists are created on each call so that the adapter is
+     * as thread friendly as the algorithm it wraps.
+     */
+
+    private final IContourAlgorithm mAlgorithm;
+
+    /**
+     * Constructor
+     * @param algorithm The algorithm to wrap.
+     */
+    public ContourAlgorithmAdapter(IContourAlgorithm algorithm)
+    {
+        mAlgorithm = algorithm;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>Applies the wrapped algorithm.</p>
+     */
+    @Override
+    public void apply(IntList sourceVerts, IntList resultVerts)
+    {
+        final ArrayList<Integer> source = toList(sourceVerts);
+        final ArrayList<Integer> result = toList(resultVerts);
+        mAlgorithm.apply(source, result);
+        copy(result, resultVerts);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>Applies the wrapped algorithm.</p>
+     */
+    @Override
+    public void apply(ArrayList<Integer> sourceVerts
+            , ArrayList<Integer> resultVerts)
+    {
+        mAlgorithm.apply(sourceVerts, resultVerts);
+    }
+
+    /**
+     * The wrapped algorithm.
+     * @return The wrapped algorithm.
+     */
+    public IContourAlgorithm algorithm() { return mAlgorithm; }
+
+    /**
+     * Applies a primitive algorithm to boxed lists.
+     * <p>The vertex data is copied to primitive lists before the algorithm
+     * is applied and the result is copied back afterwards.</p>
+     * @param algorithm The algorithm to apply.
+     * @param sourceVerts The source vertices that represent the contour
+     * in the form (x, y, z, regionID).
+     * @param resultVerts The contour vertices produced by the operation
+     * in the form (x, y, z, sourceIndex).
+     */
+    public static void apply(IPrimitiveContourAlgorithm algorithm
+            , ArrayList<Integer> sourceVerts
+            , ArrayList<Integer> resultVerts)
+    {
+        if (sourceVerts == null || resultVerts == null)
+            return;
+        final IntList result = toIntList(resultVerts);
+        algorithm.apply(toIntList(sourceVerts), result);
+        copy(result, resultVerts);
+    }
+
+    /**
+     * Wraps an algorithm for use with primitive lists, if needed.
+     * @param algorithm The algorithm to wrap.
+     * @return The algorithm itself if it already supports primitive lists.
+     * Otherwise an adapter wrapping the algorithm.
+     */
+    public static IPrimitiveContourAlgorithm wrap(IContourAlgorithm algorithm)
+    {
+        if (algorithm instanceof IPrimitiveContourAlgorithm)
+            return (IPrimitiveContourAlgorithm)algorithm;
+        return new ContourAlgorithmAdapter(algorithm);
+    }
+
+    /**
+     * Replaces the content of a primitive list with the content of a
+     * boxed list.
+     */
+    private static void copy(ArrayList<Integer> source, IntList target)
+    {
+        target.clear();
+        for (int i = 0; i < source.size(); i++)
+            target.add(source.get(i));
+    }
+
+    /**
+     * Replaces the content of a boxed list with the content of a
+     * primitive list.
+     */
+    static void copy(IntList source, ArrayList<Integer> target)
+    {
+        target.clear();
+        target.ensureCapacity(source.size());
+        for (int i = 0; i < source.size(); i++)
+            target.add(source.get(i));
+    }
+
+    /**
+     * Creates a primitive copy of a boxed list.
+     */
+    static IntList toIntList(ArrayList<Integer> source)
+    {
+        final IntList result = new IntList(source.size());
+        copy(source, result);
+        return result;
+    }
+
+    /**
+     * Creates a boxed copy of a primitive list.
+     */
+    private static ArrayList<Integer> toList(IntList source)
+    {
+        final ArrayList<Integer> result =
+            new ArrayList<Integer>(source.size());
+        for (int i = 0; i < source.size(); i++)
+            result.add(source.get(i));
+        return result;
+    }
+
+}
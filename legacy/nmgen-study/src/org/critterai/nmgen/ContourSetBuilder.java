@@ -22,13 +22,15 @@
 package org.critterai.nmgen;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Logger;
 
-import org.critterai.nmgen.OpenHeightfield.OpenHeightFieldIterator;
-
 /**
  * Builds a set of contours from the region information contained by an
- * {@link OpenHeightfield}.  It does this by locating and "walking" the edges
+ * {@link OpenHeightfield} or {@link CompactOpenHeightfield}.  It does this
+ * by locating and "walking" the edges
  * <p><a href=
  * "http://www.critterai.org/projects/nmgen/images/cont_11_simplified_full.png"
  * target="_parent"> <img class="insert" height="465" width="620" src=
@@ -53,27 +55,111 @@ public final class ContourSetBuilder
      * Recast Reference: rcBuildContours() in RecastContour.cpp
      */
     
+    /**
+     * Builds the contours for a range of edge spans.
+     */
+    private final class ContoursTask
+        extends RecursiveAction
+    {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final CompactOpenHeightfield mField;
+        private final int mBorderSize;
+        private final int[] mEdgeFlags;
+        private final int[] mEdgeSpans;
+        private final int mEdgeMin;
+        private final int mEdgeMax;
+        private final Contour[] mContours;
+        
+        private int mDiscardedContours = 0;
+        
+        private ContoursTask(CompactOpenHeightfield field
+                , int borderSize
+                , int[] edgeFlags
+                , int[] edgeSpans
+                , int edgeMin
+                , int edgeMax
+                , Contour[] contours)
+        {
+            mField = field;
+            mBorderSize = borderSize;
+            mEdgeFlags = edgeFlags;
+            mEdgeSpans = edgeSpans;
+            mEdgeMin = edgeMin;
+            mEdgeMax = edgeMax;
+            mContours = contours;
+        }
+        
+        @Override
+        protected void compute()
+        {
+            mDiscardedContours = buildContours(mField
+                    , mBorderSize
+                    , mEdgeFlags
+                    , mEdgeSpans
+                    , mEdgeMin
+                    , mEdgeMax
+                    , mContours);
+        }
+    }
+    
     private static final Logger logger =
         Logger.getLogger(ContourSetBuilder.class.getName());
     
+    /**
+     * The minimum number of region edge spans to process in a single task
+     * during a parallel build.
+     */
+    private static final int MIN_TASK_EDGE_SPANS = 1024;
+    
     private static final int NULL_REGION = OpenHeightSpan.NULL_REGION;
     
+    private static final int NULL_SPAN = CompactOpenHeightfield.NULL_SPAN;
+    
     /**
      * The post-processing algorithms to apply to the contours.
      */
-    private final ArrayList<IContourAlgorithm> mAlgorithms =
-        new ArrayList<IContourAlgorithm>();
+    private final ArrayList<IPrimitiveContourAlgorithm> mAlgorithms =
+        new ArrayList<IPrimitiveContourAlgorithm>();
+    
+    /**
+     * The pool used for parallel builds, or null if builds are to be
+     * performed on the calling thread.
+     */
+    private final ForkJoinPool mThreadPool;
     
     /**
      * Contructor
      * @param algorithms The post-processing algorithms to apply to
      * the contours.
+     * <p>Algorithms that do not implement
+     * {@link IPrimitiveContourAlgorithm} are wrapped in a
+     * {@link ContourAlgorithmAdapter}.</p>
      */
     public ContourSetBuilder(ArrayList<IContourAlgorithm> algorithms)
     {
+        this(algorithms, null);
+    }
+    
+    /**
+     * Constructor
+     * <p>See {@link #ContourSetBuilder(ArrayList) the standard
+     * constructor} for details on the other arguments.</p>
+     * @param threadPool The pool to use for building the contours of
+     * different regions in parallel.  If null, contours will be built on
+     * the thread calling {@link #build(OpenHeightfield)}.
+     * <p>The algorithms must be safe to apply concurrently to different
+     * contours if a pool is provided.</p>
+     */
+    public ContourSetBuilder(ArrayList<IContourAlgorithm> algorithms
+            , ForkJoinPool threadPool)
+    {
+        mThreadPool = threadPool;
         if (algorithms == null)
             return;
-        this.mAlgorithms.addAll(algorithms);
+        for (IContourAlgorithm algorithm : algorithms)
+            this.mAlgorithms.add(ContourAlgorithmAdapter.wrap(algorithm));
     }
     
     /**
@@ -81,28 +167,92 @@ public final class ContourSetBuilder
      * <p>The provided field is expected to contain region information.
      * Behavior is undefined if the provided field is malformed or incomplete.
      * </p>
-     * <p>This operation overwrites the flag fields for all spans in the
-     * provided field. So the flags must be saved and restored if they are
-     * important.</p>
+     * <p>The provided field is not altered.  The contours are always
+     * returned in the order they would be found by a serial search of the
+     * field, whether or not a thread pool is in use.</p>
      * @param sourceField  A fully generated field.
      * @return The contours generated from the field.
      */
     public ContourSet build(OpenHeightfield sourceField)
     {
-        if (sourceField == null || sourceField.regionCount() == 0)
+        if (sourceField == null)
+            return null;
+        return build(new CompactOpenHeightfield(sourceField), null);
+    }
+    
+    /**
+     * Generates a contour set from the provided
+     * {@link CompactOpenHeightfield}
+     * <p>The same requirements and guarantees apply as for
+     * {@link #build(OpenHeightfield)}.</p>
+     * @param field  A fully generated field.
+     * @return The contours generated from the field.
+     */
+    public ContourSet build(CompactOpenHeightfield field)
+    {
+        return build(field, null);
+    }
+    
+    /**
+     * Generates a contour set, recording the number of contours discarded.
+     * @param field  A fully generated field.
+     * @param metrics The metrics to record the count to, or null if no
+     * count is to be recorded.
+     * @return The contours generated from the field.
+     * @see #build(CompactOpenHeightfield)
+     */
+    ContourSet build(CompactOpenHeightfield field, BuildMetrics metrics)
+    {
+        return build(field, 0, metrics);
+    }
+    
+    /**
+     * Generates a contour set for a field which is one tile of a larger
+     * field.
+     * <p>The spans within the border of the field are expected to be in
+     * the null region.  The raw vertices which lie on the inner edge of
+     * the border (the tile boundary) are always kept in the simplified
+     * contours.  They are never simplified away or split by the
+     * algorithms.  So the contours of neighboring tiles share the same
+     * vertices along the boundary between them.</p>
+     * @param field  A fully generated field.
+     * @param borderSize The width of the border. (Cells.)  Zero if the
+     * field is not a tile.
+     * @param metrics The metrics to record the count to, or null if no
+     * count is to be recorded.
+     * @return The contours generated from the field.
+     * @see #build(CompactOpenHeightfield)
+     */
+    ContourSet build(CompactOpenHeightfield field
+            , int borderSize
+            , BuildMetrics metrics)
+    {
+        if (field == null || field.regionCount() == 0)
             return null;
         
+        final BuildEvents.ContoursEvent event =
+            new BuildEvents.ContoursEvent();
+        event.begin();
+        
         // Initialize the contour set.
-        final ContourSet result = new ContourSet(sourceField.boundsMin()
-                , sourceField.boundsMax()
-                , sourceField.cellSize()
-                , sourceField.cellHeight()
-                , sourceField.regionCount());
+        final ContourSet result = new ContourSet(field.boundsMin()
+                , field.boundsMax()
+                , field.cellSize()
+                , field.cellHeight()
+                , field.regionCount());
+        
+        /*
+         * The edge flags are held in a primitive array indexed by span.
+         * This leaves the field untouched and allows regions to be
+         * processed concurrently.
+         */
+        final int spanCount = field.spanCount();
+        final int[] edgeFlags = new int[spanCount];
         
         int discardedContours = 0;
         
         /*
-         *  Set the flags on all spans in non-null regions to indicate which
+         *  Set the flags for all spans in non-null regions to indicate which
          *  edges are connected to external regions.
          * 
          *  Reference:  Neighbor search and nomenclature.
@@ -124,120 +274,138 @@ public final class ContourSetBuilder
          *      1 = neighbor not in same region. (Neighbor may be the null
          *      region or a real region.)
          */
-        final OpenHeightFieldIterator iter =
-            sourceField.dataIterator();
-        while(iter.hasNext())
+        int regionSlots = field.regionCount();
+        for (int span = 0; span < spanCount; span++)
         {
             // Note:  This algorithm first sets the flag bits such that
             // 1 = "neighbor is in the same region".  At the end it inverts
             // the bits so flags are as expected.
-            final OpenHeightSpan span = iter.next();
-            // Default to "not connected to any external region".
-            span.flags = 0;
-            if (span.regionID() == NULL_REGION)
+            final int regionID = field.regionID(span);
+            if (regionID == NULL_REGION)
                 // Don't care about spans in the null region.
                 continue;
+            int flags = 0;
             // Loop through all directions.
             for (int dir = 0; dir < 4; dir++)
             {
                 // Default to show neighbor is in null region.
                 int nRegionID = NULL_REGION;
-                final OpenHeightSpan nSpan = span.getNeighbor(dir);
-                if (nSpan != null)
+                final int nSpan = field.getNeighbor(span, dir);
+                if (nSpan != NULL_SPAN)
                     // There is a neighbor in the current direction.
                     // Get its region ID.
-                    nRegionID = nSpan.regionID();
-                if (span.regionID() == nRegionID)
+                    nRegionID = field.regionID(nSpan);
+                if (regionID == nRegionID)
                     // Neighbor is in same region as this span.  Set the bit
                     // for this neighbor to 1.  (Will be inverted later.)
-                    span.flags |= (1 << dir);
+                    flags |= (1 << dir);
             }
             // Invert the bits so a bit value of 1 indicates neighbor NOT in
             // same region.
-            span.flags ^= 0xf;
-            if (span.flags == 0xf)
+            flags ^= 0xf;
+            if (flags == 0xf)
             {
                 // This is an island span.  (All neighbors are other regions.)
                 // Get rid of flags.
-                span.flags = 0;
+                flags = 0;
                 discardedContours++;
                 logger.warning("Discarded contour: Island span. Can't form " +
-                        "a contour. Region: " + span.regionID());
+                        "a contour. Region: " + regionID);
             }
+            else if (flags != 0)
+                // Bad region data can contain IDs outside the expected
+                // range.  These are reported later.
+                regionSlots = Math.max(regionSlots, regionID + 1);
+            edgeFlags[span] = flags;
         }
         
         /*
-         * These are working lists whose content changes with each iteration
-         * of the up coming loop. They represent the detailed and simple
-         * contour vertices.
-         * Initial sizing is arbitrary.
+         * Group the edge spans by region, preserving span order within each
+         * region.  Each region's edge spans are then at
+         * regionEdgeStart[regionID] <= index < regionEdgeStart[regionID + 1].
          */
-        final ArrayList<Integer> workingRawVerts = new ArrayList<Integer>(256);
-        final ArrayList<Integer> workingSimplifiedVerts =
-            new ArrayList<Integer>(64);
+        final int[] regionEdgeStart = new int[regionSlots + 1];
+        for (int span = 0; span < spanCount; span++)
+        {
+            if (edgeFlags[span] != 0)
+                regionEdgeStart[field.regionID(span) + 1]++;
+        }
+        for (int regionID = 1; regionID <= regionSlots; regionID++)
+            regionEdgeStart[regionID] += regionEdgeStart[regionID - 1];
+        final int edgeSpanCount = regionEdgeStart[regionSlots];
+        final int[] edgeSpans = new int[edgeSpanCount];
+        final int[] regionCursor = Arrays.copyOf(regionEdgeStart, regionSlots);
+        for (int span = 0; span < spanCount; span++)
+        {
+            if (edgeFlags[span] != 0)
+                edgeSpans[regionCursor[field.regionID(span)]++] = span;
+        }
         
         /*
-         * Loop through all spans looking for spans on the edge of a region.
-         * 
-         * At this point, only spans with flags != 0 are edge spans that
-         * are part of a region contour.
+         * The contours, indexed by the span their walk started from.
          * 
-         * The process of building a contour will clear the flags on all spans
-         * that make up the contour.  This ensures that the spans that make
-         * up a contour are only processed once.
+         * Building a contour clears the flags on all spans that make
+         * up the contour, and a walk never leaves its region.  So regions
+         * can be walked independently.  Collecting the contours in start
+         * span order results in the same order no matter how the regions
+         * were distributed.
          */
-        iter.reset();
-        while(iter.hasNext())
+        final Contour[] spanContours = new Contour[spanCount];
+        
+        if (mThreadPool != null
+                && mThreadPool.getParallelism() > 1
+                && edgeSpanCount > MIN_TASK_EDGE_SPANS)
         {
-            final OpenHeightSpan span = iter.next();
-            if (span.regionID() == NULL_REGION || span.flags == 0)
-                // Span is either: Part of the null region, does not
-                // represent an edge span, or was already processed during
-                // an earlier iteration.
-                continue;
-            workingRawVerts.clear();
-            workingSimplifiedVerts.clear();
-            // The span is part of an unprocessed region's contour.
-            // Locate a direction of the span's edge which points toward
-            // another region. (We know there is at least one.)
-            int startDir = 0;
-            while ((span.flags & (1 << startDir)) == 0)
-                // This is not an edge direction.  Try the next one.
-                startDir++;
-            // We now have a span that is part of a contour and a direction
-            // that points to a different region (null or real).
-            // Build the contour.
-            buildRawContours(span
-                    , iter.widthIndex()
-                    , iter.depthIndex()
-                    , startDir
-                    , workingRawVerts);
-            // Perform post processing on the contour in order to
-            // create the final, simplified contour.
-            generateSimplifiedContour(span.regionID()
-                    , workingRawVerts
-                    , workingSimplifiedVerts);
-            /*
-             * This next test is needed because some extreme cases contours
-             * just can't be successfully generated.
-             * We can't just copy the raw contour to the simplified contour
-             * because the reason the build failed may be because it
-             * can't be triangulated. (E.g. Has too many vertical segments.)
-             */
-            if (workingSimplifiedVerts.size() < 12)
+            // Split the regions into ranges with similar edge span counts.
+            // Use more ranges than threads to even out the load.
+            final int taskCount = Math.min(mThreadPool.getParallelism() * 4
+                    , (edgeSpanCount + MIN_TASK_EDGE_SPANS - 1)
+                        / MIN_TASK_EDGE_SPANS);
+            final ArrayList<ContoursTask> tasks =
+                new ArrayList<ContoursTask>(taskCount);
+            int regionID = 0;
+            int edgeMin = 0;
+            for (int iTask = 1; iTask <= taskCount; iTask++)
             {
-                logger.warning("Discarded contour: Can't form enough valid" +
-                        "edges from the vertices." +
-                        " Region: " + span.regionID());
-                discardedContours++;
+                // End the range at the first region boundary at or
+                // beyond the target.
+                final int target =
+                    (int)((long)edgeSpanCount * iTask / taskCount);
+                while (regionEdgeStart[regionID] < target)
+                    regionID++;
+                final int edgeMax = regionEdgeStart[regionID];
+                if (edgeMax == edgeMin)
+                    continue;
+                final ContoursTask task = new ContoursTask(field
+                        , borderSize
+                        , edgeFlags
+                        , edgeSpans
+                        , edgeMin
+                        , edgeMax
+                        , spanContours);
+                mThreadPool.execute(task);
+                tasks.add(task);
+                edgeMin = edgeMax;
             }
-            else
+            for (ContoursTask task : tasks)
             {
-                result.add(new Contour(span.regionID()
-                        , workingRawVerts
-                        , workingSimplifiedVerts));
+                task.join();
+                discardedContours += task.mDiscardedContours;
             }
-
+        }
+        else
+            discardedContours += buildContours(field
+                    , borderSize
+                    , edgeFlags
+                    , edgeSpans
+                    , 0
+                    , edgeSpanCount
+                    , spanContours);
+        
+        for (int span = 0; span < spanCount; span++)
+        {
+            if (spanContours[span] != null)
+                result.add(spanContours[span]);
         }
         
         if (discardedContours > 0)
@@ -246,8 +414,23 @@ public final class ContourSetBuilder
                     + " regions.");
         }
         
+        if (metrics != null)
+            metrics.count(BuildCounter.CONTOURS_DISCARDED, discardedContours);
+        
+        if (event.shouldCommit())
+        {
+            int vertCount = 0;
+            for (int iContour = 0; iContour < result.size(); iContour++)
+                vertCount += result.get(iContour).vertCount;
+            event.regions = field.regionCount();
+            event.contours = result.size();
+            event.discarded = discardedContours;
+            event.vertices = vertCount;
+            event.commit();
+        }
+        
         if (result.size() + discardedContours !=
-            sourceField.regionCount() - 1)
+            field.regionCount() - 1)
         {
             /*
              * The only valid state is one contour per region.
@@ -272,7 +455,7 @@ public final class ContourSetBuilder
             // expected and already reported.
             
             for (int regionID = 1
-                    ; regionID < sourceField.regionCount()
+                    ; regionID < field.regionCount()
                     ; regionID++)
             {
                 int regionMatches = 0;
@@ -298,7 +481,7 @@ public final class ContourSetBuilder
                     logger.severe("A contour was generated for the null"
                             + "region.");
                 }
-                else if (contour.regionID >= sourceField.regionCount())
+                else if (contour.regionID >= field.regionCount())
                 {
                     // Indicates a problem with region generation.
                     logger.severe("A contour was generated for a region"
@@ -309,7 +492,7 @@ public final class ContourSetBuilder
             
             logger.severe("Contour generation failed: Detected contours does"
                     + " not match the number of regions.  Regions: "
-                    + (sourceField.regionCount() - 1)
+                    + (field.regionCount() - 1)
                     + ", Detected contours: "
                     + (result.size() + discardedContours)
                     + " (Actual: " + result.size()
@@ -321,6 +504,103 @@ public final class ContourSetBuilder
         
     }
 
+    /**
+     * Builds the contours for a range of edge spans.
+     * <p>The range must not split a region.  (All edge spans for a region
+     * must be included in the same range.)</p>
+     * @param field The field the contours are being built from.
+     * @param borderSize The width of the field's tile border. (Cells.)
+     * @param edgeFlags The edge flags for each span in the field.
+     * Flags for the spans in the range's regions are cleared.
+     * @param edgeSpans The edge spans, grouped by region.
+     * @param edgeMin The index of the first edge span in the range.
+     * @param edgeMax The index after the last edge span in the range.
+     * @param outContours The contours, indexed by the span the contour
+     * walk started from.
+     * @return The number of contours that were discarded.
+     */
+    private int buildContours(CompactOpenHeightfield field
+            , int borderSize
+            , int[] edgeFlags
+            , int[] edgeSpans
+            , int edgeMin
+            , int edgeMax
+            , Contour[] outContours)
+    {
+        /*
+         * These are working lists whose content changes with each iteration
+         * of the up coming loop. They represent the detailed and simple
+         * contour vertices.
+         * Initial sizing is arbitrary.
+         */
+        final IntList workingRawVerts = new IntList(256);
+        final IntList workingSimplifiedVerts = new IntList(64);
+        
+        int discardedContours = 0;
+        
+        /*
+         * Loop through the edge spans.
+         * 
+         * The process of building a contour will clear the flags on all spans
+         * that make up the contour.  This ensures that the spans that make
+         * up a contour are only processed once.
+         */
+        for (int iEdge = edgeMin; iEdge < edgeMax; iEdge++)
+        {
+            final int span = edgeSpans[iEdge];
+            if (edgeFlags[span] == 0)
+                // Span was already processed during an earlier iteration.
+                continue;
+            final int regionID = field.regionID(span);
+            workingRawVerts.clear();
+            workingSimplifiedVerts.clear();
+            // The span is part of an unprocessed region's contour.
+            // Locate a direction of the span's edge which points toward
+            // another region. (We know there is at least one.)
+            int startDir = 0;
+            while ((edgeFlags[span] & (1 << startDir)) == 0)
+                // This is not an edge direction.  Try the next one.
+                startDir++;
+            // We now have a span that is part of a contour and a direction
+            // that points to a different region (null or real).
+            // Build the contour.
+            buildRawContours(field
+                    , edgeFlags
+                    , span
+                    , startDir
+                    , workingRawVerts);
+            // Perform post processing on the contour in order to
+            // create the final, simplified contour.
+            generateSimplifiedContour(regionID
+                    , field
+                    , borderSize
+                    , workingRawVerts
+                    , workingSimplifiedVerts);
+            /*
+             * This next test is needed because some extreme cases contours
+             * just can't be successfully generated.
+             * We can't just copy the raw contour to the simplified contour
+             * because the reason the build failed may be because it
+             * can't be triangulated. (E.g. Has too many vertical segments.)
+             */
+            if (workingSimplifiedVerts.size() < 12)
+            {
+                logger.warning("Discarded contour: Can't form enough valid" +
+                        "edges from the vertices." +
+                        " Region: " + regionID);
+                discardedContours++;
+            }
+            else
+            {
+                outContours[span] = new Contour(regionID
+                        , workingRawVerts
+                        , workingSimplifiedVerts);
+            }
+        }
+        
+        return discardedContours;
+    }
+
     /**
      * Walk around the edge of this span's region gathering vertices that
      * represent the corners of each span on the sides that are external facing.
@@ -333,21 +613,22 @@ public final class ContourSetBuilder
      * <p>WARNING: Only run this operation on spans that are already known
      * to be on a region edge. The direction must also be pointing to a
      * valid edge.  Otherwise behavior will be undefined.</p>
+     * @param field The field the contour is being built from.
+     * @param edgeFlags The edge flags for each span in the field.  The
+     * flags are cleared for each edge added to the contour.
      * @param startSpan A span that is known to be on the edge of a region.
      * (Part of a region contour.)
-     * @param startWidthIndex The width index of the starting span.
-     * @param startDepthIndex The depth index of the starting span.
      * @param startDirection The direction of the edge of the span that is
      * known to point
      * across the region edge.
      * @param outContourVerts The list of vertices that represent the edge
      * of the region. (Plus region information.)
      */
-    private void buildRawContours(OpenHeightSpan startSpan
-            , int startWidthIndex
-            , int startDepthIndex
+    private static void buildRawContours(CompactOpenHeightfield field
+            , int[] edgeFlags
+            , int startSpan
             , int startDirection
-            , ArrayList<Integer> outContourVerts)
+            , IntList outContourVerts)
     {
         
         /*
@@ -388,10 +669,11 @@ public final class ContourSetBuilder
          */
         
         // Initialize to current span pointing to the edge.
-        OpenHeightSpan span = startSpan;
+        int span = startSpan;
         int dir = startDirection;
-        int spanX = startWidthIndex;
-        int spanZ = startDepthIndex;
+        final int startCell = field.spanCell(startSpan);
+        int spanX = startCell / field.depth();
+        int spanZ = startCell % field.depth();
         
         int loopCount = 0;
         /*
@@ -409,13 +691,13 @@ public final class ContourSetBuilder
             // will always reference an edge span from the same region as
             // the start span.
                 
-            if ((span.flags & (1 << dir)) != 0)
+            if ((edgeFlags[span] & (1 << dir)) != 0)
             {
                 
                 // The current direction is pointing toward an edge.
                 // Get this edge's vertex.
                 int px = spanX;
-                final int py = getCornerHeight(span, dir);
+                final int py = getCornerHeight(field, span, dir);
                 int pz = spanZ;
                 /*
                  * Update the px and pz values based on current direction.
@@ -431,11 +713,11 @@ public final class ContourSetBuilder
                 }
                 // Default in case no neighbor.
                 int regionThisDirection = NULL_REGION;
-                final OpenHeightSpan nSpan = span.getNeighbor(dir);
-                if (nSpan != null)
+                final int nSpan = field.getNeighbor(span, dir);
+                if (nSpan != NULL_SPAN)
                     // There is a neighbor in this direction.
                     // Get its region ID.
-                    regionThisDirection = nSpan.regionID();
+                    regionThisDirection = field.regionID(nSpan);
                 // Add the vertex to the contour.
                 outContourVerts.add(px);
                 outContourVerts.add(py);
@@ -444,7 +726,7 @@ public final class ContourSetBuilder
                 
                 // Remove the flag for this edge.  We never need to consider
                 // it again since we have a vertex for this edge.
-                span.flags &= ~(1 << dir);
+                edgeFlags[span] &= ~(1 << dir);
                 dir = (dir+1) & 0x3; // Rotate in clockwise direction.
             }
             else
@@ -457,7 +739,7 @@ public final class ContourSetBuilder
                  * By moving the direction back one increment we guarantee we
                  * don't miss any edges.
                  */
-                span = span.getNeighbor(dir);
+                span = field.getNeighbor(span, dir);
                 // Update the span index based on the direction traveled to
                 // get to this neighbor.
                 switch(dir)
@@ -486,17 +768,22 @@ public final class ContourSetBuilder
      * <li>For any edges that connect to non-null regions, remove all
      * vertices except the start and end vertices for that edge.  (This
      * smoothes the edges between non-null regions into a straight line.)</li>
+     * <li>Keeps all vertices which lie on the tile boundary.</li>
      * <li>Runs all algorithm's in {@link #mAlgorithms} against the contour.<li>
      * </ul>
      * @param regionID The region the contour was derived from.
+     * @param field The field the contour was derived from.
+     * @param borderSize The width of the field's tile border. (Cells.)
      * @param sourceVerts  The source vertices that represent the complex
      * contour in the form (x, y, z, regionID)
      * @param outVerts The simplified contour vertices in the form:
      * (x, y, z, regionID)
      */
     private void generateSimplifiedContour(int regionID
-            , ArrayList<Integer> sourceVerts
-            , ArrayList<Integer> outVerts)
+            , CompactOpenHeightfield field
+            , int borderSize
+            , IntList sourceVerts
+            , IntList outVerts)
     {
         /*
          * NOTE: In the output list, the forth field in each vertex contains
@@ -557,16 +844,25 @@ public final class ContourSetBuilder
                     uri = pVert / 4;
                 }
             }
-            // Seed the simplified contour with this edge.
-            outVerts.add(llx);
-            outVerts.add(lly);
-            outVerts.add(llz);
-            outVerts.add(lli);
-            
-            outVerts.add(urx);
-            outVerts.add(ury);
-            outVerts.add(urz);
-            outVerts.add(uri);
+            // Seed the simplified contour with this edge, plus the tile
+            // boundary vertices.  Order is important.
+            for (int iVert = 0, vCount = sourceVerts.size() / 4
+                    ; iVert < vCount
+                    ; iVert++)
+            {
+                if (iVert == lli
+                        || iVert == uri
+                        || isTileBoundaryVertex(field
+                                , borderSize
+                                , sourceVerts.get(iVert*4)
+                                , sourceVerts.get(iVert*4+2)))
+                {
+                    outVerts.add(sourceVerts.get(iVert*4));
+                    outVerts.add(sourceVerts.get(iVert*4+1));
+                    outVerts.add(sourceVerts.get(iVert*4+2));
+                    outVerts.add(iVert);
+                }
+            }
         }
         else
         {
@@ -575,18 +871,22 @@ public final class ContourSetBuilder
              * Seed the simplified contour with a new vertex for every
              * location where the region connection changes.  These are
              * vertices that are important because they represent portals
-             * to other regions.
+             * to other regions.  The tile boundary vertices are also
+             * mandatory.
              */
             for (int iVert = 0, vCount = sourceVerts.size() / 4
                     ; iVert < vCount
                     ; iVert++)
             {
-                if (!sourceVerts.get(iVert*4+3)
-                        .equals(sourceVerts.get(((iVert+1)%vCount)*4+3))
-                    )
+                if (sourceVerts.get(iVert*4+3)
+                        != sourceVerts.get(((iVert+1)%vCount)*4+3)
+                    || isTileBoundaryVertex(field
+                            , borderSize
+                            , sourceVerts.get(iVert*4)
+                            , sourceVerts.get(iVert*4+2)))
                 {
                     // The current vertex has a different region than the
-                    // next vertex.  So there is a change in vertex region.
+                    // next vertex, or is on the tile boundary.
                     outVerts.add(sourceVerts.get(iVert*4));
                     outVerts.add(sourceVerts.get(iVert*4+1));
                     outVerts.add(sourceVerts.get(iVert*4+2));
@@ -611,9 +911,23 @@ public final class ContourSetBuilder
         
         // Run all post processing algorithms.  These will build the final
         // simplified contour from the seeded edges.
-        for (IContourAlgorithm algorithm : mAlgorithms)
+        for (IPrimitiveContourAlgorithm algorithm : mAlgorithms)
         {
+            final BuildEvents.ContourAlgorithmEvent event =
+                new BuildEvents.ContourAlgorithmEvent();
+            event.begin();
             algorithm.apply(sourceVerts, outVerts);
+            if (event.shouldCommit())
+            {
+                // Report wrapped algorithms by their own name.
+                event.algorithm = (algorithm instanceof ContourAlgorithmAdapter
+                        ? ((ContourAlgorithmAdapter)algorithm).algorithm()
+                        : algorithm).getClass().getName();
+                event.region = regionID;
+                event.sourceVertices = sourceVerts.size() / 4;
+                event.resultVertices = outVerts.size() / 4;
+                event.commit();
+            }
         }
         
         if (outVerts.size() < 12)
@@ -728,11 +1042,29 @@ public final class ContourSetBuilder
      * when detail is added back to a simplified contour.
      * <p>This is required to prevent triangluation failures later in
      * the pipeline.</p>
+     * <p>Boxed list form of the operation.  The content of the list is
+     * replaced with the result.</p>
      * @param regionID The region the contour was derived from.
      * @param verts  Contour vertices in the following form: (x, y, z, regionID)
      */
     static void removeIntersectingSegments(int regionID
             , ArrayList<Integer> verts)
+    {
+        final IntList working = ContourAlgorithmAdapter.toIntList(verts);
+        removeIntersectingSegments(regionID, working);
+        ContourAlgorithmAdapter.copy(working, verts);
+    }
+
+    /**
+     * Removes segments that intersect with region portal segments.
+     * This can occur along the height axis in certain region configurations
+     * when detail is added back to a simplified contour.
+     * <p>This is required to prevent triangluation failures later in
+     * the pipeline.</p>
+     * @param regionID The region the contour was derived from.
+     * @param verts  Contour vertices in the following form: (x, y, z, regionID)
+     */
+    static void removeIntersectingSegments(int regionID, IntList verts)
     {
         
         /* Dev Notes:
@@ -779,10 +1111,28 @@ public final class ContourSetBuilder
      * duplicate (x, z) coordinates.
      * <p>This is required to prevent triangluation failures later in
      * the pipeline.</p>
+     * <p>Boxed list form of the operation.  The content of the list is
+     * replaced with the result.</p>
      * @param regionID The region the contour was derived from.
      * @param verts  Contour vertices in the following form: (x, y, z, regionID)
      */
     static void removeVerticalSegments(int regionID, ArrayList<Integer> verts)
+    {
+        final IntList working = ContourAlgorithmAdapter.toIntList(verts);
+        removeVerticalSegments(regionID, working);
+        ContourAlgorithmAdapter.copy(working, verts);
+    }
+
+    /**
+     * Merges segments such that no vertical segments exist.
+     * A vertical segment is a segment comprised of end points with
+     * duplicate (x, z) coordinates.
+     * <p>This is required to prevent triangluation failures later in
+     * the pipeline.</p>
+     * @param regionID The region the contour was derived from.
+     * @param verts  Contour vertices in the following form: (x, y, z, regionID)
+     */
+    static void removeVerticalSegments(int regionID, IntList verts)
     {
         /*
          * Design Notes:
@@ -811,14 +1161,11 @@ public final class ContourSetBuilder
         for (int pVert = 0 ; pVert < verts.size();)
         {
             int pNextVert = (pVert+4)%verts.size();
-            if (verts.get(pVert).equals(verts.get(pNextVert)) &&
-                    verts.get(pVert+2).equals(verts.get(pNextVert+2)))
+            if (verts.get(pVert) == verts.get(pNextVert) &&
+                    verts.get(pVert+2) == verts.get(pNextVert+2))
             {
                 // This segment represents a vertical line.
-                verts.remove(pNextVert);
-                verts.remove(pNextVert); // +1
-                verts.remove(pNextVert); // +2
-                verts.remove(pNextVert); // +3
+                verts.removeRange(pNextVert, pNextVert + 4);
                 logger.warning("Contour detail lost: Removed a vertical"
                         + " segment from contour. Region: " + regionID);
             }
@@ -831,12 +1178,15 @@ public final class ContourSetBuilder
     /**
      * Finds the correct height to use for a particular span vertex.
      * (The vertex to the the right (clockwise) of the specified direction.)
+     * @param field The field containing the span.
      * @param span A span on a region edge.
      * @param direction  A direction that points to a neighbor in a different
      * region. (I.e. Crosses the border to a new region.)
      * @return The height (y-value) to use for the vertex for this edge.
      */
-    static private int getCornerHeight(OpenHeightSpan span, int direction)
+    static private int getCornerHeight(CompactOpenHeightfield field
+            , int span
+            , int direction)
     {
         
         /*
@@ -855,45 +1205,67 @@ public final class ContourSetBuilder
          */
         
         // Default height to the current floor.
-        int maxFloor = span.floor();
+        int maxFloor = field.floor(span);
         
         // The diagonal neighbor span to this corner.
-        OpenHeightSpan dSpan = null;
+        int dSpan = NULL_SPAN;
         
         // Rotate clockwise from original direction.
         int directionOffset = (direction + 1) & 0x3;
         
         // Check axis neighbor in current direction.
-        OpenHeightSpan nSpan = span.getNeighbor(direction);
-        if (nSpan != null)
+        int nSpan = field.getNeighbor(span, direction);
+        if (nSpan != NULL_SPAN)
         {
             // Select for maximum floor using this neighbor.
-            maxFloor = Math.max(maxFloor, nSpan.floor());
+            maxFloor = Math.max(maxFloor, field.floor(nSpan));
             // Get diagonal neighbor.  (By looking clockwise from this
             // neighbor.)
-            dSpan = nSpan.getNeighbor(directionOffset);
+            dSpan = field.getNeighbor(nSpan, directionOffset);
         }
         // Check original span's axis-neighbor in clockwise direction.
-        nSpan = span.getNeighbor(directionOffset);
-        if (nSpan != null)
+        nSpan = field.getNeighbor(span, directionOffset);
+        if (nSpan != NULL_SPAN)
         {
             // Select for maximum floor using this neighbor.
-            maxFloor = Math.max(maxFloor, nSpan.floor());
-            if (dSpan == null)
+            maxFloor = Math.max(maxFloor, field.floor(nSpan));
+            if (dSpan == NULL_SPAN)
                 // Haven't found the diagonal neighbor yet.
                 // Try to get it by looking counter-clockwise
                 // from this neighbor.
-                dSpan = nSpan.getNeighbor(direction);
+                dSpan = field.getNeighbor(nSpan, direction);
         }
         
-        if (dSpan != null)
+        if (dSpan != NULL_SPAN)
             // The diagonal neighbor was found.
             // Select for maximum floor using this neighbor.
-            maxFloor = Math.max(maxFloor, dSpan.floor());
+            maxFloor = Math.max(maxFloor, field.floor(dSpan));
     
         return maxFloor;
     }
     
+    /**
+     * Indicates whether a contour vertex lies on the inner edge of the
+     * tile border of a field.
+     * @param field The field the contour was derived from.
+     * @param borderSize The width of the field's tile border. (Cells.)
+     * @param x The x-value of the vertex.  (Field cells.)
+     * @param z The z-value of the vertex.  (Field cells.)
+     * @return TRUE if the field has a border and the vertex is on its
+     * inner edge.
+     */
+    private static boolean isTileBoundaryVertex(CompactOpenHeightfield field
+            , int borderSize
+            , int x
+            , int z)
+    {
+        return borderSize > 0
+            && (x == borderSize
+                    || z == borderSize
+                    || x == field.width() - borderSize
+                    || z == field.depth() - borderSize);
+    }
+
     /**
      * Removes any null region segments that intersect with the
      * specified edge.
@@ -914,7 +1286,7 @@ public final class ContourSetBuilder
      */
     private static int removeIntersectingSegments(int startVertIndex
             , int endVertIndex
-            , ArrayList<Integer> verts)
+            , IntList verts)
     {
         
         if (verts.size() < 16)
@@ -957,10 +1329,7 @@ public final class ContourSetBuilder
                     , verts.get(iVert*4+2)))
             {
                 // Remove the null region segment.
-                verts.remove(iVert*4);
-                verts.remove(iVert*4); // +1
-                verts.remove(iVert*4); // +2
-                verts.remove(iVert*4); // +3
+                verts.removeRange(iVert*4, iVert*4 + 4);
                 if (iVert < startVertIndex || iVert < endVertIndex)
                 {
                     // The removed vertex was stored before the line
@@ -0,0 +1,902 @@
+/*
+ * Copyright (c) 2010 Stephen A. Pratt
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.critterai.nmgen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Builds constrained Delaunay triangulations of convex polygons on the
+ * (x, z) plane using incremental insertion. (Bowyer-Watson)
+ * <p>Vertices can be inserted after the triangulation is built, so a
+ * triangulation can be refined one vertex at a time without rebuilding
+ * it.</p>
+ * <p>Instances are not thread safe.  Each thread must use its own
+ * instance.</p>
+ * @see <a href="http://en.wikipedia.org/wiki/Bowyer-Watson_algorithm"
+ * target="_parent">Bowyer-Watson algorithm</a>
+ */
+final class DelaunayTriangulator
+{
+
+    /*
+     * Design notes:
+     * 
+     * All storage is primitive.  Each triangle is stored as three vertex
+     * indices wrapped counter-clockwise on the (x, z) plane, along with
+     * the index of the neighbor triangle across each of its edges and a
+     * constraint flag for each of its edges.
+     * Edge n of a triangle runs from vertex n to vertex (n+1)%3.
+     * Triangles removed during insertion are placed on a free list and
+     * their slots re-used.
+     * 
+     * The first three vertices are the corners of a super triangle that
+     * encloses all vertices.  Source vertex n is stored at index n + 3.
+     * Triangles that use a super triangle vertex are not part of the
+     * output.
+     * 
+     * Insertion locates the triangle containing the new vertex by walking
+     * from the most recently created triangle, then grows the cavity of
+     * triangles whose circumcircles contain the vertex through the neighbor
+     * links.  So the cost of an insertion depends on the size of the
+     * change rather than the size of the triangulation.
+     * 
+     * Sampled polygon edges are only collinear to within floating point
+     * error, so a hull edge is not always a Delaunay edge.  After the
+     * vertices are inserted, missing hull edges are recovered by flipping
+     * the edges that cross them.  All hull edges are then marked as
+     * constrained.  Later insertions never grow a cavity across a
+     * constrained edge, or into a super triangle, so the hull is preserved.
+     * Output triangles are those that can't be reached from the super
+     * triangle without crossing a constrained edge.
+     * 
+     * Coordinates are held as doubles to keep the orientation tests close
+     * to exact for float input.  The circumcircle test is evaluated
+     * relative to the test point rather than from a cached center and
+     * radius, since the thin triangles along sampled edges have huge
+     * circumcircles.  As a last line of defense, an insertion whose cavity
+     * boundary is not simple is rejected rather than corrupting the
+     * triangulation.
+     */
+
+    /**
+     * Indicates the lack of a triangle.  (E.g. No neighbor.)
+     */
+    static final int NONE = -1;
+
+    /**
+     * The number of super triangle vertices.
+     */
+    private static final int SUPER_VERTS = 3;
+
+    /**
+     * The size of the super triangle relative to the size of the vertex
+     * bounds.
+     */
+    private static final double SUPER_SCALE = 1e4;
+
+    /**
+     * The maximum number of flips allowed per crossing edge while
+     * recovering a hull edge.
+     */
+    private static final int MAX_FLIPS = 32;
+
+    /*
+     * Vertex data.  Includes the super triangle vertices.
+     */
+    private double[] mX = new double[64];
+    private double[] mZ = new double[64];
+    // A triangle which uses the vertex.
+    private int[] mVertTris = new int[64];
+    private int mVertCount = 0;
+
+    /*
+     * Triangle data. Three values per triangle for each array, except
+     * for the constraints, which hold one bit per edge.
+     * Dead triangles have a first vertex of NONE.
+     */
+    private int[] mTriVerts = new int[64 * 3];
+    private int[] mTriNeighbors = new int[64 * 3];
+    private int[] mTriConstraints = new int[64];
+    private int mTriSlotCount = 0;
+    private final IntList mFreeTris = new IntList(64);
+
+    /**
+     * The most recently created triangle.  The start of location walks.
+     */
+    private int mLastTri = NONE;
+
+    /**
+     * If TRUE, insertions are restricted to the hull of the built
+     * vertices.
+     */
+    private boolean mHullLocked = false;
+
+    /*
+     * Working data.
+     */
+    private int[] mTriMarks = new int[64];
+    private int[] mVertMarks = new int[64];
+    private int mMark = 0;
+    private final IntList mStack = new IntList(32);
+    // The triangles removed and created by the last insertion.
+    private final IntList mCavity = new IntList(32);
+    private final IntList mCreated = new IntList(32);
+    // Boundary edges in the form (vertA, vertB, outerTriangle, constrained).
+    private final IntList mBoundary = new IntList(128);
+    // The new triangle whose boundary edge starts/ends at each vertex.
+    private int[] mFanStart = new int[64];
+    private int[] mFanEnd = new int[64];
+    // Edges to flip in the form (vertA, vertB).
+    private final IntList mCrossing = new IntList(32);
+
+    /**
+     * Builds the triangulation of a polygon, replacing the existing
+     * triangulation.
+     * @param verts The vertices in the form (x, y, z).  Only the (x, z)
+     * values are used.
+     * @param vertCount The number of vertices to triangulate.
+     * @param hull The indices of the polygon's hull vertices.  The hull must
+     * be convex, or very nearly so, and contain all of the vertices.
+     * Either wrapping direction is allowed.
+     * @param hullCount The number of indices in the hull.
+     * @return TRUE if the triangulation contains all hull edges.  FALSE
+     * if a hull edge could not be recovered, in which case the
+     * triangulation should not be used.  (E.g. The hull contains
+     * duplicate vertices.)
+     */
+    boolean build(float[] verts, int vertCount, int[] hull, int hullCount)
+    {
+        mVertCount = 0;
+        mTriSlotCount = 0;
+        mFreeTris.clear();
+        mLastTri = NONE;
+        mHullLocked = false;
+        mCavity.clear();
+        mCreated.clear();
+
+        // Build the super triangle.
+        double minX = Double.MAX_VALUE;
+        double minZ = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxZ = -Double.MAX_VALUE;
+        for (int iVert = 0; iVert < vertCount; iVert++)
+        {
+            minX = Math.min(minX, verts[iVert*3]);
+            minZ = Math.min(minZ, verts[iVert*3+2]);
+            maxX = Math.max(maxX, verts[iVert*3]);
+            maxZ = Math.max(maxZ, verts[iVert*3+2]);
+        }
+        final double centerX = (minX + maxX) / 2;
+        final double centerZ = (minZ + maxZ) / 2;
+        final double size = SUPER_SCALE
+                * Math.max(1, Math.max(maxX - minX, maxZ - minZ));
+        addVert(centerX - size, centerZ - size);
+        addVert(centerX + size, centerZ - size);
+        addVert(centerX, centerZ + size);
+        final int tri = allocTriangle();
+        setTriangle(tri, 0, 1, 2);
+        mLastTri = tri;
+
+        // Failed vertices keep their index, since the hull references
+        // vertices by index.
+        for (int iVert = 0; iVert < vertCount; iVert++)
+            insertVert(addVert(verts[iVert*3], verts[iVert*3+2]));
+
+        for (int iHullVertB = 0, iHullVertA = hullCount - 1
+                ; iHullVertB < hullCount
+                ; iHullVertA = iHullVertB++)
+        {
+            if (!recoverEdge(hull[iHullVertA] + SUPER_VERTS
+                    , hull[iHullVertB] + SUPER_VERTS))
+                return false;
+        }
+        mHullLocked = true;
+        return true;
+    }
+
+    /**
+     * The number of triangles created by the last insertion.
+     */
+    int createdCount() { return mCreated.size(); }
+
+    /**
+     * The index of a triangle created by the last insertion.
+     * @param index A value between zero and {@link #createdCount()}.
+     */
+    int createdTriangle(int index) { return mCreated.get(index); }
+
+    /**
+     * Finds the triangle that contains a point.
+     * @param x The x-value of the point.
+     * @param z The z-value of the point.
+     * @param startTri The triangle to start the search from, or
+     * {@link #NONE} to start from the most recently created triangle.
+     * Searches are fastest when starting near the point.
+     * @return The triangle that contains the point, or {@link #NONE} if the
+     * point is not inside the hull of the triangulation.
+     */
+    int findTriangle(float x, float z, int startTri)
+    {
+        final int tri = locate(x, z, startTri == NONE ? mLastTri : startTri);
+        if (tri == NONE || usesSuperVert(tri))
+            return NONE;
+        return tri;
+    }
+
+    /**
+     * Gets the output triangles.
+     * <p>The triangles are wrapped clockwise, as seen from above, with
+     * indices that refer to the source vertices.  Triangles with no area
+     * are discarded.  Very thin triangles are kept since they may be the
+     * only triangles that hold a hull edge.</p>
+     * @param outTriangles The triangles inside the hull in the form
+     * (vertAIndex, vertBIndex, vertCIndex).  The list is cleared before use.
+     */
+    void getTriangles(ArrayList<Integer> outTriangles)
+    {
+        outTriangles.clear();
+
+        // Flood the outside of the hull, starting at the super triangle.
+        nextMark();
+        mStack.clear();
+        for (int tri = 0; tri < mTriSlotCount; tri++)
+        {
+            if (mTriVerts[tri*3] != NONE && usesSuperVert(tri))
+            {
+                mTriMarks[tri] = mMark;
+                mStack.add(tri);
+            }
+        }
+        while (mStack.size() > 0)
+        {
+            final int tri = pop(mStack);
+            for (int i = 0; i < 3; i++)
+            {
+                final int nTri = mTriNeighbors[tri*3+i];
+                if (nTri == NONE
+                        || mTriMarks[nTri] == mMark
+                        || isConstrained(tri, i))
+                    continue;
+                mTriMarks[nTri] = mMark;
+                mStack.add(nTri);
+            }
+        }
+
+        for (int tri = 0; tri < mTriSlotCount; tri++)
+        {
+            if (mTriVerts[tri*3] == NONE || mTriMarks[tri] == mMark)
+                // Dead, or outside the hull.
+                continue;
+            final int a = mTriVerts[tri*3];
+            final int b = mTriVerts[tri*3+1];
+            final int c = mTriVerts[tri*3+2];
+            if (getOrientation(a, b, mX[c], mZ[c]) <= 0)
+                continue;
+            // Reverse to clockwise wrapping.
+            outTriangles.add(a - SUPER_VERTS);
+            outTriangles.add(c - SUPER_VERTS);
+            outTriangles.add(b - SUPER_VERTS);
+        }
+    }
+
+    /**
+     * Gets a vertex of a triangle.
+     * @param tri The index of the triangle.
+     * @param index The vertex of the triangle. (0, 1, or 2)  Counter-clockwise
+     * wrapped.
+     * @return The index of the source vertex, or a negative value for a
+     * super triangle vertex.
+     */
+    int getVert(int tri, int index)
+    {
+        return mTriVerts[tri*3+index] - SUPER_VERTS;
+    }
+
+    /**
+     * Inserts a vertex into the triangulation.
+     * <p>Vertices must be inserted in index order.  After the build, the
+     * vertex must be inside the hull.  Hull edges are preserved.</p>
+     * @param verts The vertices in the form (x, y, z).
+     * @param vertIndex The index of the vertex to insert.  Must be the
+     * index after the last vertex built or inserted.
+     * @return TRUE if the vertex was added to the triangulation.  FALSE if
+     * the vertex is a duplicate or is outside the hull, in which case the
+     * vertex is discarded and its index is used by the next insertion.
+     */
+    boolean insert(float[] verts, int vertIndex)
+    {
+        final int vert = addVert(verts[vertIndex*3], verts[vertIndex*3+2]);
+        if (insertVert(vert))
+            return true;
+        // Release the vertex so that the indices stay in step with the
+        // caller's vertices.
+        mVertCount--;
+        return false;
+    }
+
+    /**
+     * The number of triangles removed by the last insertion.
+     */
+    int removedCount() { return mCavity.size(); }
+
+    /**
+     * The index of a triangle removed by the last insertion.  The index
+     * may have been re-used by a created triangle.
+     * @param index A value between zero and {@link #removedCount()}.
+     */
+    int removedTriangle(int index) { return mCavity.get(index); }
+
+    /**
+     * The number of triangle slots in use, including dead slots.
+     * Triangle indices are always less than this value.
+     */
+    int triangleSlotCount() { return mTriSlotCount; }
+
+    /**
+     * Adds a vertex, growing the vertex storage as needed.
+     * @return The index of the new vertex.
+     */
+    private int addVert(double x, double z)
+    {
+        if (mVertCount == mX.length)
+        {
+            final int capacity = mVertCount * 2;
+            mX = Arrays.copyOf(mX, capacity);
+            mZ = Arrays.copyOf(mZ, capacity);
+            mVertTris = Arrays.copyOf(mVertTris, capacity);
+            mVertMarks = Arrays.copyOf(mVertMarks, capacity);
+            mFanStart = Arrays.copyOf(mFanStart, capacity);
+            mFanEnd = Arrays.copyOf(mFanEnd, capacity);
+        }
+        mX[mVertCount] = x;
+        mZ[mVertCount] = z;
+        mVertTris[mVertCount] = NONE;
+        mVertMarks[mVertCount] = 0;
+        return mVertCount++;
+    }
+
+    /**
+     * Gets a triangle slot, re-using dead slots when available.
+     * @return The index of the triangle.
+     */
+    private int allocTriangle()
+    {
+        if (mFreeTris.size() > 0)
+            return pop(mFreeTris);
+        if (mTriSlotCount == mTriMarks.length)
+        {
+            final int capacity = mTriSlotCount * 2;
+            mTriVerts = Arrays.copyOf(mTriVerts, capacity * 3);
+            mTriNeighbors = Arrays.copyOf(mTriNeighbors, capacity * 3);
+            mTriConstraints = Arrays.copyOf(mTriConstraints, capacity);
+            mTriMarks = Arrays.copyOf(mTriMarks, capacity);
+        }
+        mTriMarks[mTriSlotCount] = 0;
+        return mTriSlotCount++;
+    }
+
+    /**
+     * Indicates whether the edge (A, B) crosses the segment (U, W).
+     * Edges that share a vertex or only touch do not cross.
+     */
+    private boolean crosses(int vertA, int vertB, int vertU, int vertW)
+    {
+        if (vertU == vertA || vertU == vertB
+                || vertW == vertA || vertW == vertB)
+            return false;
+        final double u = getOrientation(vertA, vertB, mX[vertU], mZ[vertU]);
+        final double w = getOrientation(vertA, vertB, mX[vertW], mZ[vertW]);
+        if (!(u > 0 && w < 0) && !(u < 0 && w > 0))
+            return false;
+        final double a = getOrientation(vertU, vertW, mX[vertA], mZ[vertA]);
+        final double b = getOrientation(vertU, vertW, mX[vertB], mZ[vertB]);
+        return (a > 0 && b < 0) || (a < 0 && b > 0);
+    }
+
+    /**
+     * Finds an edge in either direction.
+     * @return The pointer to the edge in the form (triangle * 3 + edge),
+     * or {@link #NONE} if the edge does not exist.
+     */
+    private int findEdge(int vertA, int vertB)
+    {
+        // Rotate around vertex A.
+        final int startTri = mVertTris[vertA];
+        int tri = startTri;
+        for (int step = 0; tri != NONE && step < mTriSlotCount; step++)
+        {
+            final int i = getVertIndex(tri, vertA);
+            if (mTriVerts[tri*3+(i+1)%3] == vertB)
+                return tri*3 + i;
+            if (mTriVerts[tri*3+(i+2)%3] == vertB)
+                return tri*3 + (i+2)%3;
+            tri = mTriNeighbors[tri*3+(i+2)%3];
+            if (tri == startTri)
+                break;
+        }
+        return NONE;
+    }
+
+    /**
+     * Flips the edge shared by a triangle and its neighbor.  The two
+     * triangles must form a strictly convex quad.
+     * @param tri The triangle.
+     * @param edge The edge of the triangle to flip.
+     */
+    private void flip(int tri, int edge)
+    {
+        final int vertU = mTriVerts[tri*3+edge];
+        final int vertW = mTriVerts[tri*3+(edge+1)%3];
+        final int vertP = mTriVerts[tri*3+(edge+2)%3];
+        final int nTri = mTriNeighbors[tri*3+edge];
+        final int nEdge = getVertIndex(nTri, vertW);
+        final int vertQ = mTriVerts[nTri*3+(nEdge+2)%3];
+
+        final int triPU = mTriNeighbors[tri*3+(edge+2)%3];
+        final int triWP = mTriNeighbors[tri*3+(edge+1)%3];
+        final int triUQ = mTriNeighbors[nTri*3+(nEdge+1)%3];
+        final int triQW = mTriNeighbors[nTri*3+(nEdge+2)%3];
+        final int flagPU = getConstraint(tri, (edge+2)%3);
+        final int flagWP = getConstraint(tri, (edge+1)%3);
+        final int flagUQ = getConstraint(nTri, (nEdge+1)%3);
+        final int flagQW = getConstraint(nTri, (nEdge+2)%3);
+
+        setTriangle(tri, vertP, vertU, vertQ);
+        mTriNeighbors[tri*3] = triPU;
+        mTriNeighbors[tri*3+1] = triUQ;
+        mTriNeighbors[tri*3+2] = nTri;
+        mTriConstraints[tri] = flagPU | (flagUQ << 1);
+
+        setTriangle(nTri, vertQ, vertW, vertP);
+        mTriNeighbors[nTri*3] = triQW;
+        mTriNeighbors[nTri*3+1] = triWP;
+        mTriNeighbors[nTri*3+2] = tri;
+        mTriConstraints[nTri] = flagQW | (flagWP << 1);
+
+        if (triUQ != NONE)
+            replaceNeighbor(triUQ, vertQ, tri);
+        if (triWP != NONE)
+            replaceNeighbor(triWP, vertP, nTri);
+    }
+
+    /**
+     * Gets the constraint flag of a triangle edge. (0 or 1)
+     */
+    private int getConstraint(int tri, int edge)
+    {
+        return (mTriConstraints[tri] >> edge) & 1;
+    }
+
+    /**
+     * Two times the signed area of the triangle (A, B, point).  Positive if
+     * the triangle is wrapped counter-clockwise.
+     */
+    private double getOrientation(int vertA, int vertB, double x, double z)
+    {
+        return (mX[vertB] - mX[vertA]) * (z - mZ[vertA])
+                - (x - mX[vertA]) * (mZ[vertB] - mZ[vertA]);
+    }
+
+    /**
+     * Gets the index (0, 1, or 2) of a vertex within a triangle.
+     */
+    private int getVertIndex(int tri, int vert)
+    {
+        if (mTriVerts[tri*3] == vert)
+            return 0;
+        return mTriVerts[tri*3+1] == vert ? 1 : 2;
+    }
+
+    /**
+     * Indicates whether the point is strictly inside the circumcircle of
+     * the triangle.
+     */
+    private boolean inCircumcircle(int tri, double x, double z)
+    {
+        /*
+         * The circumcircle of a triangle with a single super triangle
+         * vertex is huge, so the test loses all precision for points near
+         * the triangle's real edge.  Such points are common since sampled
+         * polygon edges are collinear.  Use the limit of the circle instead:
+         * The half plane on the super vertex side of the real edge, plus
+         * the interior of the real edge.
+         */
+        for (int i = 0; i < 3; i++)
+        {
+            final int superVert = mTriVerts[tri*3+(i+2)%3];
+            final int vertA = mTriVerts[tri*3+i];
+            final int vertB = mTriVerts[tri*3+(i+1)%3];
+            if (superVert >= SUPER_VERTS
+                    || vertA < SUPER_VERTS
+                    || vertB < SUPER_VERTS)
+                continue;
+            final double orientation = getOrientation(vertA, vertB, x, z);
+            if (orientation != 0)
+                return orientation > 0;
+            // On the edge's line.  Inside only if between the vertices.
+            return (x - mX[vertA]) * (x - mX[vertB])
+                    + (z - mZ[vertA]) * (z - mZ[vertB]) < 0;
+        }
+        final int vertA = mTriVerts[tri*3];
+        final int vertB = mTriVerts[tri*3+1];
+        final int vertC = mTriVerts[tri*3+2];
+        final double adx = mX[vertA] - x;
+        final double adz = mZ[vertA] - z;
+        final double bdx = mX[vertB] - x;
+        final double bdz = mZ[vertB] - z;
+        final double cdx = mX[vertC] - x;
+        final double cdz = mZ[vertC] - z;
+        return (adx * adx + adz * adz) * (bdx * cdz - cdx * bdz)
+                + (bdx * bdx + bdz * bdz) * (cdx * adz - adx * cdz)
+                + (cdx * cdx + cdz * cdz) * (adx * bdz - bdx * adz) > 0;
+    }
+
+    /**
+     * Inserts an added vertex into the triangulation.
+     * @param vert The index of the vertex.  (Including the super triangle
+     * vertices.)
+     * @return TRUE if the vertex was added to the triangulation.
+     */
+    private boolean insertVert(int vert)
+    {
+        final double x = mX[vert];
+        final double z = mZ[vert];
+
+        mCavity.clear();
+        mCreated.clear();
+        final int startTri = locate(x, z, mLastTri);
+        if (startTri == NONE || (mHullLocked && usesSuperVert(startTri)))
+            return false;
+        for (int i = 0; i < 3; i++)
+        {
+            final int tVert = mTriVerts[startTri*3+i];
+            if (mX[tVert] == x && mZ[tVert] == z)
+                // Duplicate vertex.
+                return false;
+        }
+
+        // Find the cavity of triangles whose circumcircles contain the
+        // vertex and record its boundary.
+        nextMark();
+        mStack.clear();
+        mBoundary.clear();
+        mTriMarks[startTri] = mMark;
+        mStack.add(startTri);
+        while (mStack.size() > 0)
+        {
+            final int tri = pop(mStack);
+            mCavity.add(tri);
+            for (int i = 0; i < 3; i++)
+            {
+                final int nTri = mTriNeighbors[tri*3+i];
+                if (nTri != NONE && mTriMarks[nTri] == mMark)
+                    continue;
+                final int a = mTriVerts[tri*3+i];
+                final int b = mTriVerts[tri*3+(i+1)%3];
+                final boolean isConstrained = isConstrained(tri, i);
+                /*
+                 * The neighbor must also be removed if the vertex is not
+                 * strictly inside the edge.  Otherwise the new triangle
+                 * for the edge would be degenerate or inverted.  This keeps
+                 * the cavity star shaped in the face of floating point
+                 * errors.
+                 */
+                final boolean isInside = getOrientation(a, b, x, z) > 0;
+                boolean expand = nTri != NONE
+                        && (!isInside || inCircumcircle(nTri, x, z));
+                if (expand && (isConstrained
+                        || (mHullLocked && usesSuperVert(nTri))))
+                {
+                    if (!isInside)
+                    {
+                        // Outside the hull.
+                        mCavity.clear();
+                        return false;
+                    }
+                    expand = false;
+                }
+                if (expand)
+                {
+                    mTriMarks[nTri] = mMark;
+                    mStack.add(nTri);
+                }
+                else
+                {
+                    if (mVertMarks[a] == mMark)
+                    {
+                        // The cavity boundary touches itself, which can
+                        // only be due to floating point errors.
+                        mCavity.clear();
+                        return false;
+                    }
+                    mVertMarks[a] = mMark;
+                    mBoundary.add(a);
+                    mBoundary.add(b);
+                    mBoundary.add(nTri);
+                    mBoundary.add(isConstrained ? 1 : 0);
+                }
+            }
+        }
+
+        // Replace the cavity with a fan of triangles around the vertex.
+        for (int i = 0; i < mCavity.size(); i++)
+        {
+            final int tri = mCavity.get(i);
+            mTriVerts[tri*3] = NONE;
+            mFreeTris.add(tri);
+        }
+        for (int pEdge = 0; pEdge < mBoundary.size(); pEdge += 4)
+        {
+            final int a = mBoundary.get(pEdge);
+            final int b = mBoundary.get(pEdge+1);
+            final int outerTri = mBoundary.get(pEdge+2);
+            final int tri = allocTriangle();
+            setTriangle(tri, a, b, vert);
+            mTriNeighbors[tri*3] = outerTri;
+            mTriConstraints[tri] = mBoundary.get(pEdge+3);
+            if (outerTri != NONE)
+                replaceNeighbor(outerTri, b, tri);
+            mFanStart[a] = tri;
+            mFanEnd[b] = tri;
+            mCreated.add(tri);
+        }
+        for (int pEdge = 0; pEdge < mBoundary.size(); pEdge += 4)
+        {
+            final int a = mBoundary.get(pEdge);
+            final int b = mBoundary.get(pEdge+1);
+            final int tri = mFanStart[a];
+            // Edge (b, vert) is shared with the triangle starting at b.
+            mTriNeighbors[tri*3+1] = mFanStart[b];
+            // Edge (vert, a) is shared with the triangle ending at a.
+            mTriNeighbors[tri*3+2] = mFanEnd[a];
+            mLastTri = tri;
+        }
+
+        return true;
+    }
+
+    /**
+     * Indicates whether a triangle edge is constrained.
+     */
+    private boolean isConstrained(int tri, int edge)
+    {
+        return ((mTriConstraints[tri] >> edge) & 1) != 0;
+    }
+
+    /**
+     * Indicates whether the point is inside or on the edge of the
+     * triangle.
+     */
+    private boolean isInside(int tri, double x, double z)
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            if (getOrientation(mTriVerts[tri*3+i]
+                    , mTriVerts[tri*3+(i+1)%3]
+                    , x, z) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the triangle containing the point.
+     * @param startTri The triangle to start the walk from.
+     * @return The triangle containing the point, or {@link #NONE} if the
+     * point is outside the triangulation.
+     */
+    private int locate(double x, double z, int startTri)
+    {
+        /*
+         * Walk toward the point, crossing any edge that the point is
+         * on the outside of.  The walk always terminates in a Delaunay
+         * triangulation, but floating point errors and constrained edges
+         * could prevent that.  So the number of steps is limited, with a
+         * full search as the fall back.
+         */
+        int tri = startTri;
+        if (tri != NONE && mTriVerts[tri*3] == NONE)
+            tri = mLastTri;
+        for (int step = 0; tri != NONE && step < mTriSlotCount; step++)
+        {
+            int next = NONE;
+            for (int i = 0; i < 3; i++)
+            {
+                if (getOrientation(mTriVerts[tri*3+i]
+                        , mTriVerts[tri*3+(i+1)%3]
+                        , x, z) < 0)
+                {
+                    next = mTriNeighbors[tri*3+i];
+                    break;
+                }
+            }
+            if (next == NONE)
+            {
+                if (isInside(tri, x, z))
+                    return tri;
+                // Walked out of the triangulation.
+                break;
+            }
+            tri = next;
+        }
+        for (tri = 0; tri < mTriSlotCount; tri++)
+        {
+            if (mTriVerts[tri*3] != NONE && isInside(tri, x, z))
+                return tri;
+        }
+        return NONE;
+    }
+
+    /**
+     * Starts a new marking pass.
+     */
+    private void nextMark()
+    {
+        if (++mMark == Integer.MAX_VALUE)
+        {
+            Arrays.fill(mTriMarks, 0);
+            Arrays.fill(mVertMarks, 0);
+            mMark = 1;
+        }
+    }
+
+    /**
+     * Forces an edge into the triangulation and marks it as constrained.
+     * <p>Edges crossing the new edge are flipped until none remain.
+     * (Sloan's method.)</p>
+     * @return TRUE if the edge is in the triangulation.
+     */
+    private boolean recoverEdge(int vertA, int vertB)
+    {
+        int pEdge = findEdge(vertA, vertB);
+        if (pEdge == NONE)
+        {
+            // Find the crossing edges.  Each edge is only added once.
+            mCrossing.clear();
+            for (int tri = 0; tri < mTriSlotCount; tri++)
+            {
+                if (mTriVerts[tri*3] == NONE)
+                    continue;
+                for (int i = 0; i < 3; i++)
+                {
+                    final int vertU = mTriVerts[tri*3+i];
+                    final int vertW = mTriVerts[tri*3+(i+1)%3];
+                    if (vertU < vertW && crosses(vertA, vertB, vertU, vertW))
+                    {
+                        if (isConstrained(tri, i))
+                            return false;
+                        mCrossing.add(vertU);
+                        mCrossing.add(vertW);
+                    }
+                }
+            }
+            final int maxFlips = MAX_FLIPS * (mCrossing.size() / 2 + 1);
+            for (int pCross = 0, flipCount = 0
+                    ; pCross < mCrossing.size()
+                    ; pCross += 2)
+            {
+                final int vertU = mCrossing.get(pCross);
+                final int vertW = mCrossing.get(pCross+1);
+                final int pCrossEdge = findEdge(vertU, vertW);
+                if (pCrossEdge == NONE)
+                    // Already flipped.
+                    continue;
+                final int tri = pCrossEdge / 3;
+                final int edge = pCrossEdge % 3;
+                final int nTri = mTriNeighbors[pCrossEdge];
+                if (nTri == NONE)
+                    return false;
+                final int vertP = mTriVerts[tri*3+(edge+2)%3];
+                final int vertQ = mTriVerts[nTri*3
+                        + (getVertIndex(nTri, mTriVerts[tri*3+(edge+1)%3])
+                                + 2) % 3];
+                if (++flipCount > maxFlips)
+                    return false;
+                if (getOrientation(vertP, mTriVerts[tri*3+edge]
+                            , mX[vertQ], mZ[vertQ]) > 0
+                        && getOrientation(vertQ, mTriVerts[tri*3+(edge+1)%3]
+                            , mX[vertP], mZ[vertP]) > 0)
+                {
+                    flip(tri, edge);
+                    if (crosses(vertA, vertB, vertP, vertQ))
+                    {
+                        mCrossing.add(vertP);
+                        mCrossing.add(vertQ);
+                    }
+                }
+                else
+                {
+                    // Not convex.  Try again after other flips.
+                    mCrossing.add(vertU);
+                    mCrossing.add(vertW);
+                }
+            }
+            pEdge = findEdge(vertA, vertB);
+            if (pEdge == NONE)
+                return false;
+        }
+        final int tri = pEdge / 3;
+        final int edge = pEdge % 3;
+        mTriConstraints[tri] |= 1 << edge;
+        final int nTri = mTriNeighbors[pEdge];
+        if (nTri != NONE)
+        {
+            final int nEdge = getVertIndex(nTri
+                    , mTriVerts[tri*3+(edge+1)%3]);
+            mTriConstraints[nTri] |= 1 << nEdge;
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the neighbor across the edge of a triangle that starts
+     * at a vertex.
+     * @param tri The triangle to update.
+     * @param vert The vertex that starts the edge.
+     * @param neighbor The new neighbor.
+     */
+    private void replaceNeighbor(int tri, int vert, int neighbor)
+    {
+        mTriNeighbors[tri*3+getVertIndex(tri, vert)] = neighbor;
+    }
+
+    /**
+     * Sets the vertices of a triangle.
+     * The vertices must be wrapped counter-clockwise.  Neighbors and
+     * constraints are cleared.
+     */
+    private void setTriangle(int tri, int vertA, int vertB, int vertC)
+    {
+        mTriVerts[tri*3] = vertA;
+        mTriVerts[tri*3+1] = vertB;
+        mTriVerts[tri*3+2] = vertC;
+        mTriNeighbors[tri*3] = NONE;
+        mTriNeighbors[tri*3+1] = NONE;
+        mTriNeighbors[tri*3+2] = NONE;
+        mTriConstraints[tri] = 0;
+        mVertTris[vertA] = tri;
+        mVertTris[vertB] = tri;
+        mVertTris[vertC] = tri;
+    }
+
+    /**
+     * Indicates whether the triangle uses a super triangle vertex.
+     */
+    private boolean usesSuperVert(int tri)
+    {
+        return mTriVerts[tri*3] < SUPER_VERTS
+                || mTriVerts[tri*3+1] < SUPER_VERTS
+                || mTriVerts[tri*3+2] < SUPER_VERTS;
+    }
+
+    /**
+     * Removes and returns the last value in a list.
+     */
+    private static int pop(IntList list)
+    {
+        final int value = list.get(list.size() - 1);
+        list.removeRange(list.size() - 1, list.size());
+        return value;
+    }
+
+}
@@ -23,10 +23,13 @@ package org.critterai.nmgen;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Logger;
 
 /**
- * Builds an triangle mesh from {@link OpenHeightfield } and
+ * Builds an triangle mesh from {@link CompactOpenHeightfield} and
  * {@link PolyMeshField} data.  The polygon mesh field is triangulated and
  * detail added as needed to match the surface of the  mesh to the surface
  * defined in the open heightfield.
@@ -53,6 +56,21 @@ public final class DetailMeshBuilder
      * Not adding configuration getters until they are needed.
      * Never add setters.  Configuration should remain immutable to keep
      * the class thread friendly.
+     * 
+     * Each polygon is detailed independently.  The heightfield is only
+     * read, and the height patch and working lists are confined to the
+     * thread processing the polygon.  So parallel builds split the
+     * polygons into ranges which are processed by separate tasks.  The
+     * results of the ranges are appended to the mesh in polygon order, so
+     * the mesh is identical to one built on a single thread.
+     * 
+     * When incremental triangulation is enabled, interior samples are
+     * added greedily.  Each sample is assigned to the triangle that
+     * contains it and each triangle's worst sample is kept in a priority
+     * queue.  An insertion only changes the triangles in its cavity, so
+     * only the samples in those triangles are re-evaluated.  The sample
+     * selected on each iteration is the same one a search of all samples
+     * against the full mesh would select.
      */
     
     /*
@@ -200,9 +218,187 @@ public final class DetailMeshBuilder
         
     }
     
+    /**
+     * Details a range of polygons.
+     */
+    private final class DetailPolysTask
+        extends RecursiveAction
+    {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final PolyMeshField mSourceMesh;
+        private final CompactOpenHeightfield mHeightField;
+        private final int[] mPolyXZBounds;
+        private final int mMaxPolyWidth;
+        private final int mMaxPolyDepth;
+        private final int mPolyMin;
+        private final int mPolyMax;
+        
+        private final ArrayList<Float> mVerts = new ArrayList<Float>();
+        private final ArrayList<Integer> mTriangles = new ArrayList<Integer>();
+        
+        private int mSampleCount = 0;
+        
+        private DetailPolysTask(PolyMeshField sourceMesh
+                , CompactOpenHeightfield heightField
+                , int[] polyXZBounds
+                , int maxPolyWidth
+                , int maxPolyDepth
+                , int polyMin
+                , int polyMax)
+        {
+            mSourceMesh = sourceMesh;
+            mHeightField = heightField;
+            mPolyXZBounds = polyXZBounds;
+            mMaxPolyWidth = maxPolyWidth;
+            mMaxPolyDepth = maxPolyDepth;
+            mPolyMin = polyMin;
+            mPolyMax = polyMax;
+        }
+        
+        @Override
+        protected void compute()
+        {
+            mSampleCount = buildPolys(mSourceMesh
+                    , mHeightField
+                    , mPolyXZBounds
+                    , mMaxPolyWidth
+                    , mMaxPolyDepth
+                    , mPolyMin
+                    , mPolyMax
+                    , mVerts
+                    , mTriangles);
+        }
+    }
+    
+    /**
+     * A priority queue of interior detail samples.
+     * <p>The head of the queue is the sample farthest from the mesh.  Ties
+     * are resolved in favor of the lowest sample index.</p>
+     * <p>Each entry records the stamp of the triangle which contains the
+     * sample.  A triangle's stamp changes whenever the triangle changes.
+     * So an entry is only valid if its stamp matches the current triangle
+     * stamp.</p>
+     */
+    private static final class SampleQueue
+    {
+        
+        private float[] mDistance = new float[64];
+        private int[] mSample = new int[64];
+        private int[] mTriangle = new int[64];
+        private int[] mStamp = new int[64];
+        private int mSize = 0;
+        
+        private int headSample() { return mSample[0]; }
+        
+        private int headStamp() { return mStamp[0]; }
+        
+        private int headTriangle() { return mTriangle[0]; }
+        
+        private boolean isEmpty() { return mSize == 0; }
+        
+        /**
+         * Removes the head of the queue.
+         */
+        private void pop()
+        {
+            mSize--;
+            if (mSize == 0)
+                return;
+            move(mSize, 0);
+            // Sift down.
+            int i = 0;
+            while (true)
+            {
+                final int left = i * 2 + 1;
+                if (left >= mSize)
+                    break;
+                int child = left;
+                if (left + 1 < mSize && isBefore(left + 1, left))
+                    child = left + 1;
+                if (!isBefore(child, i))
+                    break;
+                swap(child, i);
+                i = child;
+            }
+        }
+        
+        /**
+         * Adds a sample to the queue.
+         * @param distance The distance of the sample from the mesh.
+         * @param sample The index of the sample.
+         * @param triangle The triangle that contains the sample.
+         * @param stamp The current stamp of the triangle.
+         */
+        private void push(float distance, int sample, int triangle, int stamp)
+        {
+            if (mSize == mSample.length)
+            {
+                mDistance = Arrays.copyOf(mDistance, mSize * 2);
+                mSample = Arrays.copyOf(mSample, mSize * 2);
+                mTriangle = Arrays.copyOf(mTriangle, mSize * 2);
+                mStamp = Arrays.copyOf(mStamp, mSize * 2);
+            }
+            mDistance[mSize] = distance;
+            mSample[mSize] = sample;
+            mTriangle[mSize] = triangle;
+            mStamp[mSize] = stamp;
+            // Sift up.
+            int i = mSize;
+            mSize++;
+            while (i > 0)
+            {
+                final int parent = (i - 1) / 2;
+                if (!isBefore(i, parent))
+                    break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+        
+        private boolean isBefore(int i, int j)
+        {
+            if (mDistance[i] != mDistance[j])
+                return mDistance[i] > mDistance[j];
+            return mSample[i] < mSample[j];
+        }
+        
+        private void move(int from, int to)
+        {
+            mDistance[to] = mDistance[from];
+            mSample[to] = mSample[from];
+            mTriangle[to] = mTriangle[from];
+            mStamp[to] = mStamp[from];
+        }
+        
+        private void swap(int i, int j)
+        {
+            final float distance = mDistance[i];
+            mDistance[i] = mDistance[j];
+            mDistance[j] = distance;
+            swap(mSample, i, j);
+            swap(mTriangle, i, j);
+            swap(mStamp, i, j);
+        }
+        
+        private static void swap(int[] values, int i, int j)
+        {
+            final int temp = values[i];
+            values[i] = values[j];
+            values[j] = temp;
+        }
+    }
+    
     private static final Logger logger =
         Logger.getLogger(DetailMeshBuilder.class.getName());
     
+    /**
+     * The minimum number of polygons to process in a single task during a
+     * parallel build.
+     */
+    private static final int MIN_TASK_POLYS = 64;
+    
     /**
      * Information is undefined.  (Not yet set.)
      */
@@ -222,6 +418,15 @@ public final class DetailMeshBuilder
      */
     private static final int MAX_VERTS = 256;
     
+    /**
+     * The maximum number of vertices allowed for a triangulated polygon mesh
+     * when the incremental triangulator is in use.
+     * <p>This value is arbitrary.  It is higher than {@link #MAX_VERTS}
+     * since the cost of refining the triangulation no longer grows with
+     * the square of the vertex count.</p>
+     */
+    private static final int MAX_INCREMENTAL_VERTS = 4096;
+    
     /**
      * The maximum number of edges that a single edge can be broken into
      * during edge sampling.
@@ -245,6 +450,26 @@ public final class DetailMeshBuilder
      */
     private final float mContourMaxDeviation;
     
+    /**
+     * The pool used for parallel builds, or null if builds are to be
+     * performed on the calling thread.
+     */
+    private final ForkJoinPool mThreadPool;
+    
+    /**
+     * If TRUE, polygons are triangulated using the
+     * {@link DelaunayTriangulator incremental triangulator}.
+     */
+    private final boolean mUseIncrementalTriangulation;
+    
+    /**
+     * The maximum number of vertices allowed for a triangulated polygon mesh.
+     * <p>Only the edge sampling and the incremental refinement use this
+     * limit.  Standard refinement is always limited to
+     * {@link #MAX_VERTS}.</p>
+     */
+    private final int mMaxVerts;
+    
     /**
      * 
      * @param contourSampleDistance Sets the sampling distance to use when
@@ -270,6 +495,45 @@ public final class DetailMeshBuilder
     public DetailMeshBuilder(float contourSampleDistance
             , float contourMaxDeviation)
     {
+        this(contourSampleDistance, contourMaxDeviation, null);
+    }
+    
+    /**
+     * Constructor
+     * <p>See {@link #DetailMeshBuilder(float, float) the standard
+     * constructor} for details on the other arguments.</p>
+     * @param threadPool The pool to use for detailing polygons in parallel.
+     * If null, polygons will be detailed on the thread calling
+     * {@link #build(PolyMeshField, CompactOpenHeightfield)}.
+     */
+    public DetailMeshBuilder(float contourSampleDistance
+            , float contourMaxDeviation
+            , ForkJoinPool threadPool)
+    {
+        this(contourSampleDistance, contourMaxDeviation, false, threadPool);
+    }
+    
+    /**
+     * Constructor
+     * <p>See {@link #DetailMeshBuilder(float, float, ForkJoinPool) this
+     * constructor} for details on the other arguments.</p>
+     * @param useIncrementalTriangulation If TRUE, polygons will be
+     * triangulated by incremental insertion, with each interior sample
+     * vertex inserted into the existing triangulation rather than
+     * re-triangulating the polygon.  This makes small contour sample
+     * distances much less expensive and allows more vertices per polygon.
+     * The standard triangulation is used as a fall back for polygons the
+     * incremental triangulation fails to handle.
+     */
+    public DetailMeshBuilder(float contourSampleDistance
+            , float contourMaxDeviation
+            , boolean useIncrementalTriangulation
+            , ForkJoinPool threadPool)
+    {
+        mThreadPool = threadPool;
+        mUseIncrementalTriangulation = useIncrementalTriangulation;
+        mMaxVerts = useIncrementalTriangulation ?
+                MAX_INCREMENTAL_VERTS : MAX_VERTS;
         mContourSampleDistance = Math.max(0, contourSampleDistance);
         mContourMaxDeviation = Math.max(0, contourMaxDeviation);
     }
@@ -292,11 +556,56 @@ public final class DetailMeshBuilder
      */
     public TriangleMesh build(PolyMeshField sourceMesh
             , OpenHeightfield heightField)
+    {
+        if (heightField == null)
+            return null;
+        return build(sourceMesh, new CompactOpenHeightfield(heightField), null);
+    }
+    
+    /**
+     * Build a triangle mesh with detailed height information from the
+     * provided polygon mesh and compact heightfield.
+     * <p>The same requirements apply as for
+     * {@link #build(PolyMeshField, OpenHeightfield)}.</p>
+     * @param sourceMesh The source polygon mesh to build the triangle
+     * mesh from.
+     * @param heightField The heightfield from which the {@link PolyMeshField}
+     * was derived.
+     * @return The generated triangle mesh.  Or null if there were errors
+     * which prevented triangulation.
+     */
+    public TriangleMesh build(PolyMeshField sourceMesh
+            , CompactOpenHeightfield heightField)
+    {
+        return build(sourceMesh, heightField, null);
+    }
+    
+    /**
+     * Builds the detail triangle mesh, recording the number of sample
+     * vertices added.
+     * @param sourceMesh The source polygon mesh to build the triangle
+     * mesh from.
+     * @param heightField The heightfield from which the {@link PolyMeshField}
+     * was derived.
+     * @param metrics The metrics to record the count to, or null if no
+     * count is to be recorded.
+     * @return The generated triangle mesh.  Or null if there were errors
+     * which prevented triangulation.
+     * @see #build(PolyMeshField, CompactOpenHeightfield)
+     */
+    TriangleMesh build(PolyMeshField sourceMesh
+            , CompactOpenHeightfield heightField
+            , BuildMetrics metrics)
     {
         if (sourceMesh == null
+                || heightField == null
                 || sourceMesh.vertCount() == 0
                 || sourceMesh.polyCount() == 0)
             return null;
+        
+        final BuildEvents.DetailMeshEvent event =
+            new BuildEvents.DetailMeshEvent();
+        event.begin();
 
         // Create result object.
         final TriangleMesh mesh = new TriangleMesh();
@@ -305,9 +614,6 @@ public final class DetailMeshBuilder
         final int sourcePolyCount = sourceMesh.polyCount();
         
         // Convenience variables.
-        final float cellSize = sourceMesh.cellSize();
-        final float cellHeight = sourceMesh.cellHeight();
-        final float[] minBounds = sourceMesh.boundsMin();
         final int maxVertsPerPoly = sourceMesh.maxVertsPerPoly();
         final int[] sourceVerts = sourceMesh.verts;
         final int[] sourcePolys = sourceMesh.polys;
@@ -392,6 +698,161 @@ public final class DetailMeshBuilder
                     , polyXZBounds[pzmax] - polyXZBounds[pzmin]);
         }
         
+        /*
+         * Holds the aggregate vertices for the entire mesh.
+         * Form: (x, y, z)
+         */
+        final ArrayList<Float> globalVerts =
+            new ArrayList<Float>(totalPolyVertCount * 2 * 3);
+        
+        /*
+         * Holds the aggregate triangles for the entire mesh.
+         * Format (vertAIndex, vertBIndex, vertCIndex, regionID)
+         * where vertices are wrapped clockwise and regionID is the region
+         * id of the source polygon the triangles were generated from.
+         */
+        final ArrayList<Integer> globalTriangles =
+            new ArrayList<Integer>(totalPolyVertCount * 2 * 4);
+        
+        int sampleCount = 0;
+        if (mThreadPool != null
+                && mThreadPool.getParallelism() > 1
+                && sourcePolyCount > MIN_TASK_POLYS)
+        {
+            // Split the polygons into ranges.  Use more ranges than
+            // threads to even out the load.
+            final int taskCount = Math.min(mThreadPool.getParallelism() * 4
+                    , (sourcePolyCount + MIN_TASK_POLYS - 1) / MIN_TASK_POLYS);
+            final int taskPolys = (sourcePolyCount + taskCount - 1) / taskCount;
+            final ArrayList<DetailPolysTask> tasks =
+                new ArrayList<DetailPolysTask>(taskCount);
+            for (int polyMin = 0
+                    ; polyMin < sourcePolyCount
+                    ; polyMin += taskPolys)
+            {
+                final DetailPolysTask task = new DetailPolysTask(sourceMesh
+                        , heightField
+                        , polyXZBounds
+                        , maxPolyWidth
+                        , maxPolyDepth
+                        , polyMin
+                        , Math.min(polyMin + taskPolys, sourcePolyCount));
+                mThreadPool.execute(task);
+                tasks.add(task);
+            }
+            // Append the results in polygon order.
+            for (DetailPolysTask task : tasks)
+            {
+                task.join();
+                sampleCount += task.mSampleCount;
+                final int indexOffset = globalVerts.size() / 3;
+                globalVerts.addAll(task.mVerts);
+                globalTriangles.ensureCapacity(
+                        globalTriangles.size() + task.mTriangles.size());
+                for (int pTriangle = 0
+                        ; pTriangle < task.mTriangles.size()
+                        ; pTriangle += 4)
+                {
+                    globalTriangles.add(
+                            task.mTriangles.get(pTriangle) + indexOffset);
+                    globalTriangles.add(
+                            task.mTriangles.get(pTriangle+1) + indexOffset);
+                    globalTriangles.add(
+                            task.mTriangles.get(pTriangle+2) + indexOffset);
+                    globalTriangles.add(task.mTriangles.get(pTriangle+3));
+                }
+            }
+        }
+        else
+            sampleCount = buildPolys(sourceMesh
+                    , heightField
+                    , polyXZBounds
+                    , maxPolyWidth
+                    , maxPolyDepth
+                    , 0
+                    , sourcePolyCount
+                    , globalVerts
+                    , globalTriangles);
+        
+        // Transfer the final results to the mesh object.
+        
+        // Load mesh object with vertex data.
+        mesh.vertices = new float[globalVerts.size()];
+        for (int i = 0; i < globalVerts.size(); i++)
+            mesh.vertices[i] = globalVerts.get(i);
+        
+        // Load mesh object with the triangle indices and region information.
+        mesh.indices = new int[globalTriangles.size() * 3 / 4];
+        final int tcount = globalTriangles.size() / 4;
+        mesh.triangleRegions = new int[tcount];
+        for (int i = 0; i < tcount; i++)
+        {
+            // The index and region information is split and set to two
+            // different locations in the mesh object.
+            final int sourcePointer = i*4;
+            final int destinationPointer = i*3;
+            mesh.indices[destinationPointer] =
+                globalTriangles.get(sourcePointer);
+            mesh.indices[destinationPointer+1] =
+                globalTriangles.get(sourcePointer+1);
+            mesh.indices[destinationPointer+2] =
+                globalTriangles.get(sourcePointer+2);
+            mesh.triangleRegions[i] = globalTriangles.get(sourcePointer+3);
+        }
+        
+        if (metrics != null)
+            metrics.count(BuildCounter.DETAIL_SAMPLES, sampleCount);
+        
+        if (event.shouldCommit())
+        {
+            event.polys = sourcePolyCount;
+            event.samples = sampleCount;
+            event.vertices = mesh.vertCount();
+            event.triangles = tcount;
+            event.commit();
+        }
+        
+        return mesh;
+        
+    }
+    
+    /**
+     * Details a range of polygons, appending the results to the output
+     * lists.
+     * @param sourceMesh The source polygon mesh.
+     * @param heightField The heightfield from which the polygon mesh was
+     * derived.
+     * @param polyXZBounds The xz-plane bounds of each polygon in the form
+     * (xmin, xmax, zmin, zmax).
+     * @param maxPolyWidth The maximum width of all polygons.
+     * @param maxPolyDepth The maximum depth of all polygons.
+     * @param polyMin The index of the first polygon to detail.
+     * @param polyMax The index after the last polygon to detail.
+     * @param outVerts The list to append vertices to in the form (x, y, z).
+     * @param outTriangles The list to append triangles to in the form
+     * (vertAIndex, vertBIndex, vertCIndex, regionID).  Vertex indices
+     * refer to the outVerts list.
+     * @return The number of sample vertices added to the polygons.
+     */
+    private int buildPolys(PolyMeshField sourceMesh
+            , CompactOpenHeightfield heightField
+            , int[] polyXZBounds
+            , int maxPolyWidth
+            , int maxPolyDepth
+            , int polyMin
+            , int polyMax
+            , ArrayList<Float> outVerts
+            , ArrayList<Integer> outTriangles)
+    {
+        
+        // Convenience variables.
+        final float cellSize = sourceMesh.cellSize();
+        final float cellHeight = sourceMesh.cellHeight();
+        final float[] minBounds = sourceMesh.boundsMin();
+        final int maxVertsPerPoly = sourceMesh.maxVertsPerPoly();
+        final int[] sourceVerts = sourceMesh.verts;
+        final int[] sourcePolys = sourceMesh.polys;
+        
         // Holds the vertices of the current polygon to be triangulated.
         final float[] poly = new float[maxVertsPerPoly*3];
         int polyVertCount = 0;
@@ -409,7 +870,7 @@ public final class DetailMeshBuilder
          * If sampling occurs, there will be more vertices in this array
          * than in the polygon array. Otherwise the content will be the same.
          */
-        final float[] polyTriangleVerts = new float[MAX_VERTS*3];
+        final float[] polyTriangleVerts = new float[mMaxVerts*3];
         int polyTriangleVertCount = 0;
         
         final HeightPatch hfPatch = new HeightPatch();
@@ -430,11 +891,13 @@ public final class DetailMeshBuilder
          */
         final ArrayDeque<Integer> workingStack =
             new ArrayDeque<Integer>(256);
-        final ArrayDeque<OpenHeightSpan> workingSpanStack =
-            new ArrayDeque<OpenHeightSpan>(128);
+        final IntList workingSpanStack = new IntList(128);
         final ArrayList<Integer> workingEdges =
             new ArrayList<Integer>(MAX_EDGES * 4);
         final ArrayList<Integer> workingSamples = new ArrayList<Integer>(512);
+        final int[] workingHullIndices = new int[mMaxVerts];
+        final DelaunayTriangulator triangulator =
+            mUseIncrementalTriangulation ? new DelaunayTriangulator() : null;
         
         /*
          * A working array used while building the height path.
@@ -442,24 +905,10 @@ public final class DetailMeshBuilder
          */
         final int[] workingWidthDepth = new int[2];
         
-        /*
-         * Holds the aggregate vertices for the entire mesh.
-         * Form: (x, y, z)
-         */
-        final ArrayList<Float> globalVerts =
-            new ArrayList<Float>(totalPolyVertCount * 2 * 3);
-        
-        /*
-         * Holds the aggregate triangles for the entire mesh.
-         * Format (vertAIndex, vertBIndex, vertCIndex, regionID)
-         * where vertices are wrapped clockwise and regionID is the region
-         * id of the source polygon the triangles were generated from.
-         */
-        final ArrayList<Integer> globalTriangles =
-            new ArrayList<Integer>(totalPolyVertCount * 2 * 4);
+        int sampleCount = 0;
         
         // Triangluate all polygons.
-        for (int iPoly = 0; iPoly < sourcePolyCount; iPoly++)
+        for (int iPoly = polyMin; iPoly < polyMax; iPoly++)
         {
             final int pPoly = iPoly*maxVertsPerPoly*2;
 
@@ -518,8 +967,10 @@ public final class DetailMeshBuilder
                     , hfPatch
                     , polyTriangleVerts
                     , polyTriangles
+                    , triangulator
                     , workingEdges
-                    , workingSamples);
+                    , workingSamples
+                    , workingHullIndices);
             
             if (polyTriangleVertCount < 3)
             {
@@ -530,69 +981,45 @@ public final class DetailMeshBuilder
                 continue;
             }
             
-            // Make sure the global lists are able to handle the new data.
-            globalVerts.ensureCapacity(
-                    globalVerts.size() + polyTriangleVertCount * 3);
-            globalTriangles.ensureCapacity(
-                    globalTriangles.size() + polyTriangles.size() * 4 / 3);
+            sampleCount += polyTriangleVertCount - polyVertCount;
+            
+            // Make sure the output lists are able to handle the new data.
+            outVerts.ensureCapacity(
+                    outVerts.size() + polyTriangleVertCount * 3);
+            outTriangles.ensureCapacity(
+                    outTriangles.size() + polyTriangles.size() * 4 / 3);
             
             // Represents the next available vertex index.
-            final int indexOffset = globalVerts.size() / 3;
+            final int indexOffset = outVerts.size() / 3;
             
-            // Add all new vertices to the global vertices list.
+            // Add all new vertices to the output vertices list.
             for (int iVert = 0; iVert < polyTriangleVertCount; iVert++)
             {
                 // Note: Converting from height field to world coordinates.
-                globalVerts.add(polyTriangleVerts[iVert*3] + minBounds[0]);
-                globalVerts.add(polyTriangleVerts[iVert*3+1] + minBounds[1]);
-                globalVerts.add(polyTriangleVerts[iVert*3+2] + minBounds[2]);
+                outVerts.add(polyTriangleVerts[iVert*3] + minBounds[0]);
+                outVerts.add(polyTriangleVerts[iVert*3+1] + minBounds[1]);
+                outVerts.add(polyTriangleVerts[iVert*3+2] + minBounds[2]);
             }
             
-            // Add all new triangles to the global triangles list.
+            // Add all new triangles to the output triangles list.
             for (int pTriangle = 0
                     ; pTriangle < polyTriangles.size()
                     ; pTriangle += 3)
             {
                 // Offset the original vertex index to match the index in
-                // the global vertex list.
-                globalTriangles.add(
+                // the output vertex list.
+                outTriangles.add(
                         polyTriangles.get(pTriangle) + indexOffset);
-                globalTriangles.add(
+                outTriangles.add(
                         polyTriangles.get(pTriangle+1) + indexOffset);
-                globalTriangles.add(
+                outTriangles.add(
                         polyTriangles.get(pTriangle+2) + indexOffset);
                 // Record the region.
-                globalTriangles.add(sourceMesh.getPolyRegion(iPoly));
+                outTriangles.add(sourceMesh.getPolyRegion(iPoly));
             }
         }
         
-        // Transfer the final results to the mesh object.
-        
-        // Load mesh object with vertex data.
-        mesh.vertices = new float[globalVerts.size()];
-        for (int i = 0; i < globalVerts.size(); i++)
-            mesh.vertices[i] = globalVerts.get(i);
-        
-        // Load mesh object with the triangle indices and region information.
-        mesh.indices = new int[globalTriangles.size() * 3 / 4];
-        final int tcount = globalTriangles.size() / 4;
-        mesh.triangleRegions = new int[tcount];
-        for (int i = 0; i < tcount; i++)
-        {
-            // The index and region information is split and set to two
-            // different locations in the mesh object.
-            final int sourcePointer = i*4;
-            final int destinationPointer = i*3;
-            mesh.indices[destinationPointer] =
-                globalTriangles.get(sourcePointer);
-            mesh.indices[destinationPointer+1] =
-                globalTriangles.get(sourcePointer+1);
-            mesh.indices[destinationPointer+2] =
-                globalTriangles.get(sourcePointer+2);
-            mesh.triangleRegions[i] = globalTriangles.get(sourcePointer+3);
-        }
-        
-        return mesh;
+        return sampleCount;
         
     }
     
@@ -620,12 +1047,17 @@ public final class DetailMeshBuilder
      * real vertices.
      * @param outTriangles The indices of the triangle mesh generated from
      * the polygon. Its content is cleared before use.
+     * @param triangulator The incremental triangulator to use, or null if
+     * the standard triangulation is to be used.
      * @param workingEdges A working list used by this operation.  Its
      * content is undefined outside of this operation.  Its content is
      * cleared prior to use.
      * @param workingSamples A working list used by this operation.  Its
      * content is undefined outside of this operation.  Its content is
      * cleared prior to use.
+     * @param workingHullIndices A working array used by this operation.
+     * Must be sized to fit the maximum number of vertices that can be
+     * generated.  Its content is undefined outside of this operation.
      * @return The number of vertices in the outVerts array.
      * <p>For successful completion: Will equal the source vertex
      * count if not new vertices were added. Otherwise be greater
@@ -635,12 +1067,14 @@ public final class DetailMeshBuilder
      */
     private int buildPolyDetail(float[] sourcePoly
             , int sourceVertCount
-            , OpenHeightfield heightField
+            , CompactOpenHeightfield heightField
             , HeightPatch patch
             , float[] outVerts
             , ArrayList<Integer> outTriangles
+            , DelaunayTriangulator triangulator
             , ArrayList<Integer> workingEdges
-            , ArrayList<Integer> workingSamples)
+            , ArrayList<Integer> workingSamples
+            , int[] workingHullIndices)
     {
         
         // There is no early exit for a source vertex count of 3
@@ -668,7 +1102,7 @@ public final class DetailMeshBuilder
          * used unless the sample distance is > zero.
          * Points to vertices in the output vertex array.
          */
-        final int[] hullIndices = new int[MAX_VERTS];
+        final int[] hullIndices = workingHullIndices;
         int hullIndicesCount = 0;
         
         // Convenience variable and a variable to reduce number of divisions.
@@ -760,11 +1194,11 @@ public final class DetailMeshBuilder
                     1 + (int)Math.floor(edgeXZLength/mContourSampleDistance);
                 // Clamp to max allowed edges.
                 iMaxEdge = Math.min(iMaxEdge, MAX_EDGES);
-                if (iMaxEdge + outVertCount >= MAX_VERTS)
+                if (iMaxEdge + outVertCount >= mMaxVerts)
                     // The addition of these new edges would result in
                     // too many vertices in the polygon. Adjust edge count
                     // so we don't exceed maximum allowed verts.
-                    iMaxEdge = MAX_VERTS - 1 - outVertCount;
+                    iMaxEdge = mMaxVerts - 1 - outVertCount;
                 
                 /*
                  * Split the source edge into equally sized segments based
@@ -962,7 +1396,10 @@ public final class DetailMeshBuilder
             hullIndicesCount = outVertCount;
         }
         
-        if (outVertCount > 3)
+        // TRUE if the triangulator holds the current triangulation.
+        boolean isIncremental = false;
+        
+        if (outVertCount > 3 || (outVertCount == 3 && triangulator != null))
         {
             /*
              * Perform the triangulation.
@@ -970,11 +1407,13 @@ public final class DetailMeshBuilder
              * The rest of the variables with the prefix "out" are only inputs
              * to this operation.
              */
-            performDelaunayTriangulation(outVerts
+            isIncremental = triangulate(outVerts
                     , outVertCount
                     , hullIndices
                     , hullIndicesCount
-                    , workingEdges, outTriangles);
+                    , triangulator
+                    , workingEdges
+                    , outTriangles);
         }
         else if (outVertCount == 3)
         {
@@ -1087,11 +1526,36 @@ public final class DetailMeshBuilder
             
             final int sampleCount = workingSamples.size() / 3;
             
+            if (isIncremental)
+            {
+                outVertCount = refineBySamples(workingSamples
+                        , heightField.cellHeight()
+                        , triangulator
+                        , outVerts
+                        , outVertCount
+                        , outTriangles);
+                badIndicesCount =
+                    getInvalidIndicesCount(outTriangles, outVertCount);
+                if (badIndicesCount > 0)
+                {
+                    logger.severe("Delaunay triangulation failure: Invalid "
+                            + "indices detected during internal detail"
+                            + " refinement. Bad indices detected: "
+                            + badIndicesCount);
+                    outTriangles.clear();
+                    return 0;
+                }
+                return outVertCount;
+            }
+            
             // The only purpose of this outer loop is to provide a certain
             // number of iterations.  The inner loop does not depend in any way
             // on the iteration count of the outer loop.
+            // Note: This path performs a full triangulation per inserted
+            // vertex, so it is held to the standard vertex limit even when
+            // it is a fallback from the incremental triangulator.
             for (int iterationCount = 0
-                    ; iterationCount < sampleCount
+                    ; iterationCount < sampleCount && outVertCount < MAX_VERTS
                     ; iterationCount++)
             {
                 
@@ -1169,7 +1633,8 @@ public final class DetailMeshBuilder
                 
                 // Re-perform the triangulation with the new vertex.
                 // TODO: EVAL: A good candidate for optimizing.
-                // E.g. Insert rather than full rebuild.
+                // E.g. Insert rather than full rebuild.  (Done for
+                // incremental triangulation.)
                 performDelaunayTriangulation(outVerts
                         , outVertCount
                         , hullIndices
@@ -1196,6 +1661,239 @@ public final class DetailMeshBuilder
         return outVertCount;
     }
     
+    /**
+     * Adds interior sample vertices to the incremental triangulation,
+     * worst sample first, until all samples are within the maximum
+     * deviation from the mesh.
+     * <p>This is the greedy form of the interior detail step.  The sample
+     * selected on each iteration is the one farthest from the mesh.  But
+     * only the samples within the triangles changed by an insertion are
+     * re-evaluated.</p>
+     * @param samples The sample grid in the form (x, y, z).  The
+     * x and z-values are in sample grid space and the y-value is in
+     * height field space.
+     * @param cellHeight The cell height of the height field.
+     * @param triangulator The triangulator holding the triangulation
+     * of the vertices.
+     * @param outVerts The vertices of the triangulation.  Selected samples
+     * are appended.
+     * @param outVertCount The number of vertices in the vertices array.
+     * @param outTriangles The indices of the refined triangle mesh.  Its
+     * content is cleared before use.
+     * @return The new number of vertices in the vertices array.  Samples
+     * which can't be inserted are not added to the vertices array.
+     */
+    int refineBySamples(ArrayList<Integer> samples
+            , float cellHeight
+            , DelaunayTriangulator triangulator
+            , float[] outVerts
+            , int outVertCount
+            , ArrayList<Integer> outTriangles)
+    {
+        final int sampleCount = samples.size() / 3;
+        final float[] sampleVerts = new float[sampleCount * 3];
+        for (int iSample = 0; iSample < sampleCount; iSample++)
+        {
+            sampleVerts[iSample*3] =
+                samples.get(iSample*3) * mContourSampleDistance;
+            sampleVerts[iSample*3+1] = samples.get(iSample*3+1) * cellHeight;
+            sampleVerts[iSample*3+2] =
+                samples.get(iSample*3+2) * mContourSampleDistance;
+        }
+        
+        /*
+         * Each triangle holds a linked list of the samples within it.
+         * Triangle stamps change whenever a triangle changes so that stale
+         * queue entries can be detected.
+         */
+        final int[] nextSample = new int[sampleCount];
+        final boolean[] isUsed = new boolean[sampleCount];
+        int[] triSamples = new int[Math.max(64
+                , triangulator.triangleSlotCount() * 2)];
+        int[] triStamps = new int[triSamples.length];
+        int[] triMarks = new int[triSamples.length];
+        Arrays.fill(triSamples, UNDEFINED);
+        
+        int tri = DelaunayTriangulator.NONE;
+        for (int iSample = 0; iSample < sampleCount; iSample++)
+        {
+            // Samples are in grid order, so walk from the last triangle.
+            final int sTri = triangulator.findTriangle(sampleVerts[iSample*3]
+                    , sampleVerts[iSample*3+2]
+                    , tri);
+            if (sTri == DelaunayTriangulator.NONE)
+                // The sample is outside of the triangle mesh.
+                continue;
+            tri = sTri;
+            nextSample[iSample] = triSamples[tri];
+            triSamples[tri] = iSample;
+        }
+        
+        final SampleQueue queue = new SampleQueue();
+        for (tri = 0; tri < triangulator.triangleSlotCount(); tri++)
+        {
+            if (triSamples[tri] != UNDEFINED)
+                pushWorstSample(tri, triangulator, triSamples, nextSample
+                        , isUsed, sampleVerts, outVerts, triStamps[tri]
+                        , queue);
+        }
+        
+        final IntList pending = new IntList(64);
+        int insertCount = 0;
+        while (!queue.isEmpty()
+                && insertCount < sampleCount
+                && outVertCount < mMaxVerts)
+        {
+            tri = queue.headTriangle();
+            final int iSample = queue.headSample();
+            final boolean isStale = queue.headStamp() != triStamps[tri];
+            queue.pop();
+            if (isStale)
+                continue;
+            insertCount++;
+            
+            // Add this sample to the output vertices.
+            outVerts[outVertCount*3] = sampleVerts[iSample*3];
+            outVerts[outVertCount*3+1] = sampleVerts[iSample*3+1];
+            outVerts[outVertCount*3+2] = sampleVerts[iSample*3+2];
+            isUsed[iSample] = true;
+            
+            if (!triangulator.insert(outVerts, outVertCount))
+            {
+                // The vertex was not added to the triangulation, so the
+                // triangle is unchanged and the vertex is discarded.  Move
+                // on to the triangle's next worst sample.
+                triStamps[tri]++;
+                pushWorstSample(tri, triangulator, triSamples, nextSample
+                        , isUsed, sampleVerts, outVerts, triStamps[tri]
+                        , queue);
+                continue;
+            }
+            outVertCount++;
+            
+            if (triangulator.triangleSlotCount() > triSamples.length)
+            {
+                final int length = triangulator.triangleSlotCount() * 2;
+                final int oldLength = triSamples.length;
+                triSamples = Arrays.copyOf(triSamples, length);
+                Arrays.fill(triSamples, oldLength, length, UNDEFINED);
+                triStamps = Arrays.copyOf(triStamps, length);
+                triMarks = Arrays.copyOf(triMarks, length);
+            }
+            
+            // Gather the samples from the removed triangles.
+            pending.clear();
+            for (int i = 0; i < triangulator.removedCount(); i++)
+            {
+                final int rTri = triangulator.removedTriangle(i);
+                for (int s = triSamples[rTri]
+                        ; s != UNDEFINED
+                        ; s = nextSample[s])
+                {
+                    if (!isUsed[s])
+                        pending.add(s);
+                }
+                triSamples[rTri] = UNDEFINED;
+                triStamps[rTri]++;
+            }
+            for (int i = 0; i < triangulator.createdCount(); i++)
+            {
+                final int cTri = triangulator.createdTriangle(i);
+                triSamples[cTri] = UNDEFINED;
+                triStamps[cTri]++;
+                triMarks[cTri] = insertCount;
+            }
+            
+            // Distribute the samples to the created triangles.
+            final int startTri = triangulator.createdTriangle(0);
+            for (int i = 0; i < pending.size(); i++)
+            {
+                final int s = pending.get(i);
+                final int sTri = triangulator.findTriangle(sampleVerts[s*3]
+                        , sampleVerts[s*3+2]
+                        , startTri);
+                if (sTri == DelaunayTriangulator.NONE)
+                    continue;
+                nextSample[s] = triSamples[sTri];
+                triSamples[sTri] = s;
+                if (triMarks[sTri] != insertCount)
+                {
+                    // Floating point error placed the sample just outside
+                    // of the cavity.  Re-evaluate the triangle it landed in.
+                    triStamps[sTri]++;
+                    pushWorstSample(sTri, triangulator, triSamples
+                            , nextSample, isUsed, sampleVerts, outVerts
+                            , triStamps[sTri], queue);
+                }
+            }
+            for (int i = 0; i < triangulator.createdCount(); i++)
+            {
+                final int cTri = triangulator.createdTriangle(i);
+                pushWorstSample(cTri, triangulator, triSamples, nextSample
+                        , isUsed, sampleVerts, outVerts, triStamps[cTri]
+                        , queue);
+            }
+        }
+        
+        triangulator.getTriangles(outTriangles);
+        return outVertCount;
+    }
+    
+    /**
+     * Finds the sample in a triangle that is farthest from the triangle
+     * and adds it to the queue if it exceeds the maximum deviation.
+     * <p>Ties are resolved in favor of the lowest sample index.</p>
+     * @param tri The triangle to evaluate.
+     * @param triangulator The triangulator that owns the triangle.
+     * @param triSamples The first sample of each triangle's sample list.
+     * @param nextSample The next sample in the sample's list.
+     * @param isUsed Indicates which samples have already been added to the
+     * mesh.
+     * @param sampleVerts The samples in the form (x, y, z).
+     * @param verts The mesh vertices.
+     * @param stamp The current stamp of the triangle.
+     * @param queue The queue to add the sample to.
+     */
+    private void pushWorstSample(int tri
+            , DelaunayTriangulator triangulator
+            , int[] triSamples
+            , int[] nextSample
+            , boolean[] isUsed
+            , float[] sampleVerts
+            , float[] verts
+            , int stamp
+            , SampleQueue queue)
+    {
+        // Same wrapping as the output triangles.
+        final int pVertA = triangulator.getVert(tri, 0)*3;
+        final int pVertB = triangulator.getVert(tri, 2)*3;
+        final int pVertC = triangulator.getVert(tri, 1)*3;
+        int selectedSample = UNDEFINED;
+        float maxDistance = mContourMaxDeviation;
+        for (int s = triSamples[tri]; s != UNDEFINED; s = nextSample[s])
+        {
+            if (isUsed[s])
+                continue;
+            final float distance = getDistanceToTriangle(sampleVerts[s*3]
+                    , sampleVerts[s*3+1]
+                    , sampleVerts[s*3+2]
+                    , verts
+                    , pVertA
+                    , pVertB
+                    , pVertC);
+            if (distance == Float.MAX_VALUE)
+                continue;
+            if (distance > maxDistance
+                    || (distance == maxDistance && s < selectedSample))
+            {
+                maxDistance = distance;
+                selectedSample = s;
+            }
+        }
+        if (selectedSample != UNDEFINED)
+            queue.push(maxDistance, selectedSample, tri, stamp);
+    }
+    
     /**
      * Generates data which represents the circumcircle of the triangle
      * formed by the three points (A, B, C).
@@ -1505,13 +2203,14 @@ public final class DetailMeshBuilder
      * span in the form: (widthIndex, depthIndex).  The array must be
      * at least 2 in size.  Content is undefined if the return value
      * of the operation is null.
-     * @return The span in the feightfield that is best associated with
-     * the provided vertex.
+     * @return The index of the span in the feightfield that is best
+     * associated with the provided vertex, or
+     * {@link CompactOpenHeightfield#NULL_SPAN} if no span was found.
      */
-    private static OpenHeightSpan getBestSpan(int vertX
+    private static int getBestSpan(int vertX
             , int vertY
             , int vertZ
-            , OpenHeightfield heightField
+            , CompactOpenHeightfield heightField
             , int[] outWidthDepth)
     {
         /*
@@ -1559,7 +2258,7 @@ public final class DetailMeshBuilder
         final int[] targetOffset =
                 { 0,0, -1,0, 0,-1, -1,-1, 1,-1, -1,1, 1,0, 1,1, 0,1 };
         
-        OpenHeightSpan resultSpan = null;
+        int resultSpan = CompactOpenHeightfield.NULL_SPAN;
         int minDistance = Integer.MAX_VALUE;
         // Loop through the offsets trying to find the best span match.
         // Priority and potential early exit is given to spans at zero offset.
@@ -1570,17 +2269,18 @@ public final class DetailMeshBuilder
             if (!heightField.isInBounds(widthIndex, depthIndex))
                 // This neighbor is outside of the height field.
                 continue;
-            // Get the base span for this vertex from the height field.
-            OpenHeightSpan span = heightField.getData(widthIndex, depthIndex);
             // Find the best span in the column. (Closest height match.)
-            span = getBestSpan(span, vertY);
-            if (span == null)
+            final int span = getBestSpan(heightField
+                    , widthIndex
+                    , depthIndex
+                    , vertY);
+            if (span == CompactOpenHeightfield.NULL_SPAN)
                 // No spans at the target location.
                 continue;
             else
             {
                 // Found a span.
-                int distance = Math.abs(vertY - span.floor());
+                int distance = Math.abs(vertY - heightField.floor(span));
                 if (p == 0 && (distance <= heightField.cellHeight()))
                 {
                     // Found a span at a good height at the zero offset
@@ -1610,20 +2310,29 @@ public final class DetailMeshBuilder
     /**
      * Returns the span within the column whose floor is closest to the
      * provided height.
-     * @param baseSpan Where to start the search.
+     * @param heightField The heightfield to search.
+     * @param widthIndex The width index of the column.
+     * @param depthIndex The depth index of the column.
      * @param targetHeight The height to find the closest match for.
-     * @return The span whose floor is closest to the target height, or null
-     * if no base span was provided.
+     * @return The index of the span whose floor is closest to the target
+     * height, or {@link CompactOpenHeightfield#NULL_SPAN} if the column
+     * contains no spans.
      */
-    private static OpenHeightSpan getBestSpan(OpenHeightSpan baseSpan
+    private static int getBestSpan(CompactOpenHeightfield heightField
+                    , int widthIndex
+                    , int depthIndex
                     , int targetHeight)
     {
         int minDistance = Integer.MAX_VALUE;
-        OpenHeightSpan result = null;
+        int result = CompactOpenHeightfield.NULL_SPAN;
         // Loop up the column, starting at the base span.
-        for (OpenHeightSpan span = baseSpan; span != null; span = span.next())
+        final int spanStart = heightField.cellStart(widthIndex, depthIndex);
+        final int spanEnd =
+            spanStart + heightField.cellCount(widthIndex, depthIndex);
+        for (int span = spanStart; span < spanEnd; span++)
         {
-            final int distance = Math.abs(targetHeight - span.floor());
+            final int distance =
+                Math.abs(targetHeight - heightField.floor(span));
             if (distance < minDistance)
             {
                 // This span's floor is the closest to the vertex found so far.
@@ -1772,6 +2481,63 @@ public final class DetailMeshBuilder
         return height;
     }
 
+    /**
+     * Returns the y-axis distance of a point from a triangle.
+     * @param px The x-value of the point to be tested. (px, py, pz)
+     * @param py The y-value of the point to be tested. (px, py, pz)
+     * @param pz The z-value of the point to be tested. (px, py, pz)
+     * @param verts The vertices of the triangle's mesh.
+     * @param pVertA The pointer to the triangle's first vertex.
+     * @param pVertB The pointer to the triangle's second vertex.
+     * @param pVertC The pointer to the triangle's third vertex.
+     * @return The y-axis distance of the point from the triangle, or
+     * {@link Float#MAX_VALUE} if the point is not within the (x, z) plane
+     * projection of the triangle.
+     */
+    private static float getDistanceToTriangle(float px
+            , float py
+            , float pz
+            , float[] verts
+            , int pVertA
+            , int pVertB
+            , int pVertC)
+    {
+        final float deltaACx = verts[pVertC] - verts[pVertA];
+        final float deltaACy = verts[pVertC+1] - verts[pVertA+1];
+        final float deltaACz = verts[pVertC+2] - verts[pVertA+2];
+        
+        final float deltaABx = verts[pVertB] - verts[pVertA];
+        final float deltaABy = verts[pVertB+1] - verts[pVertA+1];
+        final float deltaABz = verts[pVertB+2] - verts[pVertA+2];
+        
+        final float deltaAPx = px - verts[pVertA];
+        final float deltaAPz = pz - verts[pVertA+2];
+
+        final float dotACAC = deltaACx * deltaACx + deltaACz * deltaACz;
+        final float dotACAB = deltaACx * deltaABx + deltaACz * deltaABz;
+        final float dotACAP = deltaACx * deltaAPx + deltaACz * deltaAPz;
+        final float dotABAB = deltaABx * deltaABx + deltaABz * deltaABz;
+        final float dotABAP = deltaABx * deltaAPx + deltaABz * deltaAPz;
+        
+        // Compute barycentric coordinates
+        final float inverseDenominator = 1.0f
+                        / (dotACAC * dotABAB - dotACAB * dotACAB);
+        final float u = (dotABAB * dotACAP - dotACAB * dotABAP)
+                        * inverseDenominator;
+        final float v = (dotACAC * dotABAP - dotACAB * dotACAP)
+                        * inverseDenominator;
+        
+        final float tolerance = 1e-4f;
+        if (u >= -tolerance && v >= -tolerance && (u + v) <= 1 + tolerance)
+        {
+            // The point lies inside the (x, z) plane projection of
+            // the triangle. Interpolate the y value.
+            final float y = verts[pVertA+1] + deltaACy * u + deltaABy * v;
+            return Math.abs(y - py);
+        }
+        return Float.MAX_VALUE;
+    }
+    
     /**
      * Returns the approximate y-axis distance of a point from the triangle
      * mesh.
@@ -1800,45 +2566,13 @@ public final class DetailMeshBuilder
         // the minimum (closest to the mesh) y-distance.
         for (int iTriangle = 0; iTriangle < triangleCount; iTriangle++)
         {
-            final int pVertA = indices.get(iTriangle*3)*3;
-            final int pVertB = indices.get(iTriangle*3+1)*3;
-            final int pVertC = indices.get(iTriangle*3+2)*3;
-            
-            float distance = Float.MAX_VALUE;
-            
-            final float deltaACx = verts[pVertC] - verts[pVertA];
-            final float deltaACy = verts[pVertC+1] - verts[pVertA+1];
-            final float deltaACz = verts[pVertC+2] - verts[pVertA+2];
-            
-            final float deltaABx = verts[pVertB] - verts[pVertA];
-            final float deltaABy = verts[pVertB+1] - verts[pVertA+1];
-            final float deltaABz = verts[pVertB+2] - verts[pVertA+2];
-            
-            final float deltaAPx = px - verts[pVertA];
-            final float deltaAPz = pz - verts[pVertA+2];
-    
-            final float dotACAC = deltaACx * deltaACx + deltaACz * deltaACz;
-            final float dotACAB = deltaACx * deltaABx + deltaACz * deltaABz;
-            final float dotACAP = deltaACx * deltaAPx + deltaACz * deltaAPz;
-            final float dotABAB = deltaABx * deltaABx + deltaABz * deltaABz;
-            final float dotABAP = deltaABx * deltaAPx + deltaABz * deltaAPz;
-            
-            // Compute barycentric coordinates
-            final float inverseDenominator = 1.0f
-                            / (dotACAC * dotABAB - dotACAB * dotACAB);
-            final float u = (dotABAB * dotACAP - dotACAB * dotABAP)
-                            * inverseDenominator;
-            final float v = (dotACAC * dotABAP - dotACAB * dotACAP)
-                            * inverseDenominator;
-            
-            final float tolerance = 1e-4f;
-            if (u >= -tolerance && v >= -tolerance && (u + v) <= 1 + tolerance)
-            {
-                // The point lies inside the (x, z) plane projection of
-                // the triangle. Interpolate the y value.
-                final float y = verts[pVertA+1] + deltaACy * u + deltaABy * v;
-                distance =  Math.abs(y - py);
-            }
+            final float distance = getDistanceToTriangle(px
+                    , py
+                    , pz
+                    , verts
+                    , indices.get(iTriangle*3)*3
+                    , indices.get(iTriangle*3+1)*3
+                    , indices.get(iTriangle*3+2)*3);
             
             if (distance < minDistance)
                 minDistance = distance;
@@ -2057,10 +2791,10 @@ public final class DetailMeshBuilder
             , int vertCount
             , int[] indices
             , int[] verts
-            , OpenHeightfield heightField
+            , CompactOpenHeightfield heightField
             , HeightPatch inoutPatch
             , ArrayDeque<Integer> gridIndexStack
-            , ArrayDeque<OpenHeightSpan> spanStack
+            , IntList spanStack
             , int[] widthDepth)
     {
         // Initialization
@@ -2087,15 +2821,15 @@ public final class DetailMeshBuilder
             // Search for the best span in the height field for this vertex.
             // Best span is the span whose floor area is closest to the
             // vertex location.
-            final OpenHeightSpan selectedSpan =
+            final int selectedSpan =
                 getBestSpan(vertX, vertY, vertZ, heightField, widthDepth);
             
-            if (selectedSpan != null)
+            if (selectedSpan != CompactOpenHeightfield.NULL_SPAN)
             {
                 // Found a span for this vertex.  Push in onto the stack.
                 gridIndexStack.push(widthDepth[0]);
                 gridIndexStack.push(widthDepth[1]);
-                spanStack.push(selectedSpan);
+                spanStack.add(selectedSpan);
             }
         }
         
@@ -2111,7 +2845,8 @@ public final class DetailMeshBuilder
         {
             final int depthIndex = gridIndexStack.pop();
             final int widthIndex = gridIndexStack.pop();
-            OpenHeightSpan span = spanStack.pop();
+            final int span = spanStack.get(spanStack.size() - 1);
+            spanStack.removeRange(spanStack.size() - 1, spanStack.size());
             
             if (inoutPatch.getData(widthIndex, depthIndex) != HeightPatch.UNSET)
                 // This grid location was processed in an earlier iteration.
@@ -2130,15 +2865,17 @@ public final class DetailMeshBuilder
                  * E.g. One of the neighbors should end up within the
                  * bounds of the patch and continue the flooding.
                  */
-                inoutPatch.setData(widthIndex, depthIndex, span.floor());
+                inoutPatch.setData(widthIndex
+                        , depthIndex
+                        , heightField.floor(span));
             }
             
             // "Flood" to the neighbors of this span. If a neighbor is within
             // the patch's grid, then put it in the stacks for processing.
             for (int dir = 0; dir < 4; dir++)
             {
-                OpenHeightSpan nSpan = span.getNeighbor(dir);
-                if (nSpan == null)
+                final int nSpan = heightField.getNeighbor(span, dir);
+                if (nSpan == CompactOpenHeightfield.NULL_SPAN)
                     // No neighbor in this direction.
                     continue;
                 
@@ -2160,7 +2897,7 @@ public final class DetailMeshBuilder
                 // Need to process this neighbor.
                 gridIndexStack.push(nWidthIndex);
                 gridIndexStack.push(nDepthIndex);
-                spanStack.push(nSpan);
+                spanStack.add(nSpan);
                 
             }
         }
@@ -2210,6 +2947,48 @@ public final class DetailMeshBuilder
         return false;
     }
     
+    /**
+     * Triangulates a group of vertices, using the incremental triangulator
+     * when one is provided.
+     * <p>See {@link #performDelaunayTriangulation(float[], int, int[], int,
+     * ArrayList, ArrayList) performDelaunayTriangulation} for details on
+     * the other arguments.</p>
+     * @param triangulator The incremental triangulator to use, or null if
+     * the standard triangulation is to be used.
+     * @return TRUE if the output triangles came from the incremental
+     * triangulator, in which case the triangulator can be used to refine
+     * the triangulation.
+     */
+    private static boolean triangulate(float[] verts
+            , int vertCount
+            , int[] immutableHull
+            , int hullVertCount
+            , DelaunayTriangulator triangulator
+            , ArrayList<Integer> workingEdges
+            , ArrayList<Integer> outTriangles)
+    {
+        if (triangulator != null)
+        {
+            if (triangulator.build(verts
+                    , vertCount
+                    , immutableHull
+                    , hullVertCount))
+            {
+                triangulator.getTriangles(outTriangles);
+                return true;
+            }
+            // The hull could not be recovered.  (E.g. Duplicate hull
+            // vertices.)  Fall back to the standard triangulation.
+        }
+        performDelaunayTriangulation(verts
+                , vertCount
+                , immutableHull
+                , hullVertCount
+                , workingEdges
+                , outTriangles);
+        return false;
+    }
+    
     /**
      * Attempts to perform a Delaunay triangulation on a group of vertices,
      * potentially restricted by the content of the hull argument.
@@ -21,9 +21,7 @@
  */
 package org.critterai.nmgen;
 
-import java.util.ArrayList;
-
-import org.critterai.nmgen.OpenHeightfield.OpenHeightFieldIterator;
+import java.util.BitSet;
 
 /**
  * Removes and merges small regions within a height field.
@@ -44,15 +42,36 @@ import org.critterai.nmgen.OpenHeightfield.OpenHeightFieldIterator;
  * target="_parent">Region Generation</a>
  */
 public final class FilterOutSmallRegions
-    implements IOpenHeightFieldAlgorithm
+    implements ICompactOpenHeightFieldAlgorithm
 {
 
     /*
      * Recast Reference: filerSmallRegions() in RecastRegion.cpp
+     * 
+     * Design notes:
+     * 
+     * Regions are identified by their original region id.  Merges are
+     * tracked with a union-find structure over the original ids.  The
+     * root of each set is the region the other regions in the set were
+     * merged into.  So the current id of a region is the id of its root.
+     * Removed island regions are joined to the null region.
+     * 
+     * Rather than replacing the id of a merged region in the connections
+     * of every region after each merge, a region's connections are
+     * brought up to date when they are next used.  Each id is replaced by
+     * the id of its root, then adjacent duplicates are removed.  This
+     * gives the same result as performing the replacement after each
+     * merge.  Overlaps are held as bitsets of original region ids, which
+     * are resolved to current ids when they are checked.
+     * 
+     * The span region ids are only updated once, after all merges are
+     * complete.
      */
     
     private static final int NULL_REGION = OpenHeightSpan.NULL_REGION;
     
+    private static final int NULL_SPAN = CompactOpenHeightfield.NULL_SPAN;
+    
     private final int mMinUnconnectedRegionSize;
     private final int mMergeRegionSize;
     
@@ -93,36 +112,75 @@ public final class FilterOutSmallRegions
      */
     @Override
     public void apply(OpenHeightfield field)
+    {
+        OpenHeightFieldAlgorithmAdapter.apply(this, field);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>The height field must contain valid region information in order
+     * for this algorithm to be effective.</p>
+     */
+    @Override
+    public void apply(CompactOpenHeightfield field)
+    {
+        apply(field, null);
+    }
+    
+    /**
+     * Applies the algorithm to the field, recording the number of regions
+     * filtered and merged.
+     * @param field The field to apply the algorithm to.
+     * @param metrics The metrics to record the counts to, or null if no
+     * counts are to be recorded.
+     * @see #apply(CompactOpenHeightfield)
+     */
+    void apply(CompactOpenHeightfield field, BuildMetrics metrics)
     {
     
         if (field.regionCount() < 2)
             // No spans or all spans are in the null region.
             return;
         
+        final int regionCount = field.regionCount();
+        
         /*
-         *  Over the life of the region array, the ids of region objects
-         *  contained within the array may be changed as follows:
-         *      - To the null region.  This indicates the region has been
-         *        abandoned.  All spans assigned to it will be merged into
-         *        the null region.
-         *      - To another region id.  This indicates that the spans
-         *        assigned to the region will be re-assigned to the new
-         *        region.  (This occurs when region merging occurs.)
-         *  So the index of the array indicates the original region id.  The
-         *  region objects within the array contain the current target
-         *  region id.
+         * Region information.  Index = original region id.
+         * 
+         * Parents: The union-find parent of each region.  A region is the
+         * root of its set if it is its own parent.  The null region is
+         * always a root.
+         * 
+         * Span counts: The number of spans in each region.  Only valid
+         * for root regions.  All other regions have a count of zero.
+         * 
+         * Connections: An ordered list of the connections between the
+         * region and other regions.  (Including the null region.)  Null if
+         * the region has no spans or is not a root.
+         * If a region connects at multiple non-adjacent points to another
+         * region, the list will contain multiple references.  This is used
+         * to detect whether two regions, if combined, would result in a
+         * polygon with internal space.
+         * 
+         * Overlaps: The non-null regions that have a span above a span of
+         * the region.  Null if there are no overlaps.  Note that if two
+         * spans in the same grid cell are in the same region, the region
+         * will show as overlapping itself.
          */
-        final Region[] regions = new Region[field.regionCount()];
+        final int[] parents = new int[regionCount];
+        final int[] spanCounts = new int[regionCount];
+        final IntList[] connections = new IntList[regionCount];
+        final BitSet[] overlaps = new BitSet[regionCount];
         
-        for (int i = 0; i < field.regionCount(); i++)
+        for (int i = 0; i < regionCount; i++)
         {
-            regions[i] = new Region(i);
+            parents[i] = i;
         }
         
-        final OpenHeightFieldIterator iter = field.dataIterator();
+        final int spanCount = field.spanCount();
         
         /*
-         * Region object initialization.
+         * Region initialization.
          * For all non-null regions:
          * - Tally the number of spans that belong to the region.
          * - Record connections to other regions.  (Including connections
@@ -130,76 +188,81 @@ public final class FilterOutSmallRegions
          * - Record regions that lie above (overlap) the region.
          * (Only non-null regions.)
          */
-        while (iter.hasNext())
+        for (int span = 0; span < spanCount; span++)
         {
-            OpenHeightSpan span = iter.next();
-            
-            if (span.regionID() <= NULL_REGION)
+            final int regionID = field.regionID(span);
+            if (regionID <= NULL_REGION)
                 // Span is in the null region.  So skip it.
                 continue;
             
-            // Get current span's region object and increment its membership
-            // count.
-            Region region = regions[span.regionID()];
-            region.spanCount++;
+            spanCounts[regionID]++;
             
             // Step up the list of spans above the current span.
-            for (OpenHeightSpan nextHigherSpan = span.next()
-                    ; nextHigherSpan != null
-                    ; nextHigherSpan = nextHigherSpan.next())
+            final int cell = field.spanCell(span);
+            final int cellEnd =
+                field.cellSpanStart(cell) + field.cellSpanCount(cell);
+            for (int nextHigherSpan = span + 1
+                    ; nextHigherSpan < cellEnd
+                    ; nextHigherSpan++)
             {
-                if (nextHigherSpan.regionID() <= NULL_REGION)
+                if (field.regionID(nextHigherSpan) <= NULL_REGION)
                     // Span is in the null region.  So ignore it.
                     continue;
-                if (!region.overlappingRegions.contains(
-                        nextHigherSpan.regionID()))
-                    // This is a previously undetected region above the
-                    // current region.
-                    region.overlappingRegions.add(nextHigherSpan.regionID());
+                if (overlaps[regionID] == null)
+                    overlaps[regionID] = new BitSet();
+                overlaps[regionID].set(field.regionID(nextHigherSpan));
             }
             
-            if (region.connections.size() > 0)
+            if (connections[regionID] != null)
                 // Have already found the connections for this span's region.
                 // So move to the next span.
                 continue;
             
             // Is this span on the edge of the its region?
-            int edgeDirection = getRegionEdgeDirection(span);
+            int edgeDirection = getRegionEdgeDirection(span, field);
             if (edgeDirection != -1)
+            {
                 // This is the first span detected that lies on the edge of
                 // its region. Can generate this region's the connection
                 // information.
-                findRegionConnections(span, edgeDirection, region.connections);
+                connections[regionID] = new IntList(8);
+                findRegionConnections(span
+                        , edgeDirection
+                        , field
+                        , connections[regionID]);
+            }
         }
         
         /*
          * Region information has been gathered.
          * 
          * Find unconnected (island) regions that are below the allowed
-         * minimum size and convert them to null regions.
+         * minimum size and join them to the null region.
          * 
          * This will result in all spans assigned to these regions being
          * re-assigned to the null region.
          * 
          * Starting at region 1 since zero is the null region.
          */
-        for (int regionID = 1; regionID < field.regionCount(); regionID++)
+        int filteredCount = 0;
+        for (int regionID = 1; regionID < regionCount; regionID++)
         {
-            Region region = regions[regionID];
-            if (region.spanCount == 0)
+            final IntList regionConnections = connections[regionID];
+            if (spanCounts[regionID] == 0 || regionConnections == null)
                 // Skip empty regions.
                 continue;
-            if (region.connections.size() == 1
-                    && region.connections.get(NULL_REGION) == NULL_REGION)
+            if (regionConnections.size() == 1
+                    && regionConnections.get(0) == NULL_REGION
+                    && spanCounts[regionID] < mMinUnconnectedRegionSize)
             {
                 // This region is only connected to the null region.
-                // (It is an island region.)
-                if (region.spanCount < mMinUnconnectedRegionSize)
-                {
-                    // This region is too small to be allowed as an
-                    // island region. Make it a null region.
-                    region.resetWithID(0);
-                }
+                // (It is an island region.)  And it is too small to be
+                // allowed as an island region. Make it a null region.
+                parents[regionID] = NULL_REGION;
+                spanCounts[regionID] = 0;
+                connections[regionID] = null;
+                overlaps[regionID] = null;
+                filteredCount++;
             }
         }
         
@@ -214,145 +277,107 @@ public final class FilterOutSmallRegions
          * during each iteration of the loop. The loop will continue until
          * no successful merges are detected.
          * 
-         * At the end of this process, regions that have been merged into
-         * other regions will have had their IDs replaced by the region's
-         * they were merged into.
-         * 
-         * Example:
-         * 
-         * Region 11 is at array index 11.  It is merged with region 18
-         * at index 18.  After the merge, the region OBJECT at index 11
-         * and will have an id of 18.
+         * Only root regions have spans.  So only root regions are
+         * considered.  The id of a root region is its index.
          */
+        int totalMergeCount = 0;
         int mergeCount;
         do
         {
             mergeCount = 0;
             // Loop through all regions.
-            for (Region region : regions)
+            for (int regionID = 1; regionID < regionCount; regionID++)
             {
-                if (region.id <= NULL_REGION || region.spanCount == 0)
-                    // Skip null and empty regions.
+                if (spanCounts[regionID] == 0
+                        || spanCounts[regionID] > mMergeRegionSize
+                        || connections[regionID] == null)
+                    // Region is empty, is not a root, or is not a
+                    // candidate for being merged into another region.
                     continue;
                 
-                if (region.spanCount > mMergeRegionSize)
-                    // Region is not a candidate for being merged into
-                    // another region.
-                    continue;
+                final IntList regionConnections = connections[regionID];
+                updateConnections(regionConnections, parents);
                 
-                // Region is either a small region, or a large region
-                // not connected to a null region.
-                // Find its smallest neighbor region.
-                Region targetMergeRegion = null;
+                // Find the region's smallest neighbor region.
+                int target = NULL_REGION;
                 int smallestSizeFound = Integer.MAX_VALUE;
                 // Loop through all region's neighbor (connections).
-                for (Integer nRegionID : region.connections)
+                for (int i = 0; i < regionConnections.size(); i++)
                 {
-                    if (nRegionID <= 0)
+                    final int nRegionID = regionConnections.get(i);
+                    if (nRegionID <= NULL_REGION)
                         // This neighbor is the null region.  So skip it.
                         continue;
-                    final Region nRegion = regions[nRegionID];
-                    if (nRegion.spanCount < smallestSizeFound
-                            && canMerge(region, nRegion))
+                    if (spanCounts[nRegionID] < smallestSizeFound
+                            && canMerge(regionID
+                                    , nRegionID
+                                    , connections
+                                    , overlaps
+                                    , parents))
                     {
                         // This neighbor region is the smallest merge-able
                         // region found so far.
-                        targetMergeRegion = nRegion;
-                        smallestSizeFound = nRegion.spanCount;
+                        target = nRegionID;
+                        smallestSizeFound = spanCounts[nRegionID];
                     }
                 }
                 // If a target was found, try to merge.
-                if (targetMergeRegion != null
-                        && mergeRegions(targetMergeRegion, region))
+                if (target != NULL_REGION
+                        && mergeRegions(target
+                                , regionID
+                                , connections
+                                , overlaps
+                                , spanCounts
+                                , parents))
                 {
-                    // A successful merge took place.
-                    // Discard the old region and replace it with the region
-                    // it was merged into.
-                    final int oldRegionID = region.id;
-                    region.resetWithID(targetMergeRegion.id);
-                    // Update region ID in all regions which reference the
-                    // discarded region.
-                    for (Region r : regions)
-                    {
-                        if (r.id <= 0)
-                            // Ignore null region.
-                            continue;
-                        if (r.id == oldRegionID)
-                            // This region was merged into the old
-                            // outdated region. Re-point its id to the new
-                            // target region.
-                            r.id = targetMergeRegion.id;
-                        else
-                            // Fix connection and overlap information.
-                            replaceNeighborRegionID(r
-                                    , oldRegionID
-                                    , targetMergeRegion.id);
-                        
-                    }
+                    // A successful merge took place.  Join the region's
+                    // set to the set of the region it was merged into.
+                    parents[regionID] = target;
+                    spanCounts[regionID] = 0;
+                    connections[regionID] = null;
+                    overlaps[regionID] = null;
                     mergeCount++;
                 }
             }
+            totalMergeCount += mergeCount;
         // Continue looping as long as there were merges in the last iteration.
         } while (mergeCount > 0);
         
-        /*
-         *  At this point the region ids may no longer be sequential.
-         *  This next section re-maps the region ids so they are again
-         *  sequential.
-         * 
-         *  Flag regions that need to be considered for id re-mapping.
-         *  This flagging is necessary since multiple regions may be sharing
-         *  the same id. Only want to consider a single id for mapping at
-         *  a time.
-         */
-        for (Region region : regions)
+        if (metrics != null)
         {
-            if (region.id > 0)
-                // This is not a null region.  So it needs to be considered
-                // for remapping.
-                region.remap = true;
+            metrics.count(BuildCounter.REGIONS_FILTERED, filteredCount);
+            metrics.count(BuildCounter.REGIONS_MERGED, totalMergeCount);
         }
         
-         // Next variable will be incremented to 1 the first iteration
-        // of the loop.
+        /*
+         * At this point the region ids are no longer sequential.
+         * Assign sequential ids to the root regions in order of the
+         * first region that belongs to each root.
+         */
+        final int[] rootIDs = new int[regionCount];
+        final int[] finalIDs = new int[regionCount];
         int currRegionID = 0;
-        for (Region region : regions)
+        for (int regionID = 0; regionID < regionCount; regionID++)
         {
-            if (!region.remap)
-                // Region already considered for re-mapping.
+            final int root = find(parents, regionID);
+            if (root == NULL_REGION)
                 continue;
-            // Will re-assign all regions that use the current region ID to
-            // the next available sequential region ID.
-            currRegionID++;
-            final int oldID = region.id;
-            // Search all regions for ones using the old region ID.
-            for (Region r : regions)
-            {
-                if (r.id == oldID)
-                {
-                    // This region uses the old ID.
-                    // Re-assign it to the new ID.
-                    r.id = currRegionID;
-                    r.remap = false;  // Don't consider this region again.
-                }
-            }
+            if (rootIDs[root] == 0)
+                rootIDs[root] = ++currRegionID;
+            finalIDs[regionID] = rootIDs[root];
         }
         // Update the number of regions in the field.
         // Add one to account for null region.
         field.setRegionCount(currRegionID+1);
         
         // Finally, update the span region ID's to their final values.
-        iter.reset();
-        while (iter.hasNext())
+        for (int span = 0; span < spanCount; span++)
         {
-            final OpenHeightSpan span = iter.next();
-            if (span.regionID() == 0)
+            if (field.regionID(span) == 0)
                 // Leave null regions alone.
                 continue;
             else
-                // Re-map by getting the region object at the old index
-                // and assigning its current region id to the span.
-                span.setRegionID(regions[span.regionID()].id);
+                field.setRegionID(span, finalIDs[field.regionID(span)]);
         }
 
     }
@@ -365,19 +390,29 @@ public final class FilterOutSmallRegions
      * <li>They connect at more than one point.</li>
      * <li>They overlap vertically.</li>
      * </ul>
-     * <p>Behavior is undefined if either region is a null region.</p>
-     * @param regionA A region connected with regionB.
+     * <p>Behavior is undefined if either region is a null region or is not
+     * a root region.</p>
+     * @param regionA A region connected with regionB.  Its connections
+     * must be up to date.
      * @param regionB A region connected with regionA.
+     * @param connections The region connections.
+     * @param overlaps The region overlaps.
+     * @param parents The union-find parents of the regions.
      * @return TRUE if the two regions can be merged.  Otherwise FALSE.
      */
-    private static boolean canMerge(Region regionA, Region regionB)
+    private static boolean canMerge(int regionA
+            , int regionB
+            , IntList[] connections
+            , BitSet[] overlaps
+            , int[] parents)
     {
         // Only checking connections from A to B since checking B to A would
         // be redundant.
+        final IntList connectionsA = connections[regionA];
         int connectionsAB = 0;
-        for (Integer connectionID : regionA.connections)
+        for (int i = 0; i < connectionsA.size(); i++)
         {
-            if (connectionID == regionB.id)
+            if (connectionsA.get(i) == regionB)
                 // Connection detected.
                 connectionsAB++;
         }
@@ -392,10 +427,10 @@ public final class FilterOutSmallRegions
         // Can't merge regions that overlap vertically.
         // This check needs to be checked in both directions due to the way
         // the data is built.
-        if (regionA.overlappingRegions.contains(regionB.id))
+        if (isOverlapping(overlaps[regionA], regionB, parents))
             // Region B overlaps region A.  Can't merge.
             return false;
-        if (regionB.overlappingRegions.contains(regionA.id))
+        if (isOverlapping(overlaps[regionB], regionA, parents))
             // Region A overlaps region B.  Can't merge.
             return false;
         
@@ -403,6 +438,24 @@ public final class FilterOutSmallRegions
         return true;
     }
     
+    /**
+     * Gets the root of the set the region belongs to.  (I.e. The current
+     * id of the region.)
+     * <p>Paths are halved as they are traversed.</p>
+     * @param parents The union-find parents of the regions.
+     * @param regionID The original id of the region.
+     * @return The root of the region's set.
+     */
+    private static int find(int[] parents, int regionID)
+    {
+        while (parents[regionID] != regionID)
+        {
+            parents[regionID] = parents[parents[regionID]];
+            regionID = parents[regionID];
+        }
+        return regionID;
+    }
+    
     /**
      * Walks the edge of a region adding all neighbor region connections to
      * a connection array.
@@ -412,12 +465,14 @@ public final class FilterOutSmallRegions
      * @param startSpan  A span that is known to be on the edge of a region.
      * @param startDirection The direction of the edge of the span that is
      * known to point across the region edge.
+     * @param field The field containing the span.
      * @param outConnections  A reference to the region's connection object.
      * This object will be filled with connection data.
      */
-    private static void findRegionConnections(OpenHeightSpan startSpan
+    private static void findRegionConnections(int startSpan
             , int startDirection
-            , ArrayList<Integer> outConnections)
+            , CompactOpenHeightfield field
+            , IntList outConnections)
     {
         
         /*
@@ -434,16 +489,16 @@ public final class FilterOutSmallRegions
          * See also: http://www.critterai.org/nmgen_contourgen#robotwalk
          */
         
-        OpenHeightSpan span = startSpan;
+        int span = startSpan;
         int dir = startDirection;
         // Default in case no neighbor exists.
         int lastEdgeRegionID = NULL_REGION;
 
         // Add the first known connection.
-        OpenHeightSpan nSpan = span.getNeighbor(dir);
-        if (nSpan != null)
+        int nSpan = field.getNeighbor(span, dir);
+        if (nSpan != NULL_SPAN)
             // Found a neighbor in this direction.  Use it's region ID.
-            lastEdgeRegionID = nSpan.regionID();
+            lastEdgeRegionID = field.regionID(nSpan);
         // Add the first region ID to the list.
         outConnections.add(lastEdgeRegionID);
         
@@ -463,15 +518,16 @@ public final class FilterOutSmallRegions
             // will always  reference a span from the same region as the
             // start span.
             
-            nSpan = span.getNeighbor(dir);
+            nSpan = field.getNeighbor(span, dir);
             // Default in case no neighbor exists.
             int currEdgeRegionID = NULL_REGION;
-            if (nSpan == null || nSpan.regionID() != span.regionID())
+            if (nSpan == NULL_SPAN
+                    || field.regionID(nSpan) != field.regionID(span))
             {
                 // The current direction points across a region edge.
-                if (nSpan != null)
+                if (nSpan != NULL_SPAN)
                     // There is a span in this direciton.  Get its region ID.
-                    currEdgeRegionID = nSpan.regionID();
+                    currEdgeRegionID = field.regionID(nSpan);
                 if (currEdgeRegionID != lastEdgeRegionID)
                 {
                     // The region across this edge is different from
@@ -507,12 +563,11 @@ public final class FilterOutSmallRegions
         // Make sure the first and last regions are not the same.  This is
         // the only type of connection adjacency that has the possibility
         // of existing.
-        if (outConnections.size() > 1
-                && outConnections.get(0)
-                    .equals(outConnections.get(outConnections.size() - 1)))
+        final int last = outConnections.size() - 1;
+        if (last > 0 && outConnections.get(0) == outConnections.get(last))
             // The fist and last connection is the same.
             // Remove the last connection.
-            outConnections.remove(outConnections.size() - 1);
+            outConnections.removeRange(last, last + 1);
 
     }
     
@@ -524,16 +579,19 @@ public final class FilterOutSmallRegions
      * <p>The direction of the first detected neighbor region is
      * returned.</p>
      * @param span The span to check.
+     * @param field The field containing the span.
      * @return The direction of span edge that lies along a neighbor region,
      * or -1 if the span is not on a region edge.
      */
-    private static int getRegionEdgeDirection(OpenHeightSpan span)
+    private static int getRegionEdgeDirection(int span
+            , CompactOpenHeightfield field)
     {
         // Search axis-neighbors.
         for (int dir = 0; dir < 4; ++dir)
         {
-            OpenHeightSpan nSpan = span.getNeighbor(dir);
-            if (nSpan == null || nSpan.regionID() != span.regionID())
+            final int nSpan = field.getNeighbor(span, dir);
+            if (nSpan == NULL_SPAN
+                    || field.regionID(nSpan) != field.regionID(span))
                 // Doesn't have a neighbor or its neighbor is in a
                 // different region.
                 return dir;
@@ -543,6 +601,30 @@ public final class FilterOutSmallRegions
     }
     
 
+    /**
+     * Indicates whether a set of overlaps contains a region.
+     * @param overlaps The overlaps to search, by original region id.
+     * May be null.
+     * @param regionID The root region to search for.
+     * @param parents The union-find parents of the regions.
+     * @return TRUE if any of the overlaps belongs to the region.
+     */
+    private static boolean isOverlapping(BitSet overlaps
+            , int regionID
+            , int[] parents)
+    {
+        if (overlaps == null)
+            return false;
+        for (int i = overlaps.nextSetBit(0)
+                ; i >= 0
+                ; i = overlaps.nextSetBit(i + 1))
+        {
+            if (find(parents, i) == regionID)
+                return true;
+        }
+        return false;
+    }
+
     /**
      * Merges the candidate region into the target region.
      * <p>Only the target region is updated.  The candidate is not altered.
@@ -550,38 +632,47 @@ public final class FilterOutSmallRegions
      * this operation successfully completes.</p>
      * <p>IMPORTANT: The provided regions should already have been checked
      * to ensure they are valid for merging. E.g. Using
-     * {@link #canMerge(Region, Region)}. Otherwise, behavior will be undefined.
+     * {@link #canMerge(int, int, IntList[], BitSet[], int[])}. Otherwise,
+     * behavior will be undefined.
      * The only time this operation will detect a failure and abort
      * (return false) is if the failure check is inherent to the merge
      * process.</p>
      * @param target The region to merge the candidate into.
-     * @param candidate The region to merge into the target.
+     * @param candidate The region to merge into the target.  Its
+     * connections must be up to date.
+     * @param connections The region connections.
+     * @param overlaps The region overlaps.
+     * @param spanCounts The region span counts.
+     * @param parents The union-find parents of the regions.
      * @return TRUE if the spans in the candidate region were successfully
      * added to the target region.
      */
-    private static boolean mergeRegions(Region target, Region candidate)
+    private static boolean mergeRegions(int target
+            , int candidate
+            , IntList[] connections
+            , BitSet[] overlaps
+            , int[] spanCounts
+            , int[] parents)
     {
         
+        final IntList targetConns = connections[target];
+        final IntList candidateConns = connections[candidate];
+        updateConnections(targetConns, parents);
+        
         // Get connection indices for target and candidate.
         // (Where the two regions connect.)
-        final int connectionPointOnTarget =
-            target.connections.indexOf(candidate.id);
+        final int connectionPointOnTarget = indexOf(targetConns, candidate);
         if (connectionPointOnTarget == -1)
             // The target knows of no connection between the regions.
             return false;
         final int connectionPointOnCandidate =
-            candidate.connections.indexOf(target.id);
+            indexOf(candidateConns, target);
         if (connectionPointOnCandidate == -1)
             // The candidate knows of no connection between the regions.
             return false;
         
-        // Merging candidate into target.  So need to save original target
-        // connections prior to the rebuilding them.
-        final ArrayList<Integer> targetConns =
-            new ArrayList<Integer>(target.connections);
-        
         /*
-         *  Merge connection information.
+         *  Merge connection information into a new list.
          * 
          *  Step 1: Rebuild the target connections.
          * 
@@ -594,12 +685,13 @@ public final class FilterOutSmallRegions
          *      Rebuild starting at index 2 and stop building at
          *      index 0 to get: 3, 4, 5, 0.
          */
-        target.connections.clear();
+        final IntList mergedConns = new IntList(
+                targetConns.size() + candidateConns.size());
         int workingSize = targetConns.size();
         for (int i = 0; i < workingSize - 1; i++)
         {
             // The modulus calculation is what results in the wrapping.
-            target.connections.add(targetConns.get(
+            mergedConns.add(targetConns.get(
                     (connectionPointOnTarget + 1 + i) % workingSize));
         }
         /*
@@ -620,56 +712,73 @@ public final class FilterOutSmallRegions
          *  Note that this process can result in adjacent duplicate
          *  connections which will be fixed later.
          */
-        workingSize = candidate.connections.size();
+        workingSize = candidateConns.size();
         for (int i = 0; i < workingSize - 1; i++)
         {
-            target.connections.add(candidate.connections.get(
+            mergedConns.add(candidateConns.get(
                     (connectionPointOnCandidate + 1 + i) % workingSize));
         }
         /*
          * Step 3: Get rid of any adjacent duplicate connections that may
          * have been created.
          */
-        removeAdjacentDuplicateConnections(target);
+        removeAdjacentDuplicateConnections(mergedConns);
+        connections[target] = mergedConns;
         
         // Add overlap data from the candidate to the target.
-        for (Integer i : candidate.overlappingRegions)
+        if (overlaps[candidate] != null)
         {
-            if (!target.overlappingRegions.contains(i))
-                // This is a new overlap.  Add it to the target.
-                target.overlappingRegions.add(i);
+            if (overlaps[target] == null)
+                overlaps[target] = new BitSet();
+            overlaps[target].or(overlaps[candidate]);
         }
 
         // Merge span counts.
-        target.spanCount += candidate.spanCount;
+        spanCounts[target] += spanCounts[candidate];
         
         return true;
         
     }
     
+    /**
+     * The index of the first occurrence of the value in the list, or -1
+     * if the list does not contain the value.
+     */
+    private static int indexOf(IntList list, int value)
+    {
+        for (int i = 0; i < list.size(); i++)
+        {
+            if (list.get(i) == value)
+                return i;
+        }
+        return -1;
+    }
+    
     /**
      * If a regions connection list contains adjacent duplicate connections,
      * this operation removes them. Example of a cleanup:
      * 3, 4, 5, 0, 0, 3 -> 4, 5, 0, 3
-     * @param region The region to cleanup.
+     * @param connections The connections to cleanup.
      */
-    private static void removeAdjacentDuplicateConnections(Region region)
+    private static void removeAdjacentDuplicateConnections(
+            IntList connections)
     {
         int iConnection = 0;
         // Loop through all adjacent connections.
-        while (iConnection < region.connections.size()
-                && region.connections.size() > 1)
+        while (iConnection < connections.size()
+                && connections.size() > 1)
         {
             int iNextConnection = iConnection+1;
-            if (iNextConnection >= region.connections.size())
+            if (iNextConnection >= connections.size())
                 // Need to loop back to zero.
                 iNextConnection = 0;
-            if (region.connections.get(iConnection)
-                .equals(region.connections.get(iNextConnection)))
+            if (connections.get(iConnection)
+                    == connections.get(iNextConnection))
             {
                 // Found duplicate.
                 // Remove duplicate and stay at current index.
-                region.connections.remove(iNextConnection);
+                connections.removeRange(iNextConnection
+                        , iNextConnection + 1);
             }
             else
                 // Move to next connection.
@@ -678,39 +787,30 @@ public final class FilterOutSmallRegions
     }
     
     /**
-     * Searches through a region's connection and overlap information
-     * for any references to an old region ID and replaces with the new ID.
-     * @param region The region to perform the search and replace on.
-     * @param oldID The old region ID to replace.
-     * @param newID The ID to replace the old ID with.
+     * Replaces the ids of merged regions in a connection list with the ids
+     * of the regions they were merged into.
+     * @param connections The connections to update.
+     * @param parents The union-find parents of the regions.
      */
-    private static void replaceNeighborRegionID(Region region
-            , int oldID
-            , int newID)
+    private static void updateConnections(IntList connections
+            , int[] parents)
     {
         boolean connectionsChanged = false;
-        // Perform the search and replace on the region connections.
-        for (int i = 0; i < region.connections.size(); i++)
+        for (int i = 0; i < connections.size(); i++)
         {
-            if (region.connections.get(i) == oldID)
+            final int regionID = connections.get(i);
+            final int root = find(parents, regionID);
+            if (root != regionID)
             {
-                // Found a match.  Replace it.
-                region.connections.set(i, newID);
+                connections.set(i, root);
                 connectionsChanged = true;
             }
         }
-        // Perform a search and replace on the overlap regions.
-        for (int i = 0; i < region.overlappingRegions.size(); i++)
-        {
-            if (region.overlappingRegions.get(i) == oldID)
-                // Found a match.  Replace it.
-                region.overlappingRegions.set(i, newID);
-        }
         if (connectionsChanged)
             // Connections changed.  This might have resulted in
             // two connections being merged into one.  Search for and
             // fix as needed.
-            removeAdjacentDuplicateConnections(region);
+            removeAdjacentDuplicateConnections(connections);
     }
     
 }
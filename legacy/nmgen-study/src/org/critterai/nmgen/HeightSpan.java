@@ -24,6 +24,9 @@ package org.critterai.nmgen;
 /**
  * Represents a span within the cell column of a heightfield.
  * Spans represent one or more contiguous voxels.
+ * <p>Spans obtained from a {@link SolidHeightfield} are views into the
+ * field's compact span storage.  Changes made to such spans are reflected
+ * in the field.</p>
  * @see <a href="http://www.critterai.org/?q=nmgen_hfintro"
  * target="_parent">Introduction to Heightfields</a>
  */
@@ -39,6 +42,18 @@ public final class HeightSpan
     private int mFlags = 0;
     private HeightSpan mNext = null;
     
+    /**
+     * The field this span is a view into, or null if the span holds its
+     * own data.
+     */
+    private final SolidHeightfield mSource;
+    
+    /**
+     * The index of the span within {@link #mSource}.  Only meaningful
+     * for views.
+     */
+    private final int mIndex;
+    
     /**
      * Constructor
      * @param min The minimum increment of the span.
@@ -58,37 +73,72 @@ public final class HeightSpan
         mMinimum = min;
         mMaximum = max;
         mFlags = flags;
+        mSource = null;
+        mIndex = SolidHeightfield.NULL_SPAN;
+    }
+    
+    /**
+     * Constructor for a view into a field's span storage.
+     * @param source The field that contains the span.
+     * @param index The index of the span within the field.
+     */
+    HeightSpan(SolidHeightfield source, int index)
+    {
+        mSource = source;
+        mIndex = index;
     }
     
     /**
      * The flags for the span.
      * @return The flags for the span.
      */
-    public int flags() { return mFlags; }
+    public int flags()
+    {
+        return (mSource == null ? mFlags : mSource.spanFlags(mIndex));
+    }
     
     /**
      * The span maximum.
      * @return The span maximum.
      */
-    public int max() { return mMaximum; }
+    public int max()
+    {
+        return (mSource == null ? mMaximum : mSource.spanMax(mIndex));
+    }
     
     /**
      * The span minimum.
      * @return The span minimum.
      */
-    public int min() { return mMinimum; }
+    public int min()
+    {
+        return (mSource == null ? mMinimum : mSource.spanMin(mIndex));
+    }
     
     /**
      * The next span in the column.  (Usually above the current span.)
      * @return The next span in the column.  Or null if there is no next span.
      */
-    public HeightSpan next() { return mNext; }
+    public HeightSpan next()
+    {
+        if (mSource == null)
+            return mNext;
+        final int next = mSource.nextSpan(mIndex);
+        return (next == SolidHeightfield.NULL_SPAN ?
+                null : new HeightSpan(mSource, next));
+    }
     
     /**
      * Set the flags for the span.
      * @param value The new flags for the span.
      */
-    public void setFlags(int value) { mFlags = value; }
+    public void setFlags(int value)
+    {
+        if (mSource == null)
+            mFlags = value;
+        else
+            mSource.setSpanFlags(mIndex, value);
+    }
     
     /**
      * Sets the span maximum.
@@ -97,7 +147,9 @@ public final class HeightSpan
      */
     public void setMax(int value)
     {
-        if (value <= mMinimum)
+        if (mSource != null)
+            mSource.setSpanMax(mIndex, value);
+        else if (value <= mMinimum)
             mMaximum = mMinimum + 1;
         else
             mMaximum = value;
@@ -110,7 +162,9 @@ public final class HeightSpan
      */
     public void setMin(int value)
     {
-        if (value >= mMaximum)
+        if (mSource != null)
+            mSource.setSpanMin(mIndex, value);
+        else if (value >= mMaximum)
             mMinimum = mMaximum - 1;
         else
             mMinimum = value;
@@ -122,13 +176,23 @@ public final class HeightSpan
     @Override
     public String toString()
     {
-        return mMinimum + "->" + mMaximum + ", Flags: " + mFlags;
+        return min() + "->" + max() + ", Flags: " + flags();
     }
 
     /**
      * Set the next span value.
+     * <p>For views, the new next span must be null or a view into the
+     * same field.</p>
      * @param value The new next span.  (null is a valid value.)
      */
-    void setNext(HeightSpan value) { mNext = value; }
+    void setNext(HeightSpan value)
+    {
+        if (mSource == null)
+            mNext = value;
+        else
+            mSource.setNextSpan(mIndex
+                    , (value == null ? SolidHeightfield.NULL_SPAN
+                            : value.mIndex));
+    }
     
 }
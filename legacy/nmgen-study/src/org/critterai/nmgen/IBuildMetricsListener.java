@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2010 Stephen A. Pratt
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.critterai.nmgen;
+
+/**
+ * Receives timings and counts from the stages of a navigation mesh build.
+ * <p>All calls are made on the thread that called the build operation,
+ * in the order the stages complete.  So an implementation only needs to be
+ * thread safe if it is shared by concurrent builds.</p>
+ * <p>Tiled builds sum the stages and counts of all of the tiles they
+ * build.  The totals are reported once all tiles are complete.  Each
+ * stage is reported once, in stage order, followed by the counts.  The
+ * allocations of a tile only include the thread that built it.</p>
+ * @see NavmeshGenerator#build(float[], int[], IntermediateData,
+ * IBuildMetricsListener)
+ * @see NavmeshGenerator#buildTiledNavmesh(float[], int[], float,
+ * IBuildMetricsListener)
+ */
+public interface IBuildMetricsListener
+{
+    
+    /**
+     * A count recorded by the build.
+     * @param counter The counter.
+     * @param value The value of the counter.
+     */
+    void counterRecorded(BuildCounter counter, long value);
+    
+    /**
+     * A build stage has completed.
+     * @param stage The stage.
+     * @param name The class name of the algorithm for
+     * {@link BuildStage#REGION_ALGORITHM}.  Otherwise null.
+     * @param elapsedTime The time taken by the stage. (ns)
+     * @param allocatedBytes The number of bytes allocated during the stage,
+     * or {@link IntermediateData#UNDEFINED} if allocation measurement is
+     * not supported by the JVM.  If the generator uses a thread pool,
+     * allocations by all threads are included.
+     */
+    void stageCompleted(BuildStage stage
+            , String name
+            , long elapsedTime
+            , long allocatedBytes);
+}
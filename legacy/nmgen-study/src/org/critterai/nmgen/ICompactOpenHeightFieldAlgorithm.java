@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2010 Stephen A. Pratt
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.critterai.nmgen;
+
+/**
+ * Applies an algorithm to a {@link CompactOpenHeightfield}.
+ * <p>This is the form used internally by {@link OpenHeightfieldBuilder}.
+ * Algorithms that only implement {@link IOpenHeightFieldAlgorithm} are
+ * still supported via {@link OpenHeightFieldAlgorithmAdapter}, but require
+ * the field to be converted to and from an {@link OpenHeightfield} each
+ * time they are applied.</p>
+ * <p>Implementations should implement the
+ * {@link IOpenHeightFieldAlgorithm#apply(OpenHeightfield)} form by
+ * delegating to {@link OpenHeightFieldAlgorithmAdapter#apply(
+ * ICompactOpenHeightFieldAlgorithm, OpenHeightfield)}.</p>
+ */
+public interface ICompactOpenHeightFieldAlgorithm
+    extends IOpenHeightFieldAlgorithm
+{
+    /**
+     * Applies the algorithm to the height field.
+     * <p>The same requirements apply as for
+     * {@link IOpenHeightFieldAlgorithm#apply(OpenHeightfield)}.</p>
+     * @param field The field to apply the algorithm to.
+     */
+    void apply(CompactOpenHeightfield field);
+}
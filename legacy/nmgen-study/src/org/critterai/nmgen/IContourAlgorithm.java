@@ -25,6 +25,7 @@ import java.util.ArrayList;
 
 /**
  * Provides for the application of an algorithm to a contour.
+ * @see IPrimitiveContourAlgorithm
  */
 public interface IContourAlgorithm
 {
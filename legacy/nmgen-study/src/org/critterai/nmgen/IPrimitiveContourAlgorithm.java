@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2010 Stephen A. Pratt
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.critterai.nmgen;
+
+/**
+ * Provides for the application of an algorithm to a contour using
+ * primitive integer lists.
+ * <p>This is the form used internally by {@link ContourSetBuilder}.
+ * Algorithms that only implement {@link IContourAlgorithm} are still
+ * supported via {@link ContourAlgorithmAdapter}, but require the vertex
+ * data to be copied to and from boxed lists each time they are applied.</p>
+ * <p>Implementations should implement the
+ * {@link IContourAlgorithm#apply(java.util.ArrayList, java.util.ArrayList)}
+ * form by delegating to
+ * {@link ContourAlgorithmAdapter#apply(IPrimitiveContourAlgorithm,
+ * java.util.ArrayList, java.util.ArrayList)}.</p>
+ */
+public interface IPrimitiveContourAlgorithm
+    extends IContourAlgorithm
+{
+    /**
+     * Apply an algorithm to a contour.
+     * <p>The content of the arguments is the same as for
+     * {@link IContourAlgorithm#apply(java.util.ArrayList,
+     * java.util.ArrayList)}.</p>
+     * @param sourceVerts The source vertices that represent the contour
+     * in the form (x, y, z, regionID).
+     * @param resultVerts The contour vertices produced by the operation
+     * in the form (x, y, z, sourceIndex).
+     */
+    void apply(IntList sourceVerts, IntList resultVerts);
+}
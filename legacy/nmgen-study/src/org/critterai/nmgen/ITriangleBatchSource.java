@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2010 Stephen A. Pratt
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.critterai.nmgen;
+
+/**
+ * Provides source geometry as a sequence of triangle batches.
+ * <p>Allows {@link SolidHeightfieldBuilder} to voxelize geometry that is
+ * too large to be held in a single pair of vertex and index arrays.  Only
+ * the current batch needs to be held in memory.</p>
+ * <p>Each batch is a self contained triangle mesh.  Its indices refer to
+ * the vertices of the same batch.</p>
+ * <p>The source may be read more than once during a single build.  (E.g.
+ * Once to find the bounds of the geometry, then again to voxelize it.)
+ * Each pass starts with a call to {@link #reset()}, and must return the
+ * same batches in the same order.</p>
+ */
+public interface ITriangleBatchSource
+{
+    /**
+     * The vertices of the current batch.
+     * <p>Only valid after a call to {@link #nextBatch()} returns TRUE.
+     * The content may be overwritten by the next call.</p>
+     * @return The vertices of the current batch in the form (x, y, z).
+     */
+    float[] batchVertices();
+    
+    /**
+     * The indices of the current batch.
+     * <p>Only valid after a call to {@link #nextBatch()} returns TRUE.
+     * The content may be overwritten by the next call.</p>
+     * @return The indices of the current batch in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     */
+    int[] batchIndices();
+    
+    /**
+     * Moves to the next batch.
+     * @return TRUE if a batch is available.  FALSE if all batches have
+     * been returned.
+     */
+    boolean nextBatch();
+    
+    /**
+     * Moves back to before the first batch.
+     */
+    void reset();
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2010 Stephen A. Pratt
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.critterai.nmgen;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive integers.
+ * <p>Used in place of ArrayList&lt;Integer&gt; for working data that is
+ * accessed heavily, such as contour vertex lists.  No boxing is performed
+ * and the backing array is only re-allocated when the capacity is exceeded.
+ * </p>
+ * <p>Like ArrayList, element access is range checked against the size of
+ * the list rather than the capacity of the backing array.</p>
+ */
+public final class IntList
+{
+
+    /*
+     * Design notes:
+     * 
+     * Only the operations needed by the contour code are provided.  Add
+     * others as they are needed.
+     */
+
+    private int[] mData;
+    private int mSize = 0;
+
+    /**
+     * Constructor
+     * @param initialCapacity The initial capacity of the list.
+     */
+    public IntList(int initialCapacity)
+    {
+        mData = new int[Math.max(initialCapacity, 4)];
+    }
+
+    /**
+     * Appends a value to the end of the list.
+     * @param value The value to append.
+     */
+    public void add(int value)
+    {
+        if (mSize == mData.length)
+            grow(mSize + 1);
+        mData[mSize++] = value;
+    }
+
+    /**
+     * Inserts a value at the specified index, shifting all values at or
+     * above the index up by one.
+     * @param index The index to insert the value at.
+     * (0 &lt;= index &lt;= size())
+     * @param value The value to insert.
+     */
+    public void add(int index, int value)
+    {
+        if (mSize == mData.length)
+            grow(mSize + 1);
+        System.arraycopy(mData, index, mData, index + 1, mSize - index);
+        mData[index] = value;
+        mSize++;
+    }
+
+    /**
+     * Appends all values from the provided list to the end of this list.
+     * @param values The values to append.
+     */
+    public void addAll(IntList values)
+    {
+        if (mSize + values.mSize > mData.length)
+            grow(mSize + values.mSize);
+        System.arraycopy(values.mData, 0, mData, mSize, values.mSize);
+        mSize += values.mSize;
+    }
+
+    /**
+     * Removes all values from the list.  The capacity is not changed.
+     */
+    public void clear() { mSize = 0; }
+
+    /**
+     * The value at the specified index.
+     * @param index The index of the value.
+     * @return The value at the specified index.
+     * @throws IndexOutOfBoundsException If the index is out of range.
+     */
+    public int get(int index)
+        throws IndexOutOfBoundsException
+    {
+        checkIndex(index);
+        return mData[index];
+    }
+
+    /**
+     * Removes the values in the range fromIndex (inclusive) to toIndex
+     * (exclusive), shifting all higher values down.
+     * @param fromIndex The index of the first value to remove.
+     * @param toIndex The index after the last value to remove.
+     */
+    public void removeRange(int fromIndex, int toIndex)
+    {
+        System.arraycopy(mData, toIndex, mData, fromIndex, mSize - toIndex);
+        mSize -= toIndex - fromIndex;
+    }
+
+    /**
+     * Replaces the value at the specified index.
+     * @param index The index of the value to replace.
+     * @param value The new value.
+     * @throws IndexOutOfBoundsException If the index is out of range.
+     */
+    public void set(int index, int value)
+        throws IndexOutOfBoundsException
+    {
+        checkIndex(index);
+        mData[index] = value;
+    }
+
+    /**
+     * The number of values in the list.
+     * @return The number of values in the list.
+     */
+    public int size() { return mSize; }
+
+    /**
+     * A copy of the content of the list.
+     * @return A copy of the content of the list.  The length of the array
+     * will equal {@link #size()}.
+     */
+    public int[] toArray() { return Arrays.copyOf(mData, mSize); }
+
+    /**
+     * Validates that the index references an existing value.
+     * @param index The index to check.
+     * @throws IndexOutOfBoundsException If the index is out of range.
+     */
+    private void checkIndex(int index)
+        throws IndexOutOfBoundsException
+    {
+        if (index < 0 || index >= mSize)
+            throw new IndexOutOfBoundsException("Index " + index
+                    + " out of bounds for length " + mSize);
+    }
+
+    /**
+     * Grows the backing array so that it can hold at least the specified
+     * number of values.
+     * @param minCapacity The minimum required capacity.
+     */
+    private void grow(int minCapacity)
+    {
+        mData = Arrays.copyOf(mData
+                , Math.max(minCapacity, mData.length * 2));
+    }
+
+}
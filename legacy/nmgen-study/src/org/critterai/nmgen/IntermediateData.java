@@ -26,12 +26,25 @@ package org.critterai.nmgen;
  * the navigation mesh.
  * <p>The entire build process is represented when this data is combined with 
  * the source geometry and final navigation mesh.</p>
+ * <p>By default all intermediate results are captured.  Each intermediate
+ * result holds on to memory for the rest of the build, and beyond.  So the
+ * capture flags can be used to only capture the results needed for
+ * debugging.  Results which are not captured are released as soon as the
+ * build no longer needs them.  The performance data is always captured.</p>
+ * <p>The performance data only covers five coarse stages and is kept for
+ * existing callers.  Use an {@link IBuildMetricsListener} for the timings
+ * and counts of each build stage.</p>
  */
 public final class IntermediateData
 {
     
     /*
      * Recast Reference: None
+     * 
+     * Design notes:
+     * 
+     * The capture flags are configuration, not build data.  So they
+     * are not cleared by reset().
      */
     
     /**
@@ -39,29 +52,86 @@ public final class IntermediateData
      */
     public static final long UNDEFINED = -1;
     
+    /**
+     * Capture flag: Capture the solid heightfield.
+     * <p>The solid heightfield is normally released as soon as the open
+     * heightfield is built.  It is usually the largest of the intermediate
+     * results.</p>
+     */
+    public static final int CAPTURE_SOLID_HEIGHTFIELD = 0x01;
+    
+    /**
+     * Capture flag: Capture the open heightfield.
+     */
+    public static final int CAPTURE_OPEN_HEIGHTFIELD = 0x02;
+    
+    /**
+     * Capture flag: Capture the contour set.
+     */
+    public static final int CAPTURE_CONTOURS = 0x04;
+    
+    /**
+     * Capture flag: Capture the polygon mesh.
+     */
+    public static final int CAPTURE_POLY_MESH = 0x08;
+    
+    /**
+     * Capture flags: Capture no intermediate results.  Only the performance
+     * data is captured.
+     */
+    public static final int CAPTURE_NONE = 0;
+    
+    /**
+     * Capture flags: Capture all intermediate results.
+     */
+    public static final int CAPTURE_ALL = CAPTURE_SOLID_HEIGHTFIELD
+            | CAPTURE_OPEN_HEIGHTFIELD
+            | CAPTURE_CONTOURS
+            | CAPTURE_POLY_MESH;
+    
     /**
      * The time to perform voxelization. (ns)
+     * @deprecated Superseded by the per-stage timings reported to an
+     * {@link IBuildMetricsListener}.  Still set by builds for existing
+     * callers.
      */
+    @Deprecated
     public long voxelizationTime;
     
     /**
      * The time to perform region generation. (ns)
+     * @deprecated Superseded by the per-stage timings reported to an
+     * {@link IBuildMetricsListener}.  Still set by builds for existing
+     * callers.
      */
+    @Deprecated
     public long regionGenTime;
     
     /**
      * The time to perform contour generation. (ns)
+     * @deprecated Superseded by the per-stage timings reported to an
+     * {@link IBuildMetricsListener}.  Still set by builds for existing
+     * callers.
      */
+    @Deprecated
     public long contourGenTime;
     
     /**
      * The time to perform polygon generation. (ns)
+     * @deprecated Superseded by the per-stage timings reported to an
+     * {@link IBuildMetricsListener}.  Still set by builds for existing
+     * callers.
      */
+    @Deprecated
     public long polyGenTime;
     
     /**
      * The time to perform the final triangulation. (ns)
+     * @deprecated Superseded by the per-stage timings reported to an
+     * {@link IBuildMetricsListener}.  Still set by builds for existing
+     * callers.
      */
+    @Deprecated
     public long finalMeshGenTime;
     
     private SolidHeightfield mSolidHeightfield;
@@ -69,6 +139,33 @@ public final class IntermediateData
     private ContourSet mContours;
     private PolyMeshField mPolyMesh;
     
+    private int mCaptureFlags;
+    
+    /**
+     * Constructor
+     * <p>All intermediate results will be captured.</p>
+     */
+    public IntermediateData()
+    {
+        this(CAPTURE_ALL);
+    }
+    
+    /**
+     * Constructor
+     * @param captureFlags The intermediate results to capture.  A
+     * combination of the CAPTURE flags.
+     */
+    public IntermediateData(int captureFlags)
+    {
+        mCaptureFlags = captureFlags;
+    }
+    
+    /**
+     * The intermediate results to capture during a build.
+     * @return A combination of the CAPTURE flags.
+     */
+    public int captureFlags() { return mCaptureFlags; }
+    
     /**
      * The contour set associated with the open heightfield.
      * @return The contours associated with the open heightfield.
@@ -78,7 +175,11 @@ public final class IntermediateData
     /**
      * Returns the total time to generate the navigation mesh. (ns)
      * @return The total time to generate the navigation mesh. (ns)
+     * @deprecated Superseded by the per-stage timings reported to an
+     * {@link IBuildMetricsListener}.  Still set by builds for existing
+     * callers.
      */
+    @Deprecated
     public long getTotalGenTime()
     {
         if (finalMeshGenTime == UNDEFINED)
@@ -90,6 +191,16 @@ public final class IntermediateData
             + finalMeshGenTime;
     }
     
+    /**
+     * Indicates whether or not an intermediate result is to be captured.
+     * @param captureFlag The CAPTURE flag of the intermediate result.
+     * @return TRUE if the intermediate result is to be captured.
+     */
+    public boolean isCaptured(int captureFlag)
+    {
+        return (mCaptureFlags & captureFlag) != 0;
+    }
+    
     /**
      * The open heightfield associated with the solid heightfield.
      * @return The open heightfield associated with the solid heightfield.
@@ -104,6 +215,7 @@ public final class IntermediateData
     
     /**
      * Resets all data to null.
+     * <p>The capture flags are not changed.</p>
      */
     public void reset()
     {
@@ -118,6 +230,15 @@ public final class IntermediateData
         mPolyMesh = null;
     }
     
+    /**
+     * Sets the intermediate results to capture during later builds.
+     * @param captureFlags A combination of the CAPTURE flags.
+     */
+    public void setCaptureFlags(int captureFlags)
+    {
+        mCaptureFlags = captureFlags;
+    }
+    
     /**
      * Sets the contour set.
      * @param contours The contour set.
@@ -30,7 +30,7 @@ import java.util.ArrayList;
  * target="_parent">Visualizations</a>
  */
 public final class MatchNullRegionEdges
-    implements IContourAlgorithm
+    implements IPrimitiveContourAlgorithm
 {
     
     /*
@@ -74,8 +74,8 @@ public final class MatchNullRegionEdges
      * source vertices.</p>
      */
     @Override
-    public void apply(ArrayList<Integer> sourceVerts
-            , ArrayList<Integer> inoutResultVerts)
+    public void apply(IntList sourceVerts
+            , IntList inoutResultVerts)
     {
         if (sourceVerts == null || inoutResultVerts == null)
             return;
@@ -168,4 +168,16 @@ public final class MatchNullRegionEdges
                 iResultVertA++;
         }
     }
+
+    /**
+     * {@inheritDoc}
+     * <p>Delegates to the primitive form of this operation.</p>
+     */
+    @Override
+    public void apply(ArrayList<Integer> sourceVerts
+            , ArrayList<Integer> inoutResultVerts)
+    {
+        ContourAlgorithmAdapter.apply(this, sourceVerts, inoutResultVerts);
+    }
+
 }
@@ -22,6 +22,9 @@
 package org.critterai.nmgen;
 
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Used to generate static triangle meshes representing the traversable
@@ -33,6 +36,12 @@ import java.util.ArrayList;
  * <p> <img src=
  * "http://www.critterai.org/projects/nmgen/images/stage_detail_mesh.jpg"/>
  * </p>
+ * <p>The generator keeps a single distance field blur buffer between
+ * builds so that repeated builds do not re-allocate it.  The buffer is
+ * sized to the span count of a recently built field and remains
+ * reachable for the life of the generator.  Callers that need to
+ * minimize retained memory should release the generator once their
+ * builds are complete.</p>
  * @see <a href="http://www.critterai.org/nmgen"
  * target="_parent">Project Home</a>
  * @see <a href="http://www.critterai.org/nmgen_overview"
@@ -53,7 +62,122 @@ public final class NavmeshGenerator
      * setters would compromise that.
      * Never add getters for the builder fields.  That would not be thread
      * friendly.
+     * 
+     * Recast reference for tiled builds: Sample_TileMesh.cpp
+     * 
+     * Each tile is built from its own solid heightfield.  The fields are
+     * aligned to a grid shared by all tiles and use the y-bounds of the
+     * full source geometry, so overlapping tiles see identical spans.
+     * Each field is expanded beyond its tile by a border.  After region
+     * generation, the spans in the border are moved to the null region.
+     * The border is wide enough that the edges of the field do not
+     * impact the distance field within the tile, and the null region
+     * places the edges of the tile's meshes on the tile boundary.
+     * The contours keep every vertex on the tile boundary, so the
+     * contour algorithms can't simplify or split a seam differently in
+     * the tiles on each side of it.  (No T-junctions.)
+     * Since the tiles share nothing, they are built in parallel without
+     * locking.  Each tile also records its metrics to its own totals.
+     * The totals are added up in tile order and reported from the calling
+     * thread, as the listener contract requires.
+     * 
+     * The source triangles are binned by tile once per build or rebuild.
+     * Each tile is only voxelized from the triangles which overlap its
+     * field, so the cost of a tiled build does not grow with
+     * (tiles x triangles).
+     * 
+     * Incremental rebuilds fingerprint the source triangles which overlap
+     * each tile's field.  The triangles are hashed in index order since
+     * the order of voxelization can impact the spans.  A tile is only
+     * rebuilt if its fingerprint changes.  A rebuilt tile is voxelized from
+     * scratch, so only the polygon mesh, which is part of the tile, is
+     * captured from a tile build.
+     */
+    
+    /**
+     * Builds a single tile.
+     */
+    private final class BuildTileTask
+        extends RecursiveAction
+    {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final float[] mVertices;
+        private final int[] mIndices;
+        private final TiledNavmesh mNavmesh;
+        private final int mTileX;
+        private final int mTileZ;
+        private final BuildMetricsTotals mTotals;
+        
+        private NavmeshTile mResult;
+        
+        private BuildTileTask(float[] vertices
+                , int[] indices
+                , TiledNavmesh navmesh
+                , int tileX
+                , int tileZ
+                , BuildMetricsTotals totals)
+        {
+            mVertices = vertices;
+            mIndices = indices;
+            mNavmesh = navmesh;
+            mTileX = tileX;
+            mTileZ = tileZ;
+            mTotals = totals;
+        }
+        
+        @Override
+        protected void compute()
+        {
+            mResult = buildTile(mVertices
+                    , mIndices
+                    , mNavmesh
+                    , mTileX
+                    , mTileZ
+                    , mTotals);
+        }
+    }
+    
+    // Constants for the FNV-1a hash used for tile fingerprints.
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    
+    /**
+     * The number of cells the voxel fields of tiles are expanded by on
+     * each side of the tile.
+     */
+    private final int mTileBorderSize;
+    
+    /**
+     * The width and depth resolution of the voxel fields.
      */
+    private final float mCellSize;
+    
+    /**
+     * The pool used to build tiles in parallel, or null if tiles are to
+     * be built on the calling thread.
+     */
+    private final ForkJoinPool mThreadPool;
+    
+    /**
+     * If TRUE, regions are generated by monotone partitioning, so the
+     * distance field is not needed.
+     */
+    private final boolean mUseMonotoneRegions;
+    
+    /**
+     * The working buffer for the distance field blur of the next build,
+     * or null if the buffer is currently borrowed by a build.
+     * <p>Builds may run concurrently, and tiles are built on the threads
+     * of the pool.  A build borrows the buffer for the duration of its
+     * blur.  Builds that find it borrowed allocate their own, and only
+     * one buffer is kept when they are done.  So the generator never
+     * retains more than a single buffer, sized to the span count of a
+     * recently blurred field.</p>
+     */
+    private final AtomicReference<int[]> mBlurBuffer =
+        new AtomicReference<int[]>();
     
     // The builders used by this class.
     private final SolidHeightfieldBuilder mSolidHeightFieldBuilder;
@@ -205,6 +329,175 @@ public final class NavmeshGenerator
                 , float contourMaxDeviation)
         throws IllegalArgumentException
     {
+        this(cellSize
+                , cellHeight
+                , minTraversableHeight
+                , maxTraversableStep
+                , maxTraversableSlope
+                , clipLedges
+                , traversableAreaBorderSize
+                , smoothingThreshold
+                , useConservativeExpansion
+                , minUnconnectedRegionSize
+                , mergeRegionSize
+                , maxEdgeLength
+                , edgeMaxDeviation
+                , maxVertsPerPoly
+                , contourSampleDistance
+                , contourMaxDeviation
+                , null);
+    }
+    
+    /**
+     * Constructor
+     * <p>See {@link #NavmeshGenerator(float, float, float, float, float,
+     * boolean, float, int, boolean, int, int, float, float, int, float,
+     * float) the standard constructor} for details on the other
+     * arguments.</p>
+     * @param threadPool The pool used by the build stages which support
+     * parallel processing.  If null, all stages are performed on the
+     * thread calling the build operation.
+     * @throws IllegalArgumentException  If there are any unresolvable
+     * argument errors.
+     */
+    public NavmeshGenerator(float cellSize
+                , float cellHeight
+                , float minTraversableHeight
+                , float maxTraversableStep
+                , float maxTraversableSlope
+                , boolean clipLedges
+                , float traversableAreaBorderSize
+                , int smoothingThreshold
+                , boolean useConservativeExpansion
+                , int minUnconnectedRegionSize
+                , int mergeRegionSize
+                , float maxEdgeLength
+                , float edgeMaxDeviation
+                , int maxVertsPerPoly
+                , float contourSampleDistance
+                , float contourMaxDeviation
+                , ForkJoinPool threadPool)
+        throws IllegalArgumentException
+    {
+        this(cellSize
+                , cellHeight
+                , minTraversableHeight
+                , maxTraversableStep
+                , maxTraversableSlope
+                , clipLedges
+                , traversableAreaBorderSize
+                , smoothingThreshold
+                , useConservativeExpansion
+                , minUnconnectedRegionSize
+                , mergeRegionSize
+                , maxEdgeLength
+                , edgeMaxDeviation
+                , maxVertsPerPoly
+                , contourSampleDistance
+                , contourMaxDeviation
+                , false
+                , threadPool);
+    }
+    
+    /**
+     * Constructor
+     * <p>See {@link #NavmeshGenerator(float, float, float, float, float,
+     * boolean, float, int, boolean, int, int, float, float, int, float,
+     * float, ForkJoinPool) this constructor} for details on the other
+     * arguments.</p>
+     * @param useMonotoneRegions If TRUE, regions will be generated by
+     * monotone partitioning rather than by the watershed algorithm.  The
+     * distance field is not generated, which makes region generation much
+     * faster at the cost of more polygons in the final mesh.  The
+     * smoothing threshold has no effect.  Intended for fast preview
+     * builds.
+     * @throws IllegalArgumentException  If there are any unresolvable
+     * argument errors.
+     */
+    public NavmeshGenerator(float cellSize
+                , float cellHeight
+                , float minTraversableHeight
+                , float maxTraversableStep
+                , float maxTraversableSlope
+                , boolean clipLedges
+                , float traversableAreaBorderSize
+                , int smoothingThreshold
+                , boolean useConservativeExpansion
+                , int minUnconnectedRegionSize
+                , int mergeRegionSize
+                , float maxEdgeLength
+                , float edgeMaxDeviation
+                , int maxVertsPerPoly
+                , float contourSampleDistance
+                , float contourMaxDeviation
+                , boolean useMonotoneRegions
+                , ForkJoinPool threadPool)
+        throws IllegalArgumentException
+    {
+        this(cellSize
+                , cellHeight
+                , minTraversableHeight
+                , maxTraversableStep
+                , maxTraversableSlope
+                , clipLedges
+                , traversableAreaBorderSize
+                , smoothingThreshold
+                , useConservativeExpansion
+                , minUnconnectedRegionSize
+                , mergeRegionSize
+                , maxEdgeLength
+                , edgeMaxDeviation
+                , maxVertsPerPoly
+                , contourSampleDistance
+                , contourMaxDeviation
+                , false
+                , useMonotoneRegions
+                , false
+                , threadPool);
+    }
+    
+    /**
+     * Constructor
+     * <p>See {@link #NavmeshGenerator(float, float, float, float, float,
+     * boolean, float, int, boolean, int, int, float, float, int, float,
+     * float, boolean, ForkJoinPool) this constructor} for details on the
+     * other arguments.</p>
+     * @param useExactDistanceField If TRUE, the distance field will be
+     * generated using an exact Euclidean distance transform rather than
+     * the standard approximation.  The exact field does not have the
+     * directional artifacts of the approximation, so the smoothing
+     * threshold can usually be set to zero.  Has no effect if monotone
+     * regions are used.
+     * @param useIncrementalTriangulation If TRUE, detail polygons will be
+     * triangulated by incremental insertion, which makes small contour
+     * sample distances much less expensive.
+     * @throws IllegalArgumentException  If there are any unresolvable
+     * argument errors.
+     * @see OpenHeightfieldBuilder
+     * @see DetailMeshBuilder
+     */
+    public NavmeshGenerator(float cellSize
+                , float cellHeight
+                , float minTraversableHeight
+                , float maxTraversableStep
+                , float maxTraversableSlope
+                , boolean clipLedges
+                , float traversableAreaBorderSize
+                , int smoothingThreshold
+                , boolean useConservativeExpansion
+                , int minUnconnectedRegionSize
+                , int mergeRegionSize
+                , float maxEdgeLength
+                , float edgeMaxDeviation
+                , int maxVertsPerPoly
+                , float contourSampleDistance
+                , float contourMaxDeviation
+                , boolean useExactDistanceField
+                , boolean useMonotoneRegions
+                , boolean useIncrementalTriangulation
+                , ForkJoinPool threadPool)
+        throws IllegalArgumentException
+    {
         
         // Convert certain values from world units to voxel units.
         int vxMinTraversableHeight = 1;
@@ -239,13 +532,25 @@ public final class NavmeshGenerator
                     Math.max(Float.MIN_VALUE, cellSize));
         }
 
+        mThreadPool = threadPool;
+        mCellSize = cellSize;
+        mUseMonotoneRegions = useMonotoneRegions;
+        
+        /*
+         * The extra cells are a margin for the blur of the distance field,
+         * which can carry the field's edge a few cells inward.
+         * Same margin as used by Recast.
+         */
+        mTileBorderSize = vxTraversableAreaBorderSize + 3;
+
         // Construct the solid field builder.
         mSolidHeightFieldBuilder = new SolidHeightfieldBuilder(cellSize
                 , cellHeight
                 , vxMinTraversableHeight
                 , vxMaxTraversableStep
                 , maxTraversableSlope
-                , clipLedges);
+                , clipLedges
+                , threadPool);
         
         // Construct the open field builder.
         // The order of the algorithms is the order they are applied.
@@ -254,9 +559,11 @@ public final class NavmeshGenerator
         if (vxTraversableAreaBorderSize > 0)
             // Since there will be a boarder around all null regions,
             // we can use the more efficient form of the algorithm.
-            regionAlgorithms.add(new CleanNullRegionBorders(true));
+            regionAlgorithms.add(new CleanNullRegionBorders(true
+                    , threadPool));
         else
-            regionAlgorithms.add(new CleanNullRegionBorders(false));
+            regionAlgorithms.add(new CleanNullRegionBorders(false
+                    , threadPool));
         regionAlgorithms.add(new FilterOutSmallRegions(minUnconnectedRegionSize
                          , mergeRegionSize));
         mOpenHeightFieldBuilder = new OpenHeightfieldBuilder(
@@ -266,7 +573,10 @@ public final class NavmeshGenerator
                 , smoothingThreshold
                 , SpanFlags.WALKABLE
                 , useConservativeExpansion
-                , regionAlgorithms);
+                , regionAlgorithms
+                , useExactDistanceField
+                , useMonotoneRegions
+                , threadPool);
         
         // Construct the contour set builder.
         // The order of the algorithms is the order they are applied.
@@ -282,12 +592,15 @@ public final class NavmeshGenerator
         contourAlgorithms.add(
                 new MatchNullRegionEdges(edgeMaxDeviation / cellSize));
         contourAlgorithms.add(new NullRegionMaxEdge(vxMaxEdgeLength));
-        mContourSetBuilder = new ContourSetBuilder(contourAlgorithms);
+        mContourSetBuilder = new ContourSetBuilder(contourAlgorithms
+                , threadPool);
         
         // Construct the polymesh and triange mesh builders.
         mPolyMeshBuilder = new PolyMeshFieldBuilder(maxVertsPerPoly);
         mTriangleMeshBuilder = new DetailMeshBuilder(contourSampleDistance
-                , contourMaxDeviation);
+                , contourMaxDeviation
+                , useIncrementalTriangulation
+                , threadPool);
     }
     
     /**
@@ -298,6 +611,9 @@ public final class NavmeshGenerator
      * @param outIntermediateData  If non-null, the intermediate build
      * results will be added to this object.  If the build fails, the object
      * will contain all intermediate results which were successfully generated.
+     * Only the intermediate results selected by its capture flags are
+     * added.  All other intermediate results are released as soon as they
+     * are no longer needed by the build.
      * @return The generated navigation mesh, or null if generation failed.
      * @see <a href="http://www.critterai.org/?q=nmgen_overview"
      * target="_parent">Process Overview</a>
@@ -306,32 +622,575 @@ public final class NavmeshGenerator
             , int[] indices
             , IntermediateData outIntermediateData)
     {
+        return build(vertices, indices, outIntermediateData, null);
+    }
+    
+    /**
+     * Build a navigation mesh from the source geometry, reporting the
+     * timings and counts of each build stage.
+     * <p>See {@link #build(float[], int[], IntermediateData) the standard
+     * build} for details on the other arguments.</p>
+     * @param vertices  The source geometry vertices in the form (x, y, z)
+     * @param indices The triangle mesh vertices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @param outIntermediateData  If non-null, the intermediate build
+     * results will be added to this object.
+     * @param listener If non-null, the timings and counts of each build
+     * stage will be reported to this listener as the stages complete.
+     * @return The generated navigation mesh, or null if generation failed.
+     */
+    public TriangleMesh build(float[] vertices
+            , int[] indices
+            , IntermediateData outIntermediateData
+            , IBuildMetricsListener listener)
+    {
         
         if (outIntermediateData != null)
             outIntermediateData.reset();
         
-        long timerStart = 0;
+        final BuildMetrics metrics = createMetrics(listener);
         
         // Reference:  Heightfield overview
         // http://www.critterai.org/?q=nmgen_hfintro
         
         // Generate a height field representing obstructed (solid) space.
+        final long timerStart = System.nanoTime();
+        if (metrics != null)
+            metrics.startStage();
+        
+        // The solid field is passed straight through so that it is not
+        // held by this method once the open field is built.
+        return buildMesh(mSolidHeightFieldBuilder.build(vertices, indices)
+                , timerStart
+                , 0
+                , outIntermediateData
+                , metrics);
+        
+    }
+    
+    /**
+     * Build a navigation mesh from source geometry provided in batches.
+     * <p>Only the current batch of the source geometry needs to be held
+     * in memory.  The result is the same as a build from a single pair of
+     * arrays holding all of the batches.</p>
+     * @param source The source geometry.  It is read twice.  (See
+     * {@link SolidHeightfieldBuilder#build(ITriangleBatchSource)}.)
+     * @param outIntermediateData  If non-null, the intermediate build
+     * results will be added to this object.  If the build fails, the object
+     * will contain all intermediate results which were successfully generated.
+     * @return The generated navigation mesh, or null if generation failed.
+     */
+    public TriangleMesh build(ITriangleBatchSource source
+            , IntermediateData outIntermediateData)
+    {
+        return build(source, outIntermediateData, null);
+    }
+    
+    /**
+     * Build a navigation mesh from source geometry provided in batches,
+     * reporting the timings and counts of each build stage.
+     * @param source The source geometry.  It is read twice.  (See
+     * {@link SolidHeightfieldBuilder#build(ITriangleBatchSource)}.)
+     * @param outIntermediateData  If non-null, the intermediate build
+     * results will be added to this object.
+     * @param listener If non-null, the timings and counts of each build
+     * stage will be reported to this listener as the stages complete.
+     * @return The generated navigation mesh, or null if generation failed.
+     * @see #build(float[], int[], IntermediateData, IBuildMetricsListener)
+     */
+    public TriangleMesh build(ITriangleBatchSource source
+            , IntermediateData outIntermediateData
+            , IBuildMetricsListener listener)
+    {
+        
         if (outIntermediateData != null)
-            timerStart = System.nanoTime();
+            outIntermediateData.reset();
+        
+        final BuildMetrics metrics = createMetrics(listener);
+        
+        // Generate a height field representing obstructed (solid) space.
+        final long timerStart = System.nanoTime();
+        if (metrics != null)
+            metrics.startStage();
+        
+        return buildMesh(mSolidHeightFieldBuilder.build(source)
+                , timerStart
+                , 0
+                , outIntermediateData
+                , metrics);
+        
+    }
+    
+    /**
+     * Build a navigation mesh from the source geometry, split into tiles
+     * of a fixed size.
+     * <p>Each tile is built independently.  If the generator was
+     * constructed with a thread pool, the tiles are built in parallel.</p>
+     * <p>The meshes of each tile only cover the area within the tile.
+     * Where tiles border each other, the edges of their meshes lie on the
+     * shared tile boundary.</p>
+     * @param vertices  The source geometry vertices in the form (x, y, z)
+     * @param indices The triangle mesh vertices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @param tileSize The width and depth of the tiles. (World units.)
+     * The value is rounded up to a whole number of cells.
+     * <p>Constraints:  > 0</p>
+     * @return The tiles for which a navigation mesh was generated, ordered
+     * by tile row (z), then tile column (x).  Tiles without traversable
+     * surfaces are not included.  Null if the source geometry is invalid.
+     */
+    public NavmeshTile[] buildTiles(float[] vertices
+            , int[] indices
+            , float tileSize)
+    {
+        return buildTiles(vertices, indices, tileSize, null);
+    }
+    
+    /**
+     * Build a navigation mesh from the source geometry, split into tiles
+     * of a fixed size, reporting the timings and counts of the build
+     * stages.
+     * <p>See {@link #buildTiles(float[], int[], float) the standard
+     * tiled build} for details on the other arguments.</p>
+     * @param vertices  The source geometry vertices in the form (x, y, z)
+     * @param indices The triangle mesh vertices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @param tileSize The width and depth of the tiles. (World units.)
+     * @param listener If non-null, the timings and counts of the build
+     * stages, summed over all tiles, will be reported to this listener
+     * once the tiles are built.
+     * @return The tiles for which a navigation mesh was generated, or null
+     * if the source geometry is invalid.
+     */
+    public NavmeshTile[] buildTiles(float[] vertices
+            , int[] indices
+            , float tileSize
+            , IBuildMetricsListener listener)
+    {
+        final TiledNavmesh navmesh =
+            buildTiledNavmesh(vertices, indices, tileSize, listener);
+        return (navmesh == null ? null : navmesh.tiles());
+    }
+    
+    /**
+     * Build a tiled navigation mesh from the source geometry which can be
+     * incrementally rebuilt.
+     * <p>The tiles are built the same as for
+     * {@link #buildTiles(float[], int[], float)}.  The fingerprint of the
+     * source geometry of each tile is retained for use by later
+     * rebuilds.</p>
+     * @param vertices  The source geometry vertices in the form (x, y, z)
+     * @param indices The triangle mesh vertices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @param tileSize The width and depth of the tiles. (World units.)
+     * The value is rounded up to a whole number of cells.
+     * <p>Constraints:  > 0</p>
+     * @return The tiled navigation mesh, or null if the source geometry is
+     * invalid.
+     * @see #rebuildTiles(TiledNavmesh, float[], int[])
+     * @see #rebuildTiles(TiledNavmesh, float[], int[], float[], float[])
+     */
+    public TiledNavmesh buildTiledNavmesh(float[] vertices
+            , int[] indices
+            , float tileSize)
+    {
+        return buildTiledNavmesh(vertices, indices, tileSize, null);
+    }
+    
+    /**
+     * Build a tiled navigation mesh from the source geometry which can be
+     * incrementally rebuilt, reporting the timings and counts of the build
+     * stages.
+     * <p>See {@link #buildTiledNavmesh(float[], int[], float) the standard
+     * tiled build} for details on the other arguments.</p>
+     * @param vertices  The source geometry vertices in the form (x, y, z)
+     * @param indices The triangle mesh vertices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @param tileSize The width and depth of the tiles. (World units.)
+     * @param listener If non-null, the timings and counts of the build
+     * stages, summed over all tiles, will be reported to this listener
+     * once the tiles are built.
+     * @return The tiled navigation mesh, or null if the source geometry is
+     * invalid.
+     */
+    public TiledNavmesh buildTiledNavmesh(float[] vertices
+            , int[] indices
+            , float tileSize
+            , IBuildMetricsListener listener)
+    {
+        if (!isValidGeometry(vertices, indices))
+            return null;
+        
+        // Detect the bounds of the source geometry.
+        final float[] origin = { vertices[0], vertices[1], vertices[2] };
+        final float[] boundsMax = { vertices[0], vertices[1], vertices[2] };
+        for (int i = 3; i < vertices.length; i += 3)
+        {
+            for (int j = 0; j < 3; j++)
+            {
+                origin[j] = Math.min(vertices[i + j], origin[j]);
+                boundsMax[j] = Math.max(vertices[i + j], boundsMax[j]);
+            }
+        }
+        
+        // Lay out the tile grid.
+        final int tileCells =
+            Math.max(1, (int)Math.ceil(tileSize / mCellSize));
+        final float tileWorldSize = tileCells * mCellSize;
+        int tileCountX = Math.max(1
+                , (int)Math.ceil((boundsMax[0] - origin[0]) / tileWorldSize));
+        int tileCountZ = Math.max(1
+                , (int)Math.ceil((boundsMax[2] - origin[2]) / tileWorldSize));
+        // Guard against rounding, so that all of the geometry is within
+        // the bounds checked by rebuilds.
+        while (origin[0] + tileCountX * tileWorldSize < boundsMax[0])
+            tileCountX++;
+        while (origin[2] + tileCountZ * tileWorldSize < boundsMax[2])
+            tileCountZ++;
+        
+        final TiledNavmesh result = new TiledNavmesh(this
+                , origin
+                , boundsMax
+                , tileCells
+                , tileCountX
+                , tileCountZ);
+        rebuildTiles(result
+                , vertices
+                , indices
+                , 0
+                , 0
+                , tileCountX - 1
+                , tileCountZ - 1
+                , listener);
+        
+        return result;
+    }
+    
+    /**
+     * Rebuilds the tiles whose source geometry has changed.
+     * <p>The fingerprint of the source geometry of every tile is checked.
+     * Only tiles whose fingerprint has changed are rebuilt.  All other
+     * tiles are left untouched.</p>
+     * <p>The tile grid and the height range of the tiles' fields are fixed
+     * when the navigation mesh is first built.  They never grow, since
+     * that would change the fields of the tiles which are not rebuilt.
+     * If any source geometry lies outside of the grid, or above or below
+     * the height range, no tiles are rebuilt and -1 is returned.  (E.g. A
+     * prop raised above the highest point of the original geometry.)  The
+     * caller must handle this failure by building a new navigation mesh
+     * with {@link #buildTiledNavmesh(float[], int[], float)}.  The
+     * existing navigation mesh is left unchanged.</p>
+     * @param navmesh The navigation mesh to update.  Must have been built
+     * by this generator.
+     * @param vertices  The updated source geometry vertices in the form
+     * (x, y, z)
+     * @param indices The updated triangle mesh vertices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @return The number of tiles rebuilt, or -1 if the source geometry is
+     * invalid or extends beyond the bounds of the navigation mesh.
+     * @throws IllegalArgumentException If the navigation mesh was not built
+     * by this generator.
+     */
+    public int rebuildTiles(TiledNavmesh navmesh
+            , float[] vertices
+            , int[] indices)
+        throws IllegalArgumentException
+    {
+        return rebuildTiles(navmesh, vertices, indices, null);
+    }
+    
+    /**
+     * Rebuilds the tiles whose source geometry has changed, reporting the
+     * timings and counts of the build stages.
+     * <p>See {@link #rebuildTiles(TiledNavmesh, float[], int[]) the
+     * standard rebuild} for details on the other arguments.</p>
+     * @param navmesh The navigation mesh to update.  Must have been built
+     * by this generator.
+     * @param vertices  The updated source geometry vertices in the form
+     * (x, y, z)
+     * @param indices The updated triangle mesh vertices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @param listener If non-null, the timings and counts of the build
+     * stages, summed over the rebuilt tiles, will be reported to this
+     * listener once the tiles are rebuilt.
+     * @return The number of tiles rebuilt, or -1 if the source geometry is
+     * invalid or extends beyond the bounds of the navigation mesh.
+     * @throws IllegalArgumentException If the navigation mesh was not built
+     * by this generator.
+     */
+    public int rebuildTiles(TiledNavmesh navmesh
+            , float[] vertices
+            , int[] indices
+            , IBuildMetricsListener listener)
+        throws IllegalArgumentException
+    {
+        checkNavmesh(navmesh);
+        if (!isValidGeometry(vertices, indices)
+                || !isWithinBounds(navmesh, vertices))
+            return -1;
+        return rebuildTiles(navmesh
+                , vertices
+                , indices
+                , 0
+                , 0
+                , navmesh.tileCountX() - 1
+                , navmesh.tileCountZ() - 1
+                , listener);
+    }
+    
+    /**
+     * Rebuilds the tiles impacted by a change to the source geometry within
+     * the specified bounds.
+     * <p>Only the tiles which overlap the bounds are checked.  Of these,
+     * only the tiles whose source geometry fingerprint has changed are
+     * rebuilt.  The bounds must include both the original and the new
+     * location of the changed geometry.  Only the triangles which overlap
+     * the checked tiles are fingerprinted.</p>
+     * <p>The tile grid and the height range of the tiles' fields are fixed
+     * when the navigation mesh is first built.  They never grow, since
+     * that would change the fields of the tiles which are not rebuilt.
+     * If the bounds of the change extend outside of the grid, or above or
+     * below the height range, no tiles are rebuilt and -1 is returned.
+     * (E.g. A prop raised above the highest point of the original
+     * geometry.)  The caller must handle this failure by building a new
+     * navigation mesh with
+     * {@link #buildTiledNavmesh(float[], int[], float)}.  The existing
+     * navigation mesh is left unchanged.</p>
+     * @param navmesh The navigation mesh to update.  Must have been built
+     * by this generator.
+     * @param vertices  The updated source geometry vertices in the form
+     * (x, y, z)
+     * @param indices The updated triangle mesh vertices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @param changedMin The minimum bounds of the change in the form
+     * (minX, minY, minZ).
+     * @param changedMax The maximum bounds of the change in the form
+     * (maxX, maxY, maxZ).
+     * @return The number of tiles rebuilt, or -1 if the source geometry or
+     * bounds are invalid, or if the bounds of the change extend beyond
+     * the bounds of the navigation mesh.
+     * @throws IllegalArgumentException If the navigation mesh was not built
+     * by this generator.
+     */
+    public int rebuildTiles(TiledNavmesh navmesh
+            , float[] vertices
+            , int[] indices
+            , float[] changedMin
+            , float[] changedMax)
+        throws IllegalArgumentException
+    {
+        return rebuildTiles(navmesh
+                , vertices
+                , indices
+                , changedMin
+                , changedMax
+                , null);
+    }
+    
+    /**
+     * Rebuilds the tiles impacted by a change to the source geometry within
+     * the specified bounds, reporting the timings and counts of the build
+     * stages.
+     * <p>See {@link #rebuildTiles(TiledNavmesh, float[], int[], float[],
+     * float[]) the standard rebuild} for details on the other
+     * arguments.</p>
+     * @param navmesh The navigation mesh to update.  Must have been built
+     * by this generator.
+     * @param vertices  The updated source geometry vertices in the form
+     * (x, y, z)
+     * @param indices The updated triangle mesh vertices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @param changedMin The minimum bounds of the change in the form
+     * (minX, minY, minZ).
+     * @param changedMax The maximum bounds of the change in the form
+     * (maxX, maxY, maxZ).
+     * @param listener If non-null, the timings and counts of the build
+     * stages, summed over the rebuilt tiles, will be reported to this
+     * listener once the tiles are rebuilt.
+     * @return The number of tiles rebuilt, or -1 if the source geometry or
+     * bounds are invalid, or if the bounds of the change extend beyond
+     * the bounds of the navigation mesh.
+     * @throws IllegalArgumentException If the navigation mesh was not built
+     * by this generator.
+     */
+    public int rebuildTiles(TiledNavmesh navmesh
+            , float[] vertices
+            , int[] indices
+            , float[] changedMin
+            , float[] changedMax
+            , IBuildMetricsListener listener)
+        throws IllegalArgumentException
+    {
+        checkNavmesh(navmesh);
+        if (!isValidGeometry(vertices, indices)
+                || changedMin == null
+                || changedMax == null
+                || changedMin.length != 3
+                || changedMax.length != 3)
+            return -1;
+        
+        final float[] origin = navmesh.boundsMin();
+        final int tileCells = navmesh.tileCells();
+        final int minTileX = Math.max(0
+                , minTileIndex(changedMin[0] - origin[0], tileCells));
+        final int minTileZ = Math.max(0
+                , minTileIndex(changedMin[2] - origin[2], tileCells));
+        final int maxTileX = Math.min(navmesh.tileCountX() - 1
+                , maxTileIndex(changedMax[0] - origin[0], tileCells));
+        final int maxTileZ = Math.min(navmesh.tileCountZ() - 1
+                , maxTileIndex(changedMax[2] - origin[2], tileCells));
+        if (minTileX > maxTileX || minTileZ > maxTileZ)
+            return 0;
+        
+        return rebuildTiles(navmesh
+                , vertices
+                , indices
+                , minTileX
+                , minTileZ
+                , maxTileX
+                , maxTileZ
+                , listener);
+    }
+    
+    /**
+     * Builds a single tile.
+     * @param vertices  The source geometry vertices in the form (x, y, z)
+     * @param indices The triangles which overlap the tile's field in the
+     * form (vertA, vertB, vertC), wrapped clockwise.  Triangles outside
+     * the field are ignored, but cost time to clip.
+     * @param navmesh The navigation mesh the tile belongs to.
+     * @param tileX The x-index of the tile.
+     * @param tileZ The z-index of the tile.
+     * @param outTotals If non-null, the stages of the tile's build will be
+     * measured and recorded to this object.
+     * @return The tile, or null if no navigation mesh was generated for
+     * the tile.
+     */
+    private NavmeshTile buildTile(float[] vertices
+            , int[] indices
+            , TiledNavmesh navmesh
+            , int tileX
+            , int tileZ
+            , BuildMetricsTotals outTotals)
+    {
+        
+        final BuildEvents.TileEvent event = new BuildEvents.TileEvent();
+        event.begin();
+        
+        // The polygon mesh is part of the tile.  Nothing else is kept.
+        final IntermediateData data =
+            new IntermediateData(IntermediateData.CAPTURE_POLY_MESH);
+        
+        /*
+         * Derive all bounds directly from the origin so that the fields
+         * of all tiles stay aligned to the same grid.
+         */
+        final float[] origin = navmesh.boundsMin();
+        final float[] boundsMax = navmesh.boundsMax();
+        final int tileCells = navmesh.tileCells();
+        final int cellX = tileX * tileCells;
+        final int cellZ = tileZ * tileCells;
+        final float[] tileMin = { origin[0] + cellX * mCellSize
+                , origin[1]
+                , origin[2] + cellZ * mCellSize };
+        final float[] tileMax = { origin[0] + (cellX + tileCells) * mCellSize
+                , boundsMax[1]
+                , origin[2] + (cellZ + tileCells) * mCellSize };
+        final float[] fieldMin = {
+                origin[0] + (cellX - mTileBorderSize) * mCellSize
+                , origin[1]
+                , origin[2] + (cellZ - mTileBorderSize) * mCellSize };
+        final float[] fieldMax = {
+                origin[0] + (cellX + tileCells + mTileBorderSize) * mCellSize
+                , boundsMax[1]
+                , origin[2] + (cellZ + tileCells + mTileBorderSize)
+                    * mCellSize };
+        
+        /*
+         * Each tile is built by a single thread.  Concurrent tiles would be
+         * counted many times over if the allocations of all threads were
+         * measured.
+         */
+        final BuildMetrics metrics = (outTotals == null ?
+                null : new BuildMetrics(outTotals, false));
+        final long timerStart = System.nanoTime();
+        if (metrics != null)
+            metrics.startStage();
+        
+        final TriangleMesh mesh = buildMesh(mSolidHeightFieldBuilder.build(
+                    vertices, indices, fieldMin, fieldMax)
+                , timerStart
+                , mTileBorderSize
+                , data
+                , metrics);
+        
+        if (event.shouldCommit())
+        {
+            event.tileX = tileX;
+            event.tileZ = tileZ;
+            event.triangles = indices.length / 3;
+            event.polys = (data.polyMesh() == null ?
+                    0 : data.polyMesh().polyCount());
+            event.commit();
+        }
+        
+        if (mesh == null || mesh.triangleCount() == 0)
+            return null;
+        
+        return new NavmeshTile(tileX
+                , tileZ
+                , tileMin
+                , tileMax
+                , data.polyMesh()
+                , mesh);
+    }
+    
+    /**
+     * Builds a navigation mesh from a newly voxelized solid heightfield.
+     * <p>Each intermediate result is released as soon as the stage that
+     * consumes it completes, unless it is captured by the intermediate
+     * data.  To make this possible, the caller must not hold on to the
+     * solid heightfield.</p>
+     * @param solidField The solid heightfield to build from.  May be null,
+     * in which case the build fails.
+     * @param voxelizationStart The time the voxelization of the solid
+     * heightfield started. (ns)
+     * @param borderSize The number of cells on each side of the field
+     * to exclude from the navigation mesh.
+     * @param outIntermediateData  If non-null, the intermediate build
+     * results will be added to this object.
+     * @param metrics If non-null, the stages will be measured and
+     * reported to this object.  The voxelization stage must have been
+     * started.
+     * @return The generated navigation mesh, or null if generation failed.
+     */
+    @SuppressWarnings("deprecation")  // Sets the legacy timings.
+    private TriangleMesh buildMesh(SolidHeightfield solidField
+            , long voxelizationStart
+            , int borderSize
+            , IntermediateData outIntermediateData
+            , BuildMetrics metrics)
+    {
         
-        final SolidHeightfield solidField =
-            mSolidHeightFieldBuilder.build(vertices, indices);
         if (solidField == null || !solidField.hasSpans())
             return null;
         
         if (outIntermediateData != null)
             outIntermediateData.voxelizationTime = 
-                System.nanoTime() - timerStart;
+                System.nanoTime() - voxelizationStart;
+        if (metrics != null)
+        {
+            metrics.endStage(BuildStage.VOXELIZATION, null);
+            metrics.count(BuildCounter.SOLID_SPANS, solidField.spanCount());
+        }
         
-        if (outIntermediateData != null)
+        if (outIntermediateData != null && outIntermediateData.isCaptured(
+                IntermediateData.CAPTURE_SOLID_HEIGHTFIELD))
             // Store intermediate data.
             outIntermediateData.setSolidHeightfield(solidField);
         
+        long timerStart = 0;
+        
         /*
          * Generate a heightfield representing the open space
          * 
@@ -347,22 +1206,73 @@ public final class NavmeshGenerator
         
         if (outIntermediateData != null)
             timerStart = System.nanoTime();
+        if (metrics != null)
+            metrics.startStage();
+        
+        final CompactOpenHeightfield compactField =
+            mOpenHeightFieldBuilder.buildCompact(solidField, false);
         
-        final OpenHeightfield openField =
-            mOpenHeightFieldBuilder.build(solidField, false);
-        if (openField == null)
+        // The solid field is no longer needed.
+        solidField = null;
+        
+        if (compactField == null)
             return null;
         
-        if (outIntermediateData != null)
-            // Store intermediate data.
-            outIntermediateData.setOpenHeightfield(openField);
+        if (metrics != null)
+        {
+            metrics.endStage(BuildStage.OPEN_FIELD, null);
+            metrics.count(BuildCounter.OPEN_SPANS, compactField.spanCount());
+        }
 
         // Finish the build of the field.
         // Order is important.
-        mOpenHeightFieldBuilder.generateNeighborLinks(openField);
-        mOpenHeightFieldBuilder.generateDistanceField(openField);
-        mOpenHeightFieldBuilder.blurDistanceField(openField);
-        mOpenHeightFieldBuilder.generateRegions(openField);
+        // The compact field is used for the span processing since it is
+        // much cheaper to process than the object based field.
+        if (metrics != null)
+            metrics.startStage();
+        mOpenHeightFieldBuilder.generateNeighborLinks(compactField);
+        if (metrics != null)
+            metrics.endStage(BuildStage.NEIGHBOR_LINKS, null);
+        if (!mUseMonotoneRegions)
+        {
+            // Monotone regions don't use the distance field.
+            if (metrics != null)
+                metrics.startStage();
+            mOpenHeightFieldBuilder.generateDistanceField(compactField);
+            if (metrics != null)
+            {
+                metrics.endStage(BuildStage.DISTANCE_FIELD, null);
+                metrics.startStage();
+            }
+            // The buffer released by the blur is kept for the next build.
+            mBlurBuffer.set(mOpenHeightFieldBuilder.blurDistanceField(
+                    compactField, mBlurBuffer.getAndSet(null)));
+            if (metrics != null)
+                metrics.endStage(BuildStage.DISTANCE_BLUR, null);
+        }
+        if (metrics != null)
+            metrics.startStage();
+        mOpenHeightFieldBuilder.generateRegions(compactField);
+        if (borderSize > 0)
+            clearBorderRegions(compactField, borderSize);
+        if (metrics != null)
+        {
+            metrics.endStage(BuildStage.REGIONS, null);
+            metrics.count(BuildCounter.REGIONS_CREATED
+                    , Math.max(0, compactField.regionCount() - 1));
+        }
+        
+        mOpenHeightFieldBuilder.applyRegionAlgorithms(compactField, metrics);
+        if (metrics != null)
+            metrics.count(BuildCounter.REGIONS
+                    , Math.max(0, compactField.regionCount() - 1));
+        
+        if (outIntermediateData != null && outIntermediateData.isCaptured(
+                IntermediateData.CAPTURE_OPEN_HEIGHTFIELD))
+            // Store intermediate data.  The object based field is only
+            // created when it is asked for.
+            outIntermediateData.setOpenHeightfield(
+                    compactField.toOpenHeightfield());
         
         if (outIntermediateData != null)
             outIntermediateData.regionGenTime = System.nanoTime() - timerStart;
@@ -377,15 +1287,25 @@ public final class NavmeshGenerator
 
         if (outIntermediateData != null)
             timerStart = System.nanoTime();
+        if (metrics != null)
+            metrics.startStage();
         
-        final ContourSet contours = mContourSetBuilder.build(openField);
+        ContourSet contours =
+            mContourSetBuilder.build(compactField, borderSize, metrics);
         if (contours == null)
             return null;
         
+        if (metrics != null)
+        {
+            metrics.endStage(BuildStage.CONTOURS, null);
+            metrics.count(BuildCounter.CONTOURS, contours.size());
+        }
+        
         if (outIntermediateData != null)
             outIntermediateData.contourGenTime = System.nanoTime() - timerStart;
         
-        if (outIntermediateData != null)
+        if (outIntermediateData != null && outIntermediateData.isCaptured(
+                IntermediateData.CAPTURE_CONTOURS))
             // Store intermediate data.
             outIntermediateData.setContours(contours);
         
@@ -394,15 +1314,29 @@ public final class NavmeshGenerator
         
         if (outIntermediateData != null)
             timerStart = System.nanoTime();
+        if (metrics != null)
+            metrics.startStage();
+        
+        final PolyMeshField polyMesh =
+            mPolyMeshBuilder.build(contours, metrics);
+        
+        // The contours are no longer needed.
+        contours = null;
         
-        final PolyMeshField polyMesh = mPolyMeshBuilder.build(contours);
         if (polyMesh == null)
             return null;
+        
+        if (metrics != null)
+        {
+            metrics.endStage(BuildStage.POLY_MESH, null);
+            metrics.count(BuildCounter.POLYS, polyMesh.polyCount());
+        }
 
         if (outIntermediateData != null)
             outIntermediateData.polyGenTime = System.nanoTime() - timerStart;
         
-        if (outIntermediateData != null)
+        if (outIntermediateData != null && outIntermediateData.isCaptured(
+                IntermediateData.CAPTURE_POLY_MESH))
             // Store intermediate data.
             outIntermediateData.setPolyMesh(polyMesh);
         
@@ -411,14 +1345,400 @@ public final class NavmeshGenerator
       
         if (outIntermediateData != null)
             timerStart = System.nanoTime();
+        if (metrics != null)
+            metrics.startStage();
         
-        TriangleMesh mesh = mTriangleMeshBuilder.build(polyMesh, openField);
+        TriangleMesh mesh =
+            mTriangleMeshBuilder.build(polyMesh, compactField, metrics);
         
         if (outIntermediateData != null && mesh != null)
-            outIntermediateData.finalMeshGenTime = System.nanoTime() - timerStart;
+            outIntermediateData.finalMeshGenTime =
+                System.nanoTime() - timerStart;
+        if (metrics != null && mesh != null)
+        {
+            metrics.endStage(BuildStage.DETAIL_MESH, null);
+            metrics.count(BuildCounter.DETAIL_TRIANGLES
+                    , mesh.triangleCount());
+        }
             
          return mesh;
         
     }
     
+    /**
+     * Creates the metrics for a single build.
+     * @param listener The listener to report to.  May be null.
+     * @return The metrics, or null if the listener is null.
+     */
+    private BuildMetrics createMetrics(IBuildMetricsListener listener)
+    {
+        if (listener == null)
+            return null;
+        return new BuildMetrics(listener, mThreadPool != null);
+    }
+    
+    /**
+     * Moves all spans within the specified distance of the edge of the
+     * field to the null region.
+     * @param field The field to operate on.
+     * @param borderSize The width of the border. (Cells.)
+     */
+    private static void clearBorderRegions(CompactOpenHeightfield field
+            , int borderSize)
+    {
+        for (int depthIndex = 0; depthIndex < field.depth(); depthIndex++)
+        {
+            final boolean isBorderRow = depthIndex < borderSize
+                    || depthIndex >= field.depth() - borderSize;
+            for (int widthIndex = 0; widthIndex < field.width(); widthIndex++)
+            {
+                if (!isBorderRow
+                        && widthIndex >= borderSize
+                        && widthIndex < field.width() - borderSize)
+                    continue;
+                final int spanStart = field.cellStart(widthIndex, depthIndex);
+                final int spanEnd = spanStart
+                        + field.cellCount(widthIndex, depthIndex);
+                for (int span = spanStart; span < spanEnd; span++)
+                    field.setRegionID(span, 0);
+            }
+        }
+    }
+    
+    /**
+     * Validates that the navigation mesh was built by this generator.
+     * @param navmesh The navigation mesh to check.
+     * @throws IllegalArgumentException If the navigation mesh was not built
+     * by this generator.
+     */
+    private void checkNavmesh(TiledNavmesh navmesh)
+        throws IllegalArgumentException
+    {
+        if (navmesh == null || navmesh.generator() != this)
+            throw new IllegalArgumentException(
+                    "Navigation mesh was not built by this generator.");
+    }
+    
+    /**
+     * Generates the fingerprints of the source geometry for a range of
+     * tiles.
+     * <p>The fingerprint of a tile covers all triangles which overlap the
+     * tile's field, including its border.  Only the triangles which
+     * overlap the range are hashed.</p>
+     * @param navmesh The navigation mesh the tiles belong to.
+     * @param vertices  The source geometry vertices in the form (x, y, z)
+     * @param indices The triangle mesh vertices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @param minTileX The minimum x-index of the range. (Inclusive)
+     * @param minTileZ The minimum z-index of the range. (Inclusive)
+     * @param maxTileX The maximum x-index of the range. (Inclusive)
+     * @param maxTileZ The maximum z-index of the range. (Inclusive)
+     * @param outTilePolys The indices of the triangles which overlap the
+     * field of each tile in the range, in triangle order.  Indexed the
+     * same as the result.
+     * @return The fingerprints of the tiles in the range, or null if a
+     * triangle which overlaps the range extends beyond the bounds of the
+     * navigation mesh.  Indexed by
+     * ((tileZ - minTileZ) * rangeWidth + (tileX - minTileX)).
+     */
+    private long[] fingerprintTiles(TiledNavmesh navmesh
+            , float[] vertices
+            , int[] indices
+            , int minTileX
+            , int minTileZ
+            , int maxTileX
+            , int maxTileZ
+            , IntList[] outTilePolys)
+    {
+        final float[] origin = navmesh.boundsMin();
+        final int tileCells = navmesh.tileCells();
+        final int rangeWidth = maxTileX - minTileX + 1;
+        final long[] result =
+            new long[rangeWidth * (maxTileZ - minTileZ + 1)];
+        
+        final int polyCount = indices.length / 3;
+        for (int iPoly = 0; iPoly < polyCount; iPoly++)
+        {
+            // Find the triangle's footprint.
+            float xmin = Float.MAX_VALUE;
+            float zmin = Float.MAX_VALUE;
+            float xmax = -Float.MAX_VALUE;
+            float zmax = -Float.MAX_VALUE;
+            for (int i = 0; i < 3; i++)
+            {
+                final int pVert = indices[iPoly*3+i]*3;
+                xmin = Math.min(xmin, vertices[pVert]);
+                zmin = Math.min(zmin, vertices[pVert+2]);
+                xmax = Math.max(xmax, vertices[pVert]);
+                zmax = Math.max(zmax, vertices[pVert+2]);
+            }
+            
+            final int tileXMin = Math.max(minTileX
+                    , minTileIndex(xmin - origin[0], tileCells));
+            final int tileZMin = Math.max(minTileZ
+                    , minTileIndex(zmin - origin[2], tileCells));
+            final int tileXMax = Math.min(maxTileX
+                    , maxTileIndex(xmax - origin[0], tileCells));
+            final int tileZMax = Math.min(maxTileZ
+                    , maxTileIndex(zmax - origin[2], tileCells));
+            if (tileXMin > tileXMax || tileZMin > tileZMax)
+                // The triangle does not overlap the range.  Skip the
+                // hash.
+                continue;
+            
+            // Hash the triangle.  (FNV-1a)
+            long hash = FNV_OFFSET_BASIS;
+            for (int i = 0; i < 3; i++)
+            {
+                final int pVert = indices[iPoly*3+i]*3;
+                if (!isWithinBounds(navmesh, vertices, pVert))
+                    return null;
+                for (int j = 0; j < 3; j++)
+                    hash = (hash ^ Float.floatToIntBits(vertices[pVert+j]))
+                            * FNV_PRIME;
+            }
+            
+            // Fold the triangle into the fingerprint of each tile it
+            // overlaps, and add it to the tile's bin.
+            for (int tileZ = tileZMin; tileZ <= tileZMax; tileZ++)
+            {
+                for (int tileX = tileXMin; tileX <= tileXMax; tileX++)
+                {
+                    final int i = (tileZ - minTileZ) * rangeWidth
+                            + (tileX - minTileX);
+                    result[i] = (result[i] ^ hash) * FNV_PRIME;
+                    outTilePolys[i].add(iPoly);
+                }
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Gets the indices of a subset of the source triangles.
+     * @param indices The triangle mesh vertices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @param polys The indices of the triangles to include.
+     * @return The triangle mesh vertices of the included triangles in the
+     * form (vertA, vertB, vertC), in the order of the list.
+     */
+    private static int[] getPolyIndices(int[] indices, IntList polys)
+    {
+        final int[] result = new int[polys.size() * 3];
+        for (int i = 0; i < polys.size(); i++)
+        {
+            final int pPoly = polys.get(i)*3;
+            result[i*3] = indices[pPoly];
+            result[i*3+1] = indices[pPoly+1];
+            result[i*3+2] = indices[pPoly+2];
+        }
+        return result;
+    }
+    
+    /**
+     * Validates source geometry.
+     * @param vertices  The source geometry vertices in the form (x, y, z)
+     * @param indices The triangle mesh vertices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @return TRUE if the geometry can be used for a build.
+     */
+    private static boolean isValidGeometry(float[] vertices, int[] indices)
+    {
+        return vertices != null
+                && indices != null
+                && vertices.length != 0
+                && vertices.length % 3 == 0
+                && indices.length % 3 == 0;
+    }
+    
+    /**
+     * Indicates whether source geometry is within the tile grid and the
+     * height range of a navigation mesh.
+     * @param navmesh The navigation mesh to check against.  Must have been
+     * built by this generator.
+     * @param vertices  The source geometry vertices in the form (x, y, z)
+     * @return TRUE if all vertices are within the bounds of the navigation
+     * mesh.
+     */
+    private boolean isWithinBounds(TiledNavmesh navmesh, float[] vertices)
+    {
+        for (int p = 0; p < vertices.length; p += 3)
+        {
+            if (!isWithinBounds(navmesh, vertices, p))
+                return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Indicates whether a source geometry vertex is within the tile grid
+     * and the height range of a navigation mesh.
+     * @param navmesh The navigation mesh to check against.  Must have been
+     * built by this generator.
+     * @param vertices  The source geometry vertices in the form (x, y, z)
+     * @param pVert The pointer to the vertex to check.
+     * @return TRUE if the vertex is within the bounds of the navigation
+     * mesh.
+     */
+    private boolean isWithinBounds(TiledNavmesh navmesh
+            , float[] vertices
+            , int pVert)
+    {
+        final float[] boundsMin = navmesh.boundsMin();
+        final float[] boundsMax = navmesh.boundsMax();
+        final float tileWorldSize = navmesh.tileCells() * mCellSize;
+        return vertices[pVert] >= boundsMin[0]
+            && vertices[pVert] <= boundsMin[0]
+                + navmesh.tileCountX() * tileWorldSize
+            && vertices[pVert+1] >= boundsMin[1]
+            && vertices[pVert+1] <= boundsMax[1]
+            && vertices[pVert+2] >= boundsMin[2]
+            && vertices[pVert+2] <= boundsMin[2]
+                + navmesh.tileCountZ() * tileWorldSize;
+    }
+    
+    /**
+     * Gets the highest index of the tiles whose fields, including their
+     * border, overlap the specified offset from the grid origin.
+     * @param offset The offset from the grid origin along the x or z-axis.
+     * (World units.)
+     * @param tileCells The width and depth of the tiles. (Cells.)
+     * @return The highest tile index.  Not clamped to the tile grid.
+     */
+    private int maxTileIndex(float offset, int tileCells)
+    {
+        return (int)Math.floor(
+                (offset / mCellSize + mTileBorderSize) / tileCells);
+    }
+    
+    /**
+     * Gets the lowest index of the tiles whose fields, including their
+     * border, overlap the specified offset from the grid origin.
+     * @param offset The offset from the grid origin along the x or z-axis.
+     * (World units.)
+     * @param tileCells The width and depth of the tiles. (Cells.)
+     * @return The lowest tile index.  Not clamped to the tile grid.
+     */
+    private int minTileIndex(float offset, int tileCells)
+    {
+        return (int)Math.ceil(
+                (offset / mCellSize - mTileBorderSize) / tileCells - 1);
+    }
+    
+    /**
+     * Rebuilds the tiles in a range whose fingerprints have changed, or
+     * which have not been built.
+     * @param navmesh The navigation mesh to update.
+     * @param vertices  The source geometry vertices in the form (x, y, z)
+     * @param indices The triangle mesh vertices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @param minTileX The minimum x-index of the range. (Inclusive)
+     * @param minTileZ The minimum z-index of the range. (Inclusive)
+     * @param maxTileX The maximum x-index of the range. (Inclusive)
+     * @param maxTileZ The maximum z-index of the range. (Inclusive)
+     * @param listener If non-null, the stages of the tile builds will be
+     * summed and reported to this listener once all tiles are built.
+     * @return The number of tiles rebuilt, or -1 if a triangle which
+     * overlaps the range extends beyond the bounds of the navigation mesh.
+     */
+    private int rebuildTiles(TiledNavmesh navmesh
+            , float[] vertices
+            , int[] indices
+            , int minTileX
+            , int minTileZ
+            , int maxTileX
+            , int maxTileZ
+            , IBuildMetricsListener listener)
+    {
+        final int rangeWidth = maxTileX - minTileX + 1;
+        final IntList[] tilePolys =
+            new IntList[rangeWidth * (maxTileZ - minTileZ + 1)];
+        for (int i = 0; i < tilePolys.length; i++)
+            tilePolys[i] = new IntList(16);
+        final long[] fingerprints = fingerprintTiles(navmesh
+                , vertices
+                , indices
+                , minTileX
+                , minTileZ
+                , maxTileX
+                , maxTileZ
+                , tilePolys);
+        if (fingerprints == null)
+            return -1;
+        
+        // Find the tiles that need to be rebuilt.
+        final int[] dirtyTiles = new int[fingerprints.length];
+        final long[] dirtyFingerprints = new long[fingerprints.length];
+        final int[][] dirtyIndices = new int[fingerprints.length][];
+        int dirtyCount = 0;
+        for (int i = 0; i < fingerprints.length; i++)
+        {
+            final int tile = (minTileZ + i / rangeWidth)
+                    * navmesh.tileCountX() + (minTileX + i % rangeWidth);
+            if (!navmesh.isBuilt(tile)
+                    || navmesh.fingerprint(tile) != fingerprints[i])
+            {
+                dirtyTiles[dirtyCount] = tile;
+                dirtyFingerprints[dirtyCount] = fingerprints[i];
+                dirtyIndices[dirtyCount] =
+                    getPolyIndices(indices, tilePolys[i]);
+                dirtyCount++;
+            }
+            // The bin is no longer needed.
+            tilePolys[i] = null;
+        }
+        
+        final BuildMetricsTotals totals =
+            (listener == null ? null : new BuildMetricsTotals());
+        final int tileCountX = navmesh.tileCountX();
+        if (mThreadPool == null)
+        {
+            for (int i = 0; i < dirtyCount; i++)
+            {
+                final int tile = dirtyTiles[i];
+                final NavmeshTile result = buildTile(vertices
+                        , dirtyIndices[i]
+                        , navmesh
+                        , tile % tileCountX
+                        , tile / tileCountX
+                        , totals);
+                navmesh.setTile(tile, result, dirtyFingerprints[i]);
+            }
+        }
+        else
+        {
+            final BuildTileTask[] tasks = new BuildTileTask[dirtyCount];
+            for (int i = 0; i < dirtyCount; i++)
+            {
+                // Each task records to its own totals.
+                tasks[i] = new BuildTileTask(vertices
+                        , dirtyIndices[i]
+                        , navmesh
+                        , dirtyTiles[i] % tileCountX
+                        , dirtyTiles[i] / tileCountX
+                        , (totals == null ? null : new BuildMetricsTotals()));
+                mThreadPool.execute(tasks[i]);
+            }
+            // Store the results in tile order.
+            for (int i = 0; i < dirtyCount; i++)
+            {
+                tasks[i].join();
+                navmesh.setTile(dirtyTiles[i]
+                        , tasks[i].mResult
+                        , dirtyFingerprints[i]);
+                if (totals != null)
+                    totals.add(tasks[i].mTotals);
+            }
+        }
+        
+        if (totals != null)
+        {
+            totals.counterRecorded(BuildCounter.TILES, dirtyCount);
+            totals.report(listener);
+        }
+        
+        return dirtyCount;
+    }
+    
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2010 Stephen A. Pratt
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.critterai.nmgen;
+
+/**
+ * Represents a single tile of a navigation mesh built by
+ * {@link NavmeshGenerator#buildTiles(float[], int[], float)} or
+ * {@link NavmeshGenerator#buildTiledNavmesh(float[], int[], float)}.
+ * <p>The meshes of the tile only cover the area within the tile's bounds.
+ * Where a tile borders another tile, the edges of its meshes lie on the
+ * shared boundary.</p>
+ */
+public final class NavmeshTile
+{
+    
+    private final int mTileX;
+    private final int mTileZ;
+    private final float[] mBoundsMin;
+    private final float[] mBoundsMax;
+    private final PolyMeshField mPolyMesh;
+    private final TriangleMesh mTriangleMesh;
+    
+    /**
+     * Constructor
+     * @param tileX The x-index of the tile within the tile grid.
+     * @param tileZ The z-index of the tile within the tile grid.
+     * @param boundsMin The minimum bounds of the tile in the form
+     * (minX, minY, minZ).  (Excludes the tile's build border.)
+     * @param boundsMax The maximum bounds of the tile in the form
+     * (maxX, maxY, maxZ).  (Excludes the tile's build border.)
+     * @param polyMesh The polygon mesh generated for the tile.
+     * @param triangleMesh The triangle mesh generated for the tile.
+     */
+    public NavmeshTile(int tileX
+            , int tileZ
+            , float[] boundsMin
+            , float[] boundsMax
+            , PolyMeshField polyMesh
+            , TriangleMesh triangleMesh)
+    {
+        mTileX = tileX;
+        mTileZ = tileZ;
+        mBoundsMin = boundsMin;
+        mBoundsMax = boundsMax;
+        mPolyMesh = polyMesh;
+        mTriangleMesh = triangleMesh;
+    }
+    
+    /**
+     * The maximum bounds of the tile in the form (maxX, maxY, maxZ).
+     * <p>Warning: A reference to the internal array is being returned,
+     * not a new array.</p>
+     */
+    public float[] boundsMax() { return mBoundsMax; }
+    
+    /**
+     * The minimum bounds of the tile in the form (minX, minY, minZ).
+     * <p>Warning: A reference to the internal array is being returned,
+     * not a new array.</p>
+     */
+    public float[] boundsMin() { return mBoundsMin; }
+    
+    /**
+     * The polygon mesh generated for the tile.
+     */
+    public PolyMeshField polyMesh() { return mPolyMesh; }
+    
+    /**
+     * The x-index of the tile within the tile grid.
+     */
+    public int tileX() { return mTileX; }
+    
+    /**
+     * The z-index of the tile within the tile grid.
+     */
+    public int tileZ() { return mTileZ; }
+    
+    /**
+     * The triangle mesh generated for the tile.
+     */
+    public TriangleMesh triangleMesh() { return mTriangleMesh; }
+    
+}
@@ -45,7 +45,7 @@ import java.util.ArrayList;
  * </a></p>
  */
 public final class NullRegionMaxEdge
-    implements IContourAlgorithm
+    implements IPrimitiveContourAlgorithm
 {
     private static final int NULL_REGION = OpenHeightSpan.NULL_REGION;
     
@@ -76,8 +76,8 @@ public final class NullRegionMaxEdge
      * one edge.</p>
      */
     @Override
-    public void apply(ArrayList<Integer> sourceVerts
-                    , ArrayList<Integer> resultVerts)
+    public void apply(IntList sourceVerts
+                    , IntList resultVerts)
     {
         
         // See the interface documentation for details on what the argument
@@ -168,4 +168,15 @@ public final class NullRegionMaxEdge
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>Delegates to the primitive form of this operation.</p>
+     */
+    @Override
+    public void apply(ArrayList<Integer> sourceVerts
+            , ArrayList<Integer> resultVerts)
+    {
+        ContourAlgorithmAdapter.apply(this, sourceVerts, resultVerts);
+    }
+
 }
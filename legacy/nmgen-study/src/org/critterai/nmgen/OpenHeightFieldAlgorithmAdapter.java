@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2010 Stephen A. Pratt
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.critterai.nmgen;
+
+/**
+ * Allows an {@link IOpenHeightFieldAlgorithm} that does not support
+ * compact fields to be used where an
+ * {@link ICompactOpenHeightFieldAlgorithm} is required.
+ * <p>The compact field is converted to an {@link OpenHeightfield} before
+ * the wrapped algorithm is applied, and the region, distance, and flag
+ * information is copied back afterwards.</p>
+ */
+public final class OpenHeightFieldAlgorithmAdapter
+    implements ICompactOpenHeightFieldAlgorithm
+{
+
+    /*
+     * Design notes:
+     * 
+     * The open field is created on each call so that the adapter is
+     * as thread friendly as the algorithm it wraps.
+     */
+
+    private final IOpenHeightFieldAlgorithm mAlgorithm;
+
+    /**
+     * Constructor
+     * @param algorithm The algorithm to wrap.
+     */
+    public OpenHeightFieldAlgorithmAdapter(IOpenHeightFieldAlgorithm algorithm)
+    {
+        mAlgorithm = algorithm;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>Applies the wrapped algorithm.</p>
+     */
+    @Override
+    public void apply(CompactOpenHeightfield field)
+    {
+        if (field == null)
+            return;
+        final OpenHeightfield openField = field.toOpenHeightfield();
+        mAlgorithm.apply(openField);
+        field.copyFrom(openField);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>Applies the wrapped algorithm.</p>
+     */
+    @Override
+    public void apply(OpenHeightfield field)
+    {
+        mAlgorithm.apply(field);
+    }
+
+    /**
+     * The wrapped algorithm.
+     * @return The wrapped algorithm.
+     */
+    public IOpenHeightFieldAlgorithm algorithm() { return mAlgorithm; }
+
+    /**
+     * Applies a compact algorithm to a standard field.
+     * <p>A compact copy of the field is created, the algorithm is applied
+     * to it, and the result is copied back to the field.  Algorithms
+     * can't change neighbor connections, so they are not copied back.</p>
+     * @param algorithm The algorithm to apply.
+     * @param field The field to apply the algorithm to.
+     */
+    public static void apply(ICompactOpenHeightFieldAlgorithm algorithm
+            , OpenHeightfield field)
+    {
+        if (field == null)
+            return;
+        final CompactOpenHeightfield compactField =
+            new CompactOpenHeightfield(field);
+        algorithm.apply(compactField);
+        compactField.copyTo(field, false);
+    }
+
+    /**
+     * Wraps an algorithm for use with compact fields, if needed.
+     * @param algorithm The algorithm to wrap.
+     * @return The algorithm itself if it already supports compact fields.
+     * Otherwise an adapter wrapping the algorithm.
+     */
+    public static ICompactOpenHeightFieldAlgorithm wrap(
+            IOpenHeightFieldAlgorithm algorithm)
+    {
+        if (algorithm instanceof ICompactOpenHeightFieldAlgorithm)
+            return (ICompactOpenHeightFieldAlgorithm)algorithm;
+        return new OpenHeightFieldAlgorithmAdapter(algorithm);
+    }
+
+}
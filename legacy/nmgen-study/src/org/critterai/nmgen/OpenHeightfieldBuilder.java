@@ -21,11 +21,10 @@
  */
 package org.critterai.nmgen;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Hashtable;
-
-import org.critterai.nmgen.OpenHeightfield.OpenHeightFieldIterator;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Builds an open heightfield from the solid data contained by an
@@ -60,12 +59,228 @@ public final class OpenHeightfieldBuilder
      *         rcBuildCompactHeightfield in Recast.cpp
      *         rcBuildDistanceField in RecastRegion.cpp
      *         rcBuildRegions in RecastRegion.cpp
+     *         rcBuildRegionsMonotone in RecastRegion.cpp
+     * 
+     * All span processing is performed against a CompactOpenHeightfield,
+     * including the region algorithms.  Algorithms which only support
+     * OpenHeightfield are wrapped in an adapter.  The OpenHeightfield
+     * versions of the operations take a snapshot of the field, process
+     * the snapshot, then copy the results back.  They are only kept for
+     * callers which work with the object based field.  The rest of the
+     * build pipeline accepts the compact field, so a field never needs to
+     * be converted unless the caller wants the object based version.
+     * Neighbor connections are the most expensive part of the copies.  So
+     * they are only copied in the direction they are needed.  (Only
+     * neighbor link generation changes them.)
+     * 
+     * Operations which only read the previous state of each span's
+     * neighbors are split into contiguous ranges of spans when a thread
+     * pool is available.  Since the spans are stored in depth row order,
+     * each range is a band of grid rows.
+     * 
+     * The exact distance field is a separable transform.  (Meijster, et al.
+     * "A General Algorithm for Computing Distance Transforms in Linear
+     * Time.")  Rather than operating on grid rows and columns, it operates
+     * on chains of spans linked by neighbor connections along the width
+     * and depth axes.  So it follows the 2.5D structure of the field.  The
+     * first pass finds the distance to the nearest border span along each
+     * width chain.  The second pass finds the lower envelope of the
+     * squared distances along each depth chain.  For a single layer field
+     * the result is the exact Euclidean distance to the nearest border
+     * span.  Each chain is owned by its first span and chains never share
+     * spans, so the chains in each pass are processed in parallel by
+     * splitting the grid into bands.  Width chains are split into bands
+     * of rows and depth chains into bands of columns.
+     * 
+     * Monotone regions need neither the distance field nor the blur.
+     * Regions are swept one depth row at a time.  Each run of connected
+     * spans in a row continues the region of the previous row if it is
+     * the only run connected to that region and is connected to no other
+     * region.  Otherwise it starts a new region.  The traversable area
+     * border is applied by eroding rings of spans from the border spans
+     * through the neighbor links.  Since the distance field increases by
+     * about 2 per cell, each ring corresponds to 2 units of border size.
      * 
      * Configuration getters won't be added until they are needed.
      * Never add setters.  Configuration should remain immutable to keep
      * the class thread friendly.
      */
     
+    /**
+     * Blurs the distance field for a range of spans.
+     */
+    private static final class BlurTask
+        extends RecursiveAction
+    {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final CompactOpenHeightfield mField;
+        private final int mThreshold;
+        private final int[] mResults;
+        private final int mSpanMin;
+        private final int mSpanMax;
+        
+        private BlurTask(CompactOpenHeightfield field
+                , int threshold
+                , int[] results
+                , int spanMin
+                , int spanMax)
+        {
+            mField = field;
+            mThreshold = threshold;
+            mResults = results;
+            mSpanMin = spanMin;
+            mSpanMax = spanMax;
+        }
+        
+        @Override
+        protected void compute()
+        {
+            if (mSpanMax - mSpanMin <= MIN_TASK_SPANS)
+                blurSpans(mField, mThreshold, mResults, mSpanMin, mSpanMax);
+            else
+            {
+                final int split = (mSpanMin + mSpanMax) >>> 1;
+                invokeAll(new BlurTask(mField
+                            , mThreshold
+                            , mResults
+                            , mSpanMin
+                            , split)
+                        , new BlurTask(mField
+                            , mThreshold
+                            , mResults
+                            , split
+                            , mSpanMax));
+            }
+        }
+    }
+    
+    /**
+     * Performs one pass of the exact distance transform for a band of grid
+     * rows or columns.
+     */
+    private static final class DistanceTransformTask
+        extends RecursiveAction
+    {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final CompactOpenHeightfield mField;
+        private final int[] mRowDistances;
+        private final boolean mIsDepthPass;
+        private final int mMinTaskLines;
+        private final int mLineMin;
+        private final int mLineMax;
+        
+        private DistanceTransformTask(CompactOpenHeightfield field
+                , int[] rowDistances
+                , boolean isDepthPass
+                , int minTaskLines
+                , int lineMin
+                , int lineMax)
+        {
+            mField = field;
+            mRowDistances = rowDistances;
+            mIsDepthPass = isDepthPass;
+            mMinTaskLines = minTaskLines;
+            mLineMin = lineMin;
+            mLineMax = lineMax;
+        }
+        
+        @Override
+        protected void compute()
+        {
+            if (mLineMax - mLineMin <= mMinTaskLines)
+                transformLines(mField
+                        , mRowDistances
+                        , mIsDepthPass
+                        , mLineMin
+                        , mLineMax);
+            else
+            {
+                final int split = (mLineMin + mLineMax) >>> 1;
+                invokeAll(new DistanceTransformTask(mField
+                            , mRowDistances
+                            , mIsDepthPass
+                            , mMinTaskLines
+                            , mLineMin
+                            , split)
+                        , new DistanceTransformTask(mField
+                            , mRowDistances
+                            , mIsDepthPass
+                            , mMinTaskLines
+                            , split
+                            , mLineMax));
+            }
+        }
+    }
+    
+    /**
+     * Generates the neighbor links for a band of depth rows.
+     */
+    private static final class NeighborLinkTask
+        extends RecursiveAction
+    {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final CompactOpenHeightfield mField;
+        private final int mMinTraversableHeight;
+        private final int mMaxTraversableStep;
+        private final int mMinTaskRows;
+        private final int mDepthMin;
+        private final int mDepthMax;
+        
+        private NeighborLinkTask(CompactOpenHeightfield field
+                , int minTraversableHeight
+                , int maxTraversableStep
+                , int minTaskRows
+                , int depthMin
+                , int depthMax)
+        {
+            mField = field;
+            mMinTraversableHeight = minTraversableHeight;
+            mMaxTraversableStep = maxTraversableStep;
+            mMinTaskRows = minTaskRows;
+            mDepthMin = depthMin;
+            mDepthMax = depthMax;
+        }
+        
+        @Override
+        protected void compute()
+        {
+            if (mDepthMax - mDepthMin <= mMinTaskRows)
+                linkRows(mField
+                        , mMinTraversableHeight
+                        , mMaxTraversableStep
+                        , mDepthMin
+                        , mDepthMax);
+            else
+            {
+                final int split = (mDepthMin + mDepthMax) >>> 1;
+                invokeAll(new NeighborLinkTask(mField
+                            , mMinTraversableHeight
+                            , mMaxTraversableStep
+                            , mMinTaskRows
+                            , mDepthMin
+                            , split)
+                        , new NeighborLinkTask(mField
+                            , mMinTraversableHeight
+                            , mMaxTraversableStep
+                            , mMinTaskRows
+                            , split
+                            , mDepthMax));
+            }
+        }
+    }
+    
+    /**
+     * The minimum number of spans processed by a single task during
+     * parallel operations.
+     */
+    private static final int MIN_TASK_SPANS = 8192;
+    
     private static final int NULL_REGION = OpenHeightSpan.NULL_REGION;
     
     private final int mMinTraversableHeight;
@@ -75,8 +290,26 @@ public final class OpenHeightfieldBuilder
     private final int mFilterFlags;
     private final boolean mUseConservativeExpansion;
     
-    private final ArrayList<IOpenHeightFieldAlgorithm> mRegionAlgorithms
-        = new ArrayList<IOpenHeightFieldAlgorithm>();
+    /**
+     * If TRUE, the distance field is generated using an exact Euclidean
+     * distance transform rather than the chamfer approximation.
+     */
+    private final boolean mUseExactDistanceField;
+    
+    /**
+     * If TRUE, regions are generated by monotone partitioning rather than
+     * by the watershed algorithm.
+     */
+    private final boolean mUseMonotoneRegions;
+    
+    /**
+     * The pool used for parallel operations, or null if all operations
+     * are to be performed on the calling thread.
+     */
+    private final ForkJoinPool mThreadPool;
+    
+    private final ArrayList<ICompactOpenHeightFieldAlgorithm>
+        mRegionAlgorithms = new ArrayList<ICompactOpenHeightFieldAlgorithm>();
     
     /**
      * Constructor
@@ -133,16 +366,201 @@ public final class OpenHeightfieldBuilder
             , boolean useConservativeExpansion
             , ArrayList<IOpenHeightFieldAlgorithm> regionAlgorithms)
     {
+        this(minTraversableHeight
+                , maxTraversableStep
+                , traversableAreaBorderSize
+                , smoothingThreshold
+                , filterFlags
+                , useConservativeExpansion
+                , regionAlgorithms
+                , null);
+    }
+    
+    /**
+     * Constructor
+     * <p>See {@link #OpenHeightfieldBuilder(int, int, int, int, int,
+     * boolean, ArrayList) the standard constructor} for details on the
+     * other arguments.</p>
+     * @param threadPool The pool to use for the operations which support
+     * parallel processing.  If null, all operations will be performed on
+     * the calling thread.
+     */
+    public OpenHeightfieldBuilder(int minTraversableHeight
+            , int maxTraversableStep
+            , int traversableAreaBorderSize
+            , int smoothingThreshold
+            , int filterFlags
+            , boolean useConservativeExpansion
+            , ArrayList<IOpenHeightFieldAlgorithm> regionAlgorithms
+            , ForkJoinPool threadPool)
+    {
+        this(minTraversableHeight
+                , maxTraversableStep
+                , traversableAreaBorderSize
+                , smoothingThreshold
+                , filterFlags
+                , useConservativeExpansion
+                , regionAlgorithms
+                , false
+                , threadPool);
+    }
+    
+    /**
+     * Constructor
+     * <p>See {@link #OpenHeightfieldBuilder(int, int, int, int, int,
+     * boolean, ArrayList, ForkJoinPool) this constructor} for details on
+     * the other arguments.</p>
+     * @param useExactDistanceField If TRUE, the distance field will be
+     * generated using an exact Euclidean distance transform rather than
+     * the standard approximation.  The cost is linear in the number of
+     * spans and the transform is performed in parallel if a thread pool
+     * is provided.  The exact field does not have the directional
+     * artifacts of the approximation, so the smoothing threshold can
+     * usually be set to zero, which skips the blur.
+     */
+    public OpenHeightfieldBuilder(int minTraversableHeight
+            , int maxTraversableStep
+            , int traversableAreaBorderSize
+            , int smoothingThreshold
+            , int filterFlags
+            , boolean useConservativeExpansion
+            , ArrayList<IOpenHeightFieldAlgorithm> regionAlgorithms
+            , boolean useExactDistanceField
+            , ForkJoinPool threadPool)
+    {
+        this(minTraversableHeight
+                , maxTraversableStep
+                , traversableAreaBorderSize
+                , smoothingThreshold
+                , filterFlags
+                , useConservativeExpansion
+                , regionAlgorithms
+                , useExactDistanceField
+                , false
+                , threadPool);
+    }
+    
+    /**
+     * Constructor
+     * <p>See {@link #OpenHeightfieldBuilder(int, int, int, int, int,
+     * boolean, ArrayList, boolean, ForkJoinPool) this constructor} for
+     * details on the other arguments.</p>
+     * @param useMonotoneRegions If TRUE, regions will be generated by
+     * sweeping the field one row at a time rather than by the watershed
+     * algorithm.  Monotone partitioning does not use the distance field.
+     * So the distance field does not need to be generated or blurred,
+     * which makes region generation much faster.  But the regions tend to
+     * be long and thin, which results in more polygons in the final mesh.
+     * Best suited for fast preview builds.
+     */
+    public OpenHeightfieldBuilder(int minTraversableHeight
+            , int maxTraversableStep
+            , int traversableAreaBorderSize
+            , int smoothingThreshold
+            , int filterFlags
+            , boolean useConservativeExpansion
+            , ArrayList<IOpenHeightFieldAlgorithm> regionAlgorithms
+            , boolean useExactDistanceField
+            , boolean useMonotoneRegions
+            , ForkJoinPool threadPool)
+    {
+        mThreadPool = threadPool;
+        mUseExactDistanceField = useExactDistanceField;
+        mUseMonotoneRegions = useMonotoneRegions;
         mMaxTraversableStep = Math.max(0, maxTraversableStep);
         mMinTraversableHeight = Math.max(1, minTraversableHeight);
         mTraversableAreaBorderSize = Math.max(0, traversableAreaBorderSize);
         mFilterFlags = filterFlags;
         mSmoothingThreshold = Math.min(4, Math.max(0, smoothingThreshold));
         mUseConservativeExpansion = useConservativeExpansion;
-        if (regionAlgorithms != null)
-            mRegionAlgorithms.addAll(regionAlgorithms);
+        if (regionAlgorithms == null)
+            return;
+        for (IOpenHeightFieldAlgorithm algorithm : regionAlgorithms)
+            mRegionAlgorithms.add(OpenHeightFieldAlgorithmAdapter.wrap(
+                    algorithm));
     }
     
+    /**
+     * Runs the region post-processing algorithms provided to the
+     * constructor against the field.
+     * <p>This operation is run automatically by
+     * {@link #generateRegions(OpenHeightfield)}.</p>
+     * @param field A field with region information fully generated.
+     */
+    public void applyRegionAlgorithms(OpenHeightfield field)
+    {
+        if (field == null || mRegionAlgorithms.isEmpty())
+            return;
+        final CompactOpenHeightfield compactField =
+            new CompactOpenHeightfield(field);
+        applyRegionAlgorithms(compactField, null);
+        compactField.copyTo(field, false);
+    }
+    
+    /**
+     * Runs the region post-processing algorithms provided to the
+     * constructor against a compact field.
+     * <p>This operation is not run by
+     * {@link #generateRegions(CompactOpenHeightfield)}.  So it must be
+     * run separately to complete region generation.  This allows
+     * changes to be made to the watershed regions before the algorithms
+     * are run.</p>
+     * @param field A compact field with region information fully
+     * generated.
+     * @see #applyRegionAlgorithms(OpenHeightfield)
+     */
+    public void applyRegionAlgorithms(CompactOpenHeightfield field)
+    {
+        applyRegionAlgorithms(field, null);
+    }
+    
+    /**
+     * Applies the region algorithms to the field, measuring each
+     * algorithm.
+     * @param field A field with region information fully generated.
+     * @param metrics The metrics to record each algorithm to, or null if
+     * no metrics are to be recorded.
+     * @see #applyRegionAlgorithms(CompactOpenHeightfield)
+     */
+    void applyRegionAlgorithms(CompactOpenHeightfield field
+            , BuildMetrics metrics)
+    {
+        if (field == null)
+            return;
+        // Run the post processing algorithms.
+        for (ICompactOpenHeightFieldAlgorithm algorithm : mRegionAlgorithms)
+        {
+            final BuildEvents.RegionAlgorithmEvent event =
+                new BuildEvents.RegionAlgorithmEvent();
+            final int regionsBefore = field.regionCount();
+            // Report wrapped algorithms by their own name.
+            final String name = (algorithm
+                        instanceof OpenHeightFieldAlgorithmAdapter
+                    ? ((OpenHeightFieldAlgorithmAdapter)algorithm).algorithm()
+                    : algorithm).getClass().getName();
+            event.begin();
+            if (metrics == null)
+                algorithm.apply(field);
+            else
+            {
+                metrics.startStage();
+                if (algorithm instanceof FilterOutSmallRegions)
+                    // Has counters to report.
+                    ((FilterOutSmallRegions)algorithm).apply(field, metrics);
+                else
+                    algorithm.apply(field);
+                metrics.endStage(BuildStage.REGION_ALGORITHM, name);
+            }
+            if (event.shouldCommit())
+            {
+                event.algorithm = name;
+                event.regionsBefore = regionsBefore;
+                event.regionsAfter = field.regionCount();
+                event.commit();
+            }
+        }
+    }
+
     /**
      * Performs a smoothing pass on the distance field data.
      * <p>This operation depends on distance field information.  So the
@@ -156,86 +574,94 @@ public final class OpenHeightfieldBuilder
      */
     public void blurDistanceField(OpenHeightfield field)
     {
-        // TODO: DOC: Need to find source documentation.
-        // The basic process is to combine a span's original distance with
-        // that of its neighbors.
-        
-        if (field == null)
+        if (field == null || mSmoothingThreshold <= 0)
             return;
-        
-        // Reference: Neighbor searches and nomenclature.
-        // http://www.critterai.org/?q=nmgen_hfintro#nsearch
-        
-        if (mSmoothingThreshold <= 0)
+        final CompactOpenHeightfield compactField =
+            new CompactOpenHeightfield(field);
+        blurDistanceField(compactField);
+        compactField.copyTo(field, false);
+    }
+
+    /**
+     * Performs a smoothing pass on the distance field data of a compact
+     * field.
+     * @param field A populated compact field with distance field data
+     * already generated.
+     * @see #blurDistanceField(OpenHeightfield)
+     */
+    public void blurDistanceField(CompactOpenHeightfield field)
+    {
+        blurDistanceField(field, null);
+    }
+    
+    /**
+     * Performs a smoothing pass on the distance field data of a compact
+     * field using a caller provided working buffer.
+     * <p>The blurred distances are written to the working buffer, which
+     * then replaces the field's distance data.  The field's previous
+     * distance array is returned so that it can be used as the working
+     * buffer for the next call.  This allows the buffers to be re-used
+     * across builds without allocation.</p>
+     * <p>If the builder was constructed with a thread pool, the field
+     * is blurred in parallel.  The result is the same as for a serial
+     * blur.</p>
+     * @param field A populated compact field with distance field data
+     * already generated.
+     * @param workingBuffer A buffer with a length of at least the
+     * field's span count.  If null or too small, a new buffer will be
+     * created.  The buffer becomes owned by the field.
+     * @return A buffer which is no longer used by the field and which can
+     * be passed as the working buffer in a later call.  Will be the
+     * working buffer argument if no blur was performed.
+     * @see #blurDistanceField(OpenHeightfield)
+     */
+    public int[] blurDistanceField(CompactOpenHeightfield field
+            , int[] workingBuffer)
+    {
+        if (field == null || mSmoothingThreshold <= 0)
             // Not configured to perform smoothing.  Exit early.
-            return;
+            return workingBuffer;
         
-        // TODO: EVAL: Try to optimize out this hash table.
+        final BuildEvents.DistanceBlurEvent event =
+            new BuildEvents.DistanceBlurEvent();
+        event.begin();
+
         /*
          * Holds information on the final blurred distance for each span.
-         * Key = span
+         * Index = span index
          * Value = new blurred distance.
          */
-        final Hashtable<OpenHeightSpan, Integer> blurResults
-            = new Hashtable<OpenHeightSpan, Integer>(field.spanCount());
-        
-        // Loop through all spans.
-        final OpenHeightFieldIterator iter = field.dataIterator();
-        while (iter.hasNext())
-        {
-            final OpenHeightSpan span = iter.next();
-            final int origDist = span.distanceToBorder();
-            if (origDist <= mSmoothingThreshold)
-            {
-                // This span is at the minimum threshold.
-                // Add it to the results and continue to next span.
-                blurResults.put(span, mSmoothingThreshold);
-                continue;
-            }
-            
-            int workingDist = origDist;
-            // Loop through neighbors.
-            for (int dir = 0; dir < 4; dir++)
-            {
-                OpenHeightSpan nSpan = span.getNeighbor(dir);  // axis-neighbor.
-                if (nSpan == null)
-                    // No neighbor on this side.  Self buff using own
-                    // original distance.
-                    workingDist += origDist * 2;
-                else
-                {
-                    // Neighbor on this side.  Add its distance to the
-                    // current span.
-                    workingDist += nSpan.distanceToBorder();
-                    // Get diagonal neighbor.
-                    nSpan = nSpan.getNeighbor((dir+1) & 0x3);
-                    if (nSpan == null)
-                        // No diagonal neighbor.  Self buff using own
-                        // original distance.
-                        workingDist += origDist;
-                    else
-                        // Has diagonal neighbor.  Add its distance to
-                        // the current span.
-                        workingDist += nSpan.distanceToBorder();
-                }
-            }
-            // Adjust and store the result.
-            // Don't know the why behind this specific formula.
-            blurResults.put(span, ((workingDist + 5) / 9));
-        }
+        final int spanCount = field.spanCount();
+        final int[] blurResults =
+            (workingBuffer == null || workingBuffer.length < spanCount ?
+                    new int[spanCount] : workingBuffer);
         
+        if (mThreadPool != null && spanCount > MIN_TASK_SPANS)
+            // Each result only depends on the original distances, so
+            // ranges of spans can be processed independently.
+            mThreadPool.invoke(new BlurTask(field
+                    , mSmoothingThreshold
+                    , blurResults
+                    , 0
+                    , spanCount));
+        else
+            blurSpans(field, mSmoothingThreshold, blurResults, 0, spanCount);
+
         // Replace the original distance information with the new
-        // distance information.
-        for (OpenHeightSpan span : blurResults.keySet())
+        // distance information.  This also resets the known min/max
+        // border distance.
+        final int[] result = field.swapDistanceToBorder(blurResults);
+        
+        if (event.shouldCommit())
         {
-            span.setDistanceToBorder(blurResults.get(span));
+            event.spans = spanCount;
+            event.threshold = mSmoothingThreshold;
+            event.commit();
         }
         
-        // Reset the known min/max border distance.  This will force a
-        // recalculation if the values are needed later.
-        field.clearBorderDistanceBounds();
+        return result;
     }
-    
+
     /**
      * Builds an {@link OpenHeightfield} from the provided
      * {@link SolidHeightfield} based on the configuration settings.
@@ -247,17 +673,74 @@ public final class OpenHeightfieldBuilder
      */
     public OpenHeightfield build(SolidHeightfield sourceField
             , boolean performFullGeneration)
+    {
+        final CompactOpenHeightfield compactField =
+            buildCompact(sourceField, performFullGeneration);
+        if (compactField == null)
+            return null;
+        
+        if (performFullGeneration)
+            applyRegionAlgorithms(compactField);
+        
+        return compactField.toOpenHeightfield();
+
+    }
+    
+    /**
+     * Builds a {@link CompactOpenHeightfield} from the provided
+     * {@link SolidHeightfield} based on the configuration settings.
+     * <p>No {@link OpenHeightSpan} objects are created during the build.</p>
+     * @param sourceField The solid field to derive the open field from.
+     * @param performFullGeneration If TRUE, neighbor link, distance field
+     * (including blurring),
+     * and region information will be generated.  If FALSE, only the spans
+     * will be generated.  Note that the region algorithms are not run.
+     * The distance field is not generated if the builder uses monotone
+     * regions.
+     * See {@link #generateRegions(CompactOpenHeightfield)} for details.
+     */
+    public CompactOpenHeightfield buildCompact(SolidHeightfield sourceField
+            , boolean performFullGeneration)
     {
         if (sourceField == null)
             return null;
         
+        final BuildEvents.OpenFieldEvent event =
+            new BuildEvents.OpenFieldEvent();
+        event.begin();
+        
+        // Count the spans that will be created so that the field can be
+        // sized.
+        int spanCount = 0;
+        for (int depthIndex = 0
+                ; depthIndex < sourceField.depth()
+                ; depthIndex++)
+        {
+            for (int widthIndex = 0
+                    ; widthIndex < sourceField.width()
+                    ; widthIndex++)
+            {
+                for (int span =
+                    sourceField.spanIndex(widthIndex, depthIndex)
+                        ; span != SolidHeightfield.NULL_SPAN
+                        ; span = sourceField.nextSpan(span))
+                {
+                    if (sourceField.spanFlags(span) == mFilterFlags)
+                        spanCount++;
+                }
+            }
+        }
+        
         // Construct the open field object.
-        OpenHeightfield result = new OpenHeightfield(sourceField.boundsMin()
+        final CompactOpenHeightfield result =
+            new CompactOpenHeightfield(sourceField.boundsMin()
                 , sourceField.boundsMax()
                 , sourceField.cellSize()
-                , sourceField.cellHeight());
+                , sourceField.cellHeight()
+                , spanCount);
         
         // Loop through all solid field grid locations.
+        int oSpan = 0;
         for (int depthIndex = 0
                 ; depthIndex < sourceField.depth()
                 ; depthIndex++)
@@ -266,20 +749,19 @@ public final class OpenHeightfieldBuilder
                     ; widthIndex < sourceField.width()
                     ; widthIndex++)
             {
-                // The lowest span in this column.
-                OpenHeightSpan baseSpan = null;
-                // The last span processed in this column.
-                OpenHeightSpan previousSpan = null;
+                final int cell = result.gridIndex(widthIndex, depthIndex);
+                // The first span in this column.
+                final int baseSpan = oSpan;
                 // Climb up the list of spans at this grid location.
                 // A loop will only occur if the grid location has at least
                 // one span.
-                for (HeightSpan span =
-                    sourceField.getData(widthIndex, depthIndex)
-                        ; span != null
-                        ; span = span.next())
+                for (int span =
+                    sourceField.spanIndex(widthIndex, depthIndex)
+                        ; span != SolidHeightfield.NULL_SPAN
+                        ; span = sourceField.nextSpan(span))
                 {
                     // Ignore spans that do not match the filter flags.
-                    if (span.flags() != mFilterFlags)
+                    if (sourceField.spanFlags(span) != mFilterFlags)
                         continue;
                     
                     /*
@@ -288,40 +770,39 @@ public final class OpenHeightfieldBuilder
                      * does not matter.  All spans matter when it comes to
                      * this step.
                      */
-                    int floor = span.max();
-                    int ceiling = (span.next() != null ?
-                            span.next().max() : Integer.MAX_VALUE);
+                    final int nextSpan = sourceField.nextSpan(span);
+                    int floor = sourceField.spanMax(span);
+                    int ceiling = (nextSpan != SolidHeightfield.NULL_SPAN ?
+                            sourceField.spanMax(nextSpan) : Integer.MAX_VALUE);
                     
                     // Add the span.
                     // Note that the original span flags are being discarded.
-                    OpenHeightSpan oSpan = new OpenHeightSpan(floor
-                            , (ceiling - floor));
-                    if (baseSpan == null)
-                        // This is the first span created at this grid location.
-                        baseSpan = oSpan;
-                    if (previousSpan != null)
-                        // There is a span at a lower location in this grid
-                        // location. Link the lower (previous) span to this
-                        // span.
-                        previousSpan.setNext(oSpan);
-                    previousSpan = oSpan;
-                    result.incrementSpanCount();
-                }
-                if (baseSpan != null)
-                {
-                    // There is one or more spans at this grid location.
-                    // Add the first span in the chain to the spans hash.
-                    result.addData(widthIndex, depthIndex, baseSpan);
+                    result.setSpan(oSpan, cell, floor, (ceiling - floor));
+                    oSpan++;
                 }
+                result.setCell(cell, baseSpan, oSpan - baseSpan);
             }
         }
         
+        if (event.shouldCommit())
+        {
+            // The remaining generation steps have their own events.
+            event.solidSpans = sourceField.spanCount();
+            event.spans = spanCount;
+            event.width = result.width();
+            event.depth = result.depth();
+            event.commit();
+        }
+        
         if (performFullGeneration)
         {
             // Need to perform a full generation.
             generateNeighborLinks(result);
-            generateDistanceField(result);
-            blurDistanceField(result);
+            if (!mUseMonotoneRegions)
+            {
+                generateDistanceField(result);
+                blurDistanceField(result);
+            }
             generateRegions(result);
         }
         
@@ -339,7 +820,10 @@ public final class OpenHeightfieldBuilder
      * boundary span.</p>
      * <p>All distance values are relative and do not represent explicit
      * distance values  (such as grid unit distance). The algorithm which is
-     * used results in an approximation only.  It is not exhaustive.</p>
+     * used results in an approximation only.  It is not exhaustive.
+     * (Unless the builder was constructed to use the exact distance field,
+     * in which case the value is twice the Euclidean distance in cells,
+     * rounded.)</p>
      * <p>This operation depends on neighbor information.  So the
      * {@link #generateNeighborLinks(OpenHeightfield)} operation must be
      * run before this operation.</p>
@@ -354,15 +838,60 @@ public final class OpenHeightfieldBuilder
      */
     public void generateDistanceField(OpenHeightfield field)
     {
-        
-        // TODO: DOC: Need to find source documentation for this algorithm.
-        
         if (field == null)
             return;
+        final CompactOpenHeightfield compactField =
+            new CompactOpenHeightfield(field);
+        generateDistanceField(compactField);
+        compactField.copyTo(field, false);
+    }
+    
+    /**
+     * Generates distance field information for a compact field.
+     * @param field A compact field with spans and neighbor information
+     * already generated.
+     * @see #generateDistanceField(OpenHeightfield)
+     */
+    public void generateDistanceField(CompactOpenHeightfield field)
+    {
+        if (field == null)
+            return;
+        
+        final BuildEvents.DistanceFieldEvent event =
+            new BuildEvents.DistanceFieldEvent();
+        event.begin();
+        
+        if (mUseExactDistanceField)
+            generateExactDistanceField(field);
+        else
+            generateApproximateDistanceField(field);
+        
+        if (event.shouldCommit())
+        {
+            event.spans = field.spanCount();
+            event.exact = mUseExactDistanceField;
+            event.maxBorderDistance = field.maxBorderDistance();
+            event.commit();
+        }
+    }
+    
+    /**
+     * Generates the standard approximation of the distance field for a
+     * compact field.
+     * @see #generateDistanceField(CompactOpenHeightfield)
+     */
+    private void generateApproximateDistanceField(
+            CompactOpenHeightfield field)
+    {
+        
+        // TODO: DOC: Need to find source documentation for this algorithm.
         
         // Reference: Neighbor searches and nomenclature.
         // http://www.critterai.org/?q=nmgen_hfintro#nsearch
         
+        final int NULL_SPAN = CompactOpenHeightfield.NULL_SPAN;
+        final int spanCount = field.spanCount();
+        
         // Enumerated values for border distance:
         
         // Represents a border span.  The value for a border span will never be
@@ -381,31 +910,14 @@ public final class OpenHeightfieldBuilder
          * 4 known neighbors.)
          * Set distance to NEEDS_INIT for non-boundary spans.
          */
-        final OpenHeightFieldIterator iter = field.dataIterator();
-        while (iter.hasNext())
+        for (int span = 0; span < spanCount; span++)
         {
-            final OpenHeightSpan span = iter.next();
-            // Perform 8-neighbor search.  If any neighbor is missing, this
-            // is a border.
-            boolean isBorder = false;
-            for (int dir = 0; dir < 4; dir++)
-            {
-                final OpenHeightSpan nSpan = span.getNeighbor(dir);
-                if (nSpan == null
-                        || nSpan.getNeighbor(dir == 3 ? 0 : dir + 1) == null)
-                {
-                    // Either this axis-neighbor or the diagonal-neighbor
-                    // associated with it is missing.  This is a border span.
-                    isBorder = true;
-                    break;
-                }
-            }
-            if (isBorder)
+            if (isBorderSpan(field, span))
                 // Mark as a border span.
-                span.setDistanceToBorder(BORDER);
+                field.setDistanceToBorder(span, BORDER);
             else
                 // Marks as a non-border span that needs initialization.
-                span.setDistanceToBorder(NEEDS_INIT);
+                field.setDistanceToBorder(span, NEEDS_INIT);
         }
 
         /*
@@ -440,18 +952,16 @@ public final class OpenHeightfieldBuilder
          */
         
         // Loop through all spans.
-        iter.reset();
-        while (iter.hasNext())
+        for (int span = 0; span < spanCount; span++)
         {
-            final OpenHeightSpan span = iter.next();
-            int dist = span.distanceToBorder();
+            int dist = field.distanceToBorder(span);
             if (dist == BORDER)
                 // This is a border cell.  Skip it.
                 continue;
             // This span is guaranteed to have 4 axis neighbors.
             // (-1, 0) Guaranteed to exist.
-            OpenHeightSpan nSpan = span.getNeighbor(0);
-            int ndist = nSpan.distanceToBorder();
+            int nSpan = field.getNeighbor(span, 0);
+            int ndist = field.distanceToBorder(nSpan);
             /*
              * At this point, dist is guaranteed to equal NEEDS_INIT.
              * (This is the first time this span has been selected for
@@ -466,11 +976,11 @@ public final class OpenHeightfieldBuilder
                 // Set to slightly further from the border than this neighbor.
                 dist = ndist + 2;
             // (-1, -1) Diagonal. Not guaranteed to exist.
-            nSpan = nSpan.getNeighbor(3);
-            if (nSpan != null)
+            nSpan = field.getNeighbor(nSpan, 3);
+            if (nSpan != NULL_SPAN)
             {
                 // There is a diagonal neighbor.
-                ndist = nSpan.distanceToBorder();
+                ndist = field.distanceToBorder(nSpan);
                 if (ndist == NEEDS_INIT)
                     // Don't know how far from border this neighbor is.
                     // Default to slightly away from the border.
@@ -488,8 +998,9 @@ public final class OpenHeightfieldBuilder
                      */
                     dist = ndist;
             }
-            nSpan = span.getNeighbor(3);  // (0, -1) Guaranteed to exist.
-            ndist = nSpan.distanceToBorder();
+            // (0, -1) Guaranteed to exist.
+            nSpan = field.getNeighbor(span, 3);
+            ndist = field.distanceToBorder(nSpan);
             if (ndist == NEEDS_INIT)
                 // Don't know how far from border this neighbor is.
                 // Default to slightly away from the border.
@@ -503,11 +1014,11 @@ public final class OpenHeightfieldBuilder
                 // (I.e. Slightly further from border than this neighbor.)
                 dist = ndist;
             // (1, -1) Diagonal. Not guaranteed to exist.
-            nSpan = nSpan.getNeighbor(2);
+            nSpan = field.getNeighbor(nSpan, 2);
             // More of the same.  So no new comments.
-            if (nSpan != null)
+            if (nSpan != NULL_SPAN)
             {
-                ndist = nSpan.distanceToBorder();
+                ndist = field.distanceToBorder(nSpan);
                 if (ndist == NEEDS_INIT)
                     ndist = 2;
                 else
@@ -517,7 +1028,7 @@ public final class OpenHeightfieldBuilder
             }
             // At this point, dist will contain this shortest estimated
             // distance. Set the span to this value.
-            span.setDistanceToBorder(dist);
+            field.setDistanceToBorder(span, dist);
         }
         
         /*
@@ -536,49 +1047,36 @@ public final class OpenHeightfieldBuilder
          * here that isn't already described in the the previous pass.
          */
         
-        // Loop through all spans in reverse order. The looping method is
-        // slightly more complex since the standard  iterator cannot be used.
-        for (int depthIndex = field.depth() - 1; depthIndex >= 0; depthIndex--)
+        // Loop through all spans in reverse order.  Spans within the same
+        // grid location are never neighbors, so the order of the spans
+        // within a grid location does not matter.
+        for (int span = spanCount - 1; span >= 0; span--)
         {
-            for (int widthIndex = field.width() - 1
-                    ; widthIndex >= 0
-                    ; widthIndex--)
+            int dist = field.distanceToBorder(span);
+            if (dist == BORDER) continue;  // Border cells never change.
+            int nSpan = field.getNeighbor(span, 2);  // (1, 0)
+            int ndist = field.distanceToBorder(nSpan) + 2;
+            if (ndist < dist)
+                dist = ndist;
+            nSpan = field.getNeighbor(nSpan, 1); // (1, 1)
+            if (nSpan != NULL_SPAN)
             {
-                // Loop through all spans in the current grid location.
-                for (OpenHeightSpan span =
-                    field.getData(widthIndex, depthIndex)
-                        ; span != null
-                        ; span = span.next())
-                {
-                    int dist = span.distanceToBorder();
-                    if (dist == BORDER) continue;  // Border cells never change.
-                    OpenHeightSpan nSpan = span.getNeighbor(2);  // (1, 0)
-                    int ndist = nSpan.distanceToBorder();
-                    ndist = nSpan.distanceToBorder() + 2;
-                    if (ndist < dist)
-                        dist = ndist;
-                    nSpan = nSpan.getNeighbor(1); // (1, 1)
-                    if (nSpan != null)
-                    {
-                        ndist = nSpan.distanceToBorder() + 3;
-                        if (ndist < dist)
-                            dist = ndist;
-                    }
-                    nSpan = span.getNeighbor(1);  // (0, 1)
-                    ndist = nSpan.distanceToBorder();
-                    ndist = nSpan.distanceToBorder() + 2;
-                    if (ndist < dist)
-                        dist = ndist;
-                    nSpan = nSpan.getNeighbor(0); // (-1, 1)
-                    if (nSpan != null)
-                    {
-                        ndist = nSpan.distanceToBorder() + 3;
-                        if (ndist < dist)
-                            dist = ndist;
-                    }
-                    span.setDistanceToBorder(dist);
-                }
+                ndist = field.distanceToBorder(nSpan) + 3;
+                if (ndist < dist)
+                    dist = ndist;
+            }
+            nSpan = field.getNeighbor(span, 1);  // (0, 1)
+            ndist = field.distanceToBorder(nSpan) + 2;
+            if (ndist < dist)
+                dist = ndist;
+            nSpan = field.getNeighbor(nSpan, 0); // (-1, 1)
+            if (nSpan != NULL_SPAN)
+            {
+                ndist = field.distanceToBorder(nSpan) + 3;
+                if (ndist < dist)
+                    dist = ndist;
             }
+            field.setDistanceToBorder(span, dist);
         }
         
         // Reset the known min/max border distance.  This will force a
@@ -607,57 +1105,52 @@ public final class OpenHeightfieldBuilder
     {
         if (field == null)
             return;
+        final CompactOpenHeightfield compactField =
+            new CompactOpenHeightfield(field, false);
+        generateNeighborLinks(compactField);
+        compactField.copyTo(field);
+    }
+    
+    /**
+     * Generates axis-neighbor link information for all spans in a compact
+     * field.
+     * <p>If the builder has a thread pool, bands of depth rows are linked
+     * in parallel.</p>
+     * @param field A compact field already loaded with span information.
+     * @throws IllegalArgumentException If a span links to a neighbor at
+     * or above the {@link CompactOpenHeightfield#NOT_CONNECTED} layer of
+     * its grid cell.
+     * @see #generateNeighborLinks(OpenHeightfield)
+     */
+    public void generateNeighborLinks(CompactOpenHeightfield field)
+    {
+        if (field == null)
+            return;
+        
+        final BuildEvents.NeighborLinksEvent event =
+            new BuildEvents.NeighborLinksEvent();
+        event.begin();
+        
+        final int spanCount = field.spanCount();
+        if (mThreadPool != null && spanCount > MIN_TASK_SPANS)
+            mThreadPool.invoke(new NeighborLinkTask(field
+                    , mMinTraversableHeight
+                    , mMaxTraversableStep
+                    , getMinTaskLines(spanCount, field.depth())
+                    , 0
+                    , field.depth()));
+        else
+            linkRows(field
+                    , mMinTraversableHeight
+                    , mMaxTraversableStep
+                    , 0
+                    , field.depth());
         
-        // Loop through all spans and generate neighbor information.
-        OpenHeightFieldIterator iter = field.dataIterator();
-        while (iter.hasNext())
+        if (event.shouldCommit())
         {
-            final OpenHeightSpan span = iter.next();
-            // Loop through all neighbor grid locations and check to see if
-            // any of their spans are accessible from this span.
-            for (int dir = 0; dir < 4; dir++)
-            {
-                // Get the neighbor offset for this direction.
-                final int nWidthIndex =
-                    (iter.widthIndex() + BoundedField.getDirOffsetWidth(dir));
-                final int nDepthIndex =
-                    (iter.depthIndex() + BoundedField.getDirOffsetDepth(dir));
-                /*
-                 * Loop through all spans in the neighbor grid location.
-                 * Note: Because of the way solid heightfields are built, only
-                 * one span in each neighbor column can ever meet the
-                 * conditions to be a neighbor of the current span.
-                 */
-                for (OpenHeightSpan nSpan =
-                    field.getData(nWidthIndex, nDepthIndex)
-                        ; nSpan != null
-                        ; nSpan = nSpan.next())
-                {
-                    // Select the floor, current or neighbor span, that is
-                    // higher.
-                    int maxFloor = Math.max(span.floor(), nSpan.floor());
-                    // Select the ceiling, current or neighbor span, this is
-                    // lower.
-                    int minCeiling = Math.min(span.ceiling(), nSpan.ceiling());
-                    /*
-                     * The above values are used to determine if the the gap
-                     * formed by the two spans is large enough for agents to
-                     * walk through? E.g. Without bumping its head on anything.
-                     */
-                    if ((minCeiling - maxFloor) >= mMinTraversableHeight
-                            && Math.abs(nSpan.floor() - span.floor())
-                            <= mMaxTraversableStep)
-                    {
-                        // There is space to walk between current and neighbor
-                        // span, and the step up/down between this and
-                        // neighbor span is acceptable.
-                        span.setNeighbor(dir, nSpan);
-                        break;
-                    }
-                }
-            }
+            event.spans = spanCount;
+            event.commit();
         }
-
     }
 
     /**
@@ -666,6 +1159,9 @@ public final class OpenHeightfieldBuilder
      * So the  {@link #generateNeighborLinks(OpenHeightfield)} and
      * {@link #generateDistanceField(OpenHeightfield)} operations must be
      * run before this operation.</p>
+     * <p>If the builder uses monotone regions, the regions are generated
+     * by monotone partitioning instead, and only neighbor information is
+     * required.</p>
      * <p>This operation does not need to be run if the
      * {@link #build(SolidHeightfield, boolean) build} operation
      * was run with performFullGeneration set to TRUE.</p>
@@ -676,6 +1172,55 @@ public final class OpenHeightfieldBuilder
     {
         if (field == null)
             return;
+        final CompactOpenHeightfield compactField =
+            new CompactOpenHeightfield(field);
+        generateRegions(compactField);
+        applyRegionAlgorithms(compactField);
+        compactField.copyTo(field, false);
+    }
+    
+    /**
+     * Groups the spans of a compact field into contiguous regions using an
+     * watershed based algorithm.
+     * <p>Only the watershed stage is performed.  The region algorithms
+     * provided to the constructor are not run by this operation.  Use
+     * {@link #applyRegionAlgorithms(CompactOpenHeightfield)} to complete
+     * region generation.</p>
+     * @param field  A compact field with span, neighbor, and distance
+     * information fully generated.
+     * @see #generateRegions(OpenHeightfield)
+     */
+    public void generateRegions(CompactOpenHeightfield field)
+    {
+        if (field == null)
+            return;
+        
+        final BuildEvents.RegionsEvent event = new BuildEvents.RegionsEvent();
+        event.begin();
+        
+        if (mUseMonotoneRegions)
+            generateMonotoneRegions(field);
+        else
+            generateWatershedRegions(field);
+        
+        if (event.shouldCommit())
+        {
+            event.spans = field.spanCount();
+            event.monotone = mUseMonotoneRegions;
+            event.regions = field.regionCount();
+            event.commit();
+        }
+    }
+    
+    /**
+     * Groups the spans of a compact field into regions using the watershed
+     * algorithm.
+     * @param field A compact field with span, neighbor, and distance
+     * information fully generated.
+     * @see #generateRegions(CompactOpenHeightfield)
+     */
+    private void generateWatershedRegions(CompactOpenHeightfield field)
+    {
         /*
          * Watershed Algorithm
          * 
@@ -714,6 +1259,18 @@ public final class OpenHeightfieldBuilder
          * At the end of the main loop, a final region expansion is
          * performed which should catch any stray spans that escaped region
          * assignment during the main loop.
+         * 
+         * Level buckets:
+         * 
+         * Rather than scanning the entire field at each water level, the
+         * spans are sorted into one bucket per water level up front using
+         * a counting sort.  The spans flooded at a level are then the
+         * spans left over from the previous level (those still not
+         * assigned a region) plus the spans in the level's bucket.  Both
+         * lists are in span order, so they are merged to produce the same
+         * list, in the same order, as a full scan would.  This works
+         * because a span that is assigned a region at the start of a
+         * level is never returned to the null region.
          */
         
         /*
@@ -743,25 +1300,71 @@ public final class OpenHeightfieldBuilder
          */
         int dist = (field.maxBorderDistance() - 1) & ~1;
         
+        final int spanCount = field.spanCount();
+        
+        /*
+         * Contains a list of spans that are considered to be flooded and
+         * therefore are ready to be processed.  This list may contain
+         * NULL_SPAN entries at certain points in the process.  These
+         * indicate spans that were initially in the list but have been
+         * successfully added to a region.
+         * No more than every span in the field can be flooded.  So the
+         * list is sized to the span count.
+         */
+        int[] floodedSpans = new int[spanCount];
+        int floodedCount = 0;
+        
+        /*
+         * The buffer the next flooded span list is merged into.  It is
+         * swapped with the current list after each merge.
+         */
+        int[] mergedSpans = new int[spanCount];
+        
         /*
-         * Contains a list of spans that are considered to be flooded and
-         * therefore are ready to be processed.  This list may contain nulls
-         * at certain points in the process.  Nulls indicate spans that were
-         * initially in the list but have been successfully added to a region.
-         * The initial size is arbitrary.
+         * The level buckets.
+         * Bucket n contains the spans with a distance to border of 2n or
+         * 2n + 1, in span order.  Spans further from the border
+         * than the initial water level are placed in the bucket for the
+         * initial water level.
+         * The spans in bucket n are located in levelSpans from index
+         * levelStart[n] to levelStart[n + 1] - 1.
          */
-        final ArrayList<OpenHeightSpan> floodedSpans =
-            new ArrayList<OpenHeightSpan>(1024);
+        int[] levelStart = null;
+        int[] levelSpans = null;
+        if (dist > minDist)
+        {
+            final int levelCount = (dist >> 1) + 1;
+            levelStart = new int[levelCount + 1];
+            levelSpans = new int[spanCount];
+            // Count the spans in each bucket.
+            for (int span = 0; span < spanCount; span++)
+            {
+                levelStart[(Math.min(field.distanceToBorder(span), dist) >> 1)
+                           + 1]++;
+            }
+            // Convert the counts to start indices.
+            for (int level = 1; level <= levelCount; level++)
+            {
+                levelStart[level] += levelStart[level - 1];
+            }
+            // Fill the buckets. Spans are visited in order, so the content
+            // of each bucket stays in span order.
+            final int[] levelEnd = new int[levelCount];
+            System.arraycopy(levelStart, 0, levelEnd, 0, levelCount);
+            for (int span = 0; span < spanCount; span++)
+            {
+                levelSpans[levelEnd[Math.min(field.distanceToBorder(span)
+                                                , dist) >> 1]++] = span;
+            }
+        }
         
         /*
          * A predefined stack for use in the flood operation.  Its content
          * has no meaning outside the new region flooding operation.
-         * (Saves on object creation time.)
+         * A span is only ever pushed when it is claimed for a region.  So
+         * the stack can never hold more than every span in the field.
          */
-        final ArrayDeque<OpenHeightSpan> workingStack =
-            new ArrayDeque<OpenHeightSpan>(1024);
-        
-        final OpenHeightFieldIterator iter = field.dataIterator();
+        final int[] workingStack = new int[spanCount];
         
         // Zero is reserved for the null-region. So initializing to 1.
         int nextRegionID = 1;
@@ -780,34 +1383,53 @@ public final class OpenHeightfieldBuilder
             // Find all spans that are at or below the current "water level"
             // and are not already assigned to a region. Add these spans to
             // the flooded span list for processing.
-            iter.reset();
-            floodedSpans.clear();
-            while (iter.hasNext())
+            // These are the remaining spans from the last level's list plus
+            // the spans in this level's bucket.
+            int iOld = 0;
+            int iNew = levelStart[dist >> 1];
+            final int newEnd = levelStart[(dist >> 1) + 1];
+            int mergedCount = 0;
+            while (iOld < floodedCount || iNew < newEnd)
             {
-                OpenHeightSpan span = iter.next();
-                if (span.regionID() == NULL_REGION
-                        && span.distanceToBorder() >= dist)
+                final int span;
+                if (iNew == newEnd
+                        || (iOld < floodedCount
+                                && floodedSpans[iOld] < levelSpans[iNew]))
+                    span = floodedSpans[iOld++];
+                else
+                    span = levelSpans[iNew++];
+                if (span != CompactOpenHeightfield.NULL_SPAN
+                        && field.regionID(span) == NULL_REGION)
                     // The span is not already assigned a region and is
                     // below the current "water level". So the span can be
                     // considered for region assignment.
-                    floodedSpans.add(span);
+                    mergedSpans[mergedCount++] = span;
             }
+            final int[] swap = floodedSpans;
+            floodedSpans = mergedSpans;
+            mergedSpans = swap;
+            floodedCount = mergedCount;
             
             if (nextRegionID > 1)
             {
                 // At least one region has already been created, so first
                 // try to  put the newly flooded spans into existing regions.
                 if (dist > 0)
-                    expandRegions(floodedSpans, expandIterations);
+                    expandRegions(field
+                            , floodedSpans
+                            , floodedCount
+                            , expandIterations);
                 else
-                    expandRegions(floodedSpans, -1);
+                    expandRegions(field, floodedSpans, floodedCount, -1);
             }
 
             // Create new regions for all spans that could not be added to
             // existing regions.
-            for (OpenHeightSpan span : floodedSpans)
+            for (int i = 0; i < floodedCount; i++)
             {
-                if (span == null || span.regionID() != 0)
+                final int span = floodedSpans[i];
+                if (span == CompactOpenHeightfield.NULL_SPAN
+                        || field.regionID(span) != 0)
                     // This span was assigned to a newly created region
                     // during an earlier iteration of this loop.
                     // So it can be skipped.
@@ -815,7 +1437,11 @@ public final class OpenHeightfieldBuilder
                 // Fill to slightly more than the current "water level".
                 // This improves efficiency of the algorithm.
                 int fillTo = Math.max(dist - 2, minDist);
-                if (floodNewRegion(span, fillTo, nextRegionID, workingStack))
+                if (floodNewRegion(field
+                        , span
+                        , fillTo
+                        , nextRegionID
+                        , workingStack))
                     // A new region was successfully generated.
                     nextRegionID++;
             }
@@ -827,50 +1453,52 @@ public final class OpenHeightfieldBuilder
         
         // Find all spans that haven't been assigned regions by the main loop.
         // (Up to the minimum distance.)
-        iter.reset();
-        floodedSpans.clear();
-        while (iter.hasNext())
+        floodedCount = 0;
+        for (int span = 0; span < spanCount; span++)
         {
-            OpenHeightSpan span = iter.next();
-            if (span.distanceToBorder() >=
-                minDist && span.regionID() == NULL_REGION)
+            if (field.distanceToBorder(span) >= minDist
+                    && field.regionID(span) == NULL_REGION)
                 // Not a border or null region span.  Should be in a region.
-                floodedSpans.add(span);
+                floodedSpans[floodedCount++] = span;
         }
         
         // Perform a final expansion of existing regions.
         // Allow more iterations than normal for this last expansion.
         if (minDist > 0)
-            expandRegions(floodedSpans, expandIterations * 8);
+            expandRegions(field
+                    , floodedSpans
+                    , floodedCount
+                    , expandIterations * 8);
         else
-            expandRegions(floodedSpans, -1);
+            expandRegions(field, floodedSpans, floodedCount, -1);
         
         field.setRegionCount(nextRegionID);
         
-        // Run the post processing algorithms.
-        for (IOpenHeightFieldAlgorithm algorithm : mRegionAlgorithms)
-        {
-            algorithm.apply(field);
-        }
-        
     }
     
     /**
      * Attempts to find the most appropriate regions to attach spans to.
      * <p>Any spans successfully attached to a region will have their list
-     * entry set to null. So any non-null entries in the list will be spans
-     * for which a region could not be determined.</p>
+     * entry set to {@link CompactOpenHeightfield#NULL_SPAN}. So any other
+     * entries in the list will be spans for which a region could not be
+     * determined.</p>
+     * @param field The field the spans belong to.
      * @param inoutSpans As input, the list of spans available for formation
      * of new regions. As output, the spans that could not be assigned
      * to new regions.
+     * @param spanCount The number of entries in use within inoutSpans.
      * @param maxIterations If set to -1, will iterate through completion.
      */
-    private void expandRegions(ArrayList<OpenHeightSpan> inoutSpans
+    private void expandRegions(CompactOpenHeightfield field
+            , int[] inoutSpans
+            , int spanCount
             , int maxIterations)
     {
-        if (inoutSpans.size() == 0)
+        if (spanCount == 0)
             return;  // No spans available to process.
         
+        final int NULL_SPAN = CompactOpenHeightfield.NULL_SPAN;
+        
         int iterCount = 0;
         while(true)
         {
@@ -883,10 +1511,10 @@ public final class OpenHeightfieldBuilder
             int skipped = 0;
             
             // Loop through all spans in the working list.
-            for (int iSpan = 0; iSpan < inoutSpans.size(); iSpan++)
+            for (int iSpan = 0; iSpan < spanCount; iSpan++)
             {
-                OpenHeightSpan span = inoutSpans.get(iSpan);
-                if (span == null)
+                final int span = inoutSpans[iSpan];
+                if (span == NULL_SPAN)
                 {
                     // The span originally at this index location has
                     // already been successfully assigned a region.  Nothing
@@ -905,17 +1533,20 @@ public final class OpenHeightfieldBuilder
                  */
                 for (int dir = 0; dir < 4; dir++)
                 {
-                    OpenHeightSpan nSpan = span.getNeighbor(dir);
-                    if (nSpan == null)
+                    final int nSpan = field.getNeighbor(span, dir);
+                    if (nSpan == NULL_SPAN)
                         // No neighbor at this location.
                         continue;
                     // There is a neighbor at this location.
-                    if (nSpan.regionID() > NULL_REGION)
+                    final int nRegion = field.regionID(nSpan);
+                    if (nRegion > NULL_REGION)
                     {
                         /*
                          * This neighbor span belongs to a region.
                          */
-                        if (nSpan.distanceToRegionCore() + 2 < regionCenterDist)
+                        final int nCoreDist =
+                            field.distanceToRegionCore(nSpan);
+                        if (nCoreDist + 2 < regionCenterDist)
                         {
                             /*
                              * This neighbor is closer to its region core
@@ -933,13 +1564,13 @@ public final class OpenHeightfieldBuilder
                                  */
                                 for (int ndir = 0; ndir < 4; ndir++)
                                 {
-                                    OpenHeightSpan nnSpan =
-                                        nSpan.getNeighbor(ndir);
-                                    if (nnSpan == null)
+                                    final int nnSpan =
+                                        field.getNeighbor(nSpan, ndir);
+                                    if (nnSpan == NULL_SPAN)
                                         // No diagonal-neighbor.
                                         continue;
                                     // There is a diagonal-neighbor
-                                    if (nnSpan.regionID() == nSpan.regionID())
+                                    if (field.regionID(nnSpan) == nRegion)
                                         // This neighbor has a neighbor in
                                         // the same region.
                                         sameRegionCount++;
@@ -956,9 +1587,8 @@ public final class OpenHeightfieldBuilder
                                  * Set the current distance to center as
                                  * slightly further than this neighbor.
                                  */
-                                spanRegion = nSpan.regionID();
-                                regionCenterDist =
-                                    nSpan.distanceToRegionCore() + 2;
+                                spanRegion = nRegion;
+                                regionCenterDist = nCoreDist + 2;
                             }
                         }
                     }
@@ -967,16 +1597,16 @@ public final class OpenHeightfieldBuilder
                 {
                     // Found a suitable region for this span to belong to.
                     // Mark this index as having been processed.
-                    inoutSpans.set(iSpan, null);
-                    span.setRegionID(spanRegion);
-                    span.setDistanceToRegionCore(regionCenterDist);
+                    inoutSpans[iSpan] = NULL_SPAN;
+                    field.setRegionID(span, spanRegion);
+                    field.setDistanceToRegionCore(span, regionCenterDist);
                 }
                 else
                     // Could not find an existing region for this span.
                     skipped++;
             }
             
-            if (skipped == inoutSpans.size())
+            if (skipped == spanCount)
                 // All spans have either been processed or could not be
                 // processed during the last cycle.
                 break;
@@ -993,6 +1623,260 @@ public final class OpenHeightfieldBuilder
         
     }
     
+    /**
+     * Generates an exact Euclidean distance field for a compact field.
+     * <p>The distance of each span is twice its distance in cells to the
+     * nearest border span, rounded.  This matches the scale of the
+     * standard approximation.</p>
+     */
+    private void generateExactDistanceField(CompactOpenHeightfield field)
+    {
+        final int spanCount = field.spanCount();
+        
+        // The distance along the width axis to the nearest border span.
+        final int[] rowDistances = new int[spanCount];
+        
+        if (mThreadPool != null && spanCount > MIN_TASK_SPANS)
+        {
+            // The passes must complete in order.  Each pass is split into
+            // bands sized to hold roughly the minimum number of spans.
+            mThreadPool.invoke(new DistanceTransformTask(field
+                    , rowDistances
+                    , false
+                    , getMinTaskLines(spanCount, field.depth())
+                    , 0
+                    , field.depth()));
+            mThreadPool.invoke(new DistanceTransformTask(field
+                    , rowDistances
+                    , true
+                    , getMinTaskLines(spanCount, field.width())
+                    , 0
+                    , field.width()));
+        }
+        else
+        {
+            transformLines(field, rowDistances, false, 0, field.depth());
+            transformLines(field, rowDistances, true, 0, field.width());
+        }
+        
+        field.clearBorderDistanceBounds();
+    }
+    
+    /**
+     * Groups the spans of a compact field into regions using monotone
+     * partitioning.
+     * @param field A compact field with span and neighbor information
+     * generated.
+     */
+    private void generateMonotoneRegions(CompactOpenHeightfield field)
+    {
+        
+        final int NULL_SPAN = CompactOpenHeightfield.NULL_SPAN;
+        
+        // Indicates that a sweep is connected to more than one region
+        // in the previous row.
+        final int MULTIPLE_REGIONS = -1;
+        
+        // The spans too close to the border to be part of a region.
+        // Null if there are no such spans.
+        final boolean[] isEroded =
+            getErodedSpans(field, (mTraversableAreaBorderSize + 1) / 2);
+        
+        // Spans are stored in depth row order.  So the spans of each row
+        // are a contiguous range which ends at the row's end index.
+        // The largest row is used to size the sweep arrays.  (There can't
+        // be more sweeps than spans in a row.)
+        final int[] rowEnds = new int[field.depth()];
+        int maxRowSpans = 0;
+        int rowEnd = 0;
+        for (int depthIndex = 0; depthIndex < field.depth(); depthIndex++)
+        {
+            final int rowStart = rowEnd;
+            for (int widthIndex = 0; widthIndex < field.width(); widthIndex++)
+                rowEnd += field.cellCount(widthIndex, depthIndex);
+            rowEnds[depthIndex] = rowEnd;
+            maxRowSpans = Math.max(maxRowSpans, rowEnd - rowStart);
+        }
+        
+        /*
+         * The sweep each span of the current row belongs to.
+         * Index = span - rowStart.
+         * 
+         * For each sweep (Index = sweep id, zero is unused):
+         * The region in the previous row the sweep is connected to, or
+         * MULTIPLE_REGIONS.  Zero if not connected to a region.
+         * The number of the sweep's spans connected to that region.
+         * The region assigned to the sweep.
+         */
+        final int[] rowSweeps = new int[maxRowSpans];
+        final int[] sweepNeighbors = new int[maxRowSpans + 1];
+        final int[] sweepSamples = new int[maxRowSpans + 1];
+        final int[] sweepRegions = new int[maxRowSpans + 1];
+        
+        /*
+         * The number of spans in the current row connected to each
+         * region of the previous row.
+         * Index = region id.
+         */
+        int[] regionSamples = new int[64];
+        
+        // Zero is reserved for the null-region. So initializing to 1.
+        int nextRegionID = 1;
+        
+        for (int depthIndex = 0; depthIndex < field.depth(); depthIndex++)
+        {
+            final int rowStart = (depthIndex == 0 ? 0
+                    : rowEnds[depthIndex - 1]);
+            rowEnd = rowEnds[depthIndex];
+            
+            // Split the row into sweeps and find the regions of the
+            // previous row each sweep connects to.  Spans are ordered by
+            // width index, so the (-1, 0) neighbor is always processed
+            // before the span.
+            int sweepCount = 1;
+            for (int span = rowStart; span < rowEnd; span++)
+            {
+                if (isEroded != null && isEroded[span])
+                    continue;
+                int sweep = 0;
+                int nSpan = field.getNeighbor(span, 0);
+                if (nSpan != NULL_SPAN
+                        && (isEroded == null || !isEroded[nSpan]))
+                    // Continue the sweep of the (-1, 0) neighbor.
+                    sweep = rowSweeps[nSpan - rowStart];
+                if (sweep == 0)
+                {
+                    // Start a new sweep.
+                    sweep = sweepCount++;
+                    sweepNeighbors[sweep] = 0;
+                    sweepSamples[sweep] = 0;
+                }
+                rowSweeps[span - rowStart] = sweep;
+                
+                // (0, -1)
+                nSpan = field.getNeighbor(span, 3);
+                if (nSpan == NULL_SPAN
+                        || (isEroded != null && isEroded[nSpan]))
+                    continue;
+                final int region = field.regionID(nSpan);
+                if (sweepNeighbors[sweep] == 0
+                        || sweepNeighbors[sweep] == region)
+                {
+                    sweepNeighbors[sweep] = region;
+                    sweepSamples[sweep]++;
+                    regionSamples[region]++;
+                }
+                else
+                    sweepNeighbors[sweep] = MULTIPLE_REGIONS;
+            }
+            
+            // A sweep continues the region of the previous row if it is
+            // the only sweep connected to the region.  Otherwise it
+            // starts a new region.
+            for (int sweep = 1; sweep < sweepCount; sweep++)
+            {
+                final int region = sweepNeighbors[sweep];
+                if (region > 0 && regionSamples[region] == sweepSamples[sweep])
+                    sweepRegions[sweep] = region;
+                else
+                {
+                    sweepRegions[sweep] = nextRegionID++;
+                    if (nextRegionID == regionSamples.length)
+                        regionSamples = Arrays.copyOf(regionSamples
+                                , regionSamples.length * 2);
+                }
+            }
+            
+            // Assign the regions and reset the sample counts.
+            for (int span = rowStart; span < rowEnd; span++)
+            {
+                if (isEroded != null && isEroded[span])
+                {
+                    field.setRegionID(span, NULL_REGION);
+                    continue;
+                }
+                final int nSpan = field.getNeighbor(span, 3);
+                if (nSpan != NULL_SPAN)
+                    regionSamples[field.regionID(nSpan)] = 0;
+                field.setRegionID(span
+                        , sweepRegions[rowSweeps[span - rowStart]]);
+            }
+        }
+        
+        field.setRegionCount(nextRegionID);
+        
+    }
+    
+    /**
+     * Blurs the distance field for a range of spans.
+     * <p>Only the field's current distance values are read, and only the
+     * results array is written.  So ranges can be processed
+     * concurrently.</p>
+     * @param field The field to blur.
+     * @param threshold The smoothing threshold.
+     * @param outResults The array to load with the blurred distances.
+     * (Indexed by span.)
+     * @param spanMin The first span to process. (Inclusive.)
+     * @param spanMax The last span to process. (Exclusive.)
+     */
+    private static void blurSpans(CompactOpenHeightfield field
+            , int threshold
+            , int[] outResults
+            , int spanMin
+            , int spanMax)
+    {
+        // TODO: DOC: Need to find source documentation.
+        // The basic process is to combine a span's original distance with
+        // that of its neighbors.
+
+        // Reference: Neighbor searches and nomenclature.
+        // http://www.critterai.org/?q=nmgen_hfintro#nsearch
+
+        // Loop through all spans.
+        for (int span = spanMin; span < spanMax; span++)
+        {
+            final int origDist = field.distanceToBorder(span);
+            if (origDist <= threshold)
+            {
+                // This span is at the minimum threshold.
+                // Add it to the results and continue to next span.
+                outResults[span] = threshold;
+                continue;
+            }
+
+            int workingDist = origDist;
+            // Loop through neighbors.
+            for (int dir = 0; dir < 4; dir++)
+            {
+                // axis-neighbor.
+                int nSpan = field.getNeighbor(span, dir);
+                if (nSpan == CompactOpenHeightfield.NULL_SPAN)
+                    // No neighbor on this side.  Self buff using own
+                    // original distance.
+                    workingDist += origDist * 2;
+                else
+                {
+                    // Neighbor on this side.  Add its distance to the
+                    // current span.
+                    workingDist += field.distanceToBorder(nSpan);
+                    // Get diagonal neighbor.
+                    nSpan = field.getNeighbor(nSpan, (dir+1) & 0x3);
+                    if (nSpan == CompactOpenHeightfield.NULL_SPAN)
+                        // No diagonal neighbor.  Self buff using own
+                        // original distance.
+                        workingDist += origDist;
+                    else
+                        // Has diagonal neighbor.  Add its distance to
+                        // the current span.
+                        workingDist += field.distanceToBorder(nSpan);
+                }
+            }
+            // Adjust and store the result.
+            // Don't know the why behind this specific formula.
+            outResults[span] = ((workingDist + 5) / 9);
+        }
+    }
+    
     /**
      * Creates a new region surrounding a span, adding neighbor spans to the
      * new region as appropriate.
@@ -1000,37 +1884,36 @@ public final class OpenHeightfieldBuilder
      * border of an existing region.</p>
      * <p>All spans added to the new region as part of this process become
      * "core" spans with a distance to region core of zero.</p>
+     * @param field The field the span belongs to.
      * @param rootSpan The span used to seed the new region.
      * @param fillToDist The watershed distance to flood to.
      * @param regionID The region ID to use for the new region.
      * (If creation is successful.)
-     * @param workingStack A stack used internally.  The content is
-     * cleared before use.  Its content  has no meaning outside of
+     * @param workingStack A stack used internally.  It must be able to
+     * hold every span in the field.  Its content  has no meaning outside of
      * this operation.
      * @return TRUE if a new region was created.  Otherwise FALSE.
      */
-    private static boolean floodNewRegion(OpenHeightSpan rootSpan
+    private static boolean floodNewRegion(CompactOpenHeightfield field
+            , int rootSpan
             , int fillToDist
             , int regionID
-            , ArrayDeque<OpenHeightSpan> workingStack)
+            , int[] workingStack)
     {
-        workingStack.clear();
-        // TODO: EVAL: Change this into a working argument?
-        // Don't want unneeded object creation.
-        ArrayList<OpenHeightSpan> workingList =
-            new ArrayList<OpenHeightSpan>();
-        // See stack and list.
-        workingStack.push(rootSpan);
-        workingList.add(rootSpan);
-        rootSpan.setRegionID(regionID);  // Seed with region id.
-        rootSpan.setDistanceToRegionCore(0);  // Set as center of region.
+        final int NULL_SPAN = CompactOpenHeightfield.NULL_SPAN;
+        
+        // Seed the stack.
+        int stackSize = 0;
+        workingStack[stackSize++] = rootSpan;
+        field.setRegionID(rootSpan, regionID);  // Seed with region id.
+        field.setDistanceToRegionCore(rootSpan, 0);  // Set as center of region.
         
         int regionSize = 0;
         
-        while (workingStack.size() > 0)
+        while (stackSize > 0)
         {
             
-            OpenHeightSpan span = workingStack.pop();
+            final int span = workingStack[--stackSize];
             
             /*
              * Check regions of neighbor spans.
@@ -1048,14 +1931,14 @@ public final class OpenHeightfieldBuilder
             boolean isOnRegionBorder = false;
             for (int dir = 0; dir < 4; dir++)
             {
-                OpenHeightSpan nSpan = span.getNeighbor(dir);
-                if (nSpan == null)
+                int nSpan = field.getNeighbor(span, dir);
+                if (nSpan == NULL_SPAN)
                     // No neighbor in this direction.
                     continue;
                 
                 // Check this axis-neighbor.
-                if (nSpan.regionID() != NULL_REGION
-                        && nSpan.regionID() != regionID)
+                int nRegion = field.regionID(nSpan);
+                if (nRegion != NULL_REGION && nRegion != regionID)
                 {
                     // Current span borders the null region or another region.
                     // No need to check rest of neighbors.
@@ -1064,22 +1947,24 @@ public final class OpenHeightfieldBuilder
                 }
                 
                 // Check the diagonal-neighbor.
-                nSpan = nSpan.getNeighbor((dir+1) & 0x3);
-                if (nSpan != null
-                        && nSpan.regionID() != NULL_REGION
-                        && nSpan.regionID() != regionID)
+                nSpan = field.getNeighbor(nSpan, (dir+1) & 0x3);
+                if (nSpan != NULL_SPAN)
                 {
-                    // Current span borders the null region or another region.
-                    // No need to check rest of neighbors.
-                    isOnRegionBorder = true;
-                    break;
+                    nRegion = field.regionID(nSpan);
+                    if (nRegion != NULL_REGION && nRegion != regionID)
+                    {
+                        // Current span borders the null region or another
+                        // region. No need to check rest of neighbors.
+                        isOnRegionBorder = true;
+                        break;
+                    }
                 }
             }
             if (isOnRegionBorder)
             {
                 // Current span borders the null region or another region.
                 // Can't be part of the new region.
-                span.setRegionID(NULL_REGION);
+                field.setRegionID(span, NULL_REGION);
                 continue;
             }
 
@@ -1090,18 +1975,17 @@ public final class OpenHeightfieldBuilder
             // assigned to this new region.
             for (int dir = 0; dir < 4; dir++)
             {
-                OpenHeightSpan nSpan = span.getNeighbor(dir);
-                if (nSpan != null
-                        && nSpan.distanceToBorder() >= fillToDist
-                        && nSpan.regionID() == 0)
+                final int nSpan = field.getNeighbor(span, dir);
+                if (nSpan != NULL_SPAN
+                        && field.distanceToBorder(nSpan) >= fillToDist
+                        && field.regionID(nSpan) == 0)
                 {
                     // This neighbor does not have a region assignment and
                     // it is within the allowed fill range.  Set it as a
                     // candidate for this new region.
-                    nSpan.setRegionID(regionID);
-                    nSpan.setDistanceToRegionCore(0);
-                    workingStack.push(nSpan);
-                    workingList.add(nSpan);
+                    field.setRegionID(nSpan, regionID);
+                    field.setDistanceToRegionCore(nSpan, 0);
+                    workingStack[stackSize++] = nSpan;
                 }
             }
         }
@@ -1109,4 +1993,407 @@ public final class OpenHeightfieldBuilder
         return (regionSize > 0);
     }
     
+    /**
+     * The squared distance from position x to the nearest border span
+     * through the site.
+     */
+    private static long getCost(int x, int site, long[] cost)
+    {
+        final long delta = x - site;
+        return delta * delta + cost[site];
+    }
+    
+    /**
+     * Finds the spans within a number of rings of the border spans.
+     * <p>The first ring is the border spans.  Each following ring is the
+     * spans connected to the previous ring by an axis-neighbor.</p>
+     * @param field The field to operate on.
+     * @param ringCount The number of rings to erode.
+     * @return The eroded spans, indexed by span.  Null if the ring count
+     * is zero.
+     */
+    private static boolean[] getErodedSpans(CompactOpenHeightfield field
+            , int ringCount)
+    {
+        if (ringCount <= 0)
+            return null;
+        
+        final int NULL_SPAN = CompactOpenHeightfield.NULL_SPAN;
+        final int spanCount = field.spanCount();
+        final boolean[] result = new boolean[spanCount];
+        
+        IntList ring = new IntList(1024);
+        for (int span = 0; span < spanCount; span++)
+        {
+            if (isBorderSpan(field, span))
+            {
+                result[span] = true;
+                ring.add(span);
+            }
+        }
+        
+        IntList nextRing = new IntList(1024);
+        for (int iRing = 1; iRing < ringCount && ring.size() > 0; iRing++)
+        {
+            nextRing.clear();
+            for (int i = 0; i < ring.size(); i++)
+            {
+                final int span = ring.get(i);
+                for (int dir = 0; dir < 4; dir++)
+                {
+                    final int nSpan = field.getNeighbor(span, dir);
+                    if (nSpan != NULL_SPAN && !result[nSpan])
+                    {
+                        result[nSpan] = true;
+                        nextRing.add(nSpan);
+                    }
+                }
+            }
+            final IntList swap = ring;
+            ring = nextRing;
+            nextRing = swap;
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Gets the number of grid lines to process per task so that each task
+     * processes about {@link #MIN_TASK_SPANS} spans.
+     */
+    private static int getMinTaskLines(int spanCount, int lineCount)
+    {
+        return Math.max(1
+                , (int)((long)MIN_TASK_SPANS * lineCount / spanCount));
+    }
+    
+    /**
+     * The last position at which the parabola of siteA is no higher than
+     * the parabola of siteB. (siteA < siteB)
+     */
+    private static long getSeparation(int siteA, int siteB, long[] cost)
+    {
+        final long numerator = (long)siteB * siteB - (long)siteA * siteA
+                + cost[siteB] - cost[siteA];
+        final long denominator = 2L * (siteB - siteA);
+        // Floor division.
+        return (numerator >= 0 ? numerator / denominator
+                : -((-numerator + denominator - 1) / denominator));
+    }
+    
+    /**
+     * Indicates whether the span is a border span.  A border span is
+     * missing at least one of its 8 neighbors.
+     */
+    private static boolean isBorderSpan(CompactOpenHeightfield field
+            , int span)
+    {
+        final int NULL_SPAN = CompactOpenHeightfield.NULL_SPAN;
+        // Perform 8-neighbor search.  If any neighbor is missing, this
+        // is a border.
+        for (int dir = 0; dir < 4; dir++)
+        {
+            final int nSpan = field.getNeighbor(span, dir);
+            if (nSpan == NULL_SPAN
+                    || field.getNeighbor(nSpan, dir == 3 ? 0 : dir + 1)
+                            == NULL_SPAN)
+                // Either this axis-neighbor or the diagonal-neighbor
+                // associated with it is missing.  This is a border span.
+                return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Generates the neighbor links for all spans in a band of depth rows.
+     * <p>Only the connections of spans within the band are set.  So bands
+     * can be linked at the same time.</p>
+     */
+    private static void linkRows(CompactOpenHeightfield field
+            , int minTraversableHeight
+            , int maxTraversableStep
+            , int depthMin
+            , int depthMax)
+    {
+        final int width = field.width();
+        final int depth = field.depth();
+        for (int depthIndex = depthMin; depthIndex < depthMax; depthIndex++)
+        {
+            for (int widthIndex = 0; widthIndex < width; widthIndex++)
+            {
+                final int cell = field.gridIndex(widthIndex, depthIndex);
+                final int spanStart = field.cellSpanStart(cell);
+                final int spanEnd = spanStart + field.cellSpanCount(cell);
+                if (spanStart == spanEnd)
+                    continue;
+                
+                // Loop through all neighbor grid locations and check to
+                // see if any of their spans are accessible from the spans
+                // in this grid location.
+                for (int dir = 0; dir < 4; dir++)
+                {
+                    final int nWidthIndex = (widthIndex
+                            + BoundedField.getDirOffsetWidth(dir));
+                    final int nDepthIndex = (depthIndex
+                            + BoundedField.getDirOffsetDepth(dir));
+                    if (nWidthIndex < 0 || nWidthIndex >= width
+                            || nDepthIndex < 0 || nDepthIndex >= depth)
+                        // The neighbor is outside the field.
+                        continue;
+                    
+                    // The neighbor cell is at a fixed offset.  No need
+                    // for a grid index lookup.
+                    final int nCell = cell + field.dirCellOffset(dir);
+                    final int nSpanStart = field.cellSpanStart(nCell);
+                    final int nSpanCount = field.cellSpanCount(nCell);
+                    
+                    for (int span = spanStart; span < spanEnd; span++)
+                    {
+                        final int floor = field.floor(span);
+                        final int ceiling = field.ceiling(span);
+                        /*
+                         * Loop through all spans in the neighbor grid
+                         * location.
+                         * Note: Because of the way solid heightfields are
+                         * built, only one span in each neighbor column can
+                         * ever meet the conditions to be a neighbor of the
+                         * current span.
+                         */
+                        for (int layer = 0; layer < nSpanCount; layer++)
+                        {
+                            final int nSpan = nSpanStart + layer;
+                            // Select the floor, current or neighbor span,
+                            // that is higher.
+                            final int maxFloor =
+                                Math.max(floor, field.floor(nSpan));
+                            // Select the ceiling, current or neighbor span,
+                            // this is lower.
+                            final int minCeiling =
+                                Math.min(ceiling, field.ceiling(nSpan));
+                            /*
+                             * The above values are used to determine if the
+                             * the gap formed by the two spans is large
+                             * enough for agents to walk through? E.g. Without
+                             * bumping its head on anything.
+                             */
+                            if ((minCeiling - maxFloor)
+                                        >= minTraversableHeight
+                                    && Math.abs(field.floor(nSpan) - floor)
+                                        <= maxTraversableStep)
+                            {
+                                // There is space to walk between current and
+                                // neighbor span, and the step up/down between
+                                // this and neighbor span is acceptable.
+                                field.setConnection(span, dir, layer);
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Finds the lower envelope of the squared distances along a depth
+     * chain and sets the final distance of each of its spans.
+     * <p>The working arrays must be at least as long as the chain.</p>
+     * @param field The field to operate on.
+     * @param rowDistances The distances generated by the width pass.
+     * @param chain The spans in the chain.
+     * @param length The length of the chain.
+     * @param cost Working array.  The squared row distance at each
+     * position.
+     * @param sites Working array.  The positions whose parabolas form
+     * the lower envelope.
+     * @param starts Working array.  The position at which each parabola
+     * in the envelope starts to be the lowest.
+     */
+    private static void transformDepthChain(CompactOpenHeightfield field
+            , int[] rowDistances
+            , int[] chain
+            , int length
+            , long[] cost
+            , int[] sites
+            , int[] starts)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            final long rowDist = rowDistances[chain[i]];
+            cost[i] = rowDist * rowDist;
+        }
+        
+        // Build the lower envelope from left to right.
+        int iSite = 0;
+        sites[0] = 0;
+        starts[0] = 0;
+        for (int u = 1; u < length; u++)
+        {
+            while (iSite >= 0
+                    && getCost(starts[iSite], sites[iSite], cost)
+                        > getCost(starts[iSite], u, cost))
+                iSite--;
+            if (iSite < 0)
+            {
+                // The new parabola is the lowest at all positions to
+                // its left.
+                iSite = 0;
+                sites[0] = u;
+            }
+            else
+            {
+                // The first position at which the new parabola is lower.
+                final long start =
+                    1 + getSeparation(sites[iSite], u, cost);
+                if (start < length)
+                {
+                    iSite++;
+                    sites[iSite] = u;
+                    starts[iSite] = (int)start;
+                }
+            }
+        }
+        
+        // Read the envelope from right to left.
+        for (int u = length - 1; u >= 0; u--)
+        {
+            final long distSq = getCost(u, sites[iSite], cost);
+            field.setDistanceToBorder(chain[u]
+                    , (int)Math.round(2 * Math.sqrt(distSq)));
+            if (u == starts[iSite])
+                iSite--;
+        }
+    }
+    
+    /**
+     * Performs one pass of the exact distance transform for the chains
+     * which start within a band of grid lines.
+     * <p>The width pass writes the distance along each width chain to
+     * the nearest border span to the row distances array.  The depth pass
+     * reads the row distances and writes the final distances to the
+     * field.</p>
+     * @param field The field to operate on.
+     * @param rowDistances The distance along the width axis to the
+     * nearest border span, indexed by span.
+     * @param isDepthPass If TRUE, the band is a range of grid columns
+     * (width indices) and the chains along the depth axis are processed.
+     * Otherwise the band is a range of grid rows (depth indices) and the
+     * chains along the width axis are processed.
+     * @param lineMin The first line of the band. (Inclusive)
+     * @param lineMax The last line of the band. (Exclusive)
+     */
+    private static void transformLines(CompactOpenHeightfield field
+            , int[] rowDistances
+            , boolean isDepthPass
+            , int lineMin
+            , int lineMax)
+    {
+        final int NULL_SPAN = CompactOpenHeightfield.NULL_SPAN;
+        
+        // Directions: (-1, 0) and (1, 0), or (0, -1) and (0, 1).
+        final int dirPrev = (isDepthPass ? 3 : 0);
+        final int dirNext = (isDepthPass ? 1 : 2);
+        final int lineLength = (isDepthPass ? field.depth() : field.width());
+        
+        // The distance used for spans with no border span along their
+        // chain.  (Only possible if neighbor links are not symmetric.)
+        final int unreachable = field.width() + field.depth();
+        
+        // A chain moves one cell per step, so it can never be longer
+        // than its grid line.
+        final int[] chain = new int[lineLength];
+        final long[] cost = new long[lineLength];
+        final int[] sites = new int[lineLength];
+        final int[] starts = new int[lineLength];
+        
+        for (int line = lineMin; line < lineMax; line++)
+        {
+            for (int i = 0; i < lineLength; i++)
+            {
+                final int widthIndex = (isDepthPass ? line : i);
+                final int depthIndex = (isDepthPass ? i : line);
+                final int spanStart = field.cellStart(widthIndex, depthIndex);
+                final int spanEnd =
+                    spanStart + field.cellCount(widthIndex, depthIndex);
+                for (int span = spanStart; span < spanEnd; span++)
+                {
+                    // Only process chains which start at this span.
+                    final int pSpan = field.getNeighbor(span, dirPrev);
+                    if (pSpan != NULL_SPAN
+                            && field.getNeighbor(pSpan, dirNext) == span)
+                        continue;
+                    
+                    // Gather the chain.  A link is only followed if it
+                    // is mutual, so every span belongs to one chain.
+                    int length = 0;
+                    int cSpan = span;
+                    while (true)
+                    {
+                        chain[length++] = cSpan;
+                        final int nSpan = field.getNeighbor(cSpan, dirNext);
+                        if (nSpan == NULL_SPAN
+                                || field.getNeighbor(nSpan, dirPrev) != cSpan)
+                            break;
+                        cSpan = nSpan;
+                    }
+                    
+                    if (isDepthPass)
+                        transformDepthChain(field
+                                , rowDistances
+                                , chain
+                                , length
+                                , cost
+                                , sites
+                                , starts);
+                    else
+                        transformWidthChain(field
+                                , rowDistances
+                                , chain
+                                , length
+                                , unreachable);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Sets the distance from each span in a width chain to the nearest
+     * border span in the chain.
+     * @param field The field to operate on.
+     * @param rowDistances The array to write the distances to.
+     * @param chain The spans in the chain.
+     * @param length The length of the chain.
+     * @param unreachable The distance to use if the chain contains no
+     * border spans.
+     */
+    private static void transformWidthChain(CompactOpenHeightfield field
+            , int[] rowDistances
+            , int[] chain
+            , int length
+            , int unreachable)
+    {
+        // Forward sweep.
+        int dist = unreachable;
+        for (int i = 0; i < length; i++)
+        {
+            if (isBorderSpan(field, chain[i]))
+                dist = 0;
+            else if (dist < unreachable)
+                dist++;
+            rowDistances[chain[i]] = dist;
+        }
+        // Backward sweep.
+        dist = unreachable;
+        for (int i = length - 1; i >= 0; i--)
+        {
+            final int rowDist = rowDistances[chain[i]];
+            if (rowDist == 0)
+                dist = 0;
+            else if (dist < unreachable)
+                dist++;
+            if (dist < rowDist)
+                rowDistances[chain[i]] = dist;
+        }
+    }
+
 }
@@ -22,7 +22,6 @@
 package org.critterai.nmgen;
 
 import java.util.ArrayList;
-import java.util.Hashtable;
 import java.util.logging.Logger;
 
 /**
@@ -49,7 +48,146 @@ public final class PolyMeshFieldBuilder
      * 
      * Never add setters.  Configuration should remain immutable to keep
      * the class thread friendly.
+     * 
+     * Polygon merging is greedy.  The pair of polygons with the longest
+     * shared edge is always merged first.  Rather than searching all pairs
+     * after each merge, the mergeable pairs are kept in a priority queue.
+     * A merge only changes the merge information for pairs which include
+     * the merged polygon, so only those pairs are re-evaluated.  Entries
+     * for pairs that are no longer valid are discarded as they reach the
+     * head of the queue.  Ties are broken by polygon order, in the same
+     * way a full search of the pairs would break them.
+     */
+    
+    /**
+     * A priority queue of candidate polygon merges.
+     * <p>The head of the queue is the candidate with the longest merge
+     * edge.  Ties are resolved in favor of the lowest polygon indices.</p>
+     * <p>Each candidate records a stamp for each of its polygons.  A
+     * polygon's stamp changes whenever the polygon changes.  So a candidate
+     * is only valid if its stamps match the current polygon stamps.</p>
      */
+    private static final class MergeQueue
+    {
+        
+        private int[] mEdgeLength = new int[64];
+        private int[] mPolyA = new int[64];
+        private int[] mPolyB = new int[64];
+        private int[] mStampA = new int[64];
+        private int[] mStampB = new int[64];
+        private int mSize = 0;
+        
+        private void clear() { mSize = 0; }
+        
+        private boolean isEmpty() { return mSize == 0; }
+        
+        /**
+         * Removes the head of the queue.
+         */
+        private void pop()
+        {
+            mSize--;
+            if (mSize == 0)
+                return;
+            move(mSize, 0);
+            // Sift down.
+            int i = 0;
+            while (true)
+            {
+                final int left = i * 2 + 1;
+                if (left >= mSize)
+                    break;
+                int child = left;
+                if (left + 1 < mSize && isBefore(left + 1, left))
+                    child = left + 1;
+                if (!isBefore(child, i))
+                    break;
+                swap(child, i);
+                i = child;
+            }
+        }
+        
+        /**
+         * Adds a candidate to the queue.
+         * @param edgeLength The length of the shared edge.
+         * @param polyA The index of the lower polygon.
+         * @param polyB The index of the higher polygon.
+         * @param stampA The current stamp of the lower polygon.
+         * @param stampB The current stamp of the higher polygon.
+         */
+        private void push(int edgeLength
+                , int polyA
+                , int polyB
+                , int stampA
+                , int stampB)
+        {
+            if (mSize == mEdgeLength.length)
+            {
+                mEdgeLength = grow(mEdgeLength);
+                mPolyA = grow(mPolyA);
+                mPolyB = grow(mPolyB);
+                mStampA = grow(mStampA);
+                mStampB = grow(mStampB);
+            }
+            mEdgeLength[mSize] = edgeLength;
+            mPolyA[mSize] = polyA;
+            mPolyB[mSize] = polyB;
+            mStampA[mSize] = stampA;
+            mStampB[mSize] = stampB;
+            // Sift up.
+            int i = mSize;
+            mSize++;
+            while (i > 0)
+            {
+                final int parent = (i - 1) / 2;
+                if (!isBefore(i, parent))
+                    break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+        
+        private boolean isBefore(int i, int j)
+        {
+            if (mEdgeLength[i] != mEdgeLength[j])
+                return mEdgeLength[i] > mEdgeLength[j];
+            if (mPolyA[i] != mPolyA[j])
+                return mPolyA[i] < mPolyA[j];
+            return mPolyB[i] < mPolyB[j];
+        }
+        
+        private void move(int from, int to)
+        {
+            mEdgeLength[to] = mEdgeLength[from];
+            mPolyA[to] = mPolyA[from];
+            mPolyB[to] = mPolyB[from];
+            mStampA[to] = mStampA[from];
+            mStampB[to] = mStampB[from];
+        }
+        
+        private void swap(int i, int j)
+        {
+            swap(mEdgeLength, i, j);
+            swap(mPolyA, i, j);
+            swap(mPolyB, i, j);
+            swap(mStampA, i, j);
+            swap(mStampB, i, j);
+        }
+        
+        private static int[] grow(int[] values)
+        {
+            final int[] result = new int[values.length * 2];
+            System.arraycopy(values, 0, result, 0, values.length);
+            return result;
+        }
+        
+        private static void swap(int[] values, int i, int j)
+        {
+            final int temp = values[i];
+            values[i] = values[j];
+            values[j] = temp;
+        }
+    }
     
     private static final Logger logger =
         Logger.getLogger(PolyMeshFieldBuilder.class.getName());
@@ -86,11 +224,29 @@ public final class PolyMeshFieldBuilder
      * @return The result of the build operation.
      */
     public PolyMeshField build(ContourSet contours)
+    {
+        return build(contours, null);
+    }
+    
+    /**
+     * Builds a convex polygon mesh, recording the number of polygons
+     * before merging.
+     * @param contours A properly populated contour set.
+     * @param metrics The metrics to record the count to, or null if no
+     * count is to be recorded.
+     * @return The result of the build operation.
+     * @see #build(ContourSet)
+     */
+    PolyMeshField build(ContourSet contours, BuildMetrics metrics)
     {
         // Initialize
         if (contours == null || contours.size() == 0)
             return null;
         
+        final BuildEvents.PolyMeshEvent event =
+            new BuildEvents.PolyMeshEvent();
+        event.begin();
+        
         // Construct the result object.
         PolyMeshField result = new PolyMeshField(contours.boundsMin()
                 , contours.boundsMax()
@@ -182,16 +338,23 @@ public final class PolyMeshFieldBuilder
         final int[] contourToGlobalIndicesMap = new int[maxVertsPerContour];
         
         /*
-         * Key = Hash representing a unique vertex location.
-         * Value = The index of the vertex in the global vertices array.
+         * An open addressing hash table of global vertex indices, keyed by
+         * the vertex location.  (The locations themselves are read from the
+         * global vertices array.)
          * When a new vertex is found, it is added to the vertices array and
-         * its global index stored in this hash table.  If a duplicate is
-         * found, the value from this table is used.
+         * its global index stored in this table.  If a duplicate is
+         * found, the index from this table is used.
          * There will always be duplicate vertices since different contours
          * are connected by these duplicate vertices.
+         * The table is sized to at least twice the number of source
+         * vertices so it never needs to grow and probe sequences stay short.
          */
-        final Hashtable<Integer, Integer> vertIndices =
-            new Hashtable<Integer, Integer>();
+        int vertTableSize = 1;
+        while (vertTableSize < sourceVertCount * 2)
+            vertTableSize <<= 1;
+        final int[] vertTable = new int[vertTableSize];
+        for (int i = 0; i < vertTableSize; i++)
+            vertTable[i] = PolyMeshField.NULL_INDEX;
         
         // Each list is initialized to a size that will minimize resizing.
         final ArrayList<Integer> workingIndices =
@@ -206,6 +369,11 @@ public final class PolyMeshFieldBuilder
         int workingPolyCount = 0;
         final int[] mergeInfo = new int[3];
         final int[] mergedPoly = new int[mMaxVertsPerPoly];
+        final MergeQueue mergeQueue = new MergeQueue();
+        final int[] polyStamps = new int[maxVertsPerContour + 1];
+        
+        // The number of triangles before merging.
+        int unmergedPolyCount = 0;
         
         // Process all contours.
         for (int contourIndex = 0
@@ -257,17 +425,19 @@ public final class PolyMeshFieldBuilder
                     ; iContourVert++)
             {
                 int pContourVert = iContourVert*4;
-                int vertHash = getHashCode(contour.verts[pContourVert]
+                final int iSlot = findVertSlot(contour.verts[pContourVert]
                                                , contour.verts[pContourVert+1]
-                                               , contour.verts[pContourVert+2]);
-                Integer iGlobalVert = vertIndices.get(vertHash);
-                if (iGlobalVert == null)
+                                               , contour.verts[pContourVert+2]
+                                               , vertTable
+                                               , globalVerts);
+                int iGlobalVert = vertTable[iSlot];
+                if (iGlobalVert == PolyMeshField.NULL_INDEX)
                 {
                     // This is the first time this vertex has been seen.
                     // Assign it an index and add it to the vertex array.
                     iGlobalVert = globalVertCount;
                     globalVertCount++;
-                    vertIndices.put(vertHash, iGlobalVert);
+                    vertTable[iSlot] = iGlobalVert;
                     globalVerts[iGlobalVert*3] = contour.verts[pContourVert];
                     globalVerts[iGlobalVert*3+1] =
                         contour.verts[pContourVert+1];
@@ -307,111 +477,20 @@ public final class PolyMeshFieldBuilder
                                                  workingTriangles.get(i*3+2)];
                 workingPolyCount++;
             }
+            unmergedPolyCount += workingPolyCount;
             
             if (mMaxVertsPerPoly > 3)
-            {
                 // Merging of triangles into larger polygons is permitted.
-                // Continue until no polygons can be found to merge.
                 // http://www.critterai.org/nmgen_polygen#mergepolys
-                while(true)
-                {
-                    
-                    int longestMergeEdge = -1;
-                    int pBestPolyA = -1;
-                    int iPolyAVert = -1;  // Start of the shared edge.
-                    int pBestPolyB = -1;
-                    int iPolyBVert = -1;  // Start of the shared edge.
-                    
-                    // Loop through all but the last polygon looking for the
-                    // best polygons to merge in this iteration.
-                    for (int iPolyA = 0
-                            ; iPolyA < workingPolyCount - 1
-                            ; iPolyA++)
-                    {
-                        for (int iPolyB = iPolyA + 1
-                                ; iPolyB < workingPolyCount
-                                ; iPolyB++)
-                        {
-                            // Can polyB merge with polyA?
-                            getPolyMergeInfo(iPolyA*mMaxVertsPerPoly
-                                    , iPolyB*mMaxVertsPerPoly
-                                    , workingPolys
-                                    , globalVerts
-                                    , result.maxVertsPerPoly()
-                                    , mergeInfo);
-                            if (mergeInfo[0] > longestMergeEdge)
-                            {
-                                // polyB has the longest shared edge with
-                                // polyA found so far. Save the merge
-                                // information.
-                                longestMergeEdge = mergeInfo[0];
-                                pBestPolyA = iPolyA * mMaxVertsPerPoly;
-                                iPolyAVert = mergeInfo[1];
-                                pBestPolyB = iPolyB * mMaxVertsPerPoly;
-                                iPolyBVert = mergeInfo[2];
-                            }
-                        }
-                    }
-                    
-                    if (longestMergeEdge <= 0)
-                        // No valid merges found during this iteration.
-                        break;
-                    
-                    // Found polygons to merge.  Perform the merge.
-                    
-                    // Prepare the merged polygon array.
-                    for (int i = 0; i < mergedPoly.length; i++)
-                        mergedPoly[i] = PolyMeshField.NULL_INDEX;
-                    
-                    // Get the size of each polygon.
-                    final int vertCountA
-                        = PolyMeshField.getPolyVertCount(pBestPolyA
-                                , workingPolys
-                                , result.maxVertsPerPoly());
-                    final int vertCountB
-                        = PolyMeshField.getPolyVertCount(pBestPolyB
-                                , workingPolys
-                                , result.maxVertsPerPoly());
-                    int position = 0;
-                    
-                    /*
-                     * Fill the mergedPoly array.
-                     * Start the vertex at the end of polygon A's shared edge.
-                     * Add all vertices until looping back to the vertex just
-                     * before the start of the shared edge. Repeat for
-                     * polygon B.
-                     * 
-                     * Duplicate vertices are avoided, while ensuring we get
-                     * all vertices, since each loop  drops the vertex that
-                     * starts its polygon's shared edge and:
-                     * 
-                     * PolyAStartVert == PolyBEndVert and
-                     * PolyAEndVert == PolyBStartVert.
-                     */
-                    for (int i = 0; i < vertCountA - 1; i++)
-                        mergedPoly[position++] = workingPolys[pBestPolyA
-                                         + ((iPolyAVert+1+i) % vertCountA)];
-                    for (int i = 0; i < vertCountB - 1; i++)
-                        mergedPoly[position++] = workingPolys[pBestPolyB
-                                         + ((iPolyBVert+1+i) % vertCountB)];
-                    
-                    // Copy the merged polygon over the top of polygon A.
-                    System.arraycopy(mergedPoly
-                            , 0
-                            , workingPolys
-                            , pBestPolyA
-                            , mMaxVertsPerPoly);
-                    // Remove polygon B by shifting all information to the
-                    // left by one polygon,  starting at polygon B.
-                    System.arraycopy(workingPolys
-                            , pBestPolyB + mMaxVertsPerPoly
-                            , workingPolys, pBestPolyB
-                            , workingPolys.length
-                                    - pBestPolyB - mMaxVertsPerPoly);
-                    workingPolyCount--;
-                }
-                
-            }
+                workingPolyCount = mergePolys(workingPolys
+                        , workingPolyCount
+                        , mMaxVertsPerPoly
+                        , globalVerts
+                        , result.maxVertsPerPoly()
+                        , mergeQueue
+                        , polyStamps
+                        , mergeInfo
+                        , mergedPoly);
             
             // Polygon creation for this contour is complete.
             // Add polygons to the global polygon array and store region
@@ -477,6 +556,18 @@ public final class PolyMeshFieldBuilder
         // Build polygon adjacency information.
         buildAdjacencyData(result);
         
+        if (metrics != null)
+            metrics.count(BuildCounter.POLYS_BEFORE_MERGE, unmergedPolyCount);
+        
+        if (event.shouldCommit())
+        {
+            event.contours = contours.size();
+            event.polysBeforeMerge = unmergedPolyCount;
+            event.polys = result.polyCount();
+            event.vertices = result.vertCount();
+            event.commit();
+        }
+        
         return result;
         
     }
@@ -735,21 +826,58 @@ public final class PolyMeshFieldBuilder
     }
     
     /**
-     * Provides a hash value unique to the combination of values.
+     * Finds the slot in the vertex table for a vertex location.
+     * <p>Uses linear probing.  The table must contain at least one empty
+     * slot.</p>
      * @param x  The vertices x-value. (x, y, z)
      * @param y  The vertices y-value. (x, y, z)
      * @param z  The vertices z-value. (x, y, z)
-     * @return A hash that is unique to the vertex.
+     * @param vertTable The vertex table.  Its size must be a power of two.
+     * Each slot contains either {@link PolyMeshField#NULL_INDEX} or the
+     * index of a vertex in the verts array.
+     * @param verts The vertices referenced by the table in the form
+     * (x, y, z).
+     * @return The slot which contains the vertex, or the empty slot where
+     * the vertex belongs if it is not in the table.
+     */
+    private static int findVertSlot(int x
+            , int y
+            , int z
+            , int[] vertTable
+            , int[] verts)
+    {
+        final int mask = vertTable.length - 1;
+        int iSlot = getHashCode(x, y, z) & mask;
+        while (true)
+        {
+            final int iVert = vertTable[iSlot];
+            if (iVert == PolyMeshField.NULL_INDEX
+                    || (verts[iVert*3] == x
+                            && verts[iVert*3+1] == y
+                            && verts[iVert*3+2] == z))
+                return iSlot;
+            iSlot = (iSlot + 1) & mask;
+        }
+    }
+    
+    /**
+     * Provides a hash value for the combination of values.
+     * @param x  The vertices x-value. (x, y, z)
+     * @param y  The vertices y-value. (x, y, z)
+     * @param z  The vertices z-value. (x, y, z)
+     * @return A hash for the vertex.  (Not guaranteed to be unique.)
      */
     private static int getHashCode(int x, int y, int z)
     {
         /*
          * Note: Tried the standard eclipse hash generation method.  But
-         * it resulted in non-unique hash values during testing.  Switched
-         * to this method.
-         * Hex values are arbitrary prime numbers.
+         * it resulted in many duplicate hash values during testing.
+         * Switched to this method.
+         * Hex values are arbitrary prime numbers.  The high bits are
+         * folded in since the vertex table only uses the low bits.
          */
-        return 0x8da6b343 * x + 0xd8163841 * y + 0xcb1ab31f * z;
+        final int hash = 0x8da6b343 * x + 0xd8163841 * y + 0xcb1ab31f * z;
+        return hash ^ (hash >>> 16);
     }
     
     /**
@@ -765,6 +893,160 @@ public final class PolyMeshFieldBuilder
         return i+1 < n ? i+1 : 0;
     }
     
+    /**
+     * Merges polygons into larger convex polygons until no further merges
+     * are possible.
+     * <p>The pair of polygons with the longest shared edge is always merged
+     * first.  Merged polygons replace the lower of the two polygons, and
+     * the order of the remaining polygons is preserved.</p>
+     * @param polys An array of polygons in the form:
+     * (vert1, vert2, vert3, ..., vertN, NULL_INDEX).  The content is updated
+     * to contain the merged polygons.
+     * @param polyCount The number of polygons in the polys array.
+     * @param stride The number of array entries per polygon.
+     * @param verts  The vertex data associated with the polygons.
+     * @param maxVertsPerPoly The maximum number of vertices permitted in a
+     * merged polygon.
+     * @param queue A working queue.  Its content is meaningless outside of
+     * this operation.
+     * @param polyStamps A working array of at least polyCount size.  Its
+     * content is meaningless outside of this operation.
+     * @param mergeInfo A working array of size three.
+     * @param mergedPoly A working array of size stride.
+     * @return The number of polygons after merging.
+     */
+    private static int mergePolys(int[] polys
+            , int polyCount
+            , int stride
+            , int[] verts
+            , int maxVertsPerPoly
+            , MergeQueue queue
+            , int[] polyStamps
+            , int[] mergeInfo
+            , int[] mergedPoly)
+    {
+        
+        // Find all valid merges.
+        queue.clear();
+        for (int iPolyA = 0; iPolyA < polyCount; iPolyA++)
+        {
+            polyStamps[iPolyA] = 0;
+            for (int iPolyB = iPolyA + 1; iPolyB < polyCount; iPolyB++)
+            {
+                getPolyMergeInfo(iPolyA*stride
+                        , iPolyB*stride
+                        , polys
+                        , verts
+                        , maxVertsPerPoly
+                        , mergeInfo);
+                if (mergeInfo[0] > 0)
+                    queue.push(mergeInfo[0], iPolyA, iPolyB, 0, 0);
+            }
+        }
+        
+        while (!queue.isEmpty())
+        {
+            final int iPolyA = queue.mPolyA[0];
+            final int iPolyB = queue.mPolyB[0];
+            final boolean isValid = queue.mStampA[0] == polyStamps[iPolyA]
+                    && queue.mStampB[0] == polyStamps[iPolyB];
+            queue.pop();
+            if (!isValid)
+                // One of the polygons has changed since this entry
+                // was added.
+                continue;
+            
+            // Get the location of the shared edge.
+            getPolyMergeInfo(iPolyA*stride
+                    , iPolyB*stride
+                    , polys
+                    , verts
+                    , maxVertsPerPoly
+                    , mergeInfo);
+            
+            final int pPolyA = iPolyA*stride;
+            final int pPolyB = iPolyB*stride;
+            final int iPolyAVert = mergeInfo[1];  // Start of the shared edge.
+            final int iPolyBVert = mergeInfo[2];  // Start of the shared edge.
+            
+            // Prepare the merged polygon array.
+            for (int i = 0; i < mergedPoly.length; i++)
+                mergedPoly[i] = PolyMeshField.NULL_INDEX;
+            
+            // Get the size of each polygon.
+            final int vertCountA = PolyMeshField.getPolyVertCount(pPolyA
+                    , polys
+                    , maxVertsPerPoly);
+            final int vertCountB = PolyMeshField.getPolyVertCount(pPolyB
+                    , polys
+                    , maxVertsPerPoly);
+            int position = 0;
+            
+            /*
+             * Fill the mergedPoly array.
+             * Start the vertex at the end of polygon A's shared edge.
+             * Add all vertices until looping back to the vertex just
+             * before the start of the shared edge. Repeat for
+             * polygon B.
+             * 
+             * Duplicate vertices are avoided, while ensuring we get
+             * all vertices, since each loop  drops the vertex that
+             * starts its polygon's shared edge and:
+             * 
+             * PolyAStartVert == PolyBEndVert and
+             * PolyAEndVert == PolyBStartVert.
+             */
+            for (int i = 0; i < vertCountA - 1; i++)
+                mergedPoly[position++] =
+                    polys[pPolyA + ((iPolyAVert+1+i) % vertCountA)];
+            for (int i = 0; i < vertCountB - 1; i++)
+                mergedPoly[position++] =
+                    polys[pPolyB + ((iPolyBVert+1+i) % vertCountB)];
+            
+            // Copy the merged polygon over the top of polygon A and
+            // retire polygon B.
+            System.arraycopy(mergedPoly, 0, polys, pPolyA, stride);
+            polyStamps[iPolyA]++;
+            polyStamps[iPolyB] = -1;
+            
+            // Only the merges involving polygon A have changed.
+            for (int iPoly = 0; iPoly < polyCount; iPoly++)
+            {
+                if (iPoly == iPolyA || polyStamps[iPoly] == -1)
+                    continue;
+                final int iLower = Math.min(iPoly, iPolyA);
+                final int iHigher = Math.max(iPoly, iPolyA);
+                getPolyMergeInfo(iLower*stride
+                        , iHigher*stride
+                        , polys
+                        , verts
+                        , maxVertsPerPoly
+                        , mergeInfo);
+                if (mergeInfo[0] > 0)
+                    queue.push(mergeInfo[0]
+                            , iLower
+                            , iHigher
+                            , polyStamps[iLower]
+                            , polyStamps[iHigher]);
+            }
+        }
+        
+        // Remove the retired polygons, preserving the polygon order.
+        int resultCount = 0;
+        for (int iPoly = 0; iPoly < polyCount; iPoly++)
+        {
+            if (polyStamps[iPoly] == -1)
+                continue;
+            if (resultCount != iPoly)
+                System.arraycopy(polys, iPoly*stride
+                        , polys, resultCount*stride
+                        , stride);
+            resultCount++;
+        }
+        
+        return resultCount;
+    }
+    
     /**
      * Checks two polygons to see if they can be merged.  If a merge is
      * allowed, provides data via the outResult argument.
@@ -21,7 +21,7 @@
  */
 package org.critterai.nmgen;
 
-import java.util.Hashtable;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -34,6 +34,13 @@ import java.util.NoSuchElementException;
  * further up in the grid's column can be accessed via
  * {@link HeightSpan#next()} on the base span. (I.e. By climbing up the links.)
  * </p>
+ * <p>Span data is stored in a compact form: A dense array of column heads
+ * plus a pooled arena of primitive arrays holding the minimum, maximum,
+ * flags and next index of each span.  The {@link HeightSpan} objects
+ * returned by {@link #getData(int, int)} and {@link #dataIterator()} are
+ * light-weight views into this storage.  Performance sensitive code can
+ * bypass the views via {@link #spanIndex(int, int)} and the associated
+ * span index operations.</p>
  * @see SolidHeightfieldBuilder
  * @see <a href="http://www.critterai.org/nmgen_voxel"
  * target="_parent">The Voxelization Process</a>
@@ -46,12 +53,28 @@ public final class SolidHeightfield
     
     /*
      * Recast Reference: reHeightfield in Recast.h
+     * 
+     * Design notes:
+     * 
+     * The arena replaces the original Hashtable<Integer, HeightSpan> and
+     * per-span objects.  Spans discarded during a merge are placed on a
+     * free list and re-used by later additions.
+     * 
+     * Since the bounds setters in BoundedField are final, the column head
+     * array is (re)allocated lazily whenever its size no longer matches
+     * the grid size.
+     * 
+     * The row window lets a field keep the bounds (and therefore the exact
+     * cell positions) of a larger field while only storing a range of its
+     * depth rows.  Parallel voxelization uses it to keep the band fields
+     * small.  Columns outside the window are treated as empty and can't
+     * receive spans.
      */
     
     /**
      * Implements an iterator that will iterate through all spans within a
      * height field. (Not just the base spans.)
-     * <p>Behavior of the iterator is undefined if the interator's source
+     * <p>Behavior of the iterator is undefined if the iterator's source
      * is changed during iteration.</p>
      */
     public class SolidHeightFieldIterator
@@ -60,10 +83,11 @@ public final class SolidHeightfield
     
         private int mNextWidth = 0;
         private int mNextDepth = 0;
-        private HeightSpan mNext = null;
+        private int mNext = NULL_SPAN;
         
         private int mLastWidth = 0;
         private int mLastDepth = 0;
+        private int mLast = NULL_SPAN;
         
         private SolidHeightFieldIterator()
         {
@@ -82,7 +106,7 @@ public final class SolidHeightfield
         @Override
         public boolean hasNext()
         {
-            return (mNext != null);
+            return (mNext != NULL_SPAN);
         }
     
         /**
@@ -91,12 +115,23 @@ public final class SolidHeightfield
         @Override
         public HeightSpan next()
         {
-            if (mNext == null) throw new NoSuchElementException();
-            HeightSpan next = mNext;
+            return new HeightSpan(SolidHeightfield.this, nextIndex());
+        }
+        
+        /**
+         * Equivalent to {@link #next()}, except that the index of the
+         * span is returned rather than a span view.
+         * @return The span index of the next span.
+         * @see SolidHeightfield#spanIndex(int, int)
+         */
+        public int nextIndex()
+        {
+            if (mNext == NULL_SPAN) throw new NoSuchElementException();
+            mLast = mNext;
             mLastWidth = mNextWidth;
             mLastDepth = mNextDepth;
             moveToNext();
-            return next;
+            return mLast;
         }
     
         /**
@@ -116,9 +151,10 @@ public final class SolidHeightfield
         {
             mNextWidth = 0;
             mNextDepth = 0;
-            mNext = null;
+            mNext = NULL_SPAN;
             mLastWidth = 0;
             mLastDepth = 0;
+            mLast = NULL_SPAN;
             moveToNext();
         }
         
@@ -133,14 +169,14 @@ public final class SolidHeightfield
          */
         private void moveToNext()
         {
-            if (mNext != null)
+            if (mNext != NULL_SPAN)
             {
                 // There is a current span selected.
-                if (mNext.next() != null)
+                if (mSpanNext[mNext] != NULL_SPAN)
                 {
                     // The current span has a next.
                     // Move to it.
-                    mNext = mNext.next();
+                    mNext = mSpanNext[mNext];
                     return;
                 }
                 else
@@ -148,43 +184,93 @@ public final class SolidHeightfield
                     // Move to next grid location.
                     mNextWidth++;
             }
-            // Search through the grid until a new base span is found.
-            for (int depthIndex = mNextDepth
-                            ; depthIndex < depth()
-                            ; depthIndex++)
+            if (mColumnHeads != null)
             {
-                for (int widthIndex = mNextWidth
-                                ; widthIndex < width()
-                                ; widthIndex++)
+                // Search through the grid until a new base span is found.
+                for (int depthIndex = Math.max(mNextDepth, firstRow())
+                                ; depthIndex <= lastRow()
+                                ; depthIndex++)
                 {
-                    HeightSpan span =
-                        mSpans.get(gridIndex(widthIndex, depthIndex));
-                    if (span != null)
+                    for (int widthIndex = mNextWidth
+                                    ; widthIndex < width()
+                                    ; widthIndex++)
                     {
-                        // A new base span was found.  Select it.
-                        mNext = span;
-                        mNextWidth = widthIndex;
-                        mNextDepth = depthIndex;
-                        return;
+                        int span =
+                            mColumnHeads[columnIndex(widthIndex, depthIndex)];
+                        if (span != NULL_SPAN)
+                        {
+                            // A new base span was found.  Select it.
+                            mNext = span;
+                            mNextWidth = widthIndex;
+                            mNextDepth = depthIndex;
+                            return;
+                        }
                     }
+                    mNextWidth = 0;
                 }
-                mNextWidth = 0;
             }
             // If got here, then there are no more spans.
-            mNext = null;
+            mNext = NULL_SPAN;
             mNextDepth = -1;
             mNextWidth = -1;
         }
     }
     
     /**
-     * Contains the spans within the heightfield's grid.
-     * <p>Key: Grid index obtained via {@link #gridIndex(int, int)}.<br/>
-     * Value: The lowest span at the grid location, or null if there are no
-     * spans at the grid location.</p>
+     * Indicates the lack of a span.  (No span at a grid location, or
+     * no span above the current span.)
+     */
+    public static final int NULL_SPAN = -1;
+    
+    /**
+     * The initial capacity of the span arena.
+     */
+    private static final int INITIAL_ARENA_SIZE = 256;
+    
+    /**
+     * The index of the lowest span in each grid column, or {@link #NULL_SPAN}
+     * if there are no spans in the column.
+     * <p>Index: Column index obtained via {@link #columnIndex(int, int)}.</p>
+     * <p>Will be null until the first span is added.</p>
+     */
+    private int[] mColumnHeads = null;
+    
+    /**
+     * The first depth row stored by the field.
      */
-    private final Hashtable<Integer, HeightSpan> mSpans =
-        new Hashtable<Integer, HeightSpan>();
+    private int mRowMin = 0;
+    
+    /**
+     * The last depth row stored by the field.  Clamped to the grid depth
+     * when used.
+     */
+    private int mRowMax = Integer.MAX_VALUE;
+    
+    /*
+     * The span arena.  Each span is represented by the same index in
+     * each array.
+     */
+    private int[] mSpanMin = new int[INITIAL_ARENA_SIZE];
+    private int[] mSpanMax = new int[INITIAL_ARENA_SIZE];
+    private int[] mSpanFlags = new int[INITIAL_ARENA_SIZE];
+    private int[] mSpanNext = new int[INITIAL_ARENA_SIZE];
+    
+    /**
+     * The number of arena entries that have ever been allocated.
+     * (Includes entries on the free list.)
+     */
+    private int mArenaSize = 0;
+    
+    /**
+     * The head of the list of free arena entries, linked via
+     * {@link #mSpanNext}.
+     */
+    private int mFreeSpan = NULL_SPAN;
+    
+    /**
+     * The number of spans currently in the field.
+     */
+    private int mSpanCount = 0;
     
     /**
      * Constructor
@@ -244,8 +330,8 @@ public final class SolidHeightfield
     {
         if (widthIndex < 0
                         || widthIndex >= width()
-                        || depthIndex < 0
-                        || depthIndex >= depth())
+                        || depthIndex < firstRow()
+                        || depthIndex > lastRow())
             // Outside of grid bounds.
             return false;
         
@@ -257,69 +343,74 @@ public final class SolidHeightfield
         
         // Find the grid location of the span and get existing data for the
         // location.
-        int gridIndex = gridIndex(widthIndex, depthIndex);
-        HeightSpan currentSpan = mSpans.get(gridIndex);
+        final int[] heads = columnHeads();
+        int gridIndex = columnIndex(widthIndex, depthIndex);
+        int currentSpan = heads[gridIndex];
         
-        if (currentSpan == null)
+        if (currentSpan == NULL_SPAN)
         {
             // This is the first span for this grid location.
             // Generate a new span.
-            mSpans.put(gridIndex, new HeightSpan(heightIndexMin
+            heads[gridIndex] = allocateSpan(heightIndexMin
                             , heightIndexMax
-                            , flags));
+                            , flags
+                            , NULL_SPAN);
             return true;
         }
         
         // Span data already exists at this location.  Search the spans in
         // this column to see which one should contain this span.  Or if a
         // new span should be created.
-        HeightSpan previousSpan = null;
-        while (currentSpan != null)
+        int previousSpan = NULL_SPAN;
+        while (currentSpan != NULL_SPAN)
         {
             /*
              * Note: The way the spans are built, separate spans are always
              * guaranteed to have a gap between them.  The minimum gap will
              * be the cell height increment.
              */
-            if (currentSpan.min() > heightIndexMax + 1)
+            if (mSpanMin[currentSpan] > heightIndexMax + 1)
             {
                 /*
                  * The new span is below the current span and NOT adjacent.
                  * Due to the structure of the data, the new span is
                  * guaranteed to fit below the current span.
                  * 
-                 * Create a new span.
+                 * Create a new span and insert it below the current span.
                  */
-                HeightSpan newSpan = new HeightSpan(heightIndexMin
+                int newSpan = allocateSpan(heightIndexMin
                                 , heightIndexMax
-                                , flags);
-                // Insert this span below the current span.
-                newSpan.setNext(currentSpan);
-                if (previousSpan == null)
+                                , flags
+                                , currentSpan);
+                if (previousSpan == NULL_SPAN)
                     // The new span is the new first span in this column.
                     // Insert it at the base of this column.
-                    mSpans.put(gridIndex, newSpan);
+                    heads[gridIndex] = newSpan;
                 else
                     // The new span is between two spans.
                     // Link the previous span to the new span.
-                    previousSpan.setNext(newSpan);
+                    mSpanNext[previousSpan] = newSpan;
                 return true;
             }
-            else if (currentSpan.max() < heightIndexMin - 1)
+            else if (mSpanMax[currentSpan] < heightIndexMin - 1)
             {
                 // Current span is below the new span and NOT adjacent.
-                if (currentSpan.next() == null)
+                if (mSpanNext[currentSpan] == NULL_SPAN)
                 {
                     // The new span is the final span.
                     // Insert it above the current span.
-                    currentSpan.setNext(new HeightSpan(heightIndexMin
+                    // (Allocation may grow the arena, so the array must not
+                    // be referenced until afterwards.)
+                    final int newSpan = allocateSpan(heightIndexMin
                                     , heightIndexMax
-                                    , flags));
+                                    , flags
+                                    , NULL_SPAN);
+                    mSpanNext[currentSpan] = newSpan;
                     return true;
                 }
                 // Continue searching up the span's in this column.
                 previousSpan = currentSpan;
-                currentSpan = currentSpan.next();
+                currentSpan = mSpanNext[currentSpan];
             }
             else
             {
@@ -329,29 +420,34 @@ public final class SolidHeightfield
                  * Need to perform a merge of some type.
                  * Will always return after the merge is complete.
                  * Get easy stuff out of the way first.
+                 * 
+                 * Note: The minimum/maximum assignments in this section
+                 * never require the clamping performed by HeightSpan.
                  */
-                if (heightIndexMin < currentSpan.min())
+                if (heightIndexMin < mSpanMin[currentSpan])
                     // This span will result in a new minimum for the current
                     // span. Adjust the current span's minimum.
-                    currentSpan.setMin(heightIndexMin);
-                if (heightIndexMax == currentSpan.max())
+                    mSpanMin[currentSpan] = heightIndexMin;
+                if (heightIndexMax == mSpanMax[currentSpan])
                 {
                     // The new span ends at same height as current span.
                     // Merge flags.
-                    currentSpan.setFlags((byte)(currentSpan.flags() | flags));
+                    mSpanFlags[currentSpan] =
+                        (byte)(mSpanFlags[currentSpan] | flags);
                     return true;
                 }
-                if (currentSpan.max() > heightIndexMax)
+                if (mSpanMax[currentSpan] > heightIndexMax)
                     // The top of the current span is higher than the new span.
                     // So discard the new span's flag.
                     return true;
                 // The new spans's maximum height is higher than the current
                 // span's maximum height.
                 // Need to search up the spans to find where the merge ends.
-                HeightSpan nextSpan = currentSpan.next();
+                int nextSpan = mSpanNext[currentSpan];
                 while (true)
                 {
-                    if (nextSpan == null || nextSpan.min() > heightIndexMax + 1)
+                    if (nextSpan == NULL_SPAN
+                            || mSpanMin[nextSpan] > heightIndexMax + 1)
                     {
                         /*
                          * There are no spans above the current span, or the
@@ -359,41 +455,40 @@ public final class SolidHeightfield
                          * the next span. Can just expand the current span
                          * upward.
                          */
-                        currentSpan.setMax(heightIndexMax);
+                        mSpanMax[currentSpan] = heightIndexMax;
                         // New span is new "top", so its flags replace current
                         // span's flags.
-                        currentSpan.setFlags(flags);
-                        if (nextSpan == null)
-                            // The current span is at the top of the column.
-                            // Get rid of any links it may have had.
-                            currentSpan.setNext(null);
-                        else
-                            // Take care of re-pointing.  (Some spans may have
-                            // been encompassed.)
-                            currentSpan.setNext(nextSpan);
+                        mSpanFlags[currentSpan] = flags;
+                        // Take care of re-pointing.  (Some spans may have
+                        // been encompassed.)
+                        releaseSpans(mSpanNext[currentSpan], nextSpan);
+                        mSpanNext[currentSpan] = nextSpan;
                         // Finished.
                         return true;
                     }
                     // The new height of the current span will touch the next
                     // span in some manner. Merging is needed.
-                    if (nextSpan.min() == heightIndexMax + 1
-                                    || heightIndexMax <= nextSpan.max())
+                    if (mSpanMin[nextSpan] == heightIndexMax + 1
+                                    || heightIndexMax <= mSpanMax[nextSpan])
                     {
                         // No gap between current and next spans, but no
                         // overlap with next span. (Spans abut each other.)
                         // Encompass the next span.
-                        currentSpan.setMax(nextSpan.max());
-                        // Set the current span to point the the encompassed
-                        // span's next span.
-                        currentSpan.setNext(nextSpan.next());
+                        mSpanMax[currentSpan] = mSpanMax[nextSpan];
                         // Take the flags of the next span since we know the
                         // next span's max is higher than the current span.
-                        currentSpan.setFlags(nextSpan.flags());
-                        if (heightIndexMax == currentSpan.max())
+                        mSpanFlags[currentSpan] = mSpanFlags[nextSpan];
+                        // Set the current span to point the the encompassed
+                        // span's next span.
+                        final int afterNext = mSpanNext[nextSpan];
+                        releaseSpans(mSpanNext[currentSpan], afterNext);
+                        mSpanNext[currentSpan] = afterNext;
+                        if (heightIndexMax == mSpanMax[currentSpan])
                         {
                             // New span ends at same height as merged span.
                             // Merge flags.
-                            currentSpan.setFlags(currentSpan.flags() | flags);
+                            mSpanFlags[currentSpan] =
+                                mSpanFlags[currentSpan] | flags;
                             return true;
                         }
                         return true;
@@ -401,7 +496,7 @@ public final class SolidHeightfield
                     // The current span overlaps with the next span.
                     // Need to continue up the column to see if the next span
                     // will be fully engulfed.
-                    nextSpan = nextSpan.next();
+                    nextSpan = mSpanNext[nextSpan];
                 }
             }
         }
@@ -426,11 +521,14 @@ public final class SolidHeightfield
      * Gets the lowest span at the grid location, or null if there are no
      * spans at the location.
      * <p>The data will be the lowest span at the grid location.</p>
+     * <p>The returned span is a view into the field's storage.  Changes
+     * to the span are reflected in the field.</p>
      * @return The lowest span at the grid location.
      */
     public HeightSpan getData(int widthIndex, int depthIndex)
     {
-        return mSpans.get(gridIndex(widthIndex, depthIndex));
+        final int span = spanIndex(widthIndex, depthIndex);
+        return (span == NULL_SPAN ? null : new HeightSpan(this, span));
     }
     
     /**
@@ -438,6 +536,261 @@ public final class SolidHeightfield
      * returned, then the field does not contain any obstructed  space.
      * @return TRUE if the field contains spans.  Otherwise FALSE.
      */
-    public boolean hasSpans() { return (mSpans.size() > 0); }
+    public boolean hasSpans() { return (mSpanCount > 0); }
+    
+    /**
+     * Gets the index of the next span in the column.  (The span above the
+     * the specified span.)
+     * @param spanIndex A valid span index.
+     * @return The index of the next span in the column, or
+     * {@link #NULL_SPAN} if there is no next span.
+     */
+    public int nextSpan(int spanIndex) { return mSpanNext[spanIndex]; }
+    
+    /**
+     * Sets the flags for the span.
+     * @param spanIndex A valid span index.
+     * @param value The new flags for the span.
+     */
+    public void setSpanFlags(int spanIndex, int value)
+    {
+        mSpanFlags[spanIndex] = value;
+    }
+    
+    /**
+     * The number of spans in the field.
+     * @return The number of spans in the field.
+     */
+    public int spanCount() { return mSpanCount; }
+    
+    /**
+     * The flags for the span.
+     * @param spanIndex A valid span index.
+     * @return The flags for the span.
+     */
+    public int spanFlags(int spanIndex) { return mSpanFlags[spanIndex]; }
+    
+    /**
+     * Gets the index of the lowest span at the grid location.
+     * <p>Span indices are only valid until the next call to
+     * {@link #addData(int, int, int, int, int) addData}.</p>
+     * @param widthIndex The width index of the grid location.
+     * @param depthIndex The depth index of the grid location.
+     * @return The index of the lowest span at the grid location, or
+     * {@link #NULL_SPAN} if there are no spans at the grid location.
+     */
+    public int spanIndex(int widthIndex, int depthIndex)
+    {
+        final int columnIndex = columnIndex(widthIndex, depthIndex);
+        if (columnIndex == -1
+                || mColumnHeads == null
+                || columnIndex >= mColumnHeads.length)
+            return NULL_SPAN;
+        return mColumnHeads[columnIndex];
+    }
+    
+    /**
+     * The span maximum.
+     * @param spanIndex A valid span index.
+     * @return The span maximum.
+     */
+    public int spanMax(int spanIndex) { return mSpanMax[spanIndex]; }
+    
+    /**
+     * The span minimum.
+     * @param spanIndex A valid span index.
+     * @return The span minimum.
+     */
+    public int spanMin(int spanIndex) { return mSpanMin[spanIndex]; }
+    
+    /**
+     * Copies the spans of a range of grid rows from another field into
+     * this field.
+     * <p>The source field must have the same grid size as this field, and
+     * the columns in the range must not already contain spans in this
+     * field.  The spans are copied as-is.  No merging is performed.  The
+     * source may use a row window that covers the range.</p>
+     * @param source The field to copy the spans from.
+     * @param depthMin The first depth index to copy. (Inclusive.)
+     * @param depthMax The last depth index to copy. (Inclusive.)
+     */
+    void copyColumns(SolidHeightfield source, int depthMin, int depthMax)
+    {
+        final int[] heads = columnHeads();
+        for (int depthIndex = depthMin; depthIndex <= depthMax; depthIndex++)
+        {
+            for (int widthIndex = 0; widthIndex < width(); widthIndex++)
+            {
+                final int gridIndex = columnIndex(widthIndex, depthIndex);
+                int previousSpan = NULL_SPAN;
+                for (int span = source.spanIndex(widthIndex, depthIndex)
+                        ; span != NULL_SPAN
+                        ; span = source.mSpanNext[span])
+                {
+                    final int newSpan = allocateSpan(source.mSpanMin[span]
+                            , source.mSpanMax[span]
+                            , source.mSpanFlags[span]
+                            , NULL_SPAN);
+                    if (previousSpan == NULL_SPAN)
+                        heads[gridIndex] = newSpan;
+                    else
+                        mSpanNext[previousSpan] = newSpan;
+                    previousSpan = newSpan;
+                }
+            }
+        }
+    }
+
+    /**
+     * Restricts the storage of the field to a range of depth rows.
+     * <p>The bounds and grid of the field are not changed.  Spans can only
+     * be added to columns within the window, and columns outside the window
+     * are reported as empty.  Any existing spans are discarded.</p>
+     * @param depthMin The first depth row to store. (Inclusive.)
+     * @param depthMax The last depth row to store. (Inclusive.)
+     */
+    void setRowWindow(int depthMin, int depthMax)
+    {
+        mRowMin = Math.max(0, depthMin);
+        mRowMax = depthMax;
+        mColumnHeads = null;
+        mArenaSize = 0;
+        mFreeSpan = NULL_SPAN;
+        mSpanCount = 0;
+    }
+    
+    /**
+     * Sets the span maximum.
+     * <p>Auto-clamps the value to ({@link #spanMin(int)} + 1).</p>
+     * @param spanIndex A valid span index.
+     * @param value The new maximum.
+     */
+    void setSpanMax(int spanIndex, int value)
+    {
+        if (value <= mSpanMin[spanIndex])
+            mSpanMax[spanIndex] = mSpanMin[spanIndex] + 1;
+        else
+            mSpanMax[spanIndex] = value;
+    }
+    
+    /**
+     * Sets the span minimum.
+     * <p>Auto-clamps the value to ({@link #spanMax(int)} - 1).</p>
+     * @param spanIndex A valid span index.
+     * @param value The new minimum.
+     */
+    void setSpanMin(int spanIndex, int value)
+    {
+        if (value >= mSpanMax[spanIndex])
+            mSpanMin[spanIndex] = mSpanMax[spanIndex] - 1;
+        else
+            mSpanMin[spanIndex] = value;
+    }
+    
+    /**
+     * Sets the next span in the column.
+     * @param spanIndex A valid span index.
+     * @param value The index of the new next span, or {@link #NULL_SPAN}.
+     */
+    void setNextSpan(int spanIndex, int value)
+    {
+        mSpanNext[spanIndex] = value;
+    }
+    
+    /**
+     * Gets a new span from the arena, re-using a free entry if one is
+     * available.
+     * @return The index of the new span.
+     */
+    private int allocateSpan(int min, int max, int flags, int next)
+    {
+        int span = mFreeSpan;
+        if (span != NULL_SPAN)
+            mFreeSpan = mSpanNext[span];
+        else
+        {
+            if (mArenaSize == mSpanMin.length)
+            {
+                final int newSize = mArenaSize * 2;
+                mSpanMin = Arrays.copyOf(mSpanMin, newSize);
+                mSpanMax = Arrays.copyOf(mSpanMax, newSize);
+                mSpanFlags = Arrays.copyOf(mSpanFlags, newSize);
+                mSpanNext = Arrays.copyOf(mSpanNext, newSize);
+            }
+            span = mArenaSize++;
+        }
+        mSpanMin[span] = min;
+        mSpanMax[span] = max;
+        mSpanFlags[span] = flags;
+        mSpanNext[span] = next;
+        mSpanCount++;
+        return span;
+    }
+    
+    /**
+     * Gets the column head array, allocating it if it does not exist
+     * or no longer matches the size of the grid.
+     * @return The column head array.
+     */
+    private int[] columnHeads()
+    {
+        final int size = width() * Math.max(0, lastRow() - firstRow() + 1);
+        if (mColumnHeads == null || mColumnHeads.length != size)
+        {
+            // Any existing data no longer maps to the grid.  Discard it.
+            mColumnHeads = new int[size];
+            Arrays.fill(mColumnHeads, NULL_SPAN);
+            mArenaSize = 0;
+            mFreeSpan = NULL_SPAN;
+            mSpanCount = 0;
+        }
+        return mColumnHeads;
+    }
+    
+    /**
+     * Gets the index of a grid column within the column head array.
+     * @param widthIndex The width index.
+     * @param depthIndex The depth index.
+     * @return The index of the column, or -1 if the column is outside
+     * the grid or the row window.
+     */
+    private int columnIndex(int widthIndex, int depthIndex)
+    {
+        if (widthIndex < 0
+                || widthIndex >= width()
+                || depthIndex < firstRow()
+                || depthIndex > lastRow())
+            return -1;
+        return (depthIndex - mRowMin) * width() + widthIndex;
+    }
+    
+    /**
+     * The first depth row stored by the field.
+     * @return The first depth row stored by the field.
+     */
+    private int firstRow() { return mRowMin; }
+    
+    /**
+     * The last depth row stored by the field.
+     * @return The last depth row stored by the field.
+     */
+    private int lastRow() { return Math.min(mRowMax, depth() - 1); }
+    
+    /**
+     * Places a chain of spans on the free list.
+     * @param fromSpan The first span to release.
+     * @param toSpan The span at which to stop. (Exclusive.)
+     */
+    private void releaseSpans(int fromSpan, int toSpan)
+    {
+        while (fromSpan != toSpan)
+        {
+            final int next = mSpanNext[fromSpan];
+            mSpanNext[fromSpan] = mFreeSpan;
+            mFreeSpan = fromSpan;
+            mSpanCount--;
+            fromSpan = next;
+        }
+    }
     
 }
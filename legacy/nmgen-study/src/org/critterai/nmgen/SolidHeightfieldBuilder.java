@@ -21,6 +21,9 @@
  */
 package org.critterai.nmgen;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 import org.critterai.nmgen.SolidHeightfield.SolidHeightFieldIterator;
 
 /**
@@ -44,6 +47,9 @@ import org.critterai.nmgen.SolidHeightfield.SolidHeightFieldIterator;
  * a ledge.  (Agents can legally "step down" from the span to any of its
  * neighbors.)</li>
  * </ul>
+ * <p>If the builder is provided with a thread pool, voxelization is
+ * performed in parallel.  The generated field is the same as for serial
+ * voxelization.</p>
  * @see <a href="http://www.critterai.org/nmgen_voxel"
  * target="_parent">The Voxelization Process</a>
  * @see <a href="http://www.critterai.org/nmgen_hfintro"
@@ -72,8 +78,85 @@ public final class SolidHeightfieldBuilder
      * algorithms similar to what is done with the open heightfield and
      * contour classes.
      * 
+     * Parallel voxelization splits the grid into bands of depth rows.
+     * Each band is voxelized into its own field by a separate task, then
+     * the bands are copied into the final field.  Since a band task
+     * processes the triangles in the same order as a serial build, each
+     * grid column receives the same sequence of addData() calls and ends
+     * up with the same spans.  No locking is needed since the band fields
+     * are never shared.
+     * 
+     * The band fields use the bounds of the final field so that cell
+     * positions are calculated exactly as in a serial build, but a row
+     * window restricts their storage to the band's own rows.  The triangles
+     * are binned by the rows they cover before the tasks start, so each
+     * task only visits the triangles that can add spans to its band.
+     * 
+     * Streamed builds keep the band fields for the whole stream and only
+     * copy them into the final field after the last batch.  Each band
+     * field sees the triangles of all batches in order, so the result is
+     * the same as for a single batch holding all triangles.  Since the
+     * band fields only store their own rows, together they hold no more
+     * columns than the final field.  Each band is released as soon as it
+     * has been copied.
+     * 
      */
     
+    /**
+     * Voxelizes a list of triangles into a range of depth rows of a field.
+     */
+    private static final class VoxelizeBandTask
+        extends RecursiveAction
+    {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final SolidHeightfield mField;
+        private final int mDepthMin;
+        private final int mDepthMax;
+        private final float[] mVertices;
+        private final int[] mIndices;
+        private final int[] mPolyFlags;
+        private final IntList mPolys;
+        
+        private VoxelizeBandTask(SolidHeightfield field
+                , int depthMin
+                , int depthMax
+                , float[] vertices
+                , int[] indices
+                , int[] polyFlags
+                , IntList polys)
+        {
+            mField = field;
+            mDepthMin = depthMin;
+            mDepthMax = depthMax;
+            mVertices = vertices;
+            mIndices = indices;
+            mPolyFlags = polyFlags;
+            mPolys = polys;
+        }
+        
+        @Override
+        protected void compute()
+        {
+            final float inverseCellSize = 1 / mField.cellSize();
+            final float inverseCellHeight = 1 / mField.cellHeight();
+            for (int i = 0; i < mPolys.size(); i++)
+            {
+                final int iPoly = mPolys.get(i);
+                voxelizeTriangle(iPoly
+                        , mVertices
+                        , mIndices
+                        , mPolyFlags[iPoly]
+                        , inverseCellSize
+                        , inverseCellHeight
+                        , mDepthMin
+                        , mDepthMax
+                        , mField);
+            }
+        }
+    }
+    
     // Configuration settings.
     
     private final boolean mClipLedges;
@@ -103,6 +186,12 @@ public final class SolidHeightfieldBuilder
      */
     private final float mCellHeight;
     
+    /**
+     * The pool used for parallel voxelization, or null if voxelization is
+     * to be performed on the calling thread.
+     */
+    private final ForkJoinPool mThreadPool;
+    
     /**
      * Constructor
      * @param cellSize The size of the cells.  (The grid that forms the base
@@ -149,7 +238,34 @@ public final class SolidHeightfieldBuilder
             , float maxTraversableSlope
             , boolean clipLedges)
     {
+        this(cellSize
+                , cellHeight
+                , minTraversableHeight
+                , maxTraversableStep
+                , maxTraversableSlope
+                , clipLedges
+                , null);
+    }
+    
+    /**
+     * Constructor
+     * <p>See {@link #SolidHeightfieldBuilder(float, float, int, int, float,
+     * boolean) the standard constructor} for details on the other
+     * arguments.</p>
+     * @param threadPool The pool to use for parallel voxelization.  If null,
+     * voxelization will be performed on the thread calling
+     * {@link #build(float[], int[])}.
+     */
+    public SolidHeightfieldBuilder(float cellSize
+            , float cellHeight
+            , int minTraversableHeight
+            , int maxTraversableStep
+            , float maxTraversableSlope
+            , boolean clipLedges
+            , ForkJoinPool threadPool)
+    {
 
+        mThreadPool = threadPool;
         mMinTraversableHeight = Math.max(1, minTraversableHeight);
         mMaxTraversableStep = Math.max(0, maxTraversableStep);
         maxTraversableSlope = Math.min(85, Math.max(0, maxTraversableSlope));
@@ -208,14 +324,6 @@ public final class SolidHeightfieldBuilder
                 || indices.length % 3 != 0)
             return null;
         
-        // Initialize heightfield.
-        final SolidHeightfield result =
-            new SolidHeightfield(mCellSize, mCellHeight);
-        
-        // Pre-calculate values to save on the cost of division later.
-        final float inverseCellSize = 1 / result.cellSize();
-        final float inverseCellHeight = 1 / result.cellHeight();
-        
         // Detect and set the bounds of the source geometry.
         // Default to the first vertex.
         float xmin = vertices[0];
@@ -236,8 +344,61 @@ public final class SolidHeightfieldBuilder
             ymin = Math.min(vertices[i + 1], ymin);
             zmin = Math.min(vertices[i + 2], zmin);
         }
+        
+        return build(vertices
+                , indices
+                , new float[] { xmin, ymin, zmin }
+                , new float[] { xmax, ymax, zmax });
+    }
+    
+    /**
+     * Generates a solid heightfield covering the specified bounds from the
+     * provided source geometry.
+     * <p>Only the portions of the source geometry within the bounds are
+     * voxelized.  Otherwise the behavior is the same as
+     * {@link #build(float[], int[])}.</p>
+     * <p>Fields built with bounds that are aligned to the same grid will
+     * produce identical spans in the area where they overlap.  This permits
+     * the source geometry to be voxelized in tiles.</p>
+     * @param vertices Source geometry vertices in the form (x, y, z).
+     * @param indices Source geometry indices in the form (VertA, VertB, VertC).
+     * Wrapped: Clockwise.
+     * @param boundsMin The minimum bounds of the field in the form
+     * (minX, minY, minZ).
+     * @param boundsMax The maximum bounds of the field in the form
+     * (maxX, maxY, maxZ).
+     * @return The generated solid heightfield, or null if the generation fails.
+     */
+    public SolidHeightfield build(float[] vertices
+            , int[] indices
+            , float[] boundsMin
+            , float[] boundsMax)
+    {
+        // Perform basic checks.
+        if (vertices == null
+                || indices == null
+                || vertices.length % 3 != 0
+                || indices.length % 3 != 0
+                || boundsMin == null
+                || boundsMax == null
+                || boundsMin.length != 3
+                || boundsMax.length != 3)
+            return null;
+        
+        final BuildEvents.VoxelizationEvent event =
+            new BuildEvents.VoxelizationEvent();
+        event.begin();
+        
+        // Initialize heightfield.
+        final SolidHeightfield result =
+            new SolidHeightfield(mCellSize, mCellHeight);
+        
+        // Pre-calculate values to save on the cost of division later.
+        final float inverseCellSize = 1 / result.cellSize();
+        final float inverseCellHeight = 1 / result.cellHeight();
+        
         // Set the bounds.
-        result.setBounds(xmin, ymin, zmin, xmax, ymax, zmax);
+        result.setBounds(boundsMin, boundsMax);
         
         // Detect which polygons in the source mesh have a slope
         // that low enough to be considered traversable.  (Agent can walk up
@@ -246,16 +407,23 @@ public final class SolidHeightfieldBuilder
         
         // For each polygon in the source mesh: Voxelize it and add the
         // resulting spans to the solid field.
-        final int polyCount = indices.length / 3;
-        for (int iPoly = 0; iPoly < polyCount; iPoly++)
+        if (isParallel(result))
+            voxelizeParallel(vertices, indices, polyFlags, result);
+        else
         {
-            voxelizeTriangle(iPoly
-                    , vertices
-                    , indices
-                    , polyFlags[iPoly]
-                    , inverseCellSize
-                    , inverseCellHeight
-                    , result);
+            final int polyCount = indices.length / 3;
+            for (int iPoly = 0; iPoly < polyCount; iPoly++)
+            {
+                voxelizeTriangle(iPoly
+                        , vertices
+                        , indices
+                        , polyFlags[iPoly]
+                        , inverseCellSize
+                        , inverseCellHeight
+                        , 0
+                        , result.depth() - 1
+                        , result);
+            }
         }
         
         // Remove the walkable flag from any span that has another span too
@@ -267,10 +435,236 @@ public final class SolidHeightfieldBuilder
             // be a ledge.
             markLedgeSpans(result);
         
+        if (event.shouldCommit())
+        {
+            event.triangles = indices.length / 3;
+            event.width = result.width();
+            event.depth = result.depth();
+            event.spans = result.spanCount();
+            event.commit();
+        }
+        
         return result;
         
     }
     
+    /**
+     * Generates a solid heightfield from source geometry provided in
+     * batches.
+     * <p>The source is read twice.  Once to find the bounds of the
+     * geometry, then again to voxelize it.  Otherwise the behavior is the
+     * same as {@link #build(float[], int[])}.</p>
+     * @param source The source geometry.
+     * @return The generated solid heightfield, or null if the generation fails.
+     */
+    public SolidHeightfield build(ITriangleBatchSource source)
+    {
+        if (source == null)
+            return null;
+        
+        // Detect the bounds of the source geometry.
+        float[] boundsMin = null;
+        float[] boundsMax = null;
+        source.reset();
+        while (source.nextBatch())
+        {
+            final float[] vertices = source.batchVertices();
+            if (vertices == null || vertices.length % 3 != 0)
+                return null;
+            for (int i = 0; i < vertices.length; i += 3)
+            {
+                if (boundsMin == null)
+                {
+                    // Default to the first vertex.
+                    boundsMin = new float[] {
+                            vertices[i], vertices[i + 1], vertices[i + 2] };
+                    boundsMax = boundsMin.clone();
+                    continue;
+                }
+                for (int j = 0; j < 3; j++)
+                {
+                    boundsMin[j] = Math.min(vertices[i + j], boundsMin[j]);
+                    boundsMax[j] = Math.max(vertices[i + j], boundsMax[j]);
+                }
+            }
+        }
+        
+        if (boundsMin == null)
+            // No geometry.
+            return null;
+        
+        return build(source, boundsMin, boundsMax);
+    }
+    
+    /**
+     * Generates a solid heightfield covering the specified bounds from
+     * source geometry provided in batches.
+     * <p>The batches are voxelized one at a time, so only the current batch
+     * needs to be held in memory.  The result is the same as a build
+     * from a single pair of arrays holding all of the batches.</p>
+     * <p>Only the portions of the source geometry within the bounds are
+     * voxelized.  See {@link #build(float[], int[], float[], float[])}
+     * for details.</p>
+     * @param source The source geometry.  It is read once.
+     * @param boundsMin The minimum bounds of the field in the form
+     * (minX, minY, minZ).
+     * @param boundsMax The maximum bounds of the field in the form
+     * (maxX, maxY, maxZ).
+     * @return The generated solid heightfield, or null if the generation
+     * fails.  (E.g. A batch is invalid.)
+     */
+    public SolidHeightfield build(ITriangleBatchSource source
+            , float[] boundsMin
+            , float[] boundsMax)
+    {
+        // Perform basic checks.
+        if (source == null
+                || boundsMin == null
+                || boundsMax == null
+                || boundsMin.length != 3
+                || boundsMax.length != 3)
+            return null;
+        
+        final BuildEvents.VoxelizationEvent event =
+            new BuildEvents.VoxelizationEvent();
+        event.begin();
+        
+        // Initialize heightfield.
+        final SolidHeightfield result =
+            new SolidHeightfield(mCellSize, mCellHeight);
+        
+        // Pre-calculate values to save on the cost of division later.
+        final float inverseCellSize = 1 / result.cellSize();
+        final float inverseCellHeight = 1 / result.cellHeight();
+        
+        // Set the bounds.
+        result.setBounds(boundsMin, boundsMax);
+        
+        // The band fields are kept until all batches are voxelized.
+        final SolidHeightfield[] bandFields =
+            (isParallel(result) ? createBandFields(result) : null);
+        
+        int triangleCount = 0;
+        source.reset();
+        while (source.nextBatch())
+        {
+            final float[] vertices = source.batchVertices();
+            final int[] indices = source.batchIndices();
+            if (vertices == null
+                    || indices == null
+                    || vertices.length % 3 != 0
+                    || indices.length % 3 != 0)
+                return null;
+            triangleCount += indices.length / 3;
+            
+            final int[] polyFlags =
+                markInputMeshWalkableFlags(vertices, indices);
+            
+            if (bandFields != null)
+                voxelizeBands(vertices, indices, polyFlags, bandFields);
+            else
+            {
+                final int polyCount = indices.length / 3;
+                for (int iPoly = 0; iPoly < polyCount; iPoly++)
+                {
+                    voxelizeTriangle(iPoly
+                            , vertices
+                            , indices
+                            , polyFlags[iPoly]
+                            , inverseCellSize
+                            , inverseCellHeight
+                            , 0
+                            , result.depth() - 1
+                            , result);
+                }
+            }
+        }
+        
+        if (bandFields != null)
+        {
+            final int bandRows = getBandRows(result.depth());
+            for (int iBand = 0; iBand < bandFields.length; iBand++)
+            {
+                final int depthMin = iBand * bandRows;
+                result.copyColumns(bandFields[iBand]
+                        , depthMin
+                        , Math.min(depthMin + bandRows, result.depth()) - 1);
+                bandFields[iBand] = null;
+            }
+        }
+        
+        // Remove the walkable flag from any span that has another span too
+        // close above it.
+        markLowHeightSpans(result);
+        
+        if (mClipLedges)
+            // Remove the walkable flag from any span that is determined to
+            // be a ledge.
+            markLedgeSpans(result);
+        
+        if (event.shouldCommit())
+        {
+            event.triangles = triangleCount;
+            event.width = result.width();
+            event.depth = result.depth();
+            event.spans = result.spanCount();
+            event.commit();
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Creates an empty field for each band of depth rows used during
+     * parallel voxelization.
+     * <p>Each band field has the same bounds as the result so that
+     * the grid and all world positions match exactly.  Its row window
+     * limits its storage to the rows of the band.</p>
+     * @param field The field the bands will be copied into.
+     * @return The band fields.  The band at index i covers the depth rows
+     * starting at i * {@link #getBandRows(int)}.
+     */
+    private SolidHeightfield[] createBandFields(SolidHeightfield field)
+    {
+        final int depth = field.depth();
+        final int bandRows = getBandRows(depth);
+        final SolidHeightfield[] result =
+            new SolidHeightfield[(depth + bandRows - 1) / bandRows];
+        for (int iBand = 0; iBand < result.length; iBand++)
+        {
+            result[iBand] = new SolidHeightfield(mCellSize, mCellHeight);
+            result[iBand].setBounds(field.boundsMin(), field.boundsMax());
+            result[iBand].setRowWindow(iBand * bandRows
+                    , Math.min((iBand + 1) * bandRows, depth) - 1);
+        }
+        return result;
+    }
+    
+    /**
+     * The number of depth rows in each band during parallel voxelization.
+     * (One band per thread.)
+     * @param depth The depth of the field.
+     * @return The number of depth rows in each band.  The last band may
+     * contain fewer rows.
+     */
+    private int getBandRows(int depth)
+    {
+        return (depth + mThreadPool.getParallelism() - 1)
+                / mThreadPool.getParallelism();
+    }
+    
+    /**
+     * Indicates whether the field will be voxelized using the thread pool.
+     * @param field The field to be voxelized.
+     * @return TRUE if the field will be voxelized in parallel.
+     */
+    private boolean isParallel(SolidHeightfield field)
+    {
+        return (mThreadPool != null
+                && mThreadPool.getParallelism() > 1
+                && field.depth() > 1);
+    }
+    
     /**
      * Checks the slope of each polygon against the maximum allowed.  Any
      * polygon whose slope is below the maximum permitted gets the
@@ -342,9 +736,9 @@ public final class SolidHeightfieldBuilder
         SolidHeightFieldIterator iter = field.dataIterator();
         while (iter.hasNext())
         {
-            HeightSpan span = iter.next();
+            final int span = iter.nextIndex();
 
-            if ((span.flags() & SpanFlags.WALKABLE) == 0)
+            if ((field.spanFlags(span) & SpanFlags.WALKABLE) == 0)
                 // Span is already known to be un-waklable.
                 // Skip it.
                 continue;
@@ -354,9 +748,10 @@ public final class SolidHeightfieldBuilder
             
             // These values represent the gap (floor to ceiling) above the
             // current span.
-            final int currFloor = span.max();
-            final int currCeiling = (span.next() != null) ?
-                            span.next().min() : Integer.MAX_VALUE;
+            final int currFloor = field.spanMax(span);
+            final int currNext = field.nextSpan(span);
+            final int currCeiling = (currNext != SolidHeightfield.NULL_SPAN) ?
+                            field.spanMin(currNext) : Integer.MAX_VALUE;
             
             /*
              * Represents the minimum distance from the current span's floor
@@ -388,9 +783,9 @@ public final class SolidHeightfieldBuilder
                         + BoundedField.getDirOffsetDepth(dir);
 
                 // Get the lowest span in this neighbor column.
-                HeightSpan nSpan = field.getData(nWidthIndex, nDepthIndex);
+                int nSpan = field.spanIndex(nWidthIndex, nDepthIndex);
                 
-                if (nSpan == null)
+                if (nSpan == SolidHeightfield.NULL_SPAN)
                 {
                     // No neighbor on this side. Treat as the maximum drop.
                     // (Which is always considered a ledge.)
@@ -412,7 +807,8 @@ public final class SolidHeightfieldBuilder
                  */
                 // Default to an excessive drop.
                 int nFloor = -mMaxTraversableStep;
-                int nCeiling = nSpan.min(); // The bottom of this first span.
+                // The bottom of this first span.
+                int nCeiling = field.spanMin(nSpan);
                 
                 /*
                  * This check filters out the following:
@@ -441,13 +837,14 @@ public final class SolidHeightfieldBuilder
                  * bottom of the next span is the ceiling.
                  */
                 
-                for (nSpan =  field.getData(nWidthIndex, nDepthIndex)
-                        ; nSpan != null
-                        ; nSpan = nSpan.next())
+                for (
+                        ; nSpan != SolidHeightfield.NULL_SPAN
+                        ; nSpan = field.nextSpan(nSpan))
                 {
-                    nFloor = nSpan.max();
-                    nCeiling = (nSpan.next() != null) ?
-                                    nSpan.next().min() : Integer.MAX_VALUE;
+                    final int nNext = field.nextSpan(nSpan);
+                    nFloor = field.spanMax(nSpan);
+                    nCeiling = (nNext != SolidHeightfield.NULL_SPAN) ?
+                                    field.spanMin(nNext) : Integer.MAX_VALUE;
                     /*
                      * This next check filters out the following:
                      * 
@@ -481,7 +878,8 @@ public final class SolidHeightfieldBuilder
                 // Can only drop by mMaxTraversableStep, but a neighbor has a
                 // drop that exceeds this allowed drop.  Remove the walkable
                 // flag.
-                span.setFlags(span.flags() & ~SpanFlags.WALKABLE);
+                field.setSpanFlags(span
+                        , field.spanFlags(span) & ~SpanFlags.WALKABLE);
         }
     }
     
@@ -500,9 +898,9 @@ public final class SolidHeightfieldBuilder
         SolidHeightFieldIterator iter = field.dataIterator();
         while (iter.hasNext())
         {
-            HeightSpan span = iter.next();
+            final int span = iter.nextIndex();
             
-            if ((span.flags() & SpanFlags.WALKABLE) == 0)
+            if ((field.spanFlags(span) & SpanFlags.WALKABLE) == 0)
                 // Span is already known to be un-waklable.
                 // Skip it.
                 continue;
@@ -510,17 +908,171 @@ public final class SolidHeightfieldBuilder
             // Find the gap between the current span and the next higher span.
             // This represents the open space (floor to ceiling) above the
             // current span.
-            int spanFloor = span.max();
-            int spanCeiling = (span.next() != null) ?
-                            span.next().min() : Integer.MAX_VALUE;
+            final int nextSpan = field.nextSpan(span);
+            int spanFloor = field.spanMax(span);
+            int spanCeiling = (nextSpan != SolidHeightfield.NULL_SPAN) ?
+                            field.spanMin(nextSpan) : Integer.MAX_VALUE;
             
             if (spanCeiling - spanFloor <= mMinTraversableHeight)
                 // Can't stand on this span.  Ceiling is too low.
                 // Remove its walkable flag.
-                span.setFlags(span.flags() & ~SpanFlags.WALKABLE);
+                field.setSpanFlags(span
+                        , field.spanFlags(span) & ~SpanFlags.WALKABLE);
         }
     }
     
+    /**
+     * Starts voxelizing all polygons into the band fields using the
+     * thread pool.
+     * @param vertices Source geometry vertices in the form (x, y, z).
+     * @param indices Source geometry indices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @param polyFlags The flags for each polygon.
+     * @param bandFields The band fields from
+     * {@link #createBandFields(SolidHeightfield)}.
+     * @return The started band tasks, in band order.
+     */
+    private VoxelizeBandTask[] startBands(float[] vertices
+            , int[] indices
+            , int[] polyFlags
+            , SolidHeightfield[] bandFields)
+    {
+        final int depth = bandFields[0].depth();
+        final int bandRows = getBandRows(depth);
+        final IntList[] bandPolys = binPolys(vertices
+                , indices
+                , bandFields[0]
+                , bandRows
+                , bandFields.length);
+        final VoxelizeBandTask[] tasks =
+            new VoxelizeBandTask[bandFields.length];
+        for (int iBand = 0; iBand < bandFields.length; iBand++)
+        {
+            final int depthMin = iBand * bandRows;
+            tasks[iBand] = new VoxelizeBandTask(bandFields[iBand]
+                    , depthMin
+                    , Math.min(depthMin + bandRows, depth) - 1
+                    , vertices
+                    , indices
+                    , polyFlags
+                    , bandPolys[iBand]);
+            mThreadPool.execute(tasks[iBand]);
+        }
+        return tasks;
+    }
+    
+    /**
+     * Voxelizes all polygons into band fields using the thread pool, then
+     * waits for all bands to complete.
+     * @param vertices Source geometry vertices in the form (x, y, z).
+     * @param indices Source geometry indices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @param polyFlags The flags for each polygon.
+     * @param bandFields The band fields from
+     * {@link #createBandFields(SolidHeightfield)}.
+     */
+    private void voxelizeBands(float[] vertices
+            , int[] indices
+            , int[] polyFlags
+            , SolidHeightfield[] bandFields)
+    {
+        final VoxelizeBandTask[] tasks = startBands(vertices
+                , indices
+                , polyFlags
+                , bandFields);
+        for (VoxelizeBandTask task : tasks)
+            task.join();
+    }
+    
+    /**
+     * Voxelizes all polygons into the field using the thread pool.
+     * <p>The field's grid is split into bands of depth rows, one band
+     * per thread.  Each band is voxelized into a private field, then
+     * copied into the result.</p>
+     * @param vertices Source geometry vertices in the form (x, y, z).
+     * @param indices Source geometry indices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @param polyFlags The flags for each polygon.
+     * @param inoutField The heightfield to add new spans to.  It must
+     * not contain any spans.
+     */
+    private void voxelizeParallel(float[] vertices
+            , int[] indices
+            , int[] polyFlags
+            , SolidHeightfield inoutField)
+    {
+        final VoxelizeBandTask[] tasks = startBands(vertices
+                , indices
+                , polyFlags
+                , createBandFields(inoutField));
+        
+        // Wait for each band in turn and copy it into the result.
+        for (VoxelizeBandTask task : tasks)
+        {
+            task.join();
+            inoutField.copyColumns(task.mField
+                    , task.mDepthMin
+                    , task.mDepthMax);
+        }
+    }
+    
+    /**
+     * Sorts the polygons into the bands of depth rows they may add spans
+     * to.
+     * <p>The row range of each polygon is derived from its bounding box
+     * in the same way as in {@link #voxelizeTriangle(int, float[], int[],
+     * int, float, float, int, int, SolidHeightfield) voxelizeTriangle()},
+     * so a band never misses a polygon that
+     * contributes to it.  Each band's list is in polygon order.</p>
+     * @param vertices Source geometry vertices in the form (x, y, z).
+     * @param indices Source geometry indices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @param field A field with the bounds of the result.
+     * @param bandRows The number of depth rows in each band.
+     * @param bandCount The number of bands.
+     * @return The indices of the polygons for each band, in band order.
+     */
+    private static IntList[] binPolys(float[] vertices
+            , int[] indices
+            , SolidHeightfield field
+            , int bandRows
+            , int bandCount)
+    {
+        final float inverseCellSize = 1 / field.cellSize();
+        final float boundsMinZ = field.boundsMin()[2];
+        final float boundsMaxZ = field.boundsMax()[2];
+        final int polyCount = indices.length / 3;
+        final IntList[] result = new IntList[bandCount];
+        for (int iBand = 0; iBand < bandCount; iBand++)
+            result[iBand] = new IntList(polyCount / bandCount + 16);
+        for (int iPoly = 0; iPoly < polyCount; iPoly++)
+        {
+            final int pPoly = iPoly*3;
+            float zmin = vertices[indices[pPoly]*3+2];
+            float zmax = zmin;
+            for (int i = 1; i < 3; i++)
+            {
+                final float z = vertices[indices[pPoly+i]*3+2];
+                zmin = Math.min(zmin, z);
+                zmax = Math.max(zmax, z);
+            }
+            if (zmax < boundsMinZ || zmin > boundsMaxZ)
+                // Can't overlap the field.
+                continue;
+            final int depthMin = clamp(
+                    (int)((zmin - boundsMinZ) * inverseCellSize)
+                    , 0, field.depth() - 1);
+            final int depthMax = clamp(
+                    (int)((zmax - boundsMinZ) * inverseCellSize)
+                    , 0, field.depth() - 1);
+            for (int iBand = depthMin / bandRows
+                    ; iBand <= depthMax / bandRows
+                    ; iBand++)
+                result[iBand].add(iPoly);
+        }
+        return result;
+    }
+    
     /**
      * Clamps the value to the specified range.
      * @param value The value to clamp.
@@ -662,6 +1214,8 @@ public final class SolidHeightfieldBuilder
      * heightfield.
      * @param inverseCellSize Inverse cell size. (1/cellSize)
      * @param inverseCellHeight Inverse cell height. (1/cellheight)
+     * @param depthMin The lowest depth index to add spans to. (Inclusive.)
+     * @param depthMax The highest depth index to add spans to. (Inclusive.)
      * @param inoutField The heightfield to add new spans to.
      */
     private static void voxelizeTriangle(int polyIndex
@@ -670,6 +1224,8 @@ public final class SolidHeightfieldBuilder
             , int polyFlags
             , float inverseCellSize
             , float inverseCellHeight
+            , int depthMin
+            , int depthMax
             , SolidHeightfield inoutField)
     {
         
@@ -759,6 +1315,14 @@ public final class SolidHeightfieldBuilder
         triWidthMax = clamp(triWidthMax, 0, inoutField.width() - 1);
         triDepthMax = clamp(triDepthMax, 0, inoutField.depth() - 1);
         
+        // Restrict the rows to the requested range.  Each row is clipped
+        // independently, so this does not alter the spans generated for
+        // the rows that remain.
+        triDepthMin = Math.max(triDepthMin, depthMin);
+        triDepthMax = Math.min(triDepthMax, depthMax);
+        if (triDepthMin > triDepthMax)
+            return;
+        
         /*
          * "in" will contain the final data.
          * "out" and "inrow" are used for intermediate data.
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2010 Stephen A. Pratt
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.critterai.nmgen;
+
+import java.util.ArrayList;
+
+/**
+ * A navigation mesh built as a grid of tiles which supports incremental
+ * rebuilds.
+ * <p>The fingerprint of the source geometry of each tile is retained
+ * so that, when the source geometry changes, only the tiles impacted by
+ * the change need to be rebuilt.</p>
+ * <p>Only the fingerprints are retained between builds.  The
+ * intermediate results of the tile builds (E.g. The solid and open
+ * heightfields.) are not.  Any change to the source geometry of a tile
+ * invalidates its voxelization, the first stage of the build, so a
+ * retained field could never be reused by a rebuild.  Instead, the cost
+ * of a rebuild is bounded by the size of the tiles.</p>
+ * <p>The tile grid and height range are fixed when the navigation mesh
+ * is first built.  Rebuilds fail, and return -1, if the source geometry
+ * extends beyond the original bounds.  The navigation mesh must then be
+ * built again.</p>
+ * @see NavmeshGenerator#buildTiledNavmesh(float[], int[], float)
+ * @see NavmeshGenerator#rebuildTiles(TiledNavmesh, float[], int[])
+ */
+public final class TiledNavmesh
+{
+    
+    /*
+     * Design notes:
+     * 
+     * Only the generator which created the navigation mesh is permitted to
+     * rebuild it.  This guarantees the tile layout and configuration of
+     * rebuilt tiles match those of the existing tiles.
+     * 
+     * Not thread safe.  Rebuilds must not be performed concurrently with
+     * other access.
+     * 
+     * The intermediate data of tile builds is not retained.  A rebuild
+     * starts over from the source geometry, so the data would only hold
+     * on to memory for the life of the navigation mesh.  The generator is
+     * immutable, so no later stage can be invalidated without also
+     * invalidating the voxelization.
+     */
+    
+    private final NavmeshGenerator mGenerator;
+    
+    private final float[] mBoundsMin;
+    private final float[] mBoundsMax;
+    private final int mTileCells;
+    private final int mTileCountX;
+    private final int mTileCountZ;
+    
+    /*
+     * Per tile data.  Indexed by (tileZ * tileCountX + tileX).
+     * The tile is null if the tile has no traversable surface.
+     */
+    private final NavmeshTile[] mTiles;
+    private final boolean[] mBuilt;
+    private final long[] mFingerprints;
+    
+    /**
+     * Constructor
+     * @param generator The generator which builds the tiles.
+     * @param boundsMin The minimum bounds of the tile grid.
+     * @param boundsMax The maximum bounds of the tile grid.
+     * @param tileCells The width and depth of the tiles. (Cells.)
+     * @param tileCountX The number of tiles along the x-axis.
+     * @param tileCountZ The number of tiles along the z-axis.
+     */
+    TiledNavmesh(NavmeshGenerator generator
+            , float[] boundsMin
+            , float[] boundsMax
+            , int tileCells
+            , int tileCountX
+            , int tileCountZ)
+    {
+        mGenerator = generator;
+        mBoundsMin = boundsMin;
+        mBoundsMax = boundsMax;
+        mTileCells = tileCells;
+        mTileCountX = tileCountX;
+        mTileCountZ = tileCountZ;
+        mTiles = new NavmeshTile[tileCountX * tileCountZ];
+        mBuilt = new boolean[mTiles.length];
+        mFingerprints = new long[mTiles.length];
+    }
+    
+    /**
+     * The maximum bounds of the tile grid in the form (maxX, maxY, maxZ).
+     * <p>Warning: A reference to the internal array is being returned,
+     * not a new array.</p>
+     */
+    public float[] boundsMax() { return mBoundsMax; }
+    
+    /**
+     * The minimum bounds of the tile grid in the form (minX, minY, minZ).
+     * <p>Warning: A reference to the internal array is being returned,
+     * not a new array.</p>
+     */
+    public float[] boundsMin() { return mBoundsMin; }
+    
+    /**
+     * Gets a tile.
+     * @param tileX The x-index of the tile.
+     * @param tileZ The z-index of the tile.
+     * @return The tile, or null if the tile has no traversable surface or
+     * the index is invalid.
+     */
+    public NavmeshTile getTile(int tileX, int tileZ)
+    {
+        if (!isValidTile(tileX, tileZ))
+            return null;
+        return mTiles[tileZ * mTileCountX + tileX];
+    }
+    
+    /**
+     * The number of tiles along the x-axis.
+     */
+    public int tileCountX() { return mTileCountX; }
+    
+    /**
+     * The number of tiles along the z-axis.
+     */
+    public int tileCountZ() { return mTileCountZ; }
+    
+    /**
+     * All tiles which have a traversable surface, ordered by tile
+     * row (z), then tile column (x).
+     * @return The tiles which have a traversable surface.
+     */
+    public NavmeshTile[] tiles()
+    {
+        final ArrayList<NavmeshTile> result = new ArrayList<NavmeshTile>();
+        for (NavmeshTile tile : mTiles)
+        {
+            if (tile != null)
+                result.add(tile);
+        }
+        return result.toArray(new NavmeshTile[result.size()]);
+    }
+    
+    /**
+     * The fingerprint of the source geometry used to build the tile.
+     * @param tile The index of the tile.
+     * @return The fingerprint of the tile's source geometry.
+     */
+    long fingerprint(int tile) { return mFingerprints[tile]; }
+    
+    /**
+     * The generator which builds the tiles.
+     */
+    NavmeshGenerator generator() { return mGenerator; }
+    
+    /**
+     * Indicates whether the tile has been built.
+     * @param tile The index of the tile.
+     * @return TRUE if the tile has been built.
+     */
+    boolean isBuilt(int tile) { return mBuilt[tile]; }
+    
+    /**
+     * Stores the result of a tile build.
+     * @param tile The index of the tile.
+     * @param result The tile, or null if the tile has no traversable
+     * surface.
+     * @param fingerprint The fingerprint of the tile's source geometry.
+     */
+    void setTile(int tile, NavmeshTile result, long fingerprint)
+    {
+        mTiles[tile] = result;
+        mBuilt[tile] = true;
+        mFingerprints[tile] = fingerprint;
+    }
+    
+    /**
+     * The width and depth of the tiles. (Cells.)
+     */
+    int tileCells() { return mTileCells; }
+    
+    private boolean isValidTile(int tileX, int tileZ)
+    {
+        return tileX >= 0 && tileX < mTileCountX
+            && tileZ >= 0 && tileZ < mTileCountZ;
+    }
+    
+}
@@ -10,9 +10,20 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses( {GeometryTests.class
     , OpenHeightSpanTests.class
+    , SolidHeightfieldTests.class
+    , SolidHeightfieldBuilderTests.class
+    , CompactOpenHeightfieldTests.class
+    , OpenHeightfieldBuilderTests.class
+    , FilterOutSmallRegionsTests.class
+    , NavmeshGeneratorTests.class
     , EncompassedNullRegionTests.class
     , NullRegionOuterCornerTipTests.class
     , NullRegionShortWrapTests.class
+    , ContourSetBuilderTests.class
+    , ContourAlgorithmTests.class
+    , PolyMeshFieldBuilderTests.class
+    , DetailMeshBuilderTests.class
+    , SyntheticSceneTests.class
     , RemoveIntersectingSegmentTests.class
     , RemoveVerticalSegmentTests.class} )
 public final class AllTests { }
@@ -0,0 +1,163 @@
+package org.critterai.nmgen;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests related to the CompactOpenHeightfield class.
+ */
+public class CompactOpenHeightfieldTests
+{
+
+    private static final int NULL_SPAN = CompactOpenHeightfield.NULL_SPAN;
+
+    private CompactOpenHeightfield mField;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        /*
+         * 3 x 2 grid.  Every column has a floor at 2.  Column (1, 0) also
+         * has an upper floor at 12.  Column (2, 1) has its floor raised
+         * out of step range.
+         */
+        final SolidHeightfield solid = new SolidHeightfield(1, 1);
+        solid.setBounds(0, 0, 0, 3, 1000, 2);
+        for (int d = 0; d < 2; d++)
+        {
+            for (int w = 0; w < 3; w++)
+            {
+                final int max = (w == 2 && d == 1) ? 8 : 2;
+                solid.addData(w, d, 0, max, SpanFlags.WALKABLE);
+            }
+        }
+        solid.addData(1, 0, 10, 12, SpanFlags.WALKABLE);
+
+        final OpenHeightfieldBuilder builder = new OpenHeightfieldBuilder(
+                2, 1, 0, 0, SpanFlags.WALKABLE, false, null);
+        mField = builder.buildCompact(solid, false);
+        builder.generateNeighborLinks(mField);
+    }
+
+    @Test
+    public void testLayout()
+    {
+        assertTrue(mField.spanCount() == 7);
+        assertTrue(mField.cellCount(1, 0) == 2);
+        assertTrue(mField.cellCount(0, 1) == 1);
+        assertTrue(mField.cellStart(3, 0) == NULL_SPAN);
+        assertTrue(mField.cellStart(0, -1) == NULL_SPAN);
+
+        // Spans within a cell are stored contiguously, bottom up.
+        final int lower = mField.cellStart(1, 0);
+        assertTrue(mField.floor(lower) == 2);
+        assertTrue(mField.floor(lower + 1) == 12);
+        assertTrue(mField.ceiling(lower) == 12);
+    }
+
+    @Test
+    public void testNeighborLinks()
+    {
+        final int span = mField.cellStart(0, 0);
+        final int lower = mField.cellStart(1, 0);
+        final int upper = lower + 1;
+
+        assertTrue(mField.getNeighbor(span, 0) == NULL_SPAN);
+        assertTrue(mField.getNeighbor(span, 1) == mField.cellStart(0, 1));
+        assertTrue(mField.getNeighbor(span, 2) == lower);
+        assertTrue(mField.getNeighbor(span, 3) == NULL_SPAN);
+        assertTrue(mField.getNeighbor(lower, 0) == span);
+
+        // The upper span is out of step range of all other spans.
+        for (int dir = 0; dir < 4; dir++)
+            assertTrue(mField.getNeighbor(upper, dir) == NULL_SPAN);
+
+        // The raised column is out of step range.
+        final int raised = mField.cellStart(2, 1);
+        assertTrue(mField.getNeighbor(raised, 0) == NULL_SPAN);
+        assertTrue(mField.getNeighbor(raised, 3) == NULL_SPAN);
+    }
+
+    @Test
+    public void testLayerLimit()
+    {
+        // The highest layer that can be connected to.
+        CompactOpenHeightfield field =
+            createTallField(CompactOpenHeightfield.NOT_CONNECTED - 1);
+        final int span = field.cellStart(0, 0);
+        assertTrue(field.getNeighbor(span, 2)
+                == field.cellStart(1, 0) + CompactOpenHeightfield.NOT_CONNECTED
+                    - 1);
+
+        // Connections above the limit are not silently dropped.
+        try
+        {
+            field = createTallField(CompactOpenHeightfield.NOT_CONNECTED);
+            fail("Connection to layer above the limit was accepted.");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testRoundTrip()
+    {
+        for (int span = 0; span < mField.spanCount(); span++)
+        {
+            mField.setRegionID(span, span + 1);
+            mField.setDistanceToBorder(span, span * 2);
+        }
+        mField.setRegionCount(mField.spanCount() + 1);
+
+        final OpenHeightfield open = mField.toOpenHeightfield();
+        assertTrue(open.spanCount() == mField.spanCount());
+        assertTrue(open.regionCount() == mField.regionCount());
+        assertTrue(open.maxBorderDistance() == mField.maxBorderDistance());
+
+        final OpenHeightSpan upper = open.getData(1, 0).next();
+        assertTrue(upper.floor() == 12);
+        assertTrue(upper.regionID() == mField.cellStart(1, 0) + 2);
+        assertTrue(upper.next() == null);
+        assertTrue(open.getData(0, 0).getNeighbor(2) == open.getData(1, 0));
+        assertTrue(open.getData(0, 0).getNeighbor(0) == null);
+
+        final CompactOpenHeightfield copy = new CompactOpenHeightfield(open);
+        assertTrue(copy.spanCount() == mField.spanCount());
+        for (int span = 0; span < mField.spanCount(); span++)
+        {
+            assertTrue(copy.floor(span) == mField.floor(span));
+            assertTrue(copy.height(span) == mField.height(span));
+            assertTrue(copy.regionID(span) == mField.regionID(span));
+            assertTrue(copy.distanceToBorder(span)
+                    == mField.distanceToBorder(span));
+            for (int dir = 0; dir < 4; dir++)
+                assertTrue(copy.getNeighbor(span, dir)
+                        == mField.getNeighbor(span, dir));
+        }
+    }
+
+    /*
+     * 2 x 1 grid.  Column (1, 0) holds 256 stacked floors.  The floor of
+     * column (0, 0) is level with the floor at the layer of column (1, 0).
+     */
+    private static CompactOpenHeightfield createTallField(int layer)
+    {
+        final SolidHeightfield solid = new SolidHeightfield(1, 1);
+        solid.setBounds(0, 0, 0, 2, 3000, 1);
+        for (int i = 0; i < 256; i++)
+            solid.addData(1, 0, i * 10, i * 10 + 2, SpanFlags.WALKABLE);
+        solid.addData(0, 0, layer * 10, layer * 10 + 2, SpanFlags.WALKABLE);
+
+        final OpenHeightfieldBuilder builder = new OpenHeightfieldBuilder(
+                2, 1, 0, 0, SpanFlags.WALKABLE, false, null);
+        final CompactOpenHeightfield result =
+            builder.buildCompact(solid, false);
+        builder.generateNeighborLinks(result);
+        return result;
+    }
+
+}
@@ -0,0 +1,141 @@
+package org.critterai.nmgen;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests related to the primitive and boxed forms of the contour
+ * algorithms.
+ */
+public class ContourAlgorithmTests
+{
+
+    private static final int NULL_REGION = OpenHeightSpan.NULL_REGION;
+
+    // A 10x10 square null region contour with a bulge on one side.
+    private final ArrayList<Integer> mSourceVerts = new ArrayList<Integer>();
+
+    // Seeded with two opposite corners of the square.
+    private final ArrayList<Integer> mSeedVerts = new ArrayList<Integer>();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        for (int x = 0; x < 10; x++)
+            addSource(x, x == 5 ? 3 : 0);
+        for (int z = 0; z < 10; z++)
+            addSource(10, z);
+        for (int x = 10; x > 0; x--)
+            addSource(x, 10);
+        for (int z = 10; z > 0; z--)
+            addSource(0, z);
+
+        addSeed(0);
+        addSeed(20);
+    }
+
+    @Test
+    public void testMatchNullRegionEdgesForms()
+    {
+        checkForms(new MatchNullRegionEdges(1));
+    }
+
+    @Test
+    public void testNullRegionMaxEdgeForms()
+    {
+        checkForms(new NullRegionMaxEdge(4));
+    }
+
+    @Test
+    public void testAdapter()
+    {
+        final IContourAlgorithm legacy = new IContourAlgorithm()
+        {
+            @Override
+            public void apply(ArrayList<Integer> sourceVerts
+                    , ArrayList<Integer> resultVerts)
+            {
+                // Append the last source vertex.
+                final int pVert = sourceVerts.size() - 4;
+                resultVerts.add(sourceVerts.get(pVert));
+                resultVerts.add(sourceVerts.get(pVert + 1));
+                resultVerts.add(sourceVerts.get(pVert + 2));
+                resultVerts.add(pVert / 4);
+            }
+        };
+
+        final IPrimitiveContourAlgorithm wrapped =
+            ContourAlgorithmAdapter.wrap(legacy);
+        assertTrue(wrapped instanceof ContourAlgorithmAdapter);
+
+        final NullRegionMaxEdge primitive = new NullRegionMaxEdge(4);
+        assertTrue(ContourAlgorithmAdapter.wrap(primitive) == primitive);
+
+        final IntList result = ContourAlgorithmAdapter.toIntList(mSeedVerts);
+        wrapped.apply(ContourAlgorithmAdapter.toIntList(mSourceVerts), result);
+        assertTrue(result.size() == 12);
+        assertTrue(result.get(8) == 0);
+        assertTrue(result.get(10) == 1);
+        assertTrue(result.get(11) == mSourceVerts.size() / 4 - 1);
+    }
+
+    @Test
+    public void testIntList()
+    {
+        final IntList list = new IntList(1);
+        for (int i = 0; i < 10; i++)
+            list.add(i);
+        list.add(0, -1);
+        list.add(5, 100);
+        assertTrue(list.size() == 12);
+        assertTrue(list.get(0) == -1);
+        assertTrue(list.get(5) == 100);
+        assertTrue(list.get(6) == 4);
+        list.removeRange(4, 8);
+        assertTrue(list.size() == 8);
+        assertTrue(list.get(3) == 2);
+        assertTrue(list.get(4) == 6);
+        list.set(4, 7);
+        final int[] values = list.toArray();
+        assertTrue(values.length == 8);
+        assertTrue(values[4] == 7);
+        list.clear();
+        assertTrue(list.size() == 0);
+    }
+
+    private void checkForms(IPrimitiveContourAlgorithm algorithm)
+    {
+        final ArrayList<Integer> boxed = new ArrayList<Integer>(mSeedVerts);
+        algorithm.apply(mSourceVerts, boxed);
+        assertTrue(boxed.size() > mSeedVerts.size());
+
+        final IntList primitive = ContourAlgorithmAdapter.toIntList(mSeedVerts);
+        algorithm.apply(ContourAlgorithmAdapter.toIntList(mSourceVerts)
+                , primitive);
+
+        assertTrue(primitive.size() == boxed.size());
+        for (int i = 0; i < boxed.size(); i++)
+            assertTrue(primitive.get(i) == boxed.get(i));
+    }
+
+    private void addSeed(int iSourceVert)
+    {
+        mSeedVerts.add(mSourceVerts.get(iSourceVert * 4));
+        mSeedVerts.add(mSourceVerts.get(iSourceVert * 4 + 1));
+        mSeedVerts.add(mSourceVerts.get(iSourceVert * 4 + 2));
+        mSeedVerts.add(iSourceVert);
+    }
+
+    private void addSource(int x, int z)
+    {
+        mSourceVerts.add(x);
+        mSourceVerts.add(1);
+        mSourceVerts.add(z);
+        mSourceVerts.add(NULL_REGION);
+    }
+
+}
@@ -0,0 +1,89 @@
+package org.critterai.nmgen;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests related to the ContourSetBuilder class.
+ */
+public class ContourSetBuilderTests
+{
+
+    // Large enough to be split across multiple tasks.
+    private static final int GRID_SIZE = 60;
+
+    private OpenHeightfield mField;
+    private ArrayList<IContourAlgorithm> mAlgorithms;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        // A floor with spikes so that many regions are generated.
+        final float[] vertices =
+            NavmeshGeneratorTests.createSpikedFloorVertices(GRID_SIZE);
+        final int[] indices =
+            NavmeshGeneratorTests.createFloorIndices(GRID_SIZE);
+        final IntermediateData data = new IntermediateData();
+        NavmeshGeneratorTests.createGenerator(null)
+            .build(vertices, indices, data);
+        mField = data.openHeightfield();
+
+        mAlgorithms = new ArrayList<IContourAlgorithm>();
+        mAlgorithms.add(new MatchNullRegionEdges(1));
+        mAlgorithms.add(new NullRegionMaxEdge(40));
+    }
+
+    @Test
+    public void testParallelMatchesSerial()
+    {
+        final ContourSet serial =
+            new ContourSetBuilder(mAlgorithms).build(mField);
+        assertTrue(serial.size() > 50);
+        int rawVertCount = 0;
+        for (int i = 0; i < serial.size(); i++)
+            rawVertCount += serial.get(i).rawVertCount;
+        assertTrue(rawVertCount > 4096);
+
+        for (int parallelism = 2; parallelism <= 5; parallelism++)
+        {
+            final ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try
+            {
+                final ContourSet parallel =
+                    new ContourSetBuilder(mAlgorithms, pool).build(mField);
+                assertTrue(parallel.size() == serial.size());
+                for (int i = 0; i < serial.size(); i++)
+                {
+                    final Contour expected = serial.get(i);
+                    final Contour actual = parallel.get(i);
+                    assertTrue(actual.regionID == expected.regionID);
+                    assertArrayEquals(expected.rawVerts, actual.rawVerts);
+                    assertArrayEquals(expected.verts, actual.verts);
+                }
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testSourceFieldUnchanged()
+    {
+        final OpenHeightfield.OpenHeightFieldIterator iter =
+            mField.dataIterator();
+        while (iter.hasNext())
+            iter.next().flags = 7;
+        new ContourSetBuilder(mAlgorithms).build(mField);
+        iter.reset();
+        while (iter.hasNext())
+            assertTrue(iter.next().flags == 7);
+    }
+
+}
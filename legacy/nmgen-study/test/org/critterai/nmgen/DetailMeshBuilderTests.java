@@ -0,0 +1,430 @@
+package org.critterai.nmgen;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests related to the DetailMeshBuilder class and its incremental
+ * triangulator.
+ */
+public class DetailMeshBuilderTests
+{
+
+    private static final float TOLERANCE = 0.001f;
+
+    @Test
+    public void testTriangulatorBuild()
+    {
+        final float[] verts = new float[200 * 3];
+        final int[] hull = new int[40];
+        final int vertCount = createSquare(verts, hull, 150);
+
+        final DelaunayTriangulator triangulator = new DelaunayTriangulator();
+        final ArrayList<Integer> triangles = new ArrayList<Integer>();
+        assertTrue(triangulator.build(verts, vertCount, hull, hull.length));
+        triangulator.getTriangles(triangles);
+        checkTriangulation(verts, vertCount, triangles, 100, true);
+    }
+
+    @Test
+    public void testTriangulatorInsert()
+    {
+        final float[] verts = new float[200 * 3];
+        final int[] hull = new int[40];
+        final int vertCount = createSquare(verts, hull, 150);
+
+        // Start with the hull only, then insert the interior vertices.
+        final DelaunayTriangulator triangulator = new DelaunayTriangulator();
+        final ArrayList<Integer> triangles = new ArrayList<Integer>();
+        assertTrue(triangulator.build(verts, hull.length, hull, hull.length));
+        for (int iVert = hull.length; iVert < vertCount; iVert++)
+        {
+            assertTrue(triangulator.insert(verts, iVert));
+            triangulator.getTriangles(triangles);
+            checkTriangulation(verts, iVert + 1, triangles, 100, true);
+        }
+
+        // Duplicates are ignored.
+        verts[vertCount*3] = verts[(vertCount-1)*3];
+        verts[vertCount*3+2] = verts[(vertCount-1)*3+2];
+        assertFalse(triangulator.insert(verts, vertCount));
+        triangulator.getTriangles(triangles);
+        checkTriangulation(verts, vertCount, triangles, 100, true);
+    }
+
+    @Test
+    public void testTriangulatorSampledEdges()
+    {
+        // A triangle with its edges split the same way edge sampling
+        // splits them.  The split vertices are only collinear to within
+        // floating point error.
+        final float[] corners = { 0, 0, 2.2f, 9.7f, 7.3f, 3.1f };
+        final int splits = 13;
+        final float[] verts = new float[(splits * 3 + 20) * 3];
+        int vertCount = 0;
+        for (int iCorner = 0; iCorner < 3; iCorner++)
+        {
+            final float ax = corners[iCorner*2];
+            final float az = corners[iCorner*2+1];
+            final float bx = corners[(iCorner+1)%3*2];
+            final float bz = corners[(iCorner+1)%3*2+1];
+            for (int k = 0; k < splits; k++)
+                vertCount = addVert(verts, vertCount
+                        , ax + (bx - ax) * k / splits
+                        , az + (bz - az) * k / splits);
+        }
+        final int[] hull = new int[vertCount];
+        for (int i = 0; i < vertCount; i++)
+            hull[i] = i;
+        final double expectedArea = Math.abs(corners[2] * corners[5]
+                - corners[4] * corners[3]) / 2;
+
+        final DelaunayTriangulator triangulator = new DelaunayTriangulator();
+        final ArrayList<Integer> triangles = new ArrayList<Integer>();
+        assertTrue(triangulator.build(verts, vertCount, hull, hull.length));
+        triangulator.getTriangles(triangles);
+        checkTriangulation(verts, vertCount, triangles, expectedArea, false);
+
+        // Interior vertices are inserted without disturbing the hull.
+        final Random random = new Random(7);
+        for (int i = 0; i < 20; i++)
+        {
+            final float u = random.nextFloat() * 0.8f + 0.1f;
+            final float v = random.nextFloat() * (0.9f - u) + 0.05f;
+            vertCount = addVert(verts, vertCount
+                    , corners[2] * u + corners[4] * v
+                    , corners[3] * u + corners[5] * v);
+            assertTrue(triangulator.insert(verts, vertCount - 1));
+        }
+        triangulator.getTriangles(triangles);
+        checkTriangulation(verts, vertCount, triangles, expectedArea, false);
+
+        // The hull is locked.
+        final float[] outside = { -1, 0, -1 };
+        final DelaunayTriangulator locked = new DelaunayTriangulator();
+        locked.build(verts, vertCount, hull, hull.length);
+        assertTrue(locked.findTriangle(-1, -1, DelaunayTriangulator.NONE)
+                == DelaunayTriangulator.NONE);
+        assertTrue(locked.findTriangle(verts[(vertCount-1)*3]
+                , verts[(vertCount-1)*3+2]
+                , DelaunayTriangulator.NONE) != DelaunayTriangulator.NONE);
+        final float[] extended = Arrays.copyOf(verts
+                , (vertCount + 1) * 3);
+        System.arraycopy(outside, 0, extended, vertCount * 3, 3);
+        assertFalse(locked.insert(extended, vertCount));
+    }
+
+    @Test
+    public void testTriangulatorRejectedInsert()
+    {
+        final float[] verts = new float[200 * 3];
+        final int[] hull = new int[40];
+        final int vertCount = createSquare(verts, hull, 0);
+
+        final DelaunayTriangulator triangulator = new DelaunayTriangulator();
+        final ArrayList<Integer> triangles = new ArrayList<Integer>();
+        assertTrue(triangulator.build(verts, vertCount, hull, hull.length));
+
+        // A rejected vertex releases its index for the next insertion.
+        addVert(verts, vertCount, 3, 0);
+        assertFalse(triangulator.insert(verts, vertCount));
+        addVert(verts, vertCount, 4.5f, 5.5f);
+        assertTrue(triangulator.insert(verts, vertCount));
+        triangulator.getTriangles(triangles);
+        assertTrue(triangles.contains(vertCount));
+        checkTriangulation(verts, vertCount + 1, triangles, 100, true);
+    }
+
+    @Test
+    public void testRefineSkipsCoincidentSample()
+    {
+        final float[] verts = new float[2048 * 3];
+        final int[] hull = new int[40];
+        int vertCount = createSquare(verts, hull, 0);
+        final DelaunayTriangulator triangulator = new DelaunayTriangulator();
+        assertTrue(triangulator.build(verts, vertCount, hull, hull.length));
+        vertCount = addVert(verts, vertCount, 5, 5);
+        assertTrue(triangulator.insert(verts, vertCount - 1));
+
+        // The worst sample is coincident with an existing vertex, so it
+        // can't be inserted.  (x, y, z) in sample and height field space.
+        final ArrayList<Integer> samples = new ArrayList<Integer>();
+        samples.addAll(Arrays.asList(5, 100, 5));
+        samples.addAll(Arrays.asList(3, 50, 7));
+        final ArrayList<Integer> triangles = new ArrayList<Integer>();
+        final int resultCount = new DetailMeshBuilder(1, 0.1f, true, null)
+            .refineBySamples(samples, 0.1f, triangulator, verts, vertCount
+                    , triangles);
+
+        // Only the other sample was added, and it is in use.
+        assertTrue(resultCount == vertCount + 1);
+        assertEquals(3, verts[vertCount*3], 0);
+        assertEquals(7, verts[vertCount*3+2], 0);
+        for (int index : triangles)
+            assertTrue(index < resultCount);
+        assertTrue(triangles.contains(vertCount));
+    }
+
+    @Test
+    public void testIncrementalBuildCoversMesh()
+    {
+        final float[] vertices =
+            NavmeshGeneratorTests.createSpikedFloorVertices(20);
+        final int[] indices = NavmeshGeneratorTests.createFloorIndices(20);
+        final IntermediateData data = new IntermediateData();
+        NavmeshGeneratorTests.createGenerator(null)
+            .build(vertices, indices, data);
+
+        final TriangleMesh standard = new DetailMeshBuilder(1, 0.1f)
+            .build(data.polyMesh(), data.openHeightfield());
+        final TriangleMesh incremental =
+            new DetailMeshBuilder(1, 0.1f, true, null)
+                .build(data.polyMesh(), data.openHeightfield());
+        final TriangleMesh fine =
+            new DetailMeshBuilder(0.3f, 0.01f, true, null)
+                .build(data.polyMesh(), data.openHeightfield());
+
+        final float standardArea = getArea(standard);
+        assertTrue(standardArea > 0);
+        assertEquals(standardArea, getArea(incremental), TOLERANCE);
+        assertEquals(standardArea, getArea(fine), TOLERANCE);
+        assertTrue(fine.vertCount() > standard.vertCount());
+
+        // Greedy insertion never needs more triangles than the standard
+        // refinement, and leaves no sample beyond the maximum deviation.
+        assertTrue(incremental.triangleCount() <= standard.triangleCount());
+        assertTrue(checkSamples(incremental, data, 1, 0.1f) > 0);
+        assertTrue(checkSamples(fine, data, 0.3f, 0.01f) > 0);
+    }
+
+    /*
+     * Validates that the interior samples of each polygon are within the
+     * maximum deviation of the detail mesh.  Only samples well away from
+     * the polygon edges are checked, since samples near the edges are
+     * skipped by the build.  Expects a field with a single span per
+     * column.
+     * Returns the number of samples checked.
+     */
+    private static int checkSamples(TriangleMesh mesh
+            , IntermediateData data
+            , float sampleDistance
+            , float maxDeviation)
+    {
+        final PolyMeshField polyMesh = data.polyMesh();
+        final OpenHeightfield field = data.openHeightfield();
+        final float[] minBounds = polyMesh.boundsMin();
+        final float cellSize = polyMesh.cellSize();
+        final float cellHeight = polyMesh.cellHeight();
+        final int maxVertsPerPoly = polyMesh.maxVertsPerPoly();
+        final float minEdgeDistanceSq = sampleDistance / 2 + TOLERANCE;
+        final float[] poly = new float[maxVertsPerPoly * 3];
+        int result = 0;
+        for (int iPoly = 0; iPoly < polyMesh.polyCount(); iPoly++)
+        {
+            int polyVertCount = 0;
+            float minX = Float.MAX_VALUE;
+            float minZ = Float.MAX_VALUE;
+            float maxX = -Float.MAX_VALUE;
+            float maxZ = -Float.MAX_VALUE;
+            final int pPoly = iPoly * maxVertsPerPoly * 2;
+            while (polyVertCount < maxVertsPerPoly
+                    && polyMesh.polys[pPoly + polyVertCount]
+                            != PolyMeshField.NULL_INDEX)
+            {
+                final int pVert = polyMesh.polys[pPoly + polyVertCount] * 3;
+                final float x = polyMesh.verts[pVert] * cellSize;
+                final float z = polyMesh.verts[pVert+2] * cellSize;
+                poly[polyVertCount*3] = x;
+                poly[polyVertCount*3+2] = z;
+                minX = Math.min(minX, x);
+                minZ = Math.min(minZ, z);
+                maxX = Math.max(maxX, x);
+                maxZ = Math.max(maxZ, z);
+                polyVertCount++;
+            }
+            for (int z = (int)Math.floor(minZ / sampleDistance)
+                    ; z < (int)Math.ceil(maxZ / sampleDistance)
+                    ; z++)
+            {
+                for (int x = (int)Math.floor(minX / sampleDistance)
+                        ; x < (int)Math.ceil(maxX / sampleDistance)
+                        ; x++)
+                {
+                    final float vx = x * sampleDistance;
+                    final float vz = z * sampleDistance;
+                    if (getInsideDistanceSq(vx, vz, poly, polyVertCount)
+                            < minEdgeDistanceSq)
+                        continue;
+                    final OpenHeightSpan span = field.getData(
+                            (int)Math.floor(vx / cellSize + 0.01f)
+                            , (int)Math.floor(vz / cellSize + 0.01f));
+                    assertTrue(span != null && span.next() == null);
+                    final float meshY = getMeshHeight(mesh
+                            , vx + minBounds[0]
+                            , vz + minBounds[2]);
+                    assertEquals(span.floor() * cellHeight + minBounds[1]
+                            , meshY
+                            , maxDeviation + TOLERANCE);
+                    result++;
+                }
+            }
+        }
+        return result;
+    }
+
+    /*
+     * The distance squared from the point to the closest edge of a convex
+     * polygon, or -1 if the point is outside the polygon.  The polygon is
+     * in the form (x, y, z) and wrapped clockwise.
+     */
+    private static float getInsideDistanceSq(float x
+            , float z
+            , float[] poly
+            , int vertCount)
+    {
+        float result = Float.MAX_VALUE;
+        for (int iVertB = 0, iVertA = vertCount - 1
+                ; iVertB < vertCount
+                ; iVertA = iVertB++)
+        {
+            final float ax = poly[iVertA*3];
+            final float az = poly[iVertA*3+2];
+            final float edgeX = poly[iVertB*3] - ax;
+            final float edgeZ = poly[iVertB*3+2] - az;
+            final float cross = edgeX * (z - az) - edgeZ * (x - ax);
+            if (cross > 0)
+                // Counter-clockwise of the edge.
+                return -1;
+            final float lengthSq = edgeX * edgeX + edgeZ * edgeZ;
+            result = Math.min(result, cross * cross / lengthSq);
+        }
+        return result;
+    }
+
+    /*
+     * The height of the mesh at the (x, z) location.
+     */
+    private static float getMeshHeight(TriangleMesh mesh, float x, float z)
+    {
+        for (int i = 0; i < mesh.triangleCount(); i++)
+        {
+            final float[] tri = mesh.getTriangleVerts(i);
+            final float abx = tri[3] - tri[0];
+            final float abz = tri[5] - tri[2];
+            final float acx = tri[6] - tri[0];
+            final float acz = tri[8] - tri[2];
+            final float denom = abx * acz - acx * abz;
+            final float u = ((x - tri[0]) * acz - acx * (z - tri[2])) / denom;
+            final float v = (abx * (z - tri[2]) - (x - tri[0]) * abz) / denom;
+            if (u >= -TOLERANCE && v >= -TOLERANCE && u + v <= 1 + TOLERANCE)
+                return tri[1] + (tri[4] - tri[1]) * u + (tri[7] - tri[1]) * v;
+        }
+        fail("Location is not covered by the mesh.");
+        return 0;
+    }
+
+    /*
+     * Validates area, winding, and optionally the Delaunay property.
+     * Recovered hull edges are constraints, so the Delaunay property only
+     * holds for hulls with collinear edges.
+     */
+    private static void checkTriangulation(float[] verts
+            , int vertCount
+            , ArrayList<Integer> triangles
+            , double expectedArea
+            , boolean isDelaunay)
+    {
+        double totalArea = 0;
+        for (int pTri = 0; pTri < triangles.size(); pTri += 3)
+        {
+            final int a = triangles.get(pTri);
+            final int b = triangles.get(pTri+1);
+            final int c = triangles.get(pTri+2);
+            final double areaX2 = getSignedAreaX2(verts, a, b, c);
+            // Wrapped clockwise.
+            assertTrue(areaX2 < 0);
+            totalArea -= areaX2 / 2;
+            if (!isDelaunay)
+                continue;
+
+            // Circumcircle of the counter-clockwise form.
+            final double bx = verts[b*3] - verts[a*3];
+            final double bz = verts[b*3+2] - verts[a*3+2];
+            final double cx = verts[c*3] - verts[a*3];
+            final double cz = verts[c*3+2] - verts[a*3+2];
+            final double d = 2 * (bx * cz - bz * cx);
+            final double centerX = (cz * (bx*bx + bz*bz)
+                    - bz * (cx*cx + cz*cz)) / d;
+            final double centerZ = (bx * (cx*cx + cz*cz)
+                    - cx * (bx*bx + bz*bz)) / d;
+            final double radiusSq = centerX * centerX + centerZ * centerZ;
+            for (int iVert = 0; iVert < vertCount; iVert++)
+            {
+                final double deltaX = verts[iVert*3] - verts[a*3] - centerX;
+                final double deltaZ = verts[iVert*3+2] - verts[a*3+2] - centerZ;
+                assertTrue(deltaX * deltaX + deltaZ * deltaZ
+                        > radiusSq - TOLERANCE);
+            }
+        }
+        assertEquals(expectedArea, totalArea, TOLERANCE);
+    }
+
+    /*
+     * A 10x10 square with edges sampled into unit segments followed by
+     * random interior vertices.  The hull is wrapped clockwise.
+     */
+    private static int createSquare(float[] verts, int[] hull, int interior)
+    {
+        int vertCount = 0;
+        for (int x = 0; x < 10; x++)
+            vertCount = addVert(verts, vertCount, x, 0);
+        for (int z = 0; z < 10; z++)
+            vertCount = addVert(verts, vertCount, 10, z);
+        for (int x = 10; x > 0; x--)
+            vertCount = addVert(verts, vertCount, x, 10);
+        for (int z = 10; z > 0; z--)
+            vertCount = addVert(verts, vertCount, 0, z);
+        // Clockwise as seen from above is the reverse of the above.
+        for (int i = 0; i < vertCount; i++)
+            hull[i] = vertCount - 1 - i;
+
+        final Random random = new Random(42);
+        for (int i = 0; i < interior; i++)
+            vertCount = addVert(verts, vertCount
+                    , 0.5f + random.nextFloat() * 9
+                    , 0.5f + random.nextFloat() * 9);
+        return vertCount;
+    }
+
+    private static int addVert(float[] verts, int vertCount, float x, float z)
+    {
+        verts[vertCount*3] = x;
+        verts[vertCount*3+1] = 0;
+        verts[vertCount*3+2] = z;
+        return vertCount + 1;
+    }
+
+    private static float getArea(TriangleMesh mesh)
+    {
+        float result = 0;
+        for (int i = 0; i < mesh.triangleCount(); i++)
+        {
+            final float[] tri = mesh.getTriangleVerts(i);
+            result += Math.abs((tri[3] - tri[0]) * (tri[8] - tri[2])
+                    - (tri[6] - tri[0]) * (tri[5] - tri[2])) / 2;
+        }
+        return result;
+    }
+
+    private static double getSignedAreaX2(float[] verts, int a, int b, int c)
+    {
+        return (verts[b*3] - verts[a*3]) * (verts[c*3+2] - verts[a*3+2])
+                - (verts[c*3] - verts[a*3]) * (verts[b*3+2] - verts[a*3+2]);
+    }
+
+}
@@ -3,6 +3,8 @@ package org.critterai.nmgen;
 import static org.junit.Assert.*;
 import static org.critterai.nmgen.OpenHeightFieldUtil.*;
 
+import java.util.concurrent.ForkJoinPool;
+
 import org.critterai.nmgen.OpenHeightfield.OpenHeightFieldIterator;
 import org.junit.Test;
 
@@ -387,6 +389,37 @@ public class EncompassedNullRegionTests
         assertTrue(isSameRegionLayout(field, control));
     }
     
+    /**
+     * Checks that a parallel border search gives the same result as a
+     * serial search.
+     */
+    @Test
+    public void testParallelMatchesSerial()
+    {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            for (int i = 0; i < 2; i++)
+            {
+                final boolean useOnlyNullSpans = (i == 0);
+                final OpenHeightfield serial = getLargeField();
+                final OpenHeightfield parallel = getLargeField();
+                
+                new CleanNullRegionBorders(useOnlyNullSpans).apply(serial);
+                new CleanNullRegionBorders(useOnlyNullSpans, pool)
+                    .apply(parallel);
+                
+                // Encompassed null regions were found.
+                assertTrue(serial.regionCount() > 4);
+                assertTrue(isSameRegionLayout(serial, parallel));
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+    
     /**
      * A null region fully encompassed by a single region. (RegionID = 1)
      */
@@ -486,6 +519,39 @@ public class EncompassedNullRegionTests
         return field;
     }
     
+    /**
+     * A large single level patch split into three regions.  Each region
+     * contains a grid of small null region patches.  All linked.
+     */
+    private static OpenHeightfield getLargeField()
+    {
+        final float[] gridBoundsMin = { 0, 0, 0 };
+        final float[] gridBoundsMax = { 120, 10, 120 };
+        
+        final OpenHeightfield field = new OpenHeightfield(gridBoundsMin
+                , gridBoundsMax
+                , 1
+                , 1);
+        
+        for (int w = 0; w < 120; w++)
+        {
+            for (int d = 0; d < 120; d++)
+            {
+                final OpenHeightSpan span = new OpenHeightSpan(1, 1);
+                if (w % 10 / 2 == 2 && d % 10 / 2 == 2)
+                    span.setRegionID(NULL_REGION);
+                else
+                    span.setRegionID(1 + w / 40);
+                field.addData(w, d, span);
+            }
+        }
+        linkAllBaseSpans(field);
+        
+        field.setRegionCount(4);
+        
+        return field;
+    }
+    
     /**
      * Changes all {@link OpenHeightSpan#NULL_REGION} spans
      * to "1" and all spans in region "1" to {@link OpenHeightSpan#NULL_REGION}.
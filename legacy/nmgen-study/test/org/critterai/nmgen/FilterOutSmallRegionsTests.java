@@ -0,0 +1,119 @@
+package org.critterai.nmgen;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests related to the FilterOutSmallRegions class.
+ */
+public class FilterOutSmallRegionsTests
+{
+
+    private static final int NULL_REGION = OpenHeightSpan.NULL_REGION;
+
+    /*
+     * A single level patch.  All base spans are linked.
+     *
+     *              W
+     *        0 1 2 3 4 5 6 7
+     *        ---------------
+     *    3 | 1 1 1 1 x 4 4 x
+     *  D 2 | 1 1 1 1 x x x x    x - no span
+     *    1 | 1 1 2 3 3 3 3 3
+     *    0 | 1 1 2 3 3 3 3 3
+     */
+    private static final int[][] LAYOUT = {
+        { 1, 1, 2, 3, 3, 3, 3, 3 }
+        , { 1, 1, 2, 3, 3, 3, 3, 3 }
+        , { 1, 1, 1, 1, 0, 0, 0, 0 }
+        , { 1, 1, 1, 1, 0, 4, 4, 0 } };
+
+    private OpenHeightfield mField;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        mField = new OpenHeightfield(new float[] { 0, 0, 0 }
+                , new float[] { 10, 10, 10 }
+                , 1
+                , 1);
+        for (int d = 0; d < LAYOUT.length; d++)
+        {
+            for (int w = 0; w < LAYOUT[d].length; w++)
+            {
+                if (LAYOUT[d][w] == NULL_REGION)
+                    continue;
+                final OpenHeightSpan span = new OpenHeightSpan(w, d + 1);
+                span.setRegionID(LAYOUT[d][w]);
+                mField.addData(w, d, span);
+            }
+        }
+        OpenHeightFieldUtil.linkAllBaseSpans(mField);
+        mField.setRegionCount(5);
+    }
+
+    @Test
+    public void testFilter()
+    {
+        new FilterOutSmallRegions(3, 5).apply(mField);
+
+        // The island is removed.  Region 2 is merged into its smallest
+        // neighbor.  The remaining regions are renumbered.
+        assertTrue(mField.regionCount() == 3);
+        assertTrue(mField.getData(5, 3).regionID() == NULL_REGION);
+        assertTrue(mField.getData(6, 3).regionID() == NULL_REGION);
+        checkRegions(1, 2, 2);
+    }
+
+    @Test
+    public void testOverlappingRegionNotMerged()
+    {
+        // Region 3 spans above region 2.  So region 2 must be merged
+        // into region 1 instead.
+        for (int d = 0; d < 2; d++)
+        {
+            final OpenHeightSpan span = new OpenHeightSpan(10, 1);
+            span.setRegionID(3);
+            mField.getData(2, d).setNext(span);
+        }
+
+        new FilterOutSmallRegions(3, 5).apply(mField);
+
+        assertTrue(mField.regionCount() == 3);
+        checkRegions(1, 1, 2);
+        assertTrue(mField.getData(2, 0).next().regionID() == 2);
+        assertTrue(mField.getData(2, 1).next().regionID() == 2);
+    }
+
+    @Test
+    public void testNoFilter()
+    {
+        new FilterOutSmallRegions(1, 0).apply(mField);
+
+        assertTrue(mField.regionCount() == 5);
+        assertTrue(mField.getData(5, 3).regionID() == 4);
+        checkRegions(1, 2, 3);
+    }
+
+    private void checkRegions(int expectedA, int expectedB, int expectedC)
+    {
+        for (int d = 0; d < LAYOUT.length; d++)
+        {
+            for (int w = 0; w < LAYOUT[d].length; w++)
+            {
+                final int expected;
+                switch (LAYOUT[d][w])
+                {
+                case 1: expected = expectedA; break;
+                case 2: expected = expectedB; break;
+                case 3: expected = expectedC; break;
+                default: continue;
+                }
+                assertTrue(mField.getData(w, d).regionID() == expected);
+            }
+        }
+    }
+
+}
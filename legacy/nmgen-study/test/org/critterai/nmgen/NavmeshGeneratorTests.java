@@ -0,0 +1,759 @@
+package org.critterai.nmgen;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests related to the NavmeshGenerator class.
+ */
+public class NavmeshGeneratorTests
+{
+
+    private static final int GRID_SIZE = 30;
+    private static final float TILE_SIZE = 10;
+    private static final float TOLERANCE = 0.001f;
+
+    private float[] mVertices;
+    private int[] mIndices;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        mVertices = createFloorVertices(GRID_SIZE);
+        mIndices = createFloorIndices(GRID_SIZE);
+    }
+
+    @Test
+    public void testParallelBuildMatchesSerial()
+    {
+        // A large floor with spikes so that many polygons are generated.
+        final float[] vertices = createSpikedFloorVertices(GRID_SIZE * 2);
+        final int[] indices = createFloorIndices(GRID_SIZE * 2);
+
+        final IntermediateData data = new IntermediateData();
+        final TriangleMesh serial =
+            createGenerator(null).build(vertices, indices, data);
+        assertTrue(data.polyMesh().polyCount() > 64);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            final TriangleMesh parallel =
+                createGenerator(pool).build(vertices, indices, null);
+            assertArrayEquals(serial.indices, parallel.indices);
+            assertArrayEquals(serial.triangleRegions
+                    , parallel.triangleRegions);
+            assertArrayEquals(serial.vertices, parallel.vertices, 0);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testRepeatedBuilds()
+    {
+        // Later builds re-use the buffers of earlier builds, which may be
+        // too small.
+        final float[] vertices = createSpikedFloorVertices(GRID_SIZE * 2);
+        final int[] indices = createFloorIndices(GRID_SIZE * 2);
+        final TriangleMesh expectedSmall =
+            createGenerator(null).build(mVertices, mIndices, null);
+        final TriangleMesh expectedLarge =
+            createGenerator(null).build(vertices, indices, null);
+        
+        final NavmeshGenerator generator = createGenerator(null);
+        for (int i = 0; i < 2; i++)
+        {
+            TriangleMesh mesh = generator.build(mVertices, mIndices, null);
+            assertArrayEquals(expectedSmall.indices, mesh.indices);
+            assertArrayEquals(expectedSmall.vertices, mesh.vertices, 0);
+            mesh = generator.build(vertices, indices, null);
+            assertArrayEquals(expectedLarge.indices, mesh.indices);
+            assertArrayEquals(expectedLarge.vertices, mesh.vertices, 0);
+        }
+    }
+
+    @Test
+    public void testMonotoneRegions()
+    {
+        final NavmeshGenerator generator = new NavmeshGenerator(0.3f, 0.1f
+                , 1.5f, 0.3f, 48, true, 0.5f, 2, true, 20, 40, 12, 1.3f, 6
+                , 6, 1, true, null);
+        final IntermediateData data = new IntermediateData();
+        final TriangleMesh mesh = generator.build(mVertices, mIndices, data);
+        assertTrue(mesh != null);
+        assertTrue(mesh.triangleCount() > 0);
+        assertTrue(data.openHeightfield().regionCount() > 1);
+        
+        // The distance field is never generated.
+        final IntermediateData watershed = new IntermediateData();
+        createGenerator(null).build(mVertices, mIndices, watershed);
+        assertTrue(data.openHeightfield().maxBorderDistance() == 0);
+        assertTrue(watershed.openHeightfield().maxBorderDistance() > 0);
+    }
+    
+    @Test
+    public void testExactDistanceFieldAndIncrementalDetail()
+    {
+        final float[] vertices = createSpikedFloorVertices(GRID_SIZE);
+        final int[] indices = createFloorIndices(GRID_SIZE);
+        final NavmeshGenerator generator = new NavmeshGenerator(0.3f, 0.1f
+                , 1.5f, 0.3f, 48, true, 0.5f, 0, true, 20, 40, 12, 1.3f, 6
+                , 0.6f, 0.05f, true, false, true, null);
+        final IntermediateData data = new IntermediateData();
+        final TriangleMesh mesh = generator.build(vertices, indices, data);
+        assertTrue(mesh != null);
+        assertTrue(mesh.triangleCount() > 0);
+        assertTrue(data.openHeightfield().regionCount() > 1);
+        
+        // The options are passed on to the builders.
+        final TriangleMesh expected = new DetailMeshBuilder(0.6f, 0.05f
+                , true, null).build(data.polyMesh(), data.openHeightfield());
+        assertArrayEquals(expected.vertices, mesh.vertices, 0);
+        assertFalse(Arrays.equals(new DetailMeshBuilder(0.6f, 0.05f)
+                .build(data.polyMesh(), data.openHeightfield()).indices
+                , mesh.indices));
+        final IntermediateData standard = new IntermediateData();
+        new NavmeshGenerator(0.3f, 0.1f, 1.5f, 0.3f, 48, true, 0.5f, 0, true
+                , 20, 40, 12, 1.3f, 6, 0.6f, 0.05f, null)
+            .build(vertices, indices, standard);
+        assertTrue(data.openHeightfield().maxBorderDistance()
+                != standard.openHeightfield().maxBorderDistance());
+    }
+
+    @Test
+    public void testTilesStayWithinBounds()
+    {
+        final NavmeshTile[] tiles = createGenerator(null)
+            .buildTiles(mVertices, mIndices, TILE_SIZE);
+        assertTrue(tiles.length == 9);
+
+        boolean hasSeamVertex = false;
+        for (NavmeshTile tile : tiles)
+        {
+            assertTrue(tile.polyMesh().polyCount() > 0);
+            final TriangleMesh mesh = tile.triangleMesh();
+            assertTrue(mesh.triangleCount() > 0);
+            for (int pVert = 0; pVert < mesh.vertices.length; pVert += 3)
+            {
+                final float x = mesh.vertices[pVert];
+                final float z = mesh.vertices[pVert + 2];
+                assertTrue(x >= tile.boundsMin()[0] - TOLERANCE);
+                assertTrue(x <= tile.boundsMax()[0] + TOLERANCE);
+                assertTrue(z >= tile.boundsMin()[2] - TOLERANCE);
+                assertTrue(z <= tile.boundsMax()[2] + TOLERANCE);
+                if (tile.tileX() > 0
+                        && Math.abs(x - tile.boundsMin()[0]) < TOLERANCE)
+                    hasSeamVertex = true;
+            }
+        }
+        // The mesh reaches the tile boundaries shared with other tiles.
+        assertTrue(hasSeamVertex);
+    }
+
+    @Test
+    public void testTileSeamsMatch()
+    {
+        // The floor does not divide evenly into tiles of this size, so the
+        // contours on each side of a seam are simplified differently.
+        final TiledNavmesh navmesh = createGenerator(null)
+            .buildTiledNavmesh(mVertices, mIndices, 13);
+        int seamCount = 0;
+        for (int tileZ = 0; tileZ < navmesh.tileCountZ(); tileZ++)
+        {
+            for (int tileX = 0; tileX < navmesh.tileCountX(); tileX++)
+            {
+                final NavmeshTile tile = navmesh.getTile(tileX, tileZ);
+                final NavmeshTile right = navmesh.getTile(tileX + 1, tileZ);
+                final NavmeshTile below = navmesh.getTile(tileX, tileZ + 1);
+                // Both tiles have the same vertices on their shared
+                // boundary.  (No T-junctions.)
+                if (right != null)
+                {
+                    final float seam = tile.boundsMax()[0];
+                    final TreeSet<String> seamVerts =
+                        getSeamVerts(navmesh, tile, 0, seam);
+                    assertFalse(seamVerts.isEmpty());
+                    assertEquals(seamVerts
+                            , getSeamVerts(navmesh, right, 0, seam));
+                    seamCount++;
+                }
+                if (below != null)
+                {
+                    final float seam = tile.boundsMax()[2];
+                    final TreeSet<String> seamVerts =
+                        getSeamVerts(navmesh, tile, 2, seam);
+                    assertFalse(seamVerts.isEmpty());
+                    assertEquals(seamVerts
+                            , getSeamVerts(navmesh, below, 2, seam));
+                    seamCount++;
+                }
+            }
+        }
+        assertTrue(seamCount == 12);
+    }
+
+    @Test
+    public void testParallelTilesMatchSerial()
+    {
+        final NavmeshTile[] serial = createGenerator(null)
+            .buildTiles(mVertices, mIndices, TILE_SIZE);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            final NavmeshTile[] parallel = createGenerator(pool)
+                .buildTiles(mVertices, mIndices, TILE_SIZE);
+            assertTrue(parallel.length == serial.length);
+            for (int i = 0; i < serial.length; i++)
+            {
+                assertTrue(parallel[i].tileX() == serial[i].tileX());
+                assertTrue(parallel[i].tileZ() == serial[i].tileZ());
+                final TriangleMesh expected = serial[i].triangleMesh();
+                final TriangleMesh actual = parallel[i].triangleMesh();
+                assertArrayEquals(expected.indices, actual.indices);
+                assertArrayEquals(expected.vertices, actual.vertices, 0);
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testIncrementalRebuild()
+    {
+        final NavmeshGenerator generator = createGenerator(null);
+        final TiledNavmesh navmesh =
+            generator.buildTiledNavmesh(mVertices, mIndices, TILE_SIZE);
+        assertTrue(navmesh.tileCountX() == 3);
+        assertTrue(navmesh.tileCountZ() == 3);
+        assertTrue(navmesh.getTile(1, 1).polyMesh() != null);
+
+        // Nothing changed.
+        assertTrue(generator.rebuildTiles(navmesh, mVertices, mIndices) == 0);
+
+        // Lower a vertex near the corner of the grid.  (Staying within the
+        // original bounds.)
+        final NavmeshTile farTile = navmesh.getTile(2, 2);
+        final NavmeshTile nearTile = navmesh.getTile(0, 0);
+        final float[] vertices = mVertices.clone();
+        vertices[(3 * (GRID_SIZE + 1) + 3) * 3 + 1] = -0.25f;
+        final float[] changedMin = { 2, -1, 2 };
+        final float[] changedMax = { 4, 1, 4 };
+        final int rebuilt = generator.rebuildTiles(navmesh
+                , vertices, mIndices, changedMin, changedMax);
+        assertTrue(rebuilt > 0 && rebuilt < 9);
+        assertTrue(navmesh.getTile(2, 2) == farTile);
+        assertTrue(navmesh.getTile(0, 0) != nearTile);
+
+        // The rebuilt tile matches a full build of the changed geometry.
+        final TiledNavmesh expected =
+            generator.buildTiledNavmesh(vertices, mIndices, TILE_SIZE);
+        assertArrayEquals(expected.getTile(0, 0).triangleMesh().vertices
+                , navmesh.getTile(0, 0).triangleMesh().vertices, 0);
+
+        // The full check finds nothing left to do.
+        assertTrue(generator.rebuildTiles(navmesh, vertices, mIndices) == 0);
+    }
+
+    @Test
+    public void testRebuildRejectsGeometryOutsideBounds()
+    {
+        final NavmeshGenerator generator = createGenerator(null);
+        final TiledNavmesh navmesh =
+            generator.buildTiledNavmesh(mVertices, mIndices, TILE_SIZE);
+        final NavmeshTile tile = navmesh.getTile(0, 0);
+
+        // Raise a prop above the top of the original geometry.
+        final int pVert = (3 * (GRID_SIZE + 1) + 3) * 3;
+        float[] vertices = mVertices.clone();
+        vertices[pVert+1] = navmesh.boundsMax()[1] + 2;
+        final float[] changedMin = { 2, -1, 2 };
+        final float[] changedMax = { 4, 3, 4 };
+        assertTrue(generator.rebuildTiles(navmesh
+                , vertices, mIndices, changedMin, changedMax) == -1);
+        assertTrue(generator.rebuildTiles(navmesh, vertices, mIndices) == -1);
+        assertTrue(navmesh.getTile(0, 0) == tile);
+
+        // Move a vertex outside of the tile grid.
+        vertices = mVertices.clone();
+        vertices[pVert] = -TILE_SIZE;
+        assertTrue(generator.rebuildTiles(navmesh, vertices, mIndices) == -1);
+        assertTrue(generator.rebuildTiles(navmesh, vertices, mIndices
+                , new float[] { -TILE_SIZE, 0, 2 }
+                , new float[] { 4, 0, 4 }) == -1);
+        assertTrue(navmesh.getTile(0, 0) == tile);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRebuildRequiresOwner()
+    {
+        final TiledNavmesh navmesh = createGenerator(null)
+            .buildTiledNavmesh(mVertices, mIndices, TILE_SIZE);
+        createGenerator(null).rebuildTiles(navmesh, mVertices, mIndices);
+    }
+
+    @Test
+    public void testMetricsListener()
+    {
+        final ArrayList<BuildStage> stages = new ArrayList<BuildStage>();
+        final ArrayList<String> names = new ArrayList<String>();
+        final EnumMap<BuildCounter, Long> counters =
+            new EnumMap<BuildCounter, Long>(BuildCounter.class);
+        final IBuildMetricsListener listener = new IBuildMetricsListener()
+        {
+            @Override
+            public void counterRecorded(BuildCounter counter, long value)
+            {
+                assertTrue(!counters.containsKey(counter));
+                counters.put(counter, value);
+            }
+            @Override
+            public void stageCompleted(BuildStage stage
+                    , String name
+                    , long elapsedTime
+                    , long allocatedBytes)
+            {
+                assertTrue(elapsedTime >= 0);
+                assertTrue(allocatedBytes >= 0
+                        || allocatedBytes == IntermediateData.UNDEFINED);
+                stages.add(stage);
+                if (name != null)
+                    names.add(name);
+            }
+        };
+        
+        // A floor with spikes so that there are multiple regions.
+        final float[] vertices = createSpikedFloorVertices(GRID_SIZE * 2, 8);
+        final int[] indices = createFloorIndices(GRID_SIZE * 2);
+        
+        final IntermediateData data = new IntermediateData();
+        final TriangleMesh mesh =
+            createGenerator(null).build(vertices, indices, data, listener);
+        
+        assertTrue(Arrays.equals(stages.toArray(), new BuildStage[] {
+                BuildStage.VOXELIZATION
+                , BuildStage.OPEN_FIELD
+                , BuildStage.NEIGHBOR_LINKS
+                , BuildStage.DISTANCE_FIELD
+                , BuildStage.DISTANCE_BLUR
+                , BuildStage.REGIONS
+                , BuildStage.REGION_ALGORITHM
+                , BuildStage.REGION_ALGORITHM
+                , BuildStage.CONTOURS
+                , BuildStage.POLY_MESH
+                , BuildStage.DETAIL_MESH }));
+        assertTrue(names.get(0).equals(CleanNullRegionBorders.class.getName()));
+        assertTrue(names.get(1).equals(FilterOutSmallRegions.class.getName()));
+        
+        // Every counter, other than the tile count, is reported and
+        // matches the intermediate data.
+        assertTrue(counters.size() == BuildCounter.values().length - 1);
+        assertTrue(!counters.containsKey(BuildCounter.TILES));
+        assertTrue(counters.get(BuildCounter.SOLID_SPANS)
+                == data.solidHeightfield().spanCount());
+        assertTrue(counters.get(BuildCounter.REGIONS)
+                == data.openHeightfield().regionCount() - 1);
+        assertTrue(counters.get(BuildCounter.REGIONS_CREATED)
+                >= counters.get(BuildCounter.REGIONS)
+                    + counters.get(BuildCounter.REGIONS_MERGED));
+        assertTrue(counters.get(BuildCounter.CONTOURS)
+                == data.contours().size());
+        assertTrue(counters.get(BuildCounter.POLYS)
+                == data.polyMesh().polyCount());
+        assertTrue(counters.get(BuildCounter.POLYS_BEFORE_MERGE)
+                > counters.get(BuildCounter.POLYS));
+        // Each polygon's vertices are added to the detail mesh along with
+        // its samples.
+        final PolyMeshField polyMesh = data.polyMesh();
+        int polyVertCount = 0;
+        for (int i = 0; i < polyMesh.polys.length; i++)
+        {
+            if (i % (polyMesh.maxVertsPerPoly() * 2)
+                        < polyMesh.maxVertsPerPoly()
+                    && polyMesh.polys[i] != PolyMeshField.NULL_INDEX)
+                polyVertCount++;
+        }
+        assertTrue(counters.get(BuildCounter.DETAIL_SAMPLES)
+                == mesh.vertCount() - polyVertCount);
+        assertTrue(counters.get(BuildCounter.DETAIL_TRIANGLES)
+                == mesh.triangleCount());
+        
+        // The listener has no impact on the result.
+        final TriangleMesh expected =
+            createGenerator(null).build(vertices, indices, null);
+        assertArrayEquals(expected.indices, mesh.indices);
+        assertArrayEquals(expected.vertices, mesh.vertices, 0);
+    }
+    
+    @Test
+    public void testTiledMetricsListener()
+    {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            final ArrayList<BuildStage> serialStages =
+                new ArrayList<BuildStage>();
+            final EnumMap<BuildCounter, Long> serialCounters =
+                new EnumMap<BuildCounter, Long>(BuildCounter.class);
+            final TiledNavmesh navmesh = createGenerator(null)
+                .buildTiledNavmesh(mVertices, mIndices, TILE_SIZE
+                        , createListener(serialStages, serialCounters));
+            
+            // The stages of all tiles are summed into a single report.
+            assertTrue(Arrays.equals(serialStages.toArray()
+                    , new BuildStage[] {
+                        BuildStage.VOXELIZATION
+                        , BuildStage.OPEN_FIELD
+                        , BuildStage.NEIGHBOR_LINKS
+                        , BuildStage.DISTANCE_FIELD
+                        , BuildStage.DISTANCE_BLUR
+                        , BuildStage.REGIONS
+                        , BuildStage.REGION_ALGORITHM
+                        , BuildStage.REGION_ALGORITHM
+                        , BuildStage.CONTOURS
+                        , BuildStage.POLY_MESH
+                        , BuildStage.DETAIL_MESH }));
+            assertTrue(serialCounters.get(BuildCounter.TILES)
+                    == navmesh.tileCountX() * navmesh.tileCountZ());
+            int polyCount = 0;
+            int triangleCount = 0;
+            for (NavmeshTile tile : navmesh.tiles())
+            {
+                polyCount += tile.polyMesh().polyCount();
+                triangleCount += tile.triangleMesh().triangleCount();
+            }
+            assertTrue(serialCounters.get(BuildCounter.POLYS) == polyCount);
+            assertTrue(serialCounters.get(BuildCounter.DETAIL_TRIANGLES)
+                    == triangleCount);
+            
+            // Parallel tiles are reported on the calling thread, with the
+            // same totals.
+            final ArrayList<BuildStage> parallelStages =
+                new ArrayList<BuildStage>();
+            final EnumMap<BuildCounter, Long> parallelCounters =
+                new EnumMap<BuildCounter, Long>(BuildCounter.class);
+            final NavmeshGenerator generator = createGenerator(pool);
+            final TiledNavmesh parallel = generator.buildTiledNavmesh(
+                    mVertices, mIndices, TILE_SIZE
+                    , createListener(parallelStages, parallelCounters));
+            assertTrue(parallelStages.equals(serialStages));
+            assertTrue(parallelCounters.equals(serialCounters));
+            
+            // Rebuilds only report the tiles they rebuild.
+            parallelStages.clear();
+            parallelCounters.clear();
+            assertTrue(generator.rebuildTiles(parallel, mVertices, mIndices
+                    , createListener(parallelStages, parallelCounters)) == 0);
+            assertTrue(parallelStages.isEmpty());
+            assertTrue(parallelCounters.size() == 1);
+            assertTrue(parallelCounters.get(BuildCounter.TILES) == 0);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+    
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testCaptureFlags()
+    {
+        final NavmeshGenerator generator = createGenerator(null);
+        final TriangleMesh expected =
+            generator.build(mVertices, mIndices, new IntermediateData());
+        
+        // Nothing captured.  Only the timings are available.
+        final IntermediateData data =
+            new IntermediateData(IntermediateData.CAPTURE_NONE);
+        TriangleMesh mesh = generator.build(mVertices, mIndices, data);
+        assertArrayEquals(expected.indices, mesh.indices);
+        assertArrayEquals(expected.vertices, mesh.vertices, 0);
+        assertTrue(data.solidHeightfield() == null);
+        assertTrue(data.openHeightfield() == null);
+        assertTrue(data.contours() == null);
+        assertTrue(data.polyMesh() == null);
+        assertTrue(data.getTotalGenTime() >= 0);
+        
+        // Only the selected results are captured.  The flags survive the
+        // reset performed by the build.
+        data.setCaptureFlags(IntermediateData.CAPTURE_SOLID_HEIGHTFIELD
+                | IntermediateData.CAPTURE_CONTOURS);
+        mesh = generator.build(mVertices, mIndices, data);
+        assertArrayEquals(expected.indices, mesh.indices);
+        assertTrue(data.solidHeightfield() != null);
+        assertTrue(data.openHeightfield() == null);
+        assertTrue(data.contours() != null);
+        assertTrue(data.polyMesh() == null);
+        assertTrue(data.isCaptured(IntermediateData.CAPTURE_CONTOURS));
+        assertTrue(!data.isCaptured(IntermediateData.CAPTURE_POLY_MESH));
+    }
+    
+    @Test
+    public void testFlightRecorderEvents() throws Exception
+    {
+        final IntermediateData data = new IntermediateData();
+        final File file = File.createTempFile("nmgen", ".jfr");
+        TriangleMesh mesh = null;
+        final Recording recording = new Recording();
+        try
+        {
+            for (String name : new String[] { "Voxelization", "OpenField"
+                    , "NeighborLinks", "DistanceField", "DistanceBlur"
+                    , "Regions", "RegionAlgorithm", "Contours"
+                    , "ContourAlgorithm", "PolyMesh", "DetailMesh" })
+                recording.enable("org.critterai.nmgen." + name)
+                    .withoutThreshold()
+                    .withoutStackTrace();
+            recording.start();
+            mesh = createGenerator(null).build(mVertices, mIndices, data);
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+        finally
+        {
+            recording.close();
+        }
+        
+        final HashMap<String, Integer> eventCounts =
+            new HashMap<String, Integer>();
+        try
+        {
+            for (RecordedEvent event : RecordingFile.readAllEvents(
+                    file.toPath()))
+            {
+                final String name = event.getEventType().getName();
+                eventCounts.put(name, eventCounts.containsKey(name) ?
+                        eventCounts.get(name) + 1 : 1);
+                if (name.endsWith(".Voxelization"))
+                    assertTrue(event.getInt("spans")
+                            == data.solidHeightfield().spanCount());
+                else if (name.endsWith(".Contours"))
+                    assertTrue(event.getInt("contours")
+                            == data.contours().size());
+                else if (name.endsWith(".PolyMesh"))
+                    assertTrue(event.getInt("polys")
+                            == data.polyMesh().polyCount());
+                else if (name.endsWith(".DetailMesh"))
+                    assertTrue(event.getInt("triangles")
+                            == mesh.triangleCount());
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+        
+        // One event per stage.  One event per region algorithm.  At least
+        // one event per contour algorithm.
+        assertTrue(eventCounts.size() == 11);
+        for (String name : eventCounts.keySet())
+        {
+            if (name.endsWith(".RegionAlgorithm"))
+                assertTrue(eventCounts.get(name) == 2);
+            else if (name.endsWith(".ContourAlgorithm"))
+                assertTrue(eventCounts.get(name) >= data.contours().size());
+            else
+                assertTrue(eventCounts.get(name) == 1);
+        }
+    }
+    
+    @Test
+    public void testTileFlightRecorderEvents() throws Exception
+    {
+        final File file = File.createTempFile("nmgen", ".jfr");
+        TiledNavmesh navmesh = null;
+        final Recording recording = new Recording();
+        try
+        {
+            recording.enable("org.critterai.nmgen.Tile")
+                .withoutThreshold()
+                .withoutStackTrace();
+            recording.start();
+            navmesh = createGenerator(null)
+                .buildTiledNavmesh(mVertices, mIndices, TILE_SIZE);
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+        finally
+        {
+            recording.close();
+        }
+        
+        // One event per tile.
+        int eventCount = 0;
+        try
+        {
+            for (RecordedEvent event : RecordingFile.readAllEvents(
+                    file.toPath()))
+            {
+                if (!event.getEventType().getName().endsWith(".Tile"))
+                    // Recording metadata.
+                    continue;
+                final NavmeshTile tile = navmesh.getTile(
+                        event.getInt("tileX"), event.getInt("tileZ"));
+                assertTrue(event.getInt("triangles") > 0);
+                assertTrue(event.getInt("polys")
+                        == tile.polyMesh().polyCount());
+                eventCount++;
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+        assertTrue(eventCount == navmesh.tileCountX() * navmesh.tileCountZ());
+    }
+
+    /*
+     * A listener which records the stages and counters it receives.  Each
+     * counter may only be received once.
+     */
+    private static IBuildMetricsListener createListener(
+            final ArrayList<BuildStage> outStages
+            , final EnumMap<BuildCounter, Long> outCounters)
+    {
+        return new IBuildMetricsListener()
+        {
+            @Override
+            public void counterRecorded(BuildCounter counter, long value)
+            {
+                assertTrue(!outCounters.containsKey(counter));
+                outCounters.put(counter, value);
+            }
+            @Override
+            public void stageCompleted(BuildStage stage
+                    , String name
+                    , long elapsedTime
+                    , long allocatedBytes)
+            {
+                assertTrue(elapsedTime >= 0);
+                assertTrue(allocatedBytes >= 0
+                        || allocatedBytes == IntermediateData.UNDEFINED);
+                outStages.add(stage);
+            }
+        };
+    }
+
+    /*
+     * The polygon mesh vertices of the tile which lie on a tile boundary,
+     * in the form "x:y:z".  The values are cell indices relative to the
+     * origin of the navigation mesh.
+     */
+    private static TreeSet<String> getSeamVerts(TiledNavmesh navmesh
+            , NavmeshTile tile
+            , int axis
+            , float seam)
+    {
+        final PolyMeshField mesh = tile.polyMesh();
+        final float[] origin = navmesh.boundsMin();
+        final int[] offset = new int[3];
+        for (int i = 0; i < 3; i += 2)
+            offset[i] = Math.round(
+                    (mesh.boundsMin()[i] - origin[i]) / mesh.cellSize());
+        offset[1] = Math.round(
+                (mesh.boundsMin()[1] - origin[1]) / mesh.cellHeight());
+        final int seamIndex =
+            Math.round((seam - origin[axis]) / mesh.cellSize());
+        final TreeSet<String> result = new TreeSet<String>();
+        for (int pVert = 0; pVert < mesh.verts.length; pVert += 3)
+        {
+            if (mesh.verts[pVert + axis] + offset[axis] != seamIndex)
+                continue;
+            result.add((mesh.verts[pVert] + offset[0])
+                    + ":" + (mesh.verts[pVert+1] + offset[1])
+                    + ":" + (mesh.verts[pVert+2] + offset[2]));
+        }
+        return result;
+    }
+
+    static NavmeshGenerator createGenerator(ForkJoinPool pool)
+    {
+        return new NavmeshGenerator(0.3f, 0.1f, 1.5f, 0.3f, 48, true
+                , 0.5f, 2, true, 20, 40, 12, 1.3f, 6, 6, 1, pool);
+    }
+
+    /*
+     * A gently rolling floor made of unit quads.
+     */
+    static float[] createFloorVertices(int gridSize)
+    {
+        final int vertsPerSide = gridSize + 1;
+        final float[] result = new float[vertsPerSide * vertsPerSide * 3];
+        int pVert = 0;
+        for (int z = 0; z < vertsPerSide; z++)
+        {
+            for (int x = 0; x < vertsPerSide; x++)
+            {
+                result[pVert++] = x;
+                result[pVert++] = (float)Math.sin(x * 0.2 + z * 0.1) * 0.3f;
+                result[pVert++] = z;
+            }
+        }
+        return result;
+    }
+
+    /*
+     * The floor created by createFloorVertices() with a spike at every
+     * fourth vertex along each axis, so that many regions and polygons
+     * are generated.
+     */
+    static float[] createSpikedFloorVertices(int gridSize)
+    {
+        return createSpikedFloorVertices(gridSize, 4);
+    }
+
+    /*
+     * The floor created by createFloorVertices() with a spike at every
+     * spacing vertices along each axis, starting half the spacing in.
+     */
+    static float[] createSpikedFloorVertices(int gridSize, int spacing)
+    {
+        final float[] result = createFloorVertices(gridSize);
+        for (int pVert = 0; pVert < result.length; pVert += 3)
+        {
+            if ((int)result[pVert] % spacing == spacing / 2
+                    && (int)result[pVert+2] % spacing == spacing / 2)
+                result[pVert+1] += 3;
+        }
+        return result;
+    }
+
+    static int[] createFloorIndices(int gridSize)
+    {
+        final int vertsPerSide = gridSize + 1;
+        final int[] result = new int[gridSize * gridSize * 6];
+        int pIndex = 0;
+        for (int z = 0; z < gridSize; z++)
+        {
+            for (int x = 0; x < gridSize; x++)
+            {
+                final int base = z * vertsPerSide + x;
+                result[pIndex++] = base;
+                result[pIndex++] = base + vertsPerSide;
+                result[pIndex++] = base + vertsPerSide + 1;
+                result[pIndex++] = base;
+                result[pIndex++] = base + vertsPerSide + 1;
+                result[pIndex++] = base + 1;
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,398 @@
+package org.critterai.nmgen;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests related to the OpenHeightfieldBuilder class.
+ */
+public class OpenHeightfieldBuilderTests
+{
+
+    // Large enough to be split across multiple tasks.
+    private static final int GRID_SIZE = 150;
+    
+    /*
+     * The watershed region IDs of the two level field built by
+     * createTwoLevelField(), recorded from the original implementation
+     * that scanned the entire field at each water level.
+     * 
+     * One entry per depth row, one character per width index.
+     * Value: The region ID in base 36, or '.' if the level has no span
+     * in the cell.
+     */
+    private static final int LEVEL_GRID_SIZE = 36;
+    
+    private static final String[] FLOOR_REGIONS = {
+        "000000000000000000000000000000000000"
+        , "000000000000000000000000000000000000"
+        , "000011111110000009900000000000000000"
+        , "000011111110000009900000000000000000"
+        , "000111111100000099990004400000000000"
+        , "001111111100000999999444444400000000"
+        , "001111111100000990004444444400000000"
+        , "001111111110009900000444444400000000"
+        , "001111111119999900000444444440000000"
+        , "000111111111000000000444400000500000"
+        , "000011111110000000004444000000555500"
+        , "000011111110000004444444000000555500"
+        , "000011111110000004444000000000555500"
+        , "000011111110000004440000000000555500"
+        , "000001111110000004000000000000555500"
+        , "000001111111000010000000000005555500"
+        , "000000011111111110000000ccccc5555500"
+        , "00000000111111111000000ccc0005555500"
+        , "00000000111111111100000cc00000550000"
+        , "000000001111111111100000000000500000"
+        , "000000011111000011112000000000500000"
+        , "000000000010000001222000000000500000"
+        , "000000000000000002222000000000660000"
+        , "000000000000000002222200000000666000"
+        , "000000000000000002222222000000666000"
+        , "000000d00020000002222222000000666000"
+        , "00000ddddd22000022222222200006666000"
+        , "00000dddd222222222222222266666666000"
+        , "000000d00022222222222222266666666000"
+        , "000000000002222222222222666666666000"
+        , "000000000002222222222200066666666000"
+        , "000000000002000022222000000006660000"
+        , "000000000000000002222000000000600000"
+        , "000000000000000002222000000000600000"
+        , "000000000000000000000000000000000000"
+        , "000000000000000000000000000000000000" };
+
+    private static final String[] UPPER_REGIONS = {
+        "......0000000..00000000000..00000000"
+        , "......0000000..00000000000..00000000"
+        , "......0088800..008800.0000..00000000"
+        , "......0088800000088000000000000000.0"
+        , "......0088000000888800000000000.0000"
+        , "......008800.0088888880000aa00000000"
+        , "......00880000088000880000aa00.00000"
+        , "......00888000880000080000aa0000.000"
+        , "......008888888800.0080000aaa0000000"
+        , "......008888000000000800000000b00000"
+        , "......008880000000008800000000bbbb00"
+        , "......0088800..00888880000..00bbbb00"
+        , "......0000000..00000000000..00000000"
+        , "......0000000..00000000000..00000000"
+        , "...................................."
+        , "...................................."
+        , "...................................."
+        , "...................................."
+        , "...................................."
+        , "...................................."
+        , "...................................."
+        , "...................................."
+        , "...................................."
+        , "...................................."
+        , "......0000000..00000000000..00000000"
+        , "......00000000000000000000000000000."
+        , "......003333000033333300000007777000"
+        , "......003333333333333300007777777000"
+        , "......00003333333333330000777777700."
+        , "......000003333333333300007777777000"
+        , "......00.003333333333300007777777000"
+        , "......000003000033333000000007770000"
+        , "......00000000000333300.000000700000"
+        , "......0000000..00333300000..00700.00"
+        , "......0000000..00000000000..00000000"
+        , "......0000000..00000000000..00000000" };
+
+    private SolidHeightfield mSolidField;
+    private ForkJoinPool mPool;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        // A flat floor with a scattering of pillars.
+        mSolidField = new SolidHeightfield(1, 1);
+        mSolidField.setBounds(0, 0, 0, GRID_SIZE, 1000, GRID_SIZE);
+        for (int d = 0; d < GRID_SIZE; d++)
+        {
+            for (int w = 0; w < GRID_SIZE; w++)
+            {
+                final boolean isPillar = (w % 17 < 3 && d % 23 < 4);
+                mSolidField.addData(w, d, 0, isPillar ? 40 : 2
+                        , SpanFlags.WALKABLE);
+            }
+        }
+        mPool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        mPool.shutdown();
+    }
+
+    @Test
+    public void testParallelBlurMatchesSerial()
+    {
+        final CompactOpenHeightfield serial = buildDistanceField(null);
+        final CompactOpenHeightfield parallel = buildDistanceField(mPool);
+
+        new OpenHeightfieldBuilder(4, 2, 1, 2, SpanFlags.WALKABLE
+                , false, null).blurDistanceField(serial);
+        new OpenHeightfieldBuilder(4, 2, 1, 2, SpanFlags.WALKABLE
+                , false, null, mPool).blurDistanceField(parallel);
+
+        assertTrue(serial.spanCount() > 10000);
+        assertTrue(serial.maxBorderDistance() == parallel.maxBorderDistance());
+        for (int span = 0; span < serial.spanCount(); span++)
+            assertTrue(serial.distanceToBorder(span)
+                    == parallel.distanceToBorder(span));
+    }
+
+    @Test
+    public void testBlurBufferReuse()
+    {
+        final OpenHeightfieldBuilder builder = new OpenHeightfieldBuilder(
+                4, 2, 1, 2, SpanFlags.WALKABLE, false, null);
+        final CompactOpenHeightfield field = buildDistanceField(null);
+        final int[] expected = new int[field.spanCount()];
+        for (int span = 0; span < field.spanCount(); span++)
+            expected[span] = field.distanceToBorder(span);
+
+        final int[] buffer = new int[field.spanCount()];
+        final int[] returned = builder.blurDistanceField(field, buffer);
+        assertTrue(returned != buffer);
+        for (int span = 0; span < field.spanCount(); span++)
+            assertTrue(returned[span] == expected[span]);
+
+        // Too small.  A new buffer will be created.
+        final int[] small = new int[1];
+        assertTrue(builder.blurDistanceField(field, small) != small);
+
+        // No smoothing.  The buffer is not used.
+        final OpenHeightfieldBuilder noBlur = new OpenHeightfieldBuilder(
+                4, 2, 1, 0, SpanFlags.WALKABLE, false, null);
+        assertTrue(noBlur.blurDistanceField(field, buffer) == buffer);
+    }
+
+    @Test
+    public void testExactDistanceField()
+    {
+        final CompactOpenHeightfield field = buildDistanceField(null, true);
+        
+        // Every grid cell holds a single span.  So the exact distance can
+        // be found by checking every border span.
+        final IntList borderSpans = new IntList(1024);
+        for (int span = 0; span < field.spanCount(); span++)
+        {
+            if (field.distanceToBorder(span) == 0)
+                borderSpans.add(span);
+        }
+        assertTrue(borderSpans.size() > 0);
+        assertTrue(borderSpans.size() < field.spanCount() / 2);
+        
+        for (int depthIndex = 0; depthIndex < field.depth(); depthIndex++)
+        {
+            for (int widthIndex = 0; widthIndex < field.width(); widthIndex++)
+            {
+                assertTrue(field.cellCount(widthIndex, depthIndex) == 1);
+                final int span = field.cellStart(widthIndex, depthIndex);
+                int minDistSq = Integer.MAX_VALUE;
+                for (int i = 0; i < borderSpans.size(); i++)
+                {
+                    final int bSpan = borderSpans.get(i);
+                    final int deltaWidth = widthIndex - bSpan % GRID_SIZE;
+                    final int deltaDepth = depthIndex - bSpan / GRID_SIZE;
+                    minDistSq = Math.min(minDistSq
+                            , deltaWidth * deltaWidth
+                                + deltaDepth * deltaDepth);
+                }
+                assertTrue(field.distanceToBorder(span)
+                        == (int)Math.round(2 * Math.sqrt(minDistSq)));
+            }
+        }
+    }
+    
+    @Test
+    public void testParallelExactDistanceFieldMatchesSerial()
+    {
+        final CompactOpenHeightfield serial = buildDistanceField(null, true);
+        final CompactOpenHeightfield parallel =
+            buildDistanceField(mPool, true);
+        
+        assertTrue(serial.maxBorderDistance() > 10);
+        assertTrue(serial.maxBorderDistance() == parallel.maxBorderDistance());
+        for (int span = 0; span < serial.spanCount(); span++)
+            assertTrue(serial.distanceToBorder(span)
+                    == parallel.distanceToBorder(span));
+    }
+
+    @Test
+    public void testMonotoneRegions()
+    {
+        final int NULL_SPAN = CompactOpenHeightfield.NULL_SPAN;
+        final OpenHeightfieldBuilder builder = new OpenHeightfieldBuilder(
+                4, 2, 1, 2, SpanFlags.WALKABLE, false, null, false, true
+                , null);
+        final CompactOpenHeightfield field =
+            builder.buildCompact(mSolidField, true);
+        assertTrue(field.regionCount() > 2);
+        
+        for (int span = 0; span < field.spanCount(); span++)
+        {
+            // Only the border spans are excluded from regions.
+            boolean isBorder = false;
+            for (int dir = 0; dir < 4; dir++)
+            {
+                final int nSpan = field.getNeighbor(span, dir);
+                if (nSpan == NULL_SPAN
+                        || field.getNeighbor(nSpan, dir == 3 ? 0 : dir + 1)
+                            == NULL_SPAN)
+                    isBorder = true;
+            }
+            final int region = field.regionID(span);
+            assertTrue(isBorder == (region == OpenHeightSpan.NULL_REGION));
+            assertTrue(region < field.regionCount());
+        }
+        
+        // Each region has at most one run of spans per row.
+        final int[] rowRuns = new int[field.regionCount()];
+        for (int depthIndex = 0; depthIndex < field.depth(); depthIndex++)
+        {
+            Arrays.fill(rowRuns, 0);
+            for (int widthIndex = 0; widthIndex < field.width(); widthIndex++)
+            {
+                final int span = field.cellStart(widthIndex, depthIndex);
+                final int region = field.regionID(span);
+                if (region == OpenHeightSpan.NULL_REGION)
+                    continue;
+                final int nSpan = field.getNeighbor(span, 0);
+                if (nSpan == NULL_SPAN || field.regionID(nSpan) != region)
+                    rowRuns[region]++;
+                assertTrue(rowRuns[region] <= 1);
+            }
+        }
+    }
+    
+    @Test
+    public void testParallelNeighborLinksMatchSerial()
+    {
+        // Add a second level with ramps down to the floor.
+        final SolidHeightfield solidField = new SolidHeightfield(1, 1);
+        solidField.setBounds(0, 0, 0, GRID_SIZE, 1000, GRID_SIZE);
+        for (int d = 0; d < GRID_SIZE; d++)
+        {
+            for (int w = 0; w < GRID_SIZE; w++)
+            {
+                solidField.addData(w, d, 0, 2, SpanFlags.WALKABLE);
+                if (d % 30 < 20)
+                    solidField.addData(w, d, 20, 22 + Math.max(0, w % 50 - 40)
+                            , SpanFlags.WALKABLE);
+            }
+        }
+        
+        final OpenHeightfieldBuilder serialBuilder = new OpenHeightfieldBuilder(
+                4, 2, 1, 0, SpanFlags.WALKABLE, false, null);
+        final OpenHeightfieldBuilder parallelBuilder =
+            new OpenHeightfieldBuilder(4, 2, 1, 0, SpanFlags.WALKABLE
+                    , false, null, mPool);
+        final CompactOpenHeightfield serial =
+            serialBuilder.buildCompact(solidField, false);
+        final CompactOpenHeightfield parallel =
+            parallelBuilder.buildCompact(solidField, false);
+        serialBuilder.generateNeighborLinks(serial);
+        parallelBuilder.generateNeighborLinks(parallel);
+        
+        assertTrue(serial.spanCount() > GRID_SIZE * GRID_SIZE);
+        int linkCount = 0;
+        for (int span = 0; span < serial.spanCount(); span++)
+        {
+            for (int dir = 0; dir < 4; dir++)
+            {
+                final int nSpan = serial.getNeighbor(span, dir);
+                assertTrue(nSpan == parallel.getNeighbor(span, dir));
+                if (nSpan != CompactOpenHeightfield.NULL_SPAN)
+                    linkCount++;
+            }
+        }
+        assertTrue(linkCount > 0);
+        assertTrue(linkCount < serial.spanCount() * 4);
+    }
+    
+    @Test
+    public void testWatershedRegionIDs()
+    {
+        final CompactOpenHeightfield field = new OpenHeightfieldBuilder(
+                4, 2, 1, 2, SpanFlags.WALKABLE, false, null)
+            .buildCompact(createTwoLevelField(), true);
+        
+        assertTrue(field.regionCount() == 14);
+        final String[][] levels = { FLOOR_REGIONS, UPPER_REGIONS };
+        for (int depthIndex = 0; depthIndex < field.depth(); depthIndex++)
+        {
+            for (int widthIndex = 0; widthIndex < field.width(); widthIndex++)
+            {
+                final int spanCount = field.cellCount(widthIndex, depthIndex);
+                assertTrue(spanCount <= levels.length);
+                for (int level = 0; level < levels.length; level++)
+                {
+                    final char expected =
+                        levels[level][depthIndex].charAt(widthIndex);
+                    if (level >= spanCount)
+                    {
+                        assertTrue(expected == '.');
+                        continue;
+                    }
+                    final int span =
+                        field.cellStart(widthIndex, depthIndex) + level;
+                    assertTrue(field.regionID(span)
+                            == Character.digit(expected, 36));
+                }
+            }
+        }
+    }
+    
+    /*
+     * A floor with pillars and scattered obstructions.  Part of the floor
+     * is covered by an upper level with ramps.
+     */
+    private static SolidHeightfield createTwoLevelField()
+    {
+        final SolidHeightfield result = new SolidHeightfield(1, 1);
+        result.setBounds(0, 0, 0, LEVEL_GRID_SIZE, 1000, LEVEL_GRID_SIZE);
+        for (int d = 0; d < LEVEL_GRID_SIZE; d++)
+        {
+            for (int w = 0; w < LEVEL_GRID_SIZE; w++)
+            {
+                final boolean isPillar = (w % 13 < 2 && d % 11 < 3)
+                    || (w * 7 + d * d * 3) % 53 == 0;
+                result.addData(w, d, 0, isPillar ? 40 : 2
+                        , SpanFlags.WALKABLE);
+                if (!isPillar && d % 24 < 14 && w > 5)
+                    result.addData(w, d, 20, 22 + Math.max(0, w % 24 - 16)
+                            , SpanFlags.WALKABLE);
+            }
+        }
+        return result;
+    }
+    
+    private CompactOpenHeightfield buildDistanceField(ForkJoinPool pool)
+    {
+        return buildDistanceField(pool, false);
+    }
+    
+    private CompactOpenHeightfield buildDistanceField(ForkJoinPool pool
+            , boolean useExactDistanceField)
+    {
+        final OpenHeightfieldBuilder builder = new OpenHeightfieldBuilder(
+                4, 2, 1, 0, SpanFlags.WALKABLE, false, null
+                , useExactDistanceField, pool);
+        final CompactOpenHeightfield result =
+            builder.buildCompact(mSolidField, false);
+        builder.generateNeighborLinks(result);
+        builder.generateDistanceField(result);
+        return result;
+    }
+
+}
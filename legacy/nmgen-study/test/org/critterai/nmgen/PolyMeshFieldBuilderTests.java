@@ -0,0 +1,265 @@
+package org.critterai.nmgen;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests related to the PolyMeshFieldBuilder class.
+ */
+public class PolyMeshFieldBuilderTests
+{
+
+    /*
+     * The polygons generated from the contours built by createContours(),
+     * recorded from the original implementation that searched all polygon
+     * pairs for the longest shared edge after each merge.
+     * 
+     * Entry format: "regionID x:z x:z ..."
+     * 
+     * The contours are symmetric, so many of the merge candidates have
+     * the same edge length.  The results depend on how ties are broken.
+     */
+    private static final String[] EXPECTED_QUADS = {
+        "1 42:15 39:11 35:8 44:20"
+        , "1 15:8 11:11 8:15 20:6"
+        , "1 8:35 11:39 15:42 6:30"
+        , "1 35:42 39:39 42:35 30:44"
+        , "1 30:6 25:5 20:6"
+        , "1 6:20 5:25 6:30"
+        , "1 20:44 25:45 30:44"
+        , "1 44:30 45:25 44:20"
+        , "1 35:8 30:6 20:6 44:20"
+        , "1 8:15 6:20 6:30 20:6"
+        , "1 15:42 20:44 30:44 6:30"
+        , "1 42:35 44:30 44:20 30:44"
+        , "1 44:20 20:6 6:30 30:44"
+        , "2 50:5 50:7 52:7 70:5"
+        , "2 52:7 52:9 54:9 70:5"
+        , "2 54:9 54:11 56:11 70:5"
+        , "2 56:11 56:13 58:13 70:5"
+        , "2 58:13 58:15 60:15 70:5"
+        , "2 60:15 60:17 62:17 70:5"
+        , "2 62:17 62:19 64:19 70:5"
+        , "2 64:19 64:21 66:21 70:5"
+        , "2 66:21 66:23 68:23 70:5"
+        , "2 68:23 68:25 70:25 70:5"
+        , "3 87:75 86:70 83:67 83:83"
+        , "3 83:67 80:64 75:63 67:67"
+        , "3 75:63 70:64 67:67"
+        , "3 67:67 64:70 63:75 67:83"
+        , "3 63:75 64:80 67:83"
+        , "3 67:83 70:86 75:87 83:83"
+        , "3 75:87 80:86 83:83"
+        , "3 83:83 86:80 87:75"
+        , "3 83:67 67:67 67:83 83:83" };
+
+    private static final String[] EXPECTED_HEXAGONS = {
+        "1 42:15 39:11 35:8 44:20"
+        , "1 15:8 11:11 8:15 20:6"
+        , "1 8:35 11:39 15:42"
+        , "1 35:42 39:39 42:35"
+        , "1 30:6 25:5 20:6 35:8"
+        , "1 6:20 5:25 6:30 8:15"
+        , "1 20:44 25:45 30:44 6:30 8:35 15:42"
+        , "1 44:30 45:25 44:20 30:44 35:42 42:35"
+        , "1 6:30 30:44 44:20 35:8 20:6 8:15"
+        , "2 50:5 50:7 52:7 70:5"
+        , "2 52:7 52:9 54:9 70:5"
+        , "2 54:9 54:11 56:11 70:5"
+        , "2 56:11 56:13 58:13 70:5"
+        , "2 58:13 58:15 60:15 70:5"
+        , "2 60:15 60:17 62:17 70:5"
+        , "2 62:17 62:19 64:19 70:5"
+        , "2 64:19 64:21 66:21 70:5"
+        , "2 66:21 66:23 68:23 70:5"
+        , "2 68:23 68:25 70:25 70:5"
+        , "3 87:75 86:70 83:67 83:83 86:80"
+        , "3 83:67 80:64 75:63"
+        , "3 75:63 70:64 67:67"
+        , "3 67:67 64:70 63:75"
+        , "3 63:75 64:80 67:83"
+        , "3 83:83 67:83 70:86 75:87 80:86"
+        , "3 67:83 83:83 83:67 75:63 67:67 63:75" };
+
+    @Test
+    public void testMergeMatchesFullSearch()
+    {
+        checkPolys(4, EXPECTED_QUADS);
+        checkPolys(6, EXPECTED_HEXAGONS);
+    }
+
+    @Test
+    public void testVertexWelding()
+    {
+        /*
+         * Two squares which share an edge.  The (x, y, z) hash of the
+         * vertices is linear, and (1039, -243, 1146) is in its null space.
+         * So the bottom-left corner (0, 243, 0) and the top-right corner
+         * (1039, 0, 1146) of the first square have the same hash, and
+         * always probe the same vertex table slot.
+         */
+        final ContourSet contours = new ContourSet(new float[] { 0, 0, 0 }
+                , new float[] { 2078, 300, 1146 }
+                , 1
+                , 1
+                , 1);
+        addContourXYZ(contours, 1, new int[] {
+                1039, 0, 1146
+                , 1039, 0, 0
+                , 0, 243, 0
+                , 0, 0, 1146 });
+        addContourXYZ(contours, 2, new int[] {
+                2078, 0, 1146
+                , 2078, 0, 0
+                , 1039, 0, 0
+                , 1039, 0, 1146 });
+
+        final PolyMeshField mesh =
+            new PolyMeshFieldBuilder(4).build(contours);
+        assertTrue(mesh != null);
+        assertTrue(mesh.polyCount() == 2);
+
+        // The colliding vertices are kept distinct, and the vertices
+        // shared by the contours are welded.
+        assertTrue(mesh.vertCount() == 6);
+        assertTrue(findVert(mesh, 0, 243, 0)
+                != findVert(mesh, 1039, 0, 1146));
+        int sharedCount = 0;
+        for (int offsetA = 0; offsetA < 4; offsetA++)
+        {
+            for (int offsetB = 0; offsetB < 4; offsetB++)
+            {
+                if (mesh.polys[offsetA] == mesh.polys[8 + offsetB])
+                    sharedCount++;
+            }
+        }
+        assertTrue(sharedCount == 2);
+
+        // The shared edge connects the polygons.
+        boolean isConnected = false;
+        for (int offset = 0; offset < 4; offset++)
+            isConnected |= (mesh.polys[4 + offset] == 1);
+        assertTrue(isConnected);
+    }
+
+    private static int findVert(PolyMeshField mesh, int x, int y, int z)
+    {
+        int result = PolyMeshField.NULL_INDEX;
+        for (int iVert = 0; iVert < mesh.vertCount(); iVert++)
+        {
+            if (mesh.verts[iVert*3] == x
+                    && mesh.verts[iVert*3+1] == y
+                    && mesh.verts[iVert*3+2] == z)
+            {
+                // Each location must only be stored once.
+                assertTrue(result == PolyMeshField.NULL_INDEX);
+                result = iVert;
+            }
+        }
+        assertTrue(result != PolyMeshField.NULL_INDEX);
+        return result;
+    }
+
+    private static void checkPolys(int maxVertsPerPoly, String[] expected)
+    {
+        final PolyMeshField mesh =
+            new PolyMeshFieldBuilder(maxVertsPerPoly).build(createContours());
+        assertTrue(mesh != null);
+        assertTrue(mesh.polyCount() == expected.length);
+        for (int iPoly = 0; iPoly < mesh.polyCount(); iPoly++)
+        {
+            final StringBuilder poly = new StringBuilder();
+            poly.append(mesh.getPolyRegion(iPoly));
+            final int pPoly = iPoly * maxVertsPerPoly * 2;
+            for (int offset = 0; offset < maxVertsPerPoly; offset++)
+            {
+                final int iVert = mesh.polys[pPoly + offset];
+                if (iVert == PolyMeshField.NULL_INDEX)
+                    break;
+                poly.append(' ').append(mesh.verts[iVert*3])
+                    .append(':').append(mesh.verts[iVert*3+2]);
+            }
+            assertTrue(poly.toString().equals(expected[iPoly]));
+        }
+    }
+
+    /*
+     * Two polygons approximating circles, and a staircase.
+     */
+    private static ContourSet createContours()
+    {
+        final ContourSet result = new ContourSet(new float[] { 0, 0, 0 }
+                , new float[] { 100, 10, 100 }
+                , 1
+                , 1
+                , 3);
+        addContour(result, 1, createCircle(25, 25, 20, 24));
+        final IntList staircase = new IntList(48);
+        for (int step = 0; step < 10; step++)
+        {
+            staircase.add(50 + step*2);
+            staircase.add(5 + step*2);
+            staircase.add(50 + step*2);
+            staircase.add(7 + step*2);
+        }
+        staircase.add(70);
+        staircase.add(25);
+        staircase.add(70);
+        staircase.add(5);
+        addContour(result, 2, staircase.toArray());
+        addContour(result, 3, createCircle(75, 75, 12, 16));
+        return result;
+    }
+
+    /*
+     * Vertices in the form (x, z), wrapped clockwise.
+     */
+    private static int[] createCircle(int centerX
+            , int centerZ
+            , int radius
+            , int vertCount)
+    {
+        final int[] result = new int[vertCount * 2];
+        for (int i = 0; i < vertCount; i++)
+        {
+            final double angle = -2 * Math.PI * i / vertCount;
+            result[i*2] = centerX + (int)Math.round(radius * Math.cos(angle));
+            result[i*2+1] =
+                centerZ + (int)Math.round(radius * Math.sin(angle));
+        }
+        return result;
+    }
+
+    /*
+     * Vertices in the form (x, y, z), wrapped clockwise.
+     */
+    private static void addContourXYZ(ContourSet set
+            , int regionID
+            , int[] xyz)
+    {
+        final IntList verts = new IntList(xyz.length / 3 * 4);
+        for (int i = 0; i < xyz.length; i += 3)
+        {
+            verts.add(xyz[i]);
+            verts.add(xyz[i+1]);
+            verts.add(xyz[i+2]);
+            verts.add(0);
+        }
+        set.add(new Contour(regionID, verts, verts));
+    }
+
+    private static void addContour(ContourSet set, int regionID, int[] xz)
+    {
+        final IntList verts = new IntList(xz.length * 2);
+        for (int i = 0; i < xz.length; i += 2)
+        {
+            verts.add(xz[i]);
+            verts.add(0);
+            verts.add(xz[i+1]);
+            verts.add(0);
+        }
+        set.add(new Contour(regionID, verts, verts));
+    }
+
+}
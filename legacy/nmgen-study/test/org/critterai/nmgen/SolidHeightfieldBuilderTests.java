@@ -0,0 +1,217 @@
+package org.critterai.nmgen;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests related to the SolidHeightfieldBuilder class.
+ */
+public class SolidHeightfieldBuilderTests
+{
+
+    private static final int GRID_SIZE = 12;
+
+    /**
+     * Provides a mesh in batches of a fixed number of triangles.  Each
+     * batch holds its own copy of the vertices it uses.
+     */
+    private static final class ChunkedSource
+        implements ITriangleBatchSource
+    {
+        private final float[] mVertices;
+        private final int[] mIndices;
+        private final int mBatchTriangles;
+        private int mNextTriangle = 0;
+        private float[] mBatchVertices;
+        private int[] mBatchIndices;
+
+        private ChunkedSource(float[] vertices
+                , int[] indices
+                , int batchTriangles)
+        {
+            mVertices = vertices;
+            mIndices = indices;
+            mBatchTriangles = batchTriangles;
+        }
+
+        @Override
+        public float[] batchVertices() { return mBatchVertices; }
+
+        @Override
+        public int[] batchIndices() { return mBatchIndices; }
+
+        @Override
+        public boolean nextBatch()
+        {
+            final int triangleCount = Math.min(mBatchTriangles
+                    , mIndices.length / 3 - mNextTriangle);
+            if (triangleCount <= 0)
+                return false;
+            mBatchVertices = new float[triangleCount * 9];
+            mBatchIndices = new int[triangleCount * 3];
+            for (int i = 0; i < triangleCount * 3; i++)
+            {
+                final int pVert = mIndices[mNextTriangle * 3 + i] * 3;
+                mBatchVertices[i * 3] = mVertices[pVert];
+                mBatchVertices[i * 3 + 1] = mVertices[pVert + 1];
+                mBatchVertices[i * 3 + 2] = mVertices[pVert + 2];
+                mBatchIndices[i] = i;
+            }
+            mNextTriangle += triangleCount;
+            return true;
+        }
+
+        @Override
+        public void reset()
+        {
+            mNextTriangle = 0;
+        }
+    }
+
+    private float[] mVertices;
+    private int[] mIndices;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        // A bumpy floor with a tilted plane above part of it.
+        final int vertsPerSide = GRID_SIZE + 1;
+        mVertices = new float[(vertsPerSide * vertsPerSide + 3) * 3];
+        int pVert = 0;
+        for (int z = 0; z < vertsPerSide; z++)
+        {
+            for (int x = 0; x < vertsPerSide; x++)
+            {
+                mVertices[pVert++] = x;
+                mVertices[pVert++] = (float)Math.sin(x * 0.7 + z * 0.3);
+                mVertices[pVert++] = z;
+            }
+        }
+        mVertices[pVert++] = 1;
+        mVertices[pVert++] = 3;
+        mVertices[pVert++] = 2;
+        mVertices[pVert++] = 9;
+        mVertices[pVert++] = 4;
+        mVertices[pVert++] = 5;
+        mVertices[pVert++] = 4;
+        mVertices[pVert++] = 6;
+        mVertices[pVert++] = 11;
+
+        mIndices = new int[(GRID_SIZE * GRID_SIZE * 2 + 1) * 3];
+        int pIndex = 0;
+        for (int z = 0; z < GRID_SIZE; z++)
+        {
+            for (int x = 0; x < GRID_SIZE; x++)
+            {
+                final int base = z * vertsPerSide + x;
+                mIndices[pIndex++] = base;
+                mIndices[pIndex++] = base + vertsPerSide;
+                mIndices[pIndex++] = base + vertsPerSide + 1;
+                mIndices[pIndex++] = base;
+                mIndices[pIndex++] = base + vertsPerSide + 1;
+                mIndices[pIndex++] = base + 1;
+            }
+        }
+        final int firstExtra = vertsPerSide * vertsPerSide;
+        mIndices[pIndex++] = firstExtra;
+        mIndices[pIndex++] = firstExtra + 2;
+        mIndices[pIndex++] = firstExtra + 1;
+    }
+
+    @Test
+    public void testParallelMatchesSerial()
+    {
+        final SolidHeightfield serial =
+            new SolidHeightfieldBuilder(0.3f, 0.1f, 10, 3, 48, true)
+                .build(mVertices, mIndices);
+        assertTrue(serial.hasSpans());
+
+        for (int parallelism = 2; parallelism <= 5; parallelism++)
+        {
+            final ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try
+            {
+                final SolidHeightfield parallel = new SolidHeightfieldBuilder(
+                        0.3f, 0.1f, 10, 3, 48, true, pool)
+                    .build(mVertices, mIndices);
+                checkSame(serial, parallel);
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testStreamedMatchesArrays()
+    {
+        final SolidHeightfieldBuilder builder =
+            new SolidHeightfieldBuilder(0.3f, 0.1f, 10, 3, 48, true);
+        final SolidHeightfield expected = builder.build(mVertices, mIndices);
+        assertTrue(expected.hasSpans());
+
+        final ForkJoinPool pool = new ForkJoinPool(3);
+        try
+        {
+            final SolidHeightfieldBuilder parallelBuilder =
+                new SolidHeightfieldBuilder(0.3f, 0.1f, 10, 3, 48, true, pool);
+            final ChunkedSource source =
+                new ChunkedSource(mVertices, mIndices, 37);
+            checkSame(expected, builder.build(source));
+            checkSame(expected, parallelBuilder.build(source));
+
+            // Caller provided bounds.
+            final SolidHeightfield bounded = builder.build(mVertices
+                    , mIndices
+                    , new float[] { 2, -1, 3 }
+                    , new float[] { 9, 5, 8 });
+            checkSame(bounded, builder.build(source
+                    , new float[] { 2, -1, 3 }
+                    , new float[] { 9, 5, 8 }));
+            checkSame(bounded, parallelBuilder.build(source
+                    , new float[] { 2, -1, 3 }
+                    , new float[] { 9, 5, 8 }));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        // No geometry.
+        assertTrue(builder.build(
+                new ChunkedSource(mVertices, new int[0], 37)) == null);
+    }
+
+    private static void checkSame(SolidHeightfield expected
+            , SolidHeightfield actual)
+    {
+        assertTrue(actual != null);
+        assertTrue(actual.spanCount() == expected.spanCount());
+        assertTrue(actual.width() == expected.width());
+        assertTrue(actual.depth() == expected.depth());
+        for (int d = 0; d < expected.depth(); d++)
+        {
+            for (int w = 0; w < expected.width(); w++)
+            {
+                HeightSpan expectedSpan = expected.getData(w, d);
+                HeightSpan actualSpan = actual.getData(w, d);
+                while (expectedSpan != null)
+                {
+                    assertTrue(actualSpan != null);
+                    assertTrue(actualSpan.min() == expectedSpan.min());
+                    assertTrue(actualSpan.max() == expectedSpan.max());
+                    assertTrue(actualSpan.flags() == expectedSpan.flags());
+                    expectedSpan = expectedSpan.next();
+                    actualSpan = actualSpan.next();
+                }
+                assertTrue(actualSpan == null);
+            }
+        }
+    }
+
+}
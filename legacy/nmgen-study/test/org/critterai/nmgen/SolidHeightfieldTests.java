@@ -0,0 +1,147 @@
+package org.critterai.nmgen;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests related to the SolidHeightfield class.
+ */
+public class SolidHeightfieldTests
+{
+
+    private SolidHeightfield mField;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        mField = new SolidHeightfield(1, 1);
+        mField.setBounds(0, 0, 0, 3, 1000, 3);
+    }
+
+    @Test
+    public void testAddSeparateSpans()
+    {
+        assertTrue(mField.addData(1, 2, 10, 12, 1));
+        assertTrue(mField.addData(1, 2, 2, 4, 2));
+        assertTrue(mField.addData(1, 2, 20, 22, 3));
+
+        HeightSpan span = mField.getData(1, 2);
+        assertTrue(span.min() == 2 && span.max() == 4 && span.flags() == 2);
+        span = span.next();
+        assertTrue(span.min() == 10 && span.max() == 12 && span.flags() == 1);
+        span = span.next();
+        assertTrue(span.min() == 20 && span.max() == 22 && span.flags() == 3);
+        assertTrue(span.next() == null);
+
+        assertTrue(mField.spanCount() == 3);
+        assertTrue(mField.getData(0, 0) == null);
+        assertTrue(mField.getData(-1, 0) == null);
+    }
+
+    @Test
+    public void testAddInvalidData()
+    {
+        assertFalse(mField.addData(3, 0, 1, 2, 0));
+        assertFalse(mField.addData(0, -1, 1, 2, 0));
+        assertFalse(mField.addData(0, 0, -1, 2, 0));
+        assertFalse(mField.addData(0, 0, 3, 2, 0));
+        assertFalse(mField.hasSpans());
+    }
+
+    @Test
+    public void testMergeFlags()
+    {
+        mField.addData(0, 0, 10, 12, 1);
+        // Same maximum.  Flags are merged.
+        mField.addData(0, 0, 8, 12, 2);
+        HeightSpan span = mField.getData(0, 0);
+        assertTrue(span.min() == 8 && span.max() == 12 && span.flags() == 3);
+        // Lower maximum.  New flags are discarded.
+        mField.addData(0, 0, 9, 11, 4);
+        assertTrue(span.flags() == 3);
+        // New maximum.  New flags replace old.
+        mField.addData(0, 0, 11, 14, 4);
+        assertTrue(span.max() == 14 && span.flags() == 4);
+        assertTrue(mField.spanCount() == 1);
+    }
+
+    @Test
+    public void testMergeEncompassed()
+    {
+        mField.addData(2, 1, 2, 4, 1);
+        mField.addData(2, 1, 8, 10, 2);
+        mField.addData(2, 1, 14, 16, 3);
+        mField.addData(2, 1, 20, 22, 4);
+        // Engulfs the middle spans and abuts the top span.
+        mField.addData(2, 1, 3, 19, 5);
+
+        HeightSpan span = mField.getData(2, 1);
+        assertTrue(span.min() == 2 && span.max() == 22 && span.flags() == 4);
+        assertTrue(span.next() == null);
+        assertTrue(mField.spanCount() == 1);
+
+        // Released spans are re-used.
+        mField.addData(2, 1, 30, 32, 6);
+        mField.addData(2, 1, 40, 42, 7);
+        assertTrue(mField.spanCount() == 3);
+        assertTrue(mField.getData(2, 1).next().next().min() == 40);
+    }
+
+    @Test
+    public void testArenaGrowth()
+    {
+        final int count = 1000;
+        for (int i = 0; i < count; i++)
+            mField.addData(i % 3, 1, (i / 3) * 3, (i / 3) * 3 + 1, i % 2);
+        assertTrue(mField.spanCount() == count);
+
+        int found = 0;
+        SolidHeightfield.SolidHeightFieldIterator iter = mField.dataIterator();
+        while (iter.hasNext())
+        {
+            HeightSpan span = iter.next();
+            assertTrue(iter.depthIndex() == 1);
+            assertTrue(span.min() % 3 == 0);
+            found++;
+        }
+        assertTrue(found == count);
+    }
+
+    @Test
+    public void testViewWritesThrough()
+    {
+        mField.addData(1, 1, 5, 7, 1);
+        mField.getData(1, 1).setFlags(0);
+        assertTrue(mField.getData(1, 1).flags() == 0);
+        final int span = mField.spanIndex(1, 1);
+        mField.setSpanFlags(span, 9);
+        assertTrue(mField.getData(1, 1).flags() == 9);
+        assertTrue(mField.nextSpan(span) == SolidHeightfield.NULL_SPAN);
+    }
+
+    @Test
+    public void testRowWindow()
+    {
+        mField.setRowWindow(1, 1);
+        assertFalse(mField.addData(0, 0, 1, 2, 0));
+        assertFalse(mField.addData(0, 2, 1, 2, 0));
+        assertTrue(mField.addData(2, 1, 1, 2, 5));
+        assertTrue(mField.spanIndex(2, 0) == SolidHeightfield.NULL_SPAN);
+        assertTrue(mField.getData(2, 1).flags() == 5);
+
+        SolidHeightfield.SolidHeightFieldIterator iter = mField.dataIterator();
+        assertTrue(iter.hasNext());
+        iter.next();
+        assertTrue(iter.widthIndex() == 2 && iter.depthIndex() == 1);
+        assertFalse(iter.hasNext());
+
+        final SolidHeightfield copy = new SolidHeightfield(1, 1);
+        copy.setBounds(0, 0, 0, 3, 1000, 3);
+        copy.copyColumns(mField, 1, 1);
+        assertTrue(copy.spanCount() == 1);
+        assertTrue(copy.getData(2, 1).flags() == 5);
+    }
+
+}
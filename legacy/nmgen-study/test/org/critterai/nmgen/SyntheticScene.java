@@ -0,0 +1,532 @@
+package org.critterai.nmgen;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Procedurally generated source geometry for benchmark and soak runs.
+ * <p>The scene is built from heightmap terrain with terraced cliffs,
+ * multi-storey buildings with stairs, dense prop clutter and rock
+ * overhangs.  Together they exercise stacked spans, overlapping regions
+ * and ledges.</p>
+ * <p>Generation is deterministic.  The same seed and triangle count always
+ * produce the same geometry.</p>
+ * <p>The size of the scene is derived from the triangle count.  The
+ * generated triangle count is within a few percent of the target for
+ * targets of 10,000 triangles or more.  Smaller targets may be overshot by
+ * up to one building.</p>
+ * <p>Units are meters, with a y-up coordinate system.  Triangles are
+ * wrapped clockwise.</p>
+ */
+final class SyntheticScene
+{
+
+    /*
+     * Design notes:
+     *
+     * The triangle budget is split between the scene features.  The
+     * terrain's share sets the size of the world.  The other features are
+     * added until their share of the budget is used.
+     *
+     * Buildings and overhangs reserve their footprints on a coarse
+     * occupancy grid so they don't intersect each other.  Props avoid
+     * buildings but are allowed under overhangs.
+     *
+     * java.util.Random is used for its guaranteed cross-platform
+     * sequence.
+     */
+
+    // Share of the triangle budget for each feature.
+    private static final float TERRAIN_SHARE = 0.4f;
+    private static final float BUILDING_SHARE = 0.3f;
+    private static final float PROP_SHARE = 0.2f;
+
+    // The size of a terrain quad.
+    private static final float QUAD_SIZE = 2;
+
+    // The spacing of the terrain noise lattice, in quads.
+    private static final int NOISE_SPACING = 16;
+
+    private static final float TERRAIN_AMPLITUDE = 6;
+
+    // Terraced terrain is quantized to this height, leaving cliffs that
+    // are too steep to traverse.
+    private static final float TERRACE_HEIGHT = 3;
+
+    private static final float STOREY_HEIGHT = 3;
+    private static final float SLAB_THICKNESS = 0.2f;
+    private static final float WALL_THICKNESS = 0.2f;
+    private static final float DOOR_WIDTH = 1.2f;
+    private static final float DOOR_HEIGHT = 2.2f;
+
+    // Stair steps are low enough to climb with the default generator
+    // settings.
+    private static final int STEPS_PER_STOREY = 12;
+    private static final float STEP_DEPTH = 0.3f;
+    private static final float STAIR_WIDTH = 1.2f;
+
+    // The size of an occupancy grid cell, in quads.
+    private static final int OCCUPANCY_CELL_SIZE = 2;
+
+    // The number of consecutive failed placements before a feature gives
+    // up on its budget.
+    private static final int MAX_PLACEMENT_FAILURES = 100;
+
+    private final Random mRandom;
+    private final int mTerrainSize;
+    private final float mWorldSize;
+    private final float[] mTerrainHeights;
+    private final float[] mNoise;
+    private final int mNoiseSize;
+    private final boolean[] mOccupied;
+    private final boolean[] mBuildingCells;
+    private final int mOccupancySize;
+
+    private float[] mVertices;
+    private int mVertCount = 0;
+    private final IntList mIndices;
+
+    /**
+     * Constructor
+     * @param seed The random seed.
+     * @param targetTriangleCount The approximate number of triangles to
+     * generate.
+     */
+    SyntheticScene(long seed, int targetTriangleCount)
+    {
+        targetTriangleCount = Math.max(100, targetTriangleCount);
+        mRandom = new Random(seed);
+
+        mTerrainSize = Math.max(8
+                , (int)Math.sqrt(targetTriangleCount * TERRAIN_SHARE / 2));
+        mWorldSize = mTerrainSize * QUAD_SIZE;
+
+        // Sized for the second octave.
+        mNoiseSize = 2 * mTerrainSize / NOISE_SPACING + 2;
+        mNoise = new float[mNoiseSize * mNoiseSize * 3];
+        for (int i = 0; i < mNoise.length; i++)
+            mNoise[i] = mRandom.nextFloat();
+
+        final int vertsPerSide = mTerrainSize + 1;
+        mTerrainHeights = new float[vertsPerSide * vertsPerSide];
+        for (int z = 0; z < vertsPerSide; z++)
+        {
+            for (int x = 0; x < vertsPerSide; x++)
+                mTerrainHeights[z * vertsPerSide + x] = getNoiseHeight(x, z);
+        }
+
+        mOccupancySize =
+            (mTerrainSize + OCCUPANCY_CELL_SIZE - 1) / OCCUPANCY_CELL_SIZE;
+        mOccupied = new boolean[mOccupancySize * mOccupancySize];
+        mBuildingCells = new boolean[mOccupancySize * mOccupancySize];
+
+        mVertices = new float[targetTriangleCount * 3];
+        mIndices = new IntList(targetTriangleCount * 3 + 64);
+
+        addTerrain();
+
+        int budget = (int)(targetTriangleCount * BUILDING_SHARE);
+        int failures = 0;
+        while (budget > 0 && failures < MAX_PLACEMENT_FAILURES)
+        {
+            final int added = addBuilding();
+            failures = (added == 0 ? failures + 1 : 0);
+            budget -= added;
+        }
+
+        // Props also take any budget the buildings couldn't use.
+        budget = (int)(targetTriangleCount * PROP_SHARE)
+            + Math.max(0, budget);
+        failures = 0;
+        while (budget > 0 && failures < MAX_PLACEMENT_FAILURES)
+        {
+            final int added = addProp();
+            failures = (added == 0 ? failures + 1 : 0);
+            budget -= added;
+        }
+
+        budget = targetTriangleCount - triangleCount();
+        failures = 0;
+        while (budget > 0 && failures < MAX_PLACEMENT_FAILURES)
+        {
+            final int added = addOverhang();
+            failures = (added == 0 ? failures + 1 : 0);
+            budget -= added;
+        }
+
+        mVertices = Arrays.copyOf(mVertices, mVertCount * 3);
+    }
+
+    /**
+     * The triangle indices in the form (vertA, vertB, vertC), wrapped
+     * clockwise.
+     * <p>A new array is created on each call.</p>
+     */
+    int[] indices() { return mIndices.toArray(); }
+
+    int triangleCount() { return mIndices.size() / 3; }
+
+    /**
+     * The vertices in the form (x, y, z).
+     */
+    float[] vertices() { return mVertices; }
+
+    /**
+     * Adds an axis-aligned box.
+     * @return The number of triangles added.
+     */
+    private int addBox(float minX, float minY, float minZ
+            , float maxX, float maxY, float maxZ)
+    {
+        final int base = mVertCount;
+        // Bottom corners, then top corners.  Each ring starts at
+        // (minX, minZ) and proceeds clockwise when viewed from above.
+        for (int i = 0; i < 2; i++)
+        {
+            final float y = (i == 0 ? minY : maxY);
+            addVertex(minX, y, minZ);
+            addVertex(minX, y, maxZ);
+            addVertex(maxX, y, maxZ);
+            addVertex(maxX, y, minZ);
+        }
+        addQuad(base + 4, base + 5, base + 6, base + 7);   // Top
+        addQuad(base + 3, base + 2, base + 1, base);       // Bottom
+        for (int i = 0; i < 4; i++)
+        {
+            // Sides
+            final int next = (i + 1) % 4;
+            addQuad(base + i, base + next, base + 4 + next, base + 4 + i);
+        }
+        return 12;
+    }
+
+    /**
+     * Adds a building of one or more storeys at a random location.
+     * @return The number of triangles added, or zero if the building
+     * could not be placed.
+     */
+    private int addBuilding()
+    {
+        final float width = 8 + mRandom.nextInt(9);
+        final float depth = 8 + mRandom.nextInt(9);
+        final int storeys = 1 + mRandom.nextInt(4);
+        final float minX = mRandom.nextFloat() * (mWorldSize - width);
+        final float minZ = mRandom.nextFloat() * (mWorldSize - depth);
+        final float maxX = minX + width;
+        final float maxZ = minZ + depth;
+        if (!reserve(minX, minZ, maxX, maxZ, true))
+            return 0;
+
+        final int startCount = triangleCount();
+        final float baseY = getMaxTerrainHeight(minX, minZ, maxX, maxZ);
+        final float topY = baseY + storeys * STOREY_HEIGHT;
+        final float t = WALL_THICKNESS;
+
+        // Walls.  The front wall has a doorway on the ground floor.
+        final float doorMinX = minX + (width - DOOR_WIDTH) / 2;
+        final float doorMaxX = doorMinX + DOOR_WIDTH;
+        addBox(minX, baseY, minZ, doorMinX, topY, minZ + t);
+        addBox(doorMaxX, baseY, minZ, maxX, topY, minZ + t);
+        addBox(doorMinX, baseY + DOOR_HEIGHT, minZ
+                , doorMaxX, topY, minZ + t);
+        addBox(minX, baseY, maxZ - t, maxX, topY, maxZ);
+        addBox(minX, baseY, minZ + t, minX + t, topY, maxZ - t);
+        addBox(maxX - t, baseY, minZ + t, maxX, topY, maxZ - t);
+
+        // The stairs climb along the back wall, ending at the stairwell
+        // of the storey above.
+        final float stairMinX = minX + t + 1;
+        final float stairMaxX =
+            stairMinX + STEPS_PER_STOREY * STEP_DEPTH;
+        final float stairMaxZ = maxZ - t;
+        final float stairMinZ = stairMaxZ - STAIR_WIDTH;
+        final float stepHeight = STOREY_HEIGHT / STEPS_PER_STOREY;
+
+        for (int storey = 0; storey <= storeys; storey++)
+        {
+            final float floorY = baseY + storey * STOREY_HEIGHT;
+            if (storey == 0 || storey == storeys)
+                // Ground floor and roof.
+                addBox(minX, floorY - SLAB_THICKNESS, minZ
+                        , maxX, floorY, maxZ);
+            else
+            {
+                // Leave a stairwell.
+                addBox(minX, floorY - SLAB_THICKNESS, minZ
+                        , maxX, floorY, stairMinZ);
+                addBox(minX, floorY - SLAB_THICKNESS, stairMinZ
+                        , stairMinX, floorY, stairMaxZ);
+                addBox(stairMaxX, floorY - SLAB_THICKNESS, stairMinZ
+                        , maxX, floorY, stairMaxZ);
+            }
+            if (storey == storeys)
+                break;
+            for (int step = 0; step < STEPS_PER_STOREY; step++)
+            {
+                final float stepMinX = stairMinX + step * STEP_DEPTH;
+                addBox(stepMinX, floorY, stairMinZ
+                        , stepMinX + STEP_DEPTH
+                        , floorY + (step + 1) * stepHeight
+                        , stairMaxZ);
+            }
+        }
+
+        return triangleCount() - startCount;
+    }
+
+    /**
+     * Adds an overhanging rock shelf at a random location.
+     * <p>The shelf is a grid of rock blocks of varying thickness, high
+     * enough to walk under, and is supported by pillars.  Some blocks are
+     * low enough to form a ledge.</p>
+     * @return The number of triangles added, or zero if the shelf could
+     * not be placed.
+     */
+    private int addOverhang()
+    {
+        final int blocksPerSide = 3;
+        final float blockSize = 2 + mRandom.nextFloat() * 2;
+        final float size = blocksPerSide * blockSize;
+        final float minX = mRandom.nextFloat() * (mWorldSize - size);
+        final float minZ = mRandom.nextFloat() * (mWorldSize - size);
+        final float maxX = minX + size;
+        final float maxZ = minZ + size;
+        if (!reserve(minX, minZ, maxX, maxZ, false))
+            return 0;
+
+        final int startCount = triangleCount();
+        final float groundY = getMaxTerrainHeight(minX, minZ, maxX, maxZ);
+        final float shelfY = groundY + 2 + mRandom.nextFloat() * 2;
+        for (int z = 0; z < blocksPerSide; z++)
+        {
+            for (int x = 0; x < blocksPerSide; x++)
+            {
+                final float blockMinX = minX + x * blockSize;
+                final float blockMinZ = minZ + z * blockSize;
+                final float bottom = shelfY - mRandom.nextFloat() * 0.8f;
+                final float top = shelfY + 0.5f + mRandom.nextFloat() * 1.5f;
+                addBox(blockMinX, bottom, blockMinZ
+                        , blockMinX + blockSize, top, blockMinZ + blockSize);
+            }
+        }
+
+        // Pillars at two or more corners.  They start below the terrain
+        // so they are never left floating.
+        final float pillarSize = 0.8f;
+        final float pillarMinY = groundY - TERRAIN_AMPLITUDE;
+        final int pillarCount = 2 + mRandom.nextInt(3);
+        final int firstCorner = mRandom.nextInt(4);
+        for (int i = 0; i < pillarCount; i++)
+        {
+            final int corner = (firstCorner + i) % 4;
+            final float x = (corner < 2 ? minX : maxX - pillarSize);
+            final float z = (corner % 3 == 0 ? minZ : maxZ - pillarSize);
+            addBox(x, pillarMinY, z, x + pillarSize, shelfY, z + pillarSize);
+        }
+
+        return triangleCount() - startCount;
+    }
+
+    /**
+     * Adds a prop at a random location outside of buildings.
+     * <p>Props are mostly crates of various sizes.  Some are low enough to
+     * step onto.  Others are stacked.</p>
+     * @return The number of triangles added, or zero if the prop could
+     * not be placed.
+     */
+    private int addProp()
+    {
+        final float size = 0.4f + mRandom.nextFloat() * 1.2f;
+        final float minX = mRandom.nextFloat() * (mWorldSize - size);
+        final float minZ = mRandom.nextFloat() * (mWorldSize - size);
+        final float maxX = minX + size;
+        final float maxZ = minZ + size;
+        if (isBuildingCell(minX, minZ) || isBuildingCell(maxX, maxZ))
+            return 0;
+
+        final float baseY = getTerrainHeight(minX, minZ) - 0.1f;
+        final float height = (mRandom.nextInt(4) == 0
+                ? 0.2f
+                : 0.5f + mRandom.nextFloat() * 1.5f);
+        int result = addBox(minX, baseY, minZ, maxX, baseY + height, maxZ);
+        if (mRandom.nextInt(4) == 0)
+        {
+            // Stack a smaller crate on top.
+            final float inset = size * 0.2f;
+            result += addBox(minX + inset, baseY + height, minZ + inset
+                    , maxX - inset, baseY + height + size * 0.6f
+                    , maxZ - inset);
+        }
+        return result;
+    }
+
+    /**
+     * Adds a quad as two triangles.  The corners must be wrapped
+     * clockwise.
+     */
+    private void addQuad(int vertA, int vertB, int vertC, int vertD)
+    {
+        mIndices.add(vertA);
+        mIndices.add(vertB);
+        mIndices.add(vertC);
+        mIndices.add(vertA);
+        mIndices.add(vertC);
+        mIndices.add(vertD);
+    }
+
+    private void addTerrain()
+    {
+        final int vertsPerSide = mTerrainSize + 1;
+        for (int z = 0; z < vertsPerSide; z++)
+        {
+            for (int x = 0; x < vertsPerSide; x++)
+                addVertex(x * QUAD_SIZE
+                        , mTerrainHeights[z * vertsPerSide + x]
+                        , z * QUAD_SIZE);
+        }
+        for (int z = 0; z < mTerrainSize; z++)
+        {
+            for (int x = 0; x < mTerrainSize; x++)
+            {
+                final int vert = z * vertsPerSide + x;
+                addQuad(vert
+                        , vert + vertsPerSide
+                        , vert + vertsPerSide + 1
+                        , vert + 1);
+            }
+        }
+    }
+
+    private void addVertex(float x, float y, float z)
+    {
+        if (mVertCount * 3 == mVertices.length)
+            mVertices = Arrays.copyOf(mVertices, mVertices.length * 2);
+        final int pVert = mVertCount * 3;
+        mVertices[pVert] = x;
+        mVertices[pVert+1] = y;
+        mVertices[pVert+2] = z;
+        mVertCount++;
+    }
+
+    /**
+     * The maximum terrain height at the terrain vertices within and
+     * surrounding the area.
+     */
+    private float getMaxTerrainHeight(float minX, float minZ
+            , float maxX, float maxZ)
+    {
+        final int vertsPerSide = mTerrainSize + 1;
+        float result = -Float.MAX_VALUE;
+        for (int z = (int)(minZ / QUAD_SIZE)
+                ; z <= Math.min(mTerrainSize, (int)(maxZ / QUAD_SIZE) + 1)
+                ; z++)
+        {
+            for (int x = (int)(minX / QUAD_SIZE)
+                    ; x <= Math.min(mTerrainSize
+                            , (int)(maxX / QUAD_SIZE) + 1)
+                    ; x++)
+                result = Math.max(result
+                        , mTerrainHeights[z * vertsPerSide + x]);
+        }
+        return result;
+    }
+
+    /**
+     * The height of a terrain vertex, before it is added to the mesh.
+     * <p>Two octaves of value noise.  Where the third noise channel is
+     * high, the height is terraced.</p>
+     */
+    private float getNoiseHeight(int x, int z)
+    {
+        final float fx = (float)x / NOISE_SPACING;
+        final float fz = (float)z / NOISE_SPACING;
+        final float height = TERRAIN_AMPLITUDE
+            * (0.75f * sampleNoise(fx, fz, 0)
+                    + 0.25f * sampleNoise(fx * 2, fz * 2, 1));
+        if (sampleNoise(fx, fz, 2) > 0.6f)
+            return (float)Math.floor(height / TERRACE_HEIGHT) * TERRACE_HEIGHT;
+        return height;
+    }
+
+    /**
+     * The terrain height of the vertex nearest the location.
+     */
+    private float getTerrainHeight(float x, float z)
+    {
+        final int vertsPerSide = mTerrainSize + 1;
+        final int vx = Math.min(mTerrainSize, Math.round(x / QUAD_SIZE));
+        final int vz = Math.min(mTerrainSize, Math.round(z / QUAD_SIZE));
+        return mTerrainHeights[vz * vertsPerSide + vx];
+    }
+
+    private boolean isBuildingCell(float x, float z)
+    {
+        final int cx = (int)(x / QUAD_SIZE) / OCCUPANCY_CELL_SIZE;
+        final int cz = (int)(z / QUAD_SIZE) / OCCUPANCY_CELL_SIZE;
+        return mBuildingCells[Math.min(cz, mOccupancySize - 1)
+                              * mOccupancySize
+                              + Math.min(cx, mOccupancySize - 1)];
+    }
+
+    /**
+     * Reserves the occupancy cells overlapped by the area.
+     * @return TRUE if the area was reserved.  FALSE if it overlaps an
+     * existing reservation or extends outside the terrain.
+     */
+    private boolean reserve(float minX, float minZ, float maxX, float maxZ
+            , boolean isBuilding)
+    {
+        if (minX < 0 || minZ < 0
+                || maxX > mWorldSize
+                || maxZ > mWorldSize)
+            return false;
+        final int cMinX = (int)(minX / QUAD_SIZE) / OCCUPANCY_CELL_SIZE;
+        final int cMinZ = (int)(minZ / QUAD_SIZE) / OCCUPANCY_CELL_SIZE;
+        final int cMaxX = Math.min(mOccupancySize - 1
+                , (int)(maxX / QUAD_SIZE) / OCCUPANCY_CELL_SIZE);
+        final int cMaxZ = Math.min(mOccupancySize - 1
+                , (int)(maxZ / QUAD_SIZE) / OCCUPANCY_CELL_SIZE);
+        for (int cz = cMinZ; cz <= cMaxZ; cz++)
+        {
+            for (int cx = cMinX; cx <= cMaxX; cx++)
+            {
+                if (mOccupied[cz * mOccupancySize + cx])
+                    return false;
+            }
+        }
+        for (int cz = cMinZ; cz <= cMaxZ; cz++)
+        {
+            for (int cx = cMinX; cx <= cMaxX; cx++)
+            {
+                mOccupied[cz * mOccupancySize + cx] = true;
+                mBuildingCells[cz * mOccupancySize + cx] = isBuilding;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Bilinear value noise in the range [0, 1].
+     */
+    private float sampleNoise(float x, float z, int channel)
+    {
+        final int ix = Math.min((int)x, mNoiseSize - 2);
+        final int iz = Math.min((int)z, mNoiseSize - 2);
+        final float tx = smooth(x - ix);
+        final float tz = smooth(z - iz);
+        final int base = (channel * mNoiseSize + iz) * mNoiseSize + ix;
+        final float near = mNoise[base]
+            + (mNoise[base + 1] - mNoise[base]) * tx;
+        final float far = mNoise[base + mNoiseSize]
+            + (mNoise[base + mNoiseSize + 1] - mNoise[base + mNoiseSize])
+                * tx;
+        return near + (far - near) * tz;
+    }
+
+    private static float smooth(float t)
+    {
+        t = Math.max(0, Math.min(1, t));
+        return t * t * (3 - 2 * t);
+    }
+
+}
@@ -0,0 +1,102 @@
+package org.critterai.nmgen;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Tests related to the SyntheticScene class, and stress tests which build
+ * navigation meshes from synthetic scenes.
+ */
+public class SyntheticSceneTests
+{
+
+    private static final float CELL_SIZE = 0.3f;
+
+    @Test
+    public void testDeterministic()
+    {
+        final SyntheticScene sceneA = new SyntheticScene(11, 5000);
+        final SyntheticScene sceneB = new SyntheticScene(11, 5000);
+        assertArrayEquals(sceneA.vertices(), sceneB.vertices(), 0);
+        assertArrayEquals(sceneA.indices(), sceneB.indices());
+
+        final SyntheticScene other = new SyntheticScene(12, 5000);
+        assertFalse(Arrays.equals(sceneA.vertices(), other.vertices()));
+    }
+
+    @Test
+    public void testTriangleCount()
+    {
+        for (int target : new int[] { 10000, 50000, 200000 })
+        {
+            final SyntheticScene scene = new SyntheticScene(3, target);
+            final int[] indices = scene.indices();
+            assertTrue(indices.length == scene.triangleCount() * 3);
+            assertEquals(target, scene.triangleCount(), target * 0.05);
+            final int vertCount = scene.vertices().length / 3;
+            for (int index : indices)
+                assertTrue(index >= 0 && index < vertCount);
+        }
+        // Small targets are overshot by at most one building.
+        assertTrue(new SyntheticScene(3, 1000).triangleCount() < 1000 + 600);
+    }
+
+    @Test
+    public void testSoakStackedScene()
+    {
+        final SyntheticScene scene = new SyntheticScene(5, 20000);
+        final float[] vertices = scene.vertices();
+        final int[] indices = scene.indices();
+
+        final IntermediateData data = new IntermediateData();
+        final TriangleMesh serial =
+            createGenerator(null).build(vertices, indices, data);
+        assertTrue(serial != null);
+        assertTrue(serial.triangleCount() > 0);
+        for (int index : serial.indices)
+            assertTrue(index >= 0 && index < serial.vertCount());
+
+        // Buildings and overhangs produce columns with more than one
+        // traversable surface.
+        int stackedCount = 0;
+        final OpenHeightfield field = data.openHeightfield();
+        for (int depthIndex = 0; depthIndex < field.depth(); depthIndex++)
+        {
+            for (int widthIndex = 0
+                    ; widthIndex < field.width()
+                    ; widthIndex++)
+            {
+                final OpenHeightSpan span =
+                    field.getData(widthIndex, depthIndex);
+                if (span != null && span.next() != null)
+                    stackedCount++;
+            }
+        }
+        assertTrue(stackedCount > 100);
+
+        // Parallel builds of the scene match the serial build.
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            final TriangleMesh parallel =
+                createGenerator(pool).build(vertices, indices, null);
+            assertArrayEquals(serial.indices, parallel.indices);
+            assertArrayEquals(serial.vertices, parallel.vertices, 0);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    private static NavmeshGenerator createGenerator(ForkJoinPool pool)
+    {
+        return new NavmeshGenerator(CELL_SIZE, 0.1f, 1.5f, 0.3f, 48, true
+                , 0.5f, 2, true, 20, 40, 12, 1.3f, 6, 6, 1, pool);
+    }
+
+}